@@ -9,8 +9,13 @@ import org.apache.logging.log4j.Logger;
 
 // Dépendances propres
 import java.io.*;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
 import java.util.concurrent.*;
 
 import stas.thermometer.domains.*;
@@ -23,7 +28,7 @@ public class App {
     private static final Logger LOG = LogManager.getLogger("stas");
 
 
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) throws IOException {
 
         // Vérification qu'un fichier de configuration est passé en parametres
         int configFileIndex = Arrays.asList(args).indexOf("--config-file");
@@ -51,21 +56,64 @@ public class App {
         // Initialisation du thermometre avec ses informations (nom, foramt de température et format de dateTime)
         Configuration config = new Configuration(iniFileReader.getDateTimeFormat(), iniFileReader.getTemperatureFormat(), thermometerName);
 
+        // Threads virtuels ou du système pour les sondes, les calculs planifiés et les écritures en base
+        ThreadMode threadMode = iniFileReader.getThreadMode();
+
         // Construction de mes objets
         ObserverManager observerManager = new ObserverManager();
         Profiles profile = iniFileReader.getProfile();
-        TemperatureProbe probe = new TemperatureProbe(profile);
-        HumidityProbe humidityProbe = new HumidityProbe(profile);
+        // Une source de bruit par sonde, tirée d'une même source : avec une graine, la simulation se rejoue à l'identique
+        OptionalLong seed = iniFileReader.getNoiseSeed();
+        NoiseSource noise = seed.isPresent() ? NoiseSource.seeded(seed.getAsLong()) : NoiseSource.random();
+        TemperatureProbe probe = new TemperatureProbe(profile, noise.split());
+        HumidityProbe humidityProbe = new HumidityProbe(profile, noise.split());
 
         final String user = iniFileReader.getServerDbInfo()[1];
         final String password = iniFileReader.getServerDbInfo()[2];
         final String url = iniFileReader.getServerDbInfo()[0];
-        DatabaseManager<Measurement> measurementManager = new DatabaseManager<>(url, user, password);
-        DatabaseManager<Humidity> humidityManager = new DatabaseManager<>(url, user, password);
-        MeasurementAggregator aggregator = new MeasurementAggregator(observerManager, profile, thermometerName, measurementManager, humidityManager);
-        // Ajouter l'agrégateur comme observateur de la sonde
-        probe.addObserver(aggregator);
-        humidityProbe.addObserver(aggregator);
+        // Un seul pool partagé par tous les accès à la base
+        ConnectionPool connectionPool = new ConnectionPool(url, user, password);
+        DatabaseManager<Measurement> measurementManager = new DatabaseManager<>(connectionPool);
+        // Index des requêtes d'historique, créés au premier démarrage si la base est joignable
+        HistoryReader historyReader = new HistoryReader(measurementManager, 500);
+        try {
+            historyReader.ensureIndexes();
+        } catch (RuntimeException e) {
+            LOG.warn("unable to create history indexes: " + e.getMessage());
+        }
+        // Les moyennes passent par un journal local : rien n'est perdu si la base est coupée ou l'application arrêtée
+        AverageJournal journal = AverageJournal.open(Path.of("journal", thermometerName), 1024 * 1024);
+        // Les moyennes de plusieurs calculs sont validées par un seul commit, au plus tard après la latence configurée
+        PersistenceSettings persistenceSettings = iniFileReader.getPersistenceSettings();
+        WriteBehindSink averageSink = new WriteBehindSink(measurementManager, journal,
+                new IdAllocator(measurementManager, 100), persistenceSettings);
+        // Les écritures se font sur un thread dédié ; file pleine, le calcul attend plutôt que d'abandonner une moyenne
+        // avant le journal. Les sondes ne sont pas bloquées : la demande n'est plus accordée dès que la file se remplit
+        AsyncAverageSink asyncSink = new AsyncAverageSink(averageSink, 1000, BackpressurePolicy.BLOCK, null,
+                threadMode.factory("stas-db-writer"));
+        AggregationSettings aggregationSettings = iniFileReader.getAggregationSettings();
+        MeasurementAggregator aggregator = new MeasurementAggregator(observerManager, profile, thermometerName, asyncSink, aggregationSettings.pane());
+        // Les volets suivent l'horodatage des sondes : une mesure transmise en retard reste dans sa fenêtre
+        aggregator.enableEventTime(iniFileReader.getEventTimeSettings());
+        // Règles d'alerte du fichier de configuration, avec hystérésis et délai entre deux alertes
+        aggregator.useAlertRules(iniFileReader.getAlertRules());
+        // Fenêtres plus longues, construites à partir des volets de la fenêtre de base et stockées dans des fichiers locaux
+        // Les fichiers sont écrits sur leur propre thread : une erreur disque ne remonte pas jusqu'au calcul des volets
+        List<TimeSeriesFileStore> windowStores = new ArrayList<>();
+        List<AsyncAverageSink> windowSinks = new ArrayList<>();
+        for (Duration window : aggregationSettings.windows()) {
+            TimeSeriesFileStore store = TimeSeriesFileStore.open(Path.of("timeseries", thermometerName, window.toSeconds() + "s"),
+                    thermometerName, TimeSeriesFileStore.DEFAULT_BLOCK_SIZE);
+            windowStores.add(store);
+            AsyncAverageSink windowSink = new AsyncAverageSink(store, 1000, BackpressurePolicy.DROP_OLDEST, null,
+                    threadMode.factory("stas-timeseries-writer"));
+            windowSinks.add(windowSink);
+            aggregator.addResolution(WindowResolution.tumbling(window, new ObserverManager(), windowSink));
+        }
+        // Les mesures sont tirées de la source au rythme accordé par l'agrégateur, jamais poussées au-delà
+        ProbeSourceSettings sourceSettings = iniFileReader.getProbeSourceSettings();
+        SampleDemand demand = new SampleDemand(2L * sourceSettings.samplesPerPane(), sourceSettings.samplesPerPane());
+        aggregator.useDemand(demand, sourceSettings.samplesPerPane());
 
         // Créer le présentateur et la vue
         ThermometerView view = new ConsoleThermometerView();
@@ -75,36 +123,149 @@ public class App {
         presenter.setConfiguration(config);
         presenter.setProbes(probe, humidityProbe);
 
-        // Associer le présentateur à la sonde et à l'agrégateur
+        // Le présentateur ne reçoit que les moyennes : seules les sondes alimentent l'agrégateur
         observerManager.addAverageObserver(presenter);
-        probe.addObserver(presenter);
-        humidityProbe.addObserver(presenter);
+        // Agrégats minute/heure/jour pour les tableaux de bord, recalculés depuis la base au redémarrage
+        RollupAggregator rollups = new RollupAggregator(measurementManager, historyReader, thermometerName);
+        observerManager.addAverageObserver(rollups);
         observerManager.addAlertObserver(presenter);
+        // Détection d'anomalies sur les moyennes (ligne de base lissée, z-score, vitesse de variation)
+        AnomalySettings anomalySettings = iniFileReader.getAnomalySettings();
+        if (anomalySettings.enabled()) {
+            observerManager.addAverageObserver(new AnomalyDetector(observerManager, anomalySettings));
+            observerManager.addAnomalyObserver(presenter);
+        }
+        // L'état de la base est déduit des écritures réelles, sans connexion de test à chaque calcul
+        measurementManager.addStateObserver(presenter);
 
-        // Configurer et démarrer le rafraîchissement périodique de la sonde
-        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
-        RefreshProbeTask refreshTask = new RefreshProbeTask(probe, humidityProbe);
+        // Lire la source des mesures sur son propre thread :
+        // les tâches planifiées qui attendent la base ne retardent pas l'échantillonnage
+        ProbeSource source = openSource(sourceSettings, probe, humidityProbe);
+        // Une relecture impose son heure à l'agrégateur : volets, filigrane et retards suivent l'enregistrement
+        long paneMillis = aggregationSettings.pane().toMillis();
+        long tickMillis = paneMillis;
+        if (source instanceof ReplayProbeSource replay) {
+            aggregator.useClock(replay::currentMillis);
+            tickMillis = Math.max(1, (long) (paneMillis / sourceSettings.replaySpeed()));
+        }
+        if (sourceSettings.isRecording()) {
+            source = new RecordingProbeSource(source, SampleRecorder.create(Path.of(sourceSettings.recording())));
+        }
+        ProbeSourceDriver sourceDriver = new ProbeSourceDriver(source, demand, aggregator, threadMode.factory("stas-probe"));
+        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor(threadMode.factory("stas-scheduler"));
         presenter.displayThermometerName();
-        scheduledExecutor.scheduleAtFixedRate(refreshTask, 0, 100, TimeUnit.MILLISECONDS);
-
-        scheduledExecutor.scheduleAtFixedRate(() -> {
-            if(!measurementManager.testConnection()){
-                view.display("stas thermometer : unable to insert data. trying to reconnect to database..");
-            }else {
-                if (aggregator.hasNewMeasurement()) {
-                    aggregator.calculateAndNotifyAverageTemperature();
-                    aggregator.calculateAndNotifyAverageHumidity();
-                }
-            }
+        sourceDriver.start();
 
+        // Mode flotte : des milliers de sondes simulées alimentent le même agrégateur, pilotées par des roues de temporisation
+        // ou, avec des threads virtuels, chacune par sa propre boucle
+        ProbeFleet fleet = startFleet(iniFileReader, threadMode, noise, aggregator);
+        if (fleet != null) {
+            scheduledExecutor.scheduleAtFixedRate(() -> logFleet(fleet), 10, 10, TimeUnit.SECONDS);
+        }
+
+        // Les moyennes sont calculées même sans base : elles attendent dans le journal.
+        // Chaque passage clôt un volet, même vide, pour que les fenêtres plus longues gardent leur durée ;
+        // une relecture accélérée clôt ses volets d'autant plus souvent
+        scheduledExecutor.scheduleAtFixedRate(() -> calculateAverages(aggregator), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+
+        scheduledExecutor.scheduleAtFixedRate(() -> flushRollups(rollups), 10, 10, TimeUnit.SECONDS);
+
+        // Les moyennes expirées sont purgées par petits lots sur un thread à part, sans gêner les écritures
+        RetentionService retention = new RetentionService(measurementManager, thermometerName, iniFileReader.getRetentionSettings(),
+                threadMode.factory("stas-retention"));
+        retention.start();
 
-        }, 0, 2, TimeUnit.SECONDS);  // calcule la moyenne toutes les 2 secondes
+        // Fermer les connexions restées inactives trop longtemps
+        scheduledExecutor.scheduleAtFixedRate(connectionPool::evictIdle, 1, 1, TimeUnit.MINUTES);
 
         // Démarrer la boucle principale
         presenter.runMainLoop();
 
-        // Arrêter l'exécuteur planifié
+        // Arrêter les exécuteurs planifiés et écrire les moyennes encore en attente
+        sourceDriver.close();
         scheduledExecutor.shutdown();
+        if (fleet != null) {
+            fleet.close();
+            logFleet(fleet);
+        }
+        retention.close();
+        asyncSink.close();
+        flushRollups(rollups);
+        for (AsyncAverageSink windowSink : windowSinks) {
+            windowSink.close();
+        }
+        for (TimeSeriesFileStore store : windowStores) {
+            store.close();
+        }
+        SinkMetrics sinkMetrics = averageSink.getMetrics();
+        LOG.info(String.format("%d lots écrits, %.1f moyennes par lot, %.1f ms par lot, %d moyennes abandonnées",
+                sinkMetrics.flushes(), sinkMetrics.averageBatchSize(), sinkMetrics.averageFlushMillis(), asyncSink.getDroppedCount()));
+        PoolMetrics poolMetrics = connectionPool.getMetrics();
+        LOG.info(String.format("%d connexions ouvertes pour %d emprunts, %.0f %% des requêtes préparées servies par le cache",
+                poolMetrics.created(), poolMetrics.borrowed(), poolMetrics.statementHitRatio() * 100));
+        journal.close();
+        connectionPool.close();
+    }
+
+    private static ProbeSource openSource(ProbeSourceSettings settings, TemperatureProbe probe, HumidityProbe humidityProbe) throws IOException {
+        return switch (settings.type()) {
+            case SIMULATED -> new SimulatedProbeSource(probe, humidityProbe, Duration.ofMillis(100));
+            case FILE -> LineProbeSource.open(Path.of(settings.location()));
+            case REPLAY -> ReplayProbeSource.open(Path.of(settings.location()), settings.replaySpeed());
+            case SOCKET -> {
+                int separator = settings.location().lastIndexOf(':');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("L'emplacement d'un socket doit être de la forme hôte:port : " + settings.location());
+                }
+                yield LineProbeSource.connect(settings.location().substring(0, separator),
+                        Integer.parseInt(settings.location().substring(separator + 1)));
+            }
+        };
+    }
+
+    private static ProbeFleet startFleet(IniConfigurationReader iniFileReader, ThreadMode threadMode, NoiseSource noise,
+                                         MeasurementAggregator aggregator) {
+        FleetSettings settings = iniFileReader.getFleetSettings();
+        if (!settings.isEnabled()) {
+            return null;
+        }
+        ProbeFleet fleet = new ProbeFleet(settings, threadMode);
+        for (int i = 0; i < settings.probes(); i++) {
+            // Chaque sonde simulée a son propre profil et sa propre source de bruit
+            Profiles profile = iniFileReader.getProfile();
+            TemperatureProbe probe = new TemperatureProbe(profile, noise.split());
+            HumidityProbe humidityProbe = new HumidityProbe(profile, noise.split());
+            probe.addObserver(aggregator);
+            humidityProbe.addObserver(aggregator);
+            fleet.add(new RefreshProbeTask(probe, humidityProbe), settings.periodOf(i));
+        }
+        fleet.start();
+        LOG.info(String.format("flotte de %d sondes démarrée (threads %s)", settings.probes(), threadMode));
+        return fleet;
+    }
+
+    private static void logFleet(ProbeFleet fleet) {
+        FleetMetrics metrics = fleet.getMetrics();
+        LOG.info(String.format("flotte : %.0f échantillonnages par seconde, %d en échec, retard des crans %.2f ms en moyenne, %.2f ms au plus",
+                metrics.samplesPerSecond(), metrics.failures(), metrics.averageLatenessMillis(), metrics.maxLatenessMillis()));
+    }
+
+    private static void calculateAverages(MeasurementAggregator aggregator) {
+        // Une exception non rattrapée arrêterait définitivement les volets et la demande accordée aux sources
+        try {
+            aggregator.calculateAndNotifyAverages();
+        } catch (RuntimeException e) {
+            LOG.warn("unable to calculate averages: " + e.getMessage());
+        }
+    }
+
+    private static void flushRollups(RollupAggregator rollups) {
+        // Une exception non rattrapée arrêterait définitivement la tâche planifiée
+        try {
+            rollups.flush();
+        } catch (RuntimeException e) {
+            LOG.warn("unable to write rollups: " + e.getMessage());
+        }
     }
 
 }
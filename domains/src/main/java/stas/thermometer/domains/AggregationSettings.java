@@ -0,0 +1,34 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Paramètres du calcul des moyennes : la durée d'un volet et les fenêtres plus longues construites à partir des volets.
+ *
+ * @param pane la durée d'un volet, c'est-à-dire de la fenêtre de base calculée à chaque passage.
+ * @param windows les durées des fenêtres supplémentaires, chacune multiple de {@code pane}.
+ */
+public record AggregationSettings(Duration pane, List<Duration> windows) {
+
+    public AggregationSettings {
+        if (pane.isNegative() || pane.isZero()) {
+            throw new IllegalArgumentException("La durée d'un volet doit être positive");
+        }
+        for (Duration window : windows) {
+            if (window.compareTo(pane) < 0 || window.toMillis() % pane.toMillis() != 0) {
+                throw new IllegalArgumentException("La fenêtre de " + window.toSeconds() + " s n'est pas un multiple du volet");
+            }
+        }
+        windows = List.copyOf(windows);
+    }
+
+    /**
+     * Volets de 2 secondes, complétés par des fenêtres de 30 secondes et de 5 minutes.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static AggregationSettings defaults() {
+        return new AggregationSettings(Duration.ofSeconds(2), List.of(Duration.ofSeconds(30), Duration.ofMinutes(5)));
+    }
+}
@@ -0,0 +1,49 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Règle d'alerte sur l'écart entre une moyenne et la valeur attendue par le profil.
+ *
+ * <p>La règle se déclenche quand l'écart dans sa direction dépasse {@code max(relative × attendu, absolute)}
+ * pendant au moins {@code minDuration}. Elle reste active jusqu'à ce que l'écart repasse sous le seuil diminué
+ * de {@code hysteresis}. Avec une hystérésis, une seule alerte est notifiée par activation, au plus tôt à la fin de
+ * {@code cooldown} ; sans hystérésis, chaque fenêtre au-delà du seuil est signalée, au plus une fois par
+ * {@code cooldown}, comme les alertes historiques.</p>
+ *
+ * @param name le type d'alerte affiché et persisté, par exemple « Surchauffe ».
+ * @param metric la grandeur surveillée.
+ * @param above vrai si la règle porte sur un dépassement, faux sur une valeur trop basse.
+ * @param relative le seuil relatif à la valeur attendue.
+ * @param absolute le seuil absolu, dans l'unité de la grandeur.
+ * @param hysteresis la marge sous le seuil à franchir pour désactiver la règle.
+ * @param minDuration la durée pendant laquelle le seuil doit être dépassé avant la première alerte.
+ * @param cooldown l'intervalle minimal entre deux alertes de la règle.
+ */
+public record AlertRule(String name, MetricType metric, boolean above, double relative, double absolute,
+                        double hysteresis, Duration minDuration, Duration cooldown) {
+
+    public AlertRule {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Une règle d'alerte doit avoir un nom");
+        }
+        if (hysteresis < 0 || minDuration.isNegative() || cooldown.isNegative()) {
+            throw new IllegalArgumentException("La règle " + name + " a une hystérésis ou une durée négative");
+        }
+    }
+
+    /**
+     * Les seuils historiques : écart de plus de 10 % et de plus de 10° pour la température, de plus de 10 %
+     * et de plus de 0,1 pour l'humidité, sans hystérésis ni délai.
+     *
+     * @return les règles par défaut.
+     */
+    public static List<AlertRule> defaults() {
+        return List.of(
+                new AlertRule("Surchauffe", MetricType.TEMPERATURE, true, 0.1, 10, 0, Duration.ZERO, Duration.ZERO),
+                new AlertRule("Refroidissement", MetricType.TEMPERATURE, false, 0.1, 10, 0, Duration.ZERO, Duration.ZERO),
+                new AlertRule("Trop humide", MetricType.HUMIDITY, true, 0.1, 0.1, 0, Duration.ZERO, Duration.ZERO),
+                new AlertRule("Trop sec", MetricType.HUMIDITY, false, 0.1, 0.1, 0, Duration.ZERO, Duration.ZERO));
+    }
+}
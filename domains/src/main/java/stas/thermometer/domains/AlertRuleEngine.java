@@ -0,0 +1,149 @@
+package stas.thermometer.domains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Évaluateur des {@link AlertRule}, compilées au démarrage en tableaux parallèles regroupés par grandeur.
+ *
+ * <p>Une évaluation parcourt les seules règles de la grandeur, lit et met à jour l'état de chaque règle
+ * dans des tableaux primitifs et n'alloue rien. Les seuils sont partagés ; chaque flux de moyennes
+ * (fenêtre de base, fenêtres plus longues) a son propre état, obtenu par {@link #newState()}.</p>
+ */
+final class AlertRuleEngine {
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    // Seuils compilés, partagés entre les états
+    private final String[] names;
+    private final boolean[] above;
+    private final double[] relative;
+    private final double[] absolute;
+    private final double[] hysteresis;
+    private final long[] minDurationMillis;
+    private final long[] cooldownMillis;
+    // Règles de la grandeur d'ordinal m : indices [metricStart[m], metricStart[m + 1])
+    private final int[] metricStart;
+
+    // État propre à un flux de moyennes
+    private final boolean[] active;
+    // Vrai une fois l'alerte de l'activation en cours notifiée
+    private final boolean[] notified;
+    private final long[] breachSince;
+    private final long[] lastAlert;
+
+    AlertRuleEngine(List<AlertRule> rules) {
+        List<AlertRule> sorted = new ArrayList<>(rules);
+        sorted.sort(Comparator.comparingInt(rule -> rule.metric().ordinal()));
+        int count = sorted.size();
+        names = new String[count];
+        above = new boolean[count];
+        relative = new double[count];
+        absolute = new double[count];
+        hysteresis = new double[count];
+        minDurationMillis = new long[count];
+        cooldownMillis = new long[count];
+        metricStart = new int[MetricType.values().length + 1];
+        for (int i = 0; i < count; i++) {
+            AlertRule rule = sorted.get(i);
+            names[i] = rule.name();
+            above[i] = rule.above();
+            relative[i] = rule.relative();
+            absolute[i] = rule.absolute();
+            hysteresis[i] = rule.hysteresis();
+            minDurationMillis[i] = rule.minDuration().toMillis();
+            cooldownMillis[i] = rule.cooldown().toMillis();
+            metricStart[rule.metric().ordinal() + 1]++;
+        }
+        for (int m = 1; m < metricStart.length; m++) {
+            metricStart[m] += metricStart[m - 1];
+        }
+        active = new boolean[count];
+        notified = new boolean[count];
+        breachSince = new long[count];
+        lastAlert = new long[count];
+        Arrays.fill(breachSince, NEVER);
+        Arrays.fill(lastAlert, NEVER);
+    }
+
+    private AlertRuleEngine(AlertRuleEngine compiled) {
+        names = compiled.names;
+        above = compiled.above;
+        relative = compiled.relative;
+        absolute = compiled.absolute;
+        hysteresis = compiled.hysteresis;
+        minDurationMillis = compiled.minDurationMillis;
+        cooldownMillis = compiled.cooldownMillis;
+        metricStart = compiled.metricStart;
+        active = new boolean[names.length];
+        notified = new boolean[names.length];
+        breachSince = new long[names.length];
+        lastAlert = new long[names.length];
+        Arrays.fill(breachSince, NEVER);
+        Arrays.fill(lastAlert, NEVER);
+    }
+
+    /**
+     * @return un évaluateur des mêmes règles, sans alerte en cours, pour un autre flux de moyennes.
+     */
+    AlertRuleEngine newState() {
+        return new AlertRuleEngine(this);
+    }
+
+    /**
+     * Évalue les règles d'une grandeur pour une moyenne et notifie les alertes déclenchées.
+     *
+     * @param metric la grandeur de la moyenne.
+     * @param value la moyenne.
+     * @param expected la valeur attendue par le profil.
+     * @param epochMillis l'instant de la moyenne ; seules les différences entre instants comptent.
+     * @param observers les destinataires des alertes déclenchées.
+     * @return le plus grand écart parmi les alertes déclenchées, ou {@code NaN} s'il n'y en a pas.
+     */
+    double evaluate(MetricType metric, double value, double expected, long epochMillis, ObserverManager observers) {
+        double deviation = value - expected;
+        double triggered = Double.NaN;
+        for (int i = metricStart[metric.ordinal()], end = metricStart[metric.ordinal() + 1]; i < end; i++) {
+            double excess = above[i] ? deviation : -deviation;
+            double threshold = Math.max(relative[i] * expected, absolute[i]);
+            if (excess > threshold) {
+                if (breachSince[i] == NEVER) {
+                    breachSince[i] = epochMillis;
+                }
+                if (!active[i] && epochMillis - breachSince[i] >= minDurationMillis[i]) {
+                    active[i] = true;
+                    notified[i] = false;
+                }
+            } else if (!active[i] || excess <= threshold - hysteresis[i]) {
+                // Sous le seuil, ou sorti de la bande d'hystérésis : la règle est réarmée
+                active[i] = false;
+                breachSince[i] = NEVER;
+            }
+            // Une activation n'est notifiée qu'une fois, dès que le délai entre deux alertes le permet
+            if (active[i] && !notified[i] && (lastAlert[i] == NEVER || epochMillis - lastAlert[i] >= cooldownMillis[i])) {
+                lastAlert[i] = epochMillis;
+                // Sans hystérésis, la règle signale chaque fenêtre au-delà du seuil, comme les alertes historiques
+                notified[i] = hysteresis[i] > 0;
+                double difference = Math.abs(deviation);
+                if (metric == MetricType.TEMPERATURE) {
+                    observers.notifyTemperatureAlert(names[i], expected, difference);
+                } else {
+                    observers.notifyHumidityAlert(names[i], expected, difference);
+                }
+                if (Double.isNaN(triggered) || difference > triggered) {
+                    triggered = difference;
+                }
+            }
+        }
+        return triggered;
+    }
+
+    /**
+     * @return le nombre de règles compilées.
+     */
+    int size() {
+        return names.length;
+    }
+}
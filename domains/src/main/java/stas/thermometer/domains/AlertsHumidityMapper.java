@@ -2,7 +2,11 @@ package stas.thermometer.domains;
 
 import java.sql.*;
 
-public class AlertsHumidityMapper implements DataMapper<Humidity> {
+public class AlertsHumidityMapper implements BatchDataMapper<Humidity> {
+
+    public static final String TABLE = "AlertsHumidity";
+    private static final String INSERT_SQL = "INSERT INTO AlertsHumidity (type, difference, timestamp, humidity_id) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_WITH_ID_SQL = "INSERT INTO AlertsHumidity (type, difference, timestamp, humidity_id, id) VALUES (?, ?, ?, ?, ?)";
 
     private final long measurementId;
     private final double difference;
@@ -11,16 +15,35 @@ public class AlertsHumidityMapper implements DataMapper<Humidity> {
         this.difference = difference;
     }
 
+    @Override
+    public String getInsertSql() {
+        return INSERT_SQL;
+    }
+
+    @Override
+    public String getInsertWithIdSql() {
+        return INSERT_WITH_ID_SQL;
+    }
+
+    @Override
+    public void bindParameters(PreparedStatement statement, Humidity item) throws SQLException {
+        // Définissez les paramètres ici, y compris measurement_id
+        statement.setString(1, "Humidity");
+        statement.setDouble(2, difference*100);
+        statement.setTimestamp(3, java.sql.Timestamp.valueOf(item.timestamp()));
+        statement.setLong(4, measurementId);
+    }
+
+    @Override
+    public void bindParameters(PreparedStatement statement, Humidity item, long id) throws SQLException {
+        bindParameters(statement, item);
+        statement.setLong(5, id);
+    }
+
     @Override
     public long insert(Connection conn, Humidity item) throws SQLException {
-        String sql = "INSERT INTO AlertsHumidity (type, difference, timestamp, humidity_id) VALUES (?, ?, ?, ?)";
-        String type = "Humidity";
-        try (PreparedStatement statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            // Définissez les paramètres ici, y compris measurement_id
-            statement.setString(1, type);
-            statement.setDouble(2, difference*100);
-            statement.setTimestamp(3, java.sql.Timestamp.valueOf(item.timestamp()));
-            statement.setDouble(4, measurementId);
+        try (PreparedStatement statement = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            bindParameters(statement, item);
             statement.executeUpdate();
             try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
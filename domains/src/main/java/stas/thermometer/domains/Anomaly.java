@@ -0,0 +1,19 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+
+/**
+ * Anomalie détectée sur le flux des moyennes d'un thermomètre, indépendamment du profil attendu.
+ *
+ * @param thermometerName le thermomètre concerné.
+ * @param metric la grandeur concernée.
+ * @param kind la nature de l'anomalie.
+ * @param value la moyenne qui a déclenché l'anomalie.
+ * @param baseline la référence : la ligne de base lissée pour {@link AnomalyKind#Z_SCORE},
+ *                 la moyenne précédente pour {@link AnomalyKind#RATE_OF_CHANGE}.
+ * @param score le z-score, ou la variation par minute.
+ * @param timestamp l'instant de la moyenne.
+ */
+public record Anomaly(String thermometerName, MetricType metric, AnomalyKind kind, double value, double baseline,
+                      double score, LocalDateTime timestamp) {
+}
@@ -0,0 +1,128 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Étage de détection d'anomalies placé après l'agrégateur, en complément des alertes sur l'écart au profil.
+ *
+ * <p>Pour chaque thermomètre et chaque grandeur, le détecteur tient une ligne de base lissée exponentiellement
+ * (moyenne et variance), d'où il tire le z-score de chaque nouvelle moyenne, et la moyenne précédente, d'où il tire
+ * la vitesse de variation. L'état d'un flux tient en quelques cases de tableaux primitifs : le coût d'une moyenne
+ * est constant et n'alloue rien, quel que soit le nombre de thermomètres suivis. Seule une anomalie détectée
+ * crée un objet, notifié aux {@link AnomalyObserver}.</p>
+ *
+ * <p>Le z-score est calculé avant la mise à jour de la ligne de base, pour qu'une valeur aberrante ne se masque
+ * pas elle-même.</p>
+ */
+public class AnomalyDetector implements AverageMeasurementObserver {
+
+    private static final int METRICS = MetricType.values().length;
+    private static final int INITIAL_STREAMS = 16;
+
+    private final ObserverManager observers;
+    private final AnomalySettings settings;
+    private final Map<String, Integer> thermometers = new HashMap<>();
+    // Un flux par thermomètre et par grandeur : indice thermomètre * METRICS + ordinal de la grandeur
+    private double[] baseline = new double[INITIAL_STREAMS];
+    private double[] variance = new double[INITIAL_STREAMS];
+    private double[] previous = new double[INITIAL_STREAMS];
+    private long[] previousMillis = new long[INITIAL_STREAMS];
+    private int[] count = new int[INITIAL_STREAMS];
+
+    /**
+     * @param observers les destinataires des anomalies.
+     * @param settings le lissage et les seuils de détection.
+     */
+    public AnomalyDetector(ObserverManager observers, AnomalySettings settings) {
+        this.observers = observers;
+        this.settings = settings;
+    }
+
+    @Override
+    public void updateAverageMeasurement(Measurement averageMeasurement) {
+        observe(averageMeasurement.thermometerName(), MetricType.TEMPERATURE, averageMeasurement.temperature(), averageMeasurement.timestamp());
+    }
+
+    @Override
+    public void updateAverageHumidity(Humidity averageHumidity) {
+        observe(averageHumidity.thermometerName(), MetricType.HUMIDITY, averageHumidity.humidity(), averageHumidity.timestamp());
+    }
+
+    /**
+     * Analyse une moyenne puis l'intègre à la ligne de base de son flux.
+     *
+     * @param thermometerName le thermomètre qui a produit la moyenne.
+     * @param metric la grandeur de la moyenne.
+     * @param value la moyenne.
+     * @param timestamp l'instant de la moyenne.
+     */
+    public synchronized void observe(String thermometerName, MetricType metric, double value, LocalDateTime timestamp) {
+        int stream = thermometerIndex(thermometerName) * METRICS + metric.ordinal();
+        long epochMillis = timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+        if (count[stream] == 0) {
+            baseline[stream] = value;
+            variance[stream] = 0;
+        } else {
+            double deviation = value - baseline[stream];
+            double standardDeviation = Math.sqrt(variance[stream]);
+            if (count[stream] >= settings.warmup() && standardDeviation > 0) {
+                double z = deviation / standardDeviation;
+                if (Math.abs(z) > settings.zThreshold()) {
+                    observers.notifyAnomalyObservers(new Anomaly(thermometerName, metric, AnomalyKind.Z_SCORE,
+                            value, baseline[stream], z, timestamp));
+                }
+            }
+            long elapsedMillis = epochMillis - previousMillis[stream];
+            double maxRate = settings.rate(metric);
+            if (maxRate > 0 && elapsedMillis > 0) {
+                double rate = (value - previous[stream]) * 60_000 / elapsedMillis;
+                if (Math.abs(rate) > maxRate) {
+                    observers.notifyAnomalyObservers(new Anomaly(thermometerName, metric, AnomalyKind.RATE_OF_CHANGE,
+                            value, previous[stream], rate, timestamp));
+                }
+            }
+            // Moyenne et variance exponentielles, mises à jour en une passe
+            double alpha = settings.alpha();
+            baseline[stream] += alpha * deviation;
+            variance[stream] = (1 - alpha) * (variance[stream] + alpha * deviation * deviation);
+        }
+        previous[stream] = value;
+        previousMillis[stream] = epochMillis;
+        if (count[stream] < Integer.MAX_VALUE) {
+            count[stream]++;
+        }
+    }
+
+    /**
+     * @return le nombre de thermomètres suivis.
+     */
+    public synchronized int getThermometerCount() {
+        return thermometers.size();
+    }
+
+    private int thermometerIndex(String thermometerName) {
+        Integer index = thermometers.get(thermometerName);
+        if (index != null) {
+            return index;
+        }
+        int added = thermometers.size();
+        if ((added + 1) * METRICS > count.length) {
+            grow();
+        }
+        thermometers.put(thermometerName, added);
+        return added;
+    }
+
+    private void grow() {
+        int streams = count.length * 2;
+        baseline = Arrays.copyOf(baseline, streams);
+        variance = Arrays.copyOf(variance, streams);
+        previous = Arrays.copyOf(previous, streams);
+        previousMillis = Arrays.copyOf(previousMillis, streams);
+        count = Arrays.copyOf(count, streams);
+    }
+}
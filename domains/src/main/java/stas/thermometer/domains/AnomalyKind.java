@@ -0,0 +1,15 @@
+package stas.thermometer.domains;
+
+/**
+ * Nature d'une anomalie détectée par l'{@link AnomalyDetector}.
+ */
+public enum AnomalyKind {
+    /**
+     * Moyenne trop éloignée de la ligne de base, en nombre d'écarts types.
+     */
+    Z_SCORE,
+    /**
+     * Variation trop rapide entre deux moyennes successives.
+     */
+    RATE_OF_CHANGE
+}
@@ -0,0 +1,12 @@
+package stas.thermometer.domains;
+
+/**
+ * Reçoit les anomalies détectées sur les moyennes par l'{@link AnomalyDetector}.
+ */
+public interface AnomalyObserver {
+
+    /**
+     * @param anomaly l'anomalie détectée.
+     */
+    void updateAnomaly(Anomaly anomaly);
+}
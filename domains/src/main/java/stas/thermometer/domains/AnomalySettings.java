@@ -0,0 +1,44 @@
+package stas.thermometer.domains;
+
+/**
+ * Paramètres de la détection d'anomalies sur les moyennes.
+ *
+ * @param enabled vrai pour analyser les moyennes.
+ * @param alpha le poids d'une nouvelle moyenne dans la ligne de base lissée, entre 0 exclu et 1.
+ * @param zThreshold le nombre d'écarts types au-delà duquel une moyenne est anormale.
+ * @param warmup le nombre de moyennes à observer avant de calculer des z-scores.
+ * @param temperatureRate la variation maximale de la température, en degrés par minute ; 0 pour ne pas la surveiller.
+ * @param humidityRate la variation maximale de l'humidité, par minute ; 0 pour ne pas la surveiller.
+ */
+public record AnomalySettings(boolean enabled, double alpha, double zThreshold, int warmup,
+                              double temperatureRate, double humidityRate) {
+    public AnomalySettings {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Le coefficient de lissage doit être compris entre 0 exclu et 1");
+        }
+        if (!(zThreshold > 0) || warmup < 0) {
+            throw new IllegalArgumentException("Le seuil de z-score doit être positif et la période d'observation positive ou nulle");
+        }
+        if (temperatureRate < 0 || humidityRate < 0) {
+            throw new IllegalArgumentException("Les variations maximales doivent être positives ou nulles");
+        }
+    }
+
+    /**
+     * Détection désactivée ; si elle est activée, lissage à 0,1, seuil de 4 écarts types après 30 moyennes,
+     * variation maximale de 5 degrés et de 0,1 d'humidité par minute.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static AnomalySettings defaults() {
+        return new AnomalySettings(false, 0.1, 4, 30, 5, 0.1);
+    }
+
+    /**
+     * @param metric la grandeur.
+     * @return la variation maximale par minute de la grandeur, ou 0 si elle n'est pas surveillée.
+     */
+    public double rate(MetricType metric) {
+        return metric == MetricType.TEMPERATURE ? temperatureRate : humidityRate;
+    }
+}
@@ -0,0 +1,207 @@
+package stas.thermometer.domains;
+
+import java.util.Iterator;
+import java.util.OptionalDouble;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Étage de persistance asynchrone : les moyennes sont déposées dans une file bornée et écrites
+ * par un thread dédié, de sorte que l'échantillonnage et l'agrégation n'attendent jamais la base.
+ *
+ * <p>Lorsque la file est pleine, la {@link BackpressurePolicy} choisie s'applique. Le thread d'écriture
+ * appelle aussi {@link AverageSink#flushIfDue()} sur le sink délégué quand la file est vide, afin que
+ * les lots en attente soient écrits hors du thread d'agrégation.</p>
+ *
+ * <p>{@link BackpressurePolicy#DROP_OLDEST} n'abandonne que des moyennes : les fins de calcul ({@link #endTick()})
+ * délimitent les transactions du sink délégué et sont toujours transmises.</p>
+ */
+public class AsyncAverageSink implements AverageSink, AutoCloseable {
+
+    private static final long IDLE_POLL_MILLIS = 200;
+    private static final Consumer<AverageSink> END_TICK = AverageSink::endTick;
+
+    private final AverageSink delegate;
+    private final BackpressurePolicy policy;
+    private final AverageSink spillSink;
+    private final BlockingQueue<Consumer<AverageSink>> queue;
+    private final int capacity;
+    private final ExecutorService writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running = true;
+
+    public AsyncAverageSink(AverageSink delegate, int capacity, BackpressurePolicy policy) {
+        this(delegate, capacity, policy, null);
+    }
+
+    /**
+     * @param delegate le sink qui réalise les écritures, appelé uniquement depuis le thread d'écriture.
+     * @param capacity le nombre maximal de moyennes en attente.
+     * @param policy le comportement lorsque la file est pleine.
+     * @param spillSink le sink de secours utilisé par {@link BackpressurePolicy#SPILL}.
+     */
+    public AsyncAverageSink(AverageSink delegate, int capacity, BackpressurePolicy policy, AverageSink spillSink) {
+        this(delegate, capacity, policy, spillSink, ThreadMode.PLATFORM.factory("stas-db-writer"));
+    }
+
+    /**
+     * @param delegate le sink qui réalise les écritures, appelé uniquement depuis le thread d'écriture.
+     * @param capacity le nombre maximal de moyennes en attente.
+     * @param policy le comportement lorsque la file est pleine.
+     * @param spillSink le sink de secours utilisé par {@link BackpressurePolicy#SPILL}, ou {@code null}.
+     * @param writerThreads la fabrique du thread d'écriture, par exemple {@link ThreadMode#factory(String)}.
+     */
+    public AsyncAverageSink(AverageSink delegate, int capacity, BackpressurePolicy policy, AverageSink spillSink,
+                            ThreadFactory writerThreads) {
+        if (policy == BackpressurePolicy.SPILL && spillSink == null) {
+            throw new IllegalArgumentException("La politique SPILL nécessite un sink de secours");
+        }
+        this.delegate = delegate;
+        this.policy = policy;
+        this.spillSink = spillSink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.writer = Executors.newSingleThreadExecutor(writerThreads);
+        writer.execute(this::drainLoop);
+    }
+
+    @Override
+    public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+        enqueue(sink -> sink.submitTemperature(average, alertDifference));
+    }
+
+    @Override
+    public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+        enqueue(sink -> sink.submitHumidity(average, alertDifference));
+    }
+
+    @Override
+    public void submitTemperature(Measurement average, OptionalDouble alertDifference, StatisticsSummary statistics) {
+        enqueue(sink -> sink.submitTemperature(average, alertDifference, statistics));
+    }
+
+    @Override
+    public void submitHumidity(Humidity average, OptionalDouble alertDifference, StatisticsSummary statistics) {
+        enqueue(sink -> sink.submitHumidity(average, alertDifference, statistics));
+    }
+
+    @Override
+    public void endTick() {
+        enqueue(END_TICK);
+    }
+
+    /**
+     * @return vrai si la file est remplie à moitié ou plus.
+     */
+    @Override
+    public boolean isBackedUp() {
+        return queue.size() * 2 >= capacity;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    /**
+     * @return le nombre d'écritures qui ont échoué dans le sink délégué.
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Arrête le thread d'écriture après avoir transmis toutes les moyennes encore en file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Consumer<AverageSink> write) {
+        switch (policy) {
+            case BLOCK -> {
+                try {
+                    queue.put(write);
+                } catch (InterruptedException e) {
+                    dropped.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(write)) {
+                    dropOldestAverage();
+                }
+            }
+            case SPILL -> {
+                if (!queue.offer(write)) {
+                    spilled.incrementAndGet();
+                    write.accept(spillSink);
+                }
+            }
+            default -> throw new IllegalStateException("Politique inconnue : " + policy);
+        }
+    }
+
+    private void dropOldestAverage() {
+        Iterator<Consumer<AverageSink>> pending = queue.iterator();
+        while (pending.hasNext()) {
+            if (pending.next() != END_TICK) {
+                pending.remove();
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        // File remplie de fins de calcul : le thread d'écriture la vide sans attendre la base
+        Thread.onSpinWait();
+    }
+
+    private void drainLoop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                Consumer<AverageSink> write = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (write == null) {
+                    safely(AverageSink::flushIfDue);
+                } else {
+                    safely(write);
+                }
+            }
+            safely(AverageSink::flush);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void safely(Consumer<AverageSink> write) {
+        try {
+            write.accept(delegate);
+        } catch (RuntimeException e) {
+            // Le sink délégué garde ce qu'il n'a pas pu écrire ; l'échec ne doit pas arrêter le thread d'écriture
+            failed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package stas.thermometer.domains;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal local, en ajout seul, de toutes les moyennes et alertes à écrire dans la base.
+ *
+ * <p>Le journal est découpé en segments de taille fixe projetés en mémoire ({@link MappedByteBuffer}).
+ * Chaque enregistrement est précédé de sa longueur et d'un CRC32, ce qui permet d'ignorer une écriture
+ * interrompue au redémarrage. La position de relecture est conservée dans un fichier {@code checkpoint}
+ * lui aussi projeté en mémoire : après un arrêt, la relecture reprend exactement après la dernière
+ * moyenne confirmée par {@link #acknowledge(int)}. Les segments entièrement relus sont supprimés.</p>
+ *
+ * <p>Chaque enregistrement se termine par la clé attribuée à la moyenne, réécrite sur place par
+ * {@link #assignIds(List)} avant la transaction. Cette clé est hors du CRC et porte son propre contrôle : une
+ * réécriture interrompue rend la clé inconnue sans invalider l'enregistrement. Après un arrêt entre le commit et le
+ * checkpoint, les moyennes relues gardent leur clé et ne sont pas écrites une seconde fois.</p>
+ */
+public class AverageJournal implements PendingAverageQueue, AutoCloseable {
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int END_MARKER_SIZE = 4;
+    private static final int CHECKPOINT_SIZE = 16;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FLAG_ALERT = 1;
+    private static final int FLAG_STATISTICS = 2;
+    private static final int ID_SLOT_SIZE = 8 + 4;
+    private static final int STATISTICS_SIZE = 8 * 7;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final CRC32 crc = new CRC32();
+    private Position readPosition;
+    private int pendingCount;
+    private long oldestPendingNanos;
+
+    private AverageJournal(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.checkpointChannel = FileChannel.open(directory.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+        this.readPosition = new Position(checkpoint.getLong(0), checkpoint.getLong(8));
+    }
+
+    /**
+     * Ouvre (ou crée) le journal du répertoire donné et retrouve les moyennes non encore relues.
+     *
+     * @param directory le répertoire du journal.
+     * @param segmentSize la taille d'un segment en octets.
+     * @return le journal prêt à l'emploi.
+     * @throws IOException si les fichiers du journal ne peuvent être ouverts.
+     */
+    public static AverageJournal open(Path directory, int segmentSize) throws IOException {
+        Files.createDirectories(directory);
+        AverageJournal journal = new AverageJournal(directory, segmentSize);
+        journal.recover();
+        return journal;
+    }
+
+    @Override
+    public synchronized void append(PendingAverage average) {
+        byte[] payload = encode(average);
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (recordSize + END_MARKER_SIZE > segmentSize) {
+            throw new IllegalArgumentException("Enregistrement trop grand pour un segment du journal");
+        }
+        Segment segment = segments.lastEntry().getValue();
+        if (segment.writeOffset + recordSize + END_MARKER_SIZE > segmentSize) {
+            segment = openSegment(segment.id + 1);
+        }
+        int offset = segment.writeOffset;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.put(offset + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(offset + 4, checksum(buffer, offset + RECORD_HEADER_SIZE, payload.length - ID_SLOT_SIZE));
+        buffer.putInt(offset + recordSize, 0);
+        // La longueur est écrite en dernier : un enregistrement interrompu reste invisible
+        buffer.putInt(offset, payload.length);
+        buffer.force(offset, recordSize + END_MARKER_SIZE);
+        segment.writeOffset += recordSize;
+        if (pendingCount == 0) {
+            oldestPendingNanos = System.nanoTime();
+        }
+        pendingCount++;
+    }
+
+    @Override
+    public synchronized List<PendingAverage> peek(int max) {
+        List<PendingAverage> averages = new ArrayList<>(Math.min(max, pendingCount));
+        Position position = readPosition;
+        while (averages.size() < max) {
+            Position next = nextRecord(position);
+            if (next == null) {
+                break;
+            }
+            Segment segment = segments.get(next.segmentId);
+            averages.add(decode(segment.buffer, next.offset));
+            position = new Position(next.segmentId, next.offset + RECORD_HEADER_SIZE + segment.buffer.getInt((int) next.offset));
+        }
+        return averages;
+    }
+
+    @Override
+    public synchronized void assignIds(List<PendingAverage> identified) {
+        Position position = readPosition;
+        for (PendingAverage average : identified) {
+            Position next = nextRecord(position);
+            if (next == null) {
+                break;
+            }
+            MappedByteBuffer buffer = segments.get(next.segmentId).buffer;
+            int offset = (int) next.offset;
+            int length = buffer.getInt(offset);
+            int slot = offset + RECORD_HEADER_SIZE + length - ID_SLOT_SIZE;
+            buffer.putLong(slot, average.id());
+            buffer.putInt(slot + 8, idCheck(average.id()));
+            buffer.force(slot, ID_SLOT_SIZE);
+            position = new Position(next.segmentId, next.offset + RECORD_HEADER_SIZE + length);
+        }
+    }
+
+    @Override
+    public synchronized void acknowledge(int count) {
+        Position position = readPosition;
+        for (int i = 0; i < count; i++) {
+            Position next = nextRecord(position);
+            if (next == null) {
+                break;
+            }
+            int length = segments.get(next.segmentId).buffer.getInt((int) next.offset);
+            position = new Position(next.segmentId, next.offset + RECORD_HEADER_SIZE + length);
+            pendingCount--;
+        }
+        saveCheckpoint(position);
+        deleteSegmentsBefore(position.segmentId);
+        oldestPendingNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized int size() {
+        return pendingCount;
+    }
+
+    @Override
+    public synchronized long oldestPendingNanos() {
+        return oldestPendingNanos;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        checkpoint.force();
+        checkpointChannel.close();
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+        segments.clear();
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    if (id < readPosition.segmentId) {
+                        Files.deleteIfExists(file);
+                    } else {
+                        openSegment(id);
+                    }
+                }
+            }
+        }
+        if (!segments.containsKey(readPosition.segmentId)) {
+            // Journal neuf ou segment de reprise introuvable : la relecture repart d'un segment vide
+            readPosition = new Position(segments.isEmpty() ? readPosition.segmentId : segments.firstKey(), 0);
+            if (segments.isEmpty()) {
+                openSegment(readPosition.segmentId);
+            }
+            saveCheckpoint(readPosition);
+        }
+        for (Position next = nextRecord(readPosition); next != null; next = nextRecord(next.after(segments))) {
+            pendingCount++;
+        }
+        oldestPendingNanos = System.nanoTime();
+    }
+
+    private Segment openSegment(long id) {
+        Path file = directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(id, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            segment.writeOffset = findEndOfRecords(segment);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("stas.thermometer : unable to open journal segment " + file, e);
+        }
+    }
+
+    private int findEndOfRecords(Segment segment) {
+        int offset = 0;
+        while (isValidRecord(segment.buffer, offset)) {
+            offset += RECORD_HEADER_SIZE + segment.buffer.getInt(offset);
+        }
+        if (offset + END_MARKER_SIZE <= segmentSize) {
+            segment.buffer.putInt(offset, 0);
+        }
+        return offset;
+    }
+
+    /**
+     * @return la position du premier enregistrement valide à partir de {@code position}, ou {@code null}.
+     */
+    private Position nextRecord(Position position) {
+        Map.Entry<Long, Segment> entry = segments.ceilingEntry(position.segmentId);
+        long offset = position.offset;
+        while (entry != null) {
+            Segment segment = entry.getValue();
+            if (entry.getKey() != position.segmentId) {
+                offset = 0;
+            }
+            if (offset < segment.writeOffset && isValidRecord(segment.buffer, (int) offset)) {
+                return new Position(segment.id, offset);
+            }
+            entry = segments.higherEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    private boolean isValidRecord(MappedByteBuffer buffer, int offset) {
+        if (offset + RECORD_HEADER_SIZE > segmentSize) {
+            return false;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= ID_SLOT_SIZE || offset + RECORD_HEADER_SIZE + length > segmentSize) {
+            return false;
+        }
+        return buffer.getInt(offset + 4) == checksum(buffer, offset + RECORD_HEADER_SIZE, length - ID_SLOT_SIZE);
+    }
+
+    private static int idCheck(long id) {
+        return Long.hashCode(id) ^ 0x5354_4153;
+    }
+
+    private int checksum(MappedByteBuffer buffer, int offset, int length) {
+        crc.reset();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private void saveCheckpoint(Position position) {
+        readPosition = position;
+        checkpoint.putLong(0, position.segmentId);
+        checkpoint.putLong(8, position.offset);
+        checkpoint.force();
+    }
+
+    private void deleteSegmentsBefore(long segmentId) {
+        while (!segments.isEmpty() && segments.firstKey() < segmentId) {
+            Segment segment = segments.pollFirstEntry().getValue();
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, segment.id, SEGMENT_SUFFIX)));
+            } catch (IOException e) {
+                // Le segment sera supprimé à la prochaine ouverture puisqu'il précède le checkpoint
+            }
+        }
+    }
+
+    private static byte[] encode(PendingAverage average) {
+        byte[] name = average.thermometerName() == null ? new byte[0] : average.thermometerName().getBytes(StandardCharsets.UTF_8);
+        int statisticsSize = average.statistics().isPresent() ? STATISTICS_SIZE : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 8 + 8 + 8 + 4 + 2 + name.length + statisticsSize + ID_SLOT_SIZE);
+        buffer.put((byte) average.type().ordinal());
+        buffer.put((byte) ((average.alertDifference().isPresent() ? FLAG_ALERT : 0) | (statisticsSize > 0 ? FLAG_STATISTICS : 0)));
+        buffer.putDouble(average.value());
+        buffer.putDouble(average.alertDifference().orElse(0));
+        buffer.putLong(average.timestamp().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(average.timestamp().getNano());
+        buffer.putShort((short) (average.thermometerName() == null ? -1 : name.length));
+        buffer.put(name);
+        // Les statistiques suivent le nom : les enregistrements écrits sans elles restent lisibles
+        average.statistics().ifPresent(statistics -> {
+            buffer.putLong(statistics.count());
+            buffer.putDouble(statistics.standardDeviation());
+            buffer.putDouble(statistics.min());
+            buffer.putDouble(statistics.max());
+            buffer.putDouble(statistics.p50());
+            buffer.putDouble(statistics.p95());
+            buffer.putDouble(statistics.p99());
+        });
+        buffer.putLong(average.id());
+        buffer.putInt(idCheck(average.id()));
+        return buffer.array();
+    }
+
+    private static PendingAverage decode(MappedByteBuffer segment, long offset) {
+        ByteBuffer buffer = segment.slice((int) offset + RECORD_HEADER_SIZE, segment.getInt((int) offset));
+        MetricType type = MetricType.values()[buffer.get()];
+        byte flags = buffer.get();
+        double value = buffer.getDouble();
+        double alertDifference = buffer.getDouble();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        short nameLength = buffer.getShort();
+        String name = null;
+        if (nameLength >= 0) {
+            byte[] bytes = new byte[nameLength];
+            buffer.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+        Optional<StatisticsSummary> statistics = Optional.empty();
+        if ((flags & FLAG_STATISTICS) != 0) {
+            statistics = Optional.of(new StatisticsSummary(buffer.getLong(), buffer.getDouble(), buffer.getDouble(),
+                    buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+        }
+        OptionalDouble alert = (flags & FLAG_ALERT) != 0 ? OptionalDouble.of(alertDifference) : OptionalDouble.empty();
+        long slotId = buffer.getLong(buffer.limit() - ID_SLOT_SIZE);
+        long id = buffer.getInt(buffer.limit() - 4) == idCheck(slotId) ? slotId : 0;
+        return new PendingAverage(type, name, value, timestamp, alert, statistics, id);
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+
+        private Segment(long id, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Position(long segmentId, long offset) {
+
+        private Position after(TreeMap<Long, Segment> segments) {
+            Segment segment = segments.get(segmentId);
+            return new Position(segmentId, offset + RECORD_HEADER_SIZE + segment.buffer.getInt((int) offset));
+        }
+    }
+}
@@ -24,4 +24,22 @@ public interface AverageMeasurementObserver {
 
     void updateAverageHumidity(Humidity averageHumidity);
 
+    /**
+     * Notifie les statistiques des mesures d'une fenêtre (écart type, minimum, maximum, quantiles),
+     * juste après sa moyenne.
+     *
+     * @param statistics les statistiques de la fenêtre close.
+     */
+    default void updateWindowStatistics(WindowStatistics statistics) {
+    }
+
+    /**
+     * Notifie une fenêtre déjà calculée dont les statistiques ont changé après l'arrivée de mesures en retard
+     * (fenêtrage en temps d'événement). La moyenne corrigée est {@code statistics.sketch().mean()}.
+     *
+     * @param statistics les statistiques complètes de la fenêtre, mesures en retard comprises.
+     */
+    default void updateWindowCorrection(WindowStatistics statistics) {
+    }
+
 }
@@ -0,0 +1,76 @@
+package stas.thermometer.domains;
+
+import java.util.OptionalDouble;
+
+/**
+ * Destination des moyennes calculées par le {@link MeasurementAggregator}.
+ *
+ * <p>Chaque moyenne est accompagnée de l'écart qui a déclenché une alerte, s'il y en a une :
+ * l'alerte référence la ligne de la moyenne et doit donc être persistée avec elle.</p>
+ */
+public interface AverageSink {
+
+    /**
+     * Persiste une moyenne de température et, le cas échéant, l'alerte associée.
+     *
+     * @param average la moyenne de température.
+     * @param alertDifference l'écart à l'origine d'une alerte, ou vide s'il n'y a pas d'alerte.
+     */
+    void submitTemperature(Measurement average, OptionalDouble alertDifference);
+
+    /**
+     * Persiste une moyenne d'humidité et, le cas échéant, l'alerte associée.
+     *
+     * @param average la moyenne d'humidité.
+     * @param alertDifference l'écart à l'origine d'une alerte, ou vide s'il n'y a pas d'alerte.
+     */
+    void submitHumidity(Humidity average, OptionalDouble alertDifference);
+
+    /**
+     * Persiste une moyenne de température avec les statistiques de sa fenêtre. Par défaut,
+     * seules la moyenne et l'alerte sont persistées.
+     *
+     * @param statistics l'écart type, le minimum, le maximum et les quantiles des mesures de la fenêtre.
+     */
+    default void submitTemperature(Measurement average, OptionalDouble alertDifference, StatisticsSummary statistics) {
+        submitTemperature(average, alertDifference);
+    }
+
+    /**
+     * Persiste une moyenne d'humidité avec les statistiques de sa fenêtre. Par défaut,
+     * seules la moyenne et l'alerte sont persistées.
+     *
+     * @param statistics l'écart type, le minimum, le maximum et les quantiles des mesures de la fenêtre.
+     */
+    default void submitHumidity(Humidity average, OptionalDouble alertDifference, StatisticsSummary statistics) {
+        submitHumidity(average, alertDifference);
+    }
+
+    /**
+     * Signale la fin d'un calcul de moyennes : les moyennes soumises depuis l'appel précédent
+     * forment une unité, qui n'est jamais coupée entre deux transactions.
+     */
+    default void endTick() {
+    }
+
+    /**
+     * Écrit les moyennes en attente dont le délai maximal est atteint. Appelée périodiquement.
+     */
+    default void flushIfDue() {
+    }
+
+    /**
+     * Écrit immédiatement toutes les moyennes en attente.
+     */
+    default void flush() {
+    }
+
+    /**
+     * Indique que le sink ne suit plus : l'agrégateur cesse alors d'accorder des mesures aux sources.
+     *
+     * @return vrai si les moyennes s'accumulent plus vite qu'elles ne sont écrites.
+     */
+    default boolean isBackedUp() {
+        return false;
+    }
+}
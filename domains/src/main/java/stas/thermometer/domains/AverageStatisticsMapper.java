@@ -0,0 +1,95 @@
+package stas.thermometer.domains;
+
+import java.sql.*;
+
+/**
+ * Écrit les statistiques de la fenêtre d'une moyenne dans la table {@code AverageStatistics}.
+ *
+ * <p>Comme pour les alertes, la ligne référence la moyenne par son identifiant ; les valeurs
+ * d'humidité sont écrites en pourcentage, comme dans la table {@code Humidity}.</p>
+ */
+public class AverageStatisticsMapper implements BatchDataMapper<StatisticsSummary> {
+
+    public static final String TABLE = "AverageStatistics";
+    private static final String INSERT_SQL = "INSERT INTO AverageStatistics (metric, average_id, sample_count, std_dev, "
+            + "min_value, max_value, p50_value, p95_value, p99_value) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_WITH_ID_SQL = "INSERT INTO AverageStatistics (metric, average_id, sample_count, std_dev, "
+            + "min_value, max_value, p50_value, p95_value, p99_value, id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final MetricType metric;
+    private final long averageId;
+
+    public AverageStatisticsMapper(MetricType metric, long averageId) {
+        this.metric = metric;
+        this.averageId = averageId;
+    }
+
+    /**
+     * Crée la table des statistiques et son index sur la moyenne référencée si elle n'existe pas encore.
+     *
+     * @param conn une connexion à la base.
+     * @throws SQLException si la table ne peut être créée.
+     */
+    static void createTableIfMissing(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            try {
+                // Seule l'existence de la table compte : le résultat vide est fermé aussitôt
+                statement.executeQuery("SELECT average_id FROM AverageStatistics WHERE 1 = 0").close();
+                return;
+            } catch (SQLException e) {
+                // La table n'existe pas encore
+            }
+            boolean mysql = conn.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+            statement.executeUpdate("CREATE TABLE AverageStatistics (id BIGINT "
+                    + (mysql ? "AUTO_INCREMENT" : "GENERATED BY DEFAULT AS IDENTITY") + " PRIMARY KEY, "
+                    + "metric VARCHAR(16) NOT NULL, average_id BIGINT NOT NULL, sample_count BIGINT, std_dev DOUBLE, "
+                    + "min_value DOUBLE, max_value DOUBLE, p50_value DOUBLE, p95_value DOUBLE, p99_value DOUBLE)");
+            // La purge retrouve les statistiques d'un lot de moyennes par leur identifiant
+            statement.executeUpdate("CREATE INDEX idx_average_statistics_ref ON AverageStatistics (metric, average_id)");
+        }
+    }
+
+    @Override
+    public String getInsertSql() {
+        return INSERT_SQL;
+    }
+
+    @Override
+    public String getInsertWithIdSql() {
+        return INSERT_WITH_ID_SQL;
+    }
+
+    @Override
+    public void bindParameters(PreparedStatement statement, StatisticsSummary item) throws SQLException {
+        double scale = metric.storageScale();
+        statement.setString(1, metric.name());
+        statement.setLong(2, averageId);
+        statement.setLong(3, item.count());
+        statement.setDouble(4, item.standardDeviation() * scale);
+        statement.setDouble(5, item.min() * scale);
+        statement.setDouble(6, item.max() * scale);
+        statement.setDouble(7, item.p50() * scale);
+        statement.setDouble(8, item.p95() * scale);
+        statement.setDouble(9, item.p99() * scale);
+    }
+
+    @Override
+    public void bindParameters(PreparedStatement statement, StatisticsSummary item, long id) throws SQLException {
+        bindParameters(statement, item);
+        statement.setLong(10, id);
+    }
+
+    @Override
+    public long insert(Connection conn, StatisticsSummary item) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            bindParameters(statement, item);
+            statement.executeUpdate();
+            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return generatedKeys.getLong(1);
+                }
+                throw new SQLException("Creating statistics failed, no ID obtained.");
+            }
+        }
+    }
+}
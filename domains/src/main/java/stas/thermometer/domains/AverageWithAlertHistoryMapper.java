@@ -0,0 +1,39 @@
+package stas.thermometer.domains;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.OptionalDouble;
+
+/**
+ * Lit les moyennes d'une grandeur jointes à leurs alertes, en une seule requête.
+ */
+public class AverageWithAlertHistoryMapper implements HistoryMapper<HistoricalAverage> {
+
+    private static final String TEMPERATURE_SQL = "SELECT t.id, t.thermometer_name, t.temperature, t.timestamp, a.difference "
+            + "FROM Temperature t LEFT JOIN AlertsTemperature a ON a.temperature_id = t.id "
+            + "WHERE t.thermometer_name = ? AND t.timestamp >= ? AND t.timestamp < ? ORDER BY t.timestamp";
+    private static final String HUMIDITY_SQL = "SELECT h.id, h.thermometer_name, h.humidity, h.timestamp, a.difference "
+            + "FROM Humidity h LEFT JOIN AlertsHumidity a ON a.humidity_id = h.id "
+            + "WHERE h.thermometer_name = ? AND h.timestamp >= ? AND h.timestamp < ? ORDER BY h.timestamp";
+
+    private final MetricType type;
+
+    public AverageWithAlertHistoryMapper(MetricType type) {
+        this.type = type;
+    }
+
+    @Override
+    public String getRangeSql() {
+        return type == MetricType.TEMPERATURE ? TEMPERATURE_SQL : HUMIDITY_SQL;
+    }
+
+    @Override
+    public HistoricalAverage map(ResultSet resultSet) throws SQLException {
+        // L'humidité et son écart sont stockés en pourcentage
+        double scale = type == MetricType.TEMPERATURE ? 1 : 100;
+        double difference = resultSet.getDouble(5);
+        OptionalDouble alertDifference = resultSet.wasNull() ? OptionalDouble.empty() : OptionalDouble.of(difference / scale);
+        return new HistoricalAverage(type, resultSet.getLong(1), resultSet.getString(2), resultSet.getDouble(3) / scale,
+                resultSet.getTimestamp(4).toLocalDateTime(), alertDifference);
+    }
+}
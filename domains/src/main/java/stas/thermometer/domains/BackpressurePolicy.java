@@ -0,0 +1,23 @@
+package stas.thermometer.domains;
+
+/**
+ * Comportement d'un {@link AsyncAverageSink} lorsque sa file d'écriture est pleine.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Le producteur attend qu'une place se libère. Aucune moyenne n'est perdue,
+     * mais l'agrégation est ralentie tant que la base ne suit pas.
+     */
+    BLOCK,
+
+    /**
+     * La moyenne la plus ancienne de la file est abandonnée au profit de la nouvelle.
+     */
+    DROP_OLDEST,
+
+    /**
+     * La nouvelle moyenne est déversée dans un sink de secours local au lieu d'attendre la base.
+     */
+    SPILL
+}
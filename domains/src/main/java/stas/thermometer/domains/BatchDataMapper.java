@@ -0,0 +1,63 @@
+package stas.thermometer.domains;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * {@link DataMapper} dont la requête et le passage des paramètres sont exposés séparément,
+ * ce qui permet de regrouper plusieurs lignes dans un même {@code addBatch/executeBatch}.
+ *
+ * @param <T> le type d'élément inséré.
+ */
+public interface BatchDataMapper<T> extends DataMapper<T> {
+
+    /**
+     * @return la requête d'insertion paramétrée.
+     */
+    String getInsertSql();
+
+    /**
+     * Renseigne les paramètres de la requête d'insertion pour un élément.
+     *
+     * @param statement la requête préparée à partir de {@link #getInsertSql()}.
+     * @param item l'élément à insérer.
+     * @throws SQLException si un paramètre ne peut être renseigné.
+     */
+    void bindParameters(PreparedStatement statement, T item) throws SQLException;
+
+    /**
+     * @return la requête d'insertion paramétrée dont le dernier paramètre est la clé primaire.
+     */
+    String getInsertWithIdSql();
+
+    /**
+     * Renseigne les paramètres de la requête {@link #getInsertWithIdSql()}, clé primaire comprise.
+     *
+     * @param statement la requête préparée à partir de {@link #getInsertWithIdSql()}.
+     * @param item l'élément à insérer.
+     * @param id la clé primaire attribuée par un {@link IdAllocator}.
+     * @throws SQLException si un paramètre ne peut être renseigné.
+     */
+    void bindParameters(PreparedStatement statement, T item, long id) throws SQLException;
+
+    /**
+     * Insère un élément avec la requête préparée en cache pour ce type de mapper.
+     *
+     * @param statements le cache de la connexion empruntée.
+     * @param item l'élément à insérer.
+     * @return l'identifiant généré par la base.
+     * @throws SQLException si l'insertion échoue ou si aucun identifiant n'est renvoyé.
+     */
+    default long insertCached(StatementCache statements, T item) throws SQLException {
+        PreparedStatement statement = statements.prepare(getClass(), getInsertSql(), true);
+        bindParameters(statement, item);
+        statement.executeUpdate();
+        try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+            if (generatedKeys.next()) {
+                return generatedKeys.getLong(1);
+            }
+            throw new SQLException("stas.thermometer : insert failed, no ID obtained");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Disjoncteur qui déduit la santé de la base du résultat des écritures réelles.
+ *
+ * <p>Après {@code failureThreshold} échecs consécutifs, le disjoncteur s'ouvre : les écritures sont refusées
+ * sans toucher à la base. Une fois le délai d'attente écoulé, une seule écriture est autorisée pour sonder
+ * la base (état {@link CircuitState#HALF_OPEN}). Si elle échoue, le délai double, jusqu'à {@code maxBackoff},
+ * avec une part aléatoire pour que plusieurs thermomètres ne sondent pas la base au même instant.</p>
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final LongSupplier clock;
+    private final Random random;
+    private final List<DatabaseStateObserver> observers = new ArrayList<>();
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private int consecutiveOpenings;
+    private long retryAtNanos;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration baseBackoff, Duration maxBackoff) {
+        this(failureThreshold, baseBackoff, maxBackoff, System::nanoTime, new Random());
+    }
+
+    /**
+     * @param failureThreshold le nombre d'échecs consécutifs qui ouvre le disjoncteur.
+     * @param baseBackoff le délai avant la première sonde.
+     * @param maxBackoff le délai maximal entre deux sondes.
+     * @param clock l'horloge en nanosecondes.
+     * @param random la source de la part aléatoire des délais.
+     */
+    public CircuitBreaker(int failureThreshold, Duration baseBackoff, Duration maxBackoff, LongSupplier clock, Random random) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Le seuil d'échecs doit être positif");
+        }
+        this.failureThreshold = failureThreshold;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * @return un disjoncteur qui s'ouvre après 3 échecs et sonde la base entre 1 seconde et 1 minute.
+     */
+    public static CircuitBreaker withDefaults() {
+        return new CircuitBreaker(3, Duration.ofSeconds(1), Duration.ofMinutes(1));
+    }
+
+    /**
+     * Indique si une écriture peut être tentée. Lorsque le délai d'attente est écoulé, l'appelant
+     * qui obtient {@code true} devient la sonde et doit rapporter le résultat de son écriture.
+     *
+     * @return {@code true} si l'écriture peut être tentée.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED -> {
+                return true;
+            }
+            case OPEN -> {
+                if (clock.getAsLong() - retryAtNanos < 0) {
+                    return false;
+                }
+                probeInFlight = true;
+                changeState(CircuitState.HALF_OPEN);
+                return true;
+            }
+            case HALF_OPEN -> {
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            }
+            default -> throw new IllegalStateException("État inconnu : " + state);
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        consecutiveOpenings = 0;
+        probeInFlight = false;
+        changeState(CircuitState.CLOSED);
+    }
+
+    public synchronized void recordFailure() {
+        if (state == CircuitState.OPEN) {
+            // Écriture commencée avant l'ouverture : le délai en cours reste inchangé
+            return;
+        }
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    public synchronized CircuitState getState() {
+        return state;
+    }
+
+    public synchronized void addObserver(DatabaseStateObserver observer) {
+        observers.add(observer);
+    }
+
+    private void open() {
+        long backoff = baseBackoffNanos << Math.min(consecutiveOpenings, 30);
+        if (backoff <= 0 || backoff > maxBackoffNanos) {
+            backoff = maxBackoffNanos;
+        }
+        consecutiveOpenings++;
+        // La moitié du délai est fixe, l'autre moitié est tirée au hasard
+        long jitter = backoff / 2 == 0 ? 0 : (long) (random.nextDouble() * (backoff / 2));
+        retryAtNanos = clock.getAsLong() + backoff / 2 + jitter;
+        changeState(CircuitState.OPEN);
+    }
+
+    private void changeState(CircuitState newState) {
+        if (state == newState) {
+            return;
+        }
+        state = newState;
+        for (DatabaseStateObserver observer : observers) {
+            observer.databaseStateChanged(newState);
+        }
+    }
+}
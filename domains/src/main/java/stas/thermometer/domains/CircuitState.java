@@ -0,0 +1,22 @@
+package stas.thermometer.domains;
+
+/**
+ * État du disjoncteur qui protège l'accès à la base de données.
+ */
+public enum CircuitState {
+
+    /**
+     * La base répond : toutes les écritures sont tentées.
+     */
+    CLOSED,
+
+    /**
+     * La base est considérée indisponible : les écritures échouent immédiatement sans emprunter de connexion.
+     */
+    OPEN,
+
+    /**
+     * Le délai d'attente est écoulé : une seule écriture est tentée pour sonder la base.
+     */
+    HALF_OPEN
+}
@@ -1,5 +1,8 @@
 package stas.thermometer.domains;
 
+import java.util.List;
+import java.util.OptionalLong;
+
 /**
  * Interface pour lire la configuration liée aux profils de température.
  *
@@ -45,5 +48,74 @@ public interface ConfigurationReader {
 
     String[] getServerDbInfo();
 
+    /**
+     * Récupère le regroupement des écritures en base.
+     *
+     * @return les {@link PersistenceSettings} configurés, ou les valeurs par défaut pour les clés absentes.
+     */
+    PersistenceSettings getPersistenceSettings();
+
+    /**
+     * Récupère la durée de conservation des moyennes et le rythme de leur purge.
+     *
+     * @return les {@link RetentionSettings} configurés, ou les valeurs par défaut pour les clés absentes.
+     */
+    RetentionSettings getRetentionSettings();
+
+    /**
+     * Récupère l'intervalle de calcul des moyennes et les fenêtres plus longues à maintenir.
+     *
+     * @return les {@link AggregationSettings} configurés, ou les valeurs par défaut pour les clés absentes.
+     */
+    AggregationSettings getAggregationSettings();
+
+    /**
+     * Récupère le fenêtrage en temps d'événement : activation, retard toléré et retard admis.
+     *
+     * @return les {@link EventTimeSettings} configurés, ou les valeurs par défaut pour les clés absentes.
+     */
+    EventTimeSettings getEventTimeSettings();
+
+    /**
+     * Récupère les règles d'alerte déclarées dans la configuration.
+     *
+     * @return les {@link AlertRule} configurées, ou les règles par défaut si aucune n'est déclarée.
+     */
+    List<AlertRule> getAlertRules();
+
+    /**
+     * Récupère les paramètres de la détection d'anomalies sur les moyennes.
+     *
+     * @return les {@link AnomalySettings} configurés, ou les valeurs par défaut pour les clés absentes.
+     */
+    AnomalySettings getAnomalySettings();
+
+    /**
+     * Récupère la graine du bruit des sondes, qui permet de rejouer une simulation à l'identique.
+     *
+     * @return la graine configurée, ou rien pour un bruit différent à chaque exécution.
+     */
+    OptionalLong getNoiseSeed();
+
+    /**
+     * Récupère les paramètres de la flotte de sondes simulées pour les tests de charge.
+     *
+     * @return les {@link FleetSettings} configurés, ou les valeurs par défaut pour les clés absentes.
+     */
+    FleetSettings getFleetSettings();
+
+    /**
+     * Récupère la nature des threads des sondes, des calculs planifiés et des écritures en base.
+     *
+     * @return le {@link ThreadMode} configuré, ou {@link ThreadMode#PLATFORM} par défaut.
+     */
+    ThreadMode getThreadMode();
+
+    /**
+     * Récupère l'origine des mesures et le débit accordé aux sources.
+     *
+     * @return les {@link ProbeSourceSettings} configurés, ou les valeurs par défaut pour les clés absentes.
+     */
+    ProbeSourceSettings getProbeSourceSettings();
 
 }
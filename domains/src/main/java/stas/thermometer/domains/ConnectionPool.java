@@ -0,0 +1,281 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool borné de connexions JDBC réutilisables.
+ *
+ * <p>Une seule instance est partagée par tous les {@link DatabaseManager} qui pointent vers la même base :
+ * la poignée de main TCP et l'authentification ne sont payées qu'à la création d'une connexion physique.
+ * Chaque connexion est validée à l'emprunt, fermée lorsqu'elle reste inactive trop longtemps et recyclée
+ * lorsqu'elle atteint sa durée de vie maximale.</p>
+ *
+ * <p>Chaque connexion physique possède son {@link StatementCache} : les requêtes préparées
+ * survivent aux emprunts successifs et sont fermées avec la connexion.</p>
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final PoolSettings settings;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Map<Connection, PooledConnection> active = new IdentityHashMap<>();
+    private long created;
+    private long destroyed;
+    private long borrowed;
+    private long validationFailures;
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password) {
+        this(url, user, password, PoolSettings.defaults());
+    }
+
+    public ConnectionPool(String url, String user, String password, PoolSettings settings) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize(), true);
+    }
+
+    /**
+     * Emprunte une connexion valide, en réutilisant une connexion inactive si possible.
+     *
+     * <p>La connexion doit être rendue avec {@link #release(Connection)}.</p>
+     *
+     * @return une connexion ouverte et validée.
+     * @throws SQLException si le pool est plein au-delà du délai d'attente ou si la base est injoignable.
+     */
+    public Connection borrow() throws SQLException {
+        acquirePermit();
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                Connection connection = DriverManager.getConnection(url, user, password);
+                pooled = new PooledConnection(connection, new StatementCache(connection, statementHits, statementMisses), System.nanoTime());
+                synchronized (this) {
+                    created++;
+                }
+            }
+            synchronized (this) {
+                active.put(pooled.connection, pooled);
+                borrowed++;
+            }
+            return pooled.connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Rend une connexion au pool. Une transaction laissée ouverte est annulée et
+     * l'auto-commit est rétabli avant la remise à disposition.
+     *
+     * @param conn la connexion empruntée via {@link #borrow()}.
+     */
+    public void release(Connection conn) {
+        PooledConnection pooled;
+        synchronized (this) {
+            pooled = active.remove(conn);
+        }
+        if (pooled == null) {
+            return;
+        }
+        try {
+            if (closed || isExpired(pooled, System.nanoTime()) || !reset(conn)) {
+                destroy(pooled);
+            } else {
+                pooled.lastUsed = System.nanoTime();
+                synchronized (this) {
+                    idle.push(pooled);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Renvoie le cache de requêtes préparées d'une connexion empruntée.
+     *
+     * @param conn la connexion empruntée via {@link #borrow()}.
+     * @return le cache attaché à la connexion physique.
+     * @throws IllegalArgumentException si la connexion n'est pas empruntée à ce pool.
+     */
+    public StatementCache statementCache(Connection conn) {
+        PooledConnection pooled;
+        synchronized (this) {
+            pooled = active.get(conn);
+        }
+        if (pooled == null) {
+            throw new IllegalArgumentException("stas.thermometer : connection not borrowed from this pool");
+        }
+        return pooled.statements;
+    }
+
+    /**
+     * Retire définitivement une connexion jugée inutilisable (par exemple après une erreur réseau).
+     *
+     * @param conn la connexion empruntée via {@link #borrow()}.
+     */
+    public void invalidate(Connection conn) {
+        PooledConnection pooled;
+        synchronized (this) {
+            pooled = active.remove(conn);
+        }
+        if (pooled != null) {
+            destroy(pooled);
+            permits.release();
+        }
+    }
+
+    /**
+     * Ferme les connexions inactives depuis plus de {@code idleTimeout} ou ayant dépassé leur durée de vie.
+     *
+     * @return le nombre de connexions fermées.
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        Deque<PooledConnection> evicted = new ArrayDeque<>();
+        synchronized (this) {
+            Iterator<PooledConnection> iterator = idle.iterator();
+            while (iterator.hasNext()) {
+                PooledConnection pooled = iterator.next();
+                if (isExpired(pooled, now) || isIdleTooLong(pooled, now)) {
+                    iterator.remove();
+                    evicted.add(pooled);
+                }
+            }
+        }
+        evicted.forEach(this::destroy);
+        return evicted.size();
+    }
+
+    public synchronized PoolMetrics getMetrics() {
+        return new PoolMetrics(active.size(), idle.size(), created, destroyed, borrowed, validationFailures,
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    /**
+     * Ferme les connexions inactives ; les connexions encore empruntées seront fermées à leur retour.
+     */
+    @Override
+    public void close() {
+        Deque<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(this::destroy);
+    }
+
+    private void acquirePermit() throws SQLException {
+        if (closed) {
+            throw new SQLException("stas.thermometer : connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(settings.borrowTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLException("stas.thermometer : connection pool exhausted (" + settings.maxSize() + " connections)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("stas.thermometer : interrupted while waiting for a connection", e);
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        while (true) {
+            PooledConnection pooled;
+            synchronized (this) {
+                pooled = idle.poll();
+            }
+            if (pooled == null) {
+                return null;
+            }
+            long now = System.nanoTime();
+            if (isExpired(pooled, now) || isIdleTooLong(pooled, now)) {
+                destroy(pooled);
+            } else if (isValid(pooled.connection)) {
+                return pooled;
+            } else {
+                synchronized (this) {
+                    validationFailures++;
+                }
+                destroy(pooled);
+            }
+        }
+    }
+
+    private boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(settings.validationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean reset(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return false;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled, long now) {
+        return now - pooled.createdAt >= settings.maxLifetime().toNanos();
+    }
+
+    private boolean isIdleTooLong(PooledConnection pooled, long now) {
+        return now - pooled.lastUsed >= settings.idleTimeout().toNanos();
+    }
+
+    private void destroy(PooledConnection pooled) {
+        pooled.statements.close();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            // La connexion est déjà inutilisable, il n'y a rien d'autre à libérer.
+        }
+        synchronized (this) {
+            destroyed++;
+        }
+    }
+
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statements;
+        private final long createdAt;
+        private long lastUsed;
+
+        private PooledConnection(Connection connection, StatementCache statements, long createdAt) {
+            this.connection = connection;
+            this.statements = statements;
+            this.createdAt = createdAt;
+            this.lastUsed = createdAt;
+        }
+    }
+}
@@ -1,33 +1,64 @@
 package stas.thermometer.domains;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+/**
+ * Point d'accès à la base de données. Les écritures passent par un {@link CircuitBreaker} :
+ * lorsque la base est indisponible, elles échouent immédiatement au lieu d'emprunter une connexion.
+ */
 public class DatabaseManager<T> {
-    private final String url;
-    private final String user;
-    private final String password;
+    private final ConnectionPool pool;
+    private final CircuitBreaker circuitBreaker;
 
     public DatabaseManager(String url, String user, String password) {
-        this.url = url;
-        this.user = user;
-        this.password = password;
+        this(new ConnectionPool(url, user, password));
+    }
+
+    /**
+     * Construit un gestionnaire qui emprunte ses connexions au pool fourni.
+     * Plusieurs gestionnaires peuvent partager le même pool.
+     *
+     * @param pool le pool de connexions vers la base.
+     */
+    public DatabaseManager(ConnectionPool pool) {
+        this(pool, CircuitBreaker.withDefaults());
+    }
+
+    /**
+     * @param pool le pool de connexions vers la base.
+     * @param circuitBreaker le disjoncteur, éventuellement partagé avec d'autres gestionnaires du même pool.
+     */
+    public DatabaseManager(ConnectionPool pool, CircuitBreaker circuitBreaker) {
+        this.pool = pool;
+        this.circuitBreaker = circuitBreaker;
     }
 
     private Connection getConnection() {
+        if (!circuitBreaker.allowRequest()) {
+            throw new RuntimeException("stas.thermometer : database unavailable, waiting before the next attempt");
+        }
         try {
-            return DriverManager.getConnection(url, user, password);
+            return pool.borrow();
         }catch (SQLException e){
+            circuitBreaker.recordFailure();
             throw new RuntimeException("stas.thermometer : unable to connect to the database", e);
         }
     }
 
 
     public long executeOperation(DataMapper<T> mapper, T item) {
-        try (Connection conn = getConnection()) {
+        Connection conn = getConnection();
+        boolean answered = false;
+        try {
             conn.setAutoCommit(false);
-            long result = mapper.insert(conn, item);
+            // Les mappers à requête exposée réutilisent la requête préparée de la connexion
+            long result = mapper instanceof BatchDataMapper<T> batchMapper
+                    ? batchMapper.insertCached(pool.statementCache(conn), item)
+                    : mapper.insert(conn, item);
+            // La base a répondu : un refus d'insertion ne signale pas une panne de connexion
+            circuitBreaker.recordSuccess();
+            answered = true;
             if(result > 0){
                 conn.commit();
                 return result;
@@ -36,17 +67,109 @@ public class DatabaseManager<T> {
                 throw new RuntimeException("Insertion failed, transaction rolled back");
             }
         } catch (SQLException e) {
+            circuitBreaker.recordFailure();
             e.printStackTrace();
             throw new RuntimeException("Stas.thermometer : unable to insert in database",e);
+        } catch (RuntimeException e) {
+            // Une sonde interrompue doit libérer le disjoncteur ; un refus déjà rapporté comme réponse ne compte pas
+            if (!answered) {
+                circuitBreaker.recordFailure();
+            }
+            throw e;
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+
+    /**
+     * Exécute plusieurs écritures dans une seule transaction, validée uniquement si toutes réussissent.
+     *
+     * @param work les écritures à réaliser sur la connexion empruntée.
+     */
+    public void executeInTransaction(TransactionWork work) {
+        Connection conn = getConnection();
+        try {
+            conn.setAutoCommit(false);
+            work.execute(conn);
+            conn.commit();
+            circuitBreaker.recordSuccess();
+        } catch (SQLException e) {
+            circuitBreaker.recordFailure();
+            throw new RuntimeException("Stas.thermometer : unable to insert in database", e);
+        } catch (RuntimeException e) {
+            // Une sonde interrompue doit libérer le disjoncteur
+            circuitBreaker.recordFailure();
+            throw e;
+        } finally {
+            // Le retour au pool annule la transaction si le commit n'a pas eu lieu
+            pool.release(conn);
         }
     }
 
 
+    /**
+     * Ouvre une unité de travail : les insertions enregistrées sont validées ensemble par un seul commit.
+     *
+     * @return une unité de travail vide.
+     */
+    public UnitOfWork beginUnitOfWork() {
+        return new UnitOfWork(this);
+    }
+
+    /**
+     * Vérifie la connexion en empruntant une connexion au pool, sauf si le disjoncteur est ouvert.
+     * Le résultat est rapporté au disjoncteur comme celui d'une écriture.
+     *
+     * @return {@code true} si la base a répondu.
+     */
     public boolean testConnection() {
-        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+        if (!circuitBreaker.allowRequest()) {
+            return false;
+        }
+        try {
+            pool.release(pool.borrow());
+            circuitBreaker.recordSuccess();
             return true;
         } catch (SQLException e) {
+            circuitBreaker.recordFailure();
             return false;
         }
     }
+
+    /**
+     * Emprunte une connexion pour une lecture qui la garde au-delà de l'appel, comme un flux d'historique.
+     * Comme une écriture, l'emprunt échoue aussitôt si le disjoncteur est ouvert ; son résultat lui est rapporté.
+     *
+     * @return une connexion à rendre avec {@link #releaseReadConnection(Connection)}.
+     */
+    Connection borrowReadConnection() {
+        Connection conn = getConnection();
+        circuitBreaker.recordSuccess();
+        return conn;
+    }
+
+    void releaseReadConnection(Connection conn) {
+        pool.release(conn);
+    }
+
+    /**
+     * @param conn une connexion reçue par un {@link TransactionWork}.
+     * @return le cache des requêtes préparées de cette connexion.
+     */
+    public StatementCache statementCache(Connection conn) {
+        return pool.statementCache(conn);
+    }
+
+    public CircuitState getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public void addStateObserver(DatabaseStateObserver observer) {
+        circuitBreaker.addObserver(observer);
+    }
+
+    public PoolMetrics getPoolMetrics() {
+        return pool.getMetrics();
+    }
 }
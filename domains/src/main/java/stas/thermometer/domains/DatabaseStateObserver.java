@@ -0,0 +1,12 @@
+package stas.thermometer.domains;
+
+/**
+ * Observateur notifié lorsque l'état de la connexion à la base de données change.
+ */
+public interface DatabaseStateObserver {
+
+    /**
+     * @param state le nouvel état du disjoncteur de la base.
+     */
+    void databaseStateChanged(CircuitState state);
+}
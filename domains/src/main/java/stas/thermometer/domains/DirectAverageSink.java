@@ -0,0 +1,68 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.OptionalDouble;
+
+/**
+ * Persiste chaque moyenne immédiatement, avec son alerte, dans sa propre transaction
+ * ({@link DatabaseManager#executeInTransaction}).
+ *
+ * <p>Les clés primaires sont attribuées par un {@link IdAllocator}, comme pour {@link WriteBehindSink} : les deux
+ * sinks peuvent écrire dans la même base sans que la clé générée par l'un tombe dans un bloc réservé par l'autre.</p>
+ */
+public class DirectAverageSink implements AverageSink {
+
+    private static final int ID_BLOCK_SIZE = 100;
+
+    private final DatabaseManager<Measurement> measurementDatabaseManager;
+    private final DatabaseManager<Humidity> humidityDatabaseManager;
+    private final IdAllocator measurementIds;
+    private final IdAllocator humidityIds;
+    private final TemperatureMapper temperatureMapper = new TemperatureMapper();
+    private final HumidityMapper humidityMapper = new HumidityMapper();
+
+    public DirectAverageSink(DatabaseManager<Measurement> measurementDatabaseManager, DatabaseManager<Humidity> humidityDatabaseManager) {
+        this.measurementDatabaseManager = measurementDatabaseManager;
+        this.humidityDatabaseManager = humidityDatabaseManager;
+        this.measurementIds = new IdAllocator(measurementDatabaseManager, ID_BLOCK_SIZE);
+        this.humidityIds = humidityDatabaseManager == (Object) measurementDatabaseManager
+                ? measurementIds
+                : new IdAllocator(humidityDatabaseManager, ID_BLOCK_SIZE);
+    }
+
+    @Override
+    public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+        long measurementId = measurementIds.nextId(TemperatureMapper.TABLE);
+        long alertId = alertDifference.isPresent() ? measurementIds.nextId(AlertsTemperatureMapper.TABLE) : 0;
+        measurementDatabaseManager.executeInTransaction(conn -> {
+            insert(measurementDatabaseManager, conn, temperatureMapper, average, measurementId);
+            if (alertDifference.isPresent()) {
+                AlertsTemperatureMapper alertsTemperatureMapper = new AlertsTemperatureMapper(measurementId, alertDifference.getAsDouble());
+                insert(measurementDatabaseManager, conn, alertsTemperatureMapper, average, alertId);
+            }
+        });
+    }
+
+    @Override
+    public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+        long humidityId = humidityIds.nextId(HumidityMapper.TABLE);
+        long alertId = alertDifference.isPresent() ? humidityIds.nextId(AlertsHumidityMapper.TABLE) : 0;
+        humidityDatabaseManager.executeInTransaction(conn -> {
+            insert(humidityDatabaseManager, conn, humidityMapper, average, humidityId);
+            if (alertDifference.isPresent()) {
+                AlertsHumidityMapper alertsHumidityMapper = new AlertsHumidityMapper(humidityId, alertDifference.getAsDouble());
+                insert(humidityDatabaseManager, conn, alertsHumidityMapper, average, alertId);
+            }
+        });
+    }
+
+    private static <T> void insert(DatabaseManager<?> databaseManager, Connection conn, BatchDataMapper<T> mapper, T item,
+                                   long id) throws SQLException {
+        // La requête appartient au cache de la connexion : elle n'est pas fermée ici
+        PreparedStatement statement = databaseManager.statementCache(conn).prepare(mapper.getClass(), mapper.getInsertWithIdSql(), false);
+        mapper.bindParameters(statement, item, id);
+        statement.executeUpdate();
+    }
+}
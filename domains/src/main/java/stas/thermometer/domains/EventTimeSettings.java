@@ -0,0 +1,30 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+
+/**
+ * Paramètres du fenêtrage en temps d'événement, où chaque mesure compte dans la fenêtre de l'instant où la sonde l'a prise.
+ *
+ * @param enabled vrai pour fenêtrer sur l'horodatage de la sonde plutôt que sur l'instant de réception.
+ * @param watermarkDelay le retard toléré entre les mesures : une fenêtre est calculée quand la plus récente mesure
+ *                       reçue dépasse sa fin de ce délai.
+ * @param allowedLateness la durée pendant laquelle une fenêtre déjà calculée accepte encore des mesures en retard,
+ *                        qui donnent lieu à une correction ; au-delà, elles partent vers la sortie des retardataires.
+ */
+public record EventTimeSettings(boolean enabled, Duration watermarkDelay, Duration allowedLateness) {
+
+    public EventTimeSettings {
+        if (watermarkDelay.isNegative() || allowedLateness.isNegative()) {
+            throw new IllegalArgumentException("Les délais du fenêtrage en temps d'événement doivent être positifs");
+        }
+    }
+
+    /**
+     * Fenêtrage sur l'instant de réception ; s'il est activé, retard toléré d'une seconde et corrections pendant 10 secondes.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static EventTimeSettings defaults() {
+        return new EventTimeSettings(false, Duration.ofSeconds(1), Duration.ofSeconds(10));
+    }
+}
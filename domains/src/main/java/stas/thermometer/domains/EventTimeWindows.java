@@ -0,0 +1,391 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fenêtres en temps d'événement : chaque mesure est rangée dans la fenêtre de l'instant où la sonde l'a prise.
+ *
+ * <p>Le filigrane ({@code watermark}) est l'instant avant lequel plus aucune mesure n'est attendue : la plus récente
+ * mesure reçue, moins le retard toléré. Une fenêtre est émise quand le filigrane dépasse sa fin, puis reste ouverte
+ * pendant le retard admis : une mesure qui y arrive entre-temps produit une correction. Passé ce délai la fenêtre est
+ * oubliée, et ses retardataires sont refusés. Seules les fenêtres encore ouvertes sont donc en mémoire.</p>
+ *
+ * <p>Si la source se tait plus longtemps que le retard toléré, le filigrane avance du temps écoulé localement depuis
+ * la dernière mesure, pour que la dernière fenêtre soit émise sans attendre la mesure suivante. Il reste exprimé dans
+ * le temps de la sonde : une sonde dont l'horloge retarde sur l'horloge locale ne voit pas ses mesures refusées.</p>
+ *
+ * <p>Les mesures sont accumulées sans verrou ni allocation dans un anneau de {@link StripedAggregate}, un par volet,
+ * indexé par {@code (début du volet / durée) % taille} : l'anneau couvre le retard toléré, le retard admis et
+ * l'avance prise entre deux calculs. Une mesure dont l'emplacement est encore tenu par un autre volet (saut
+ * d'horloge de la sonde, relecture accélérée) passe par un débordement sous verrou. Seul le calcul des fenêtres,
+ * appelé par un unique thread, lit l'anneau.</p>
+ */
+final class EventTimeWindows {
+
+    // Au-delà, un saut d'horloge de la sonde n'émet pas une fenêtre vide par volet manquant
+    private static final int MAX_EMPTY_WINDOWS = 1024;
+    // Volets en plus du retard toléré et du retard admis : volet en cours et avance prise entre deux calculs
+    private static final int SPARE_SLOTS = 4;
+    // Chaque emplacement porte des histogrammes complets : un retard admis plus long passe par le débordement
+    private static final int MAX_SLOTS = 32;
+
+    private final long windowMillis;
+    private final long watermarkDelayMillis;
+    private final long allowedLatenessMillis;
+    private final StripedAggregate[] temperatures;
+    private final StripedAggregate[] humidities;
+    private final TreeMap<Long, Slot> overflow = new TreeMap<>();
+    private final AtomicLong maxEventMillis = new AtomicLong(Long.MIN_VALUE);
+    private volatile long lastArrivalMillis = Long.MIN_VALUE;
+    // Dernier volet oublié, publié par le calcul et relu par chaque mesure
+    private final AtomicLong expiredThrough = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong lateSamples = new AtomicLong();
+    // État du calcul : résumés des fenêtres émises encore dans leur retard admis
+    private final TreeMap<Long, Slot> fired = new TreeMap<>();
+    private final RunningAggregate drained = new RunningAggregate();
+    private long watermark = Long.MIN_VALUE;
+    private long nextWindowStart = Long.MIN_VALUE;
+
+    EventTimeWindows(Duration window, EventTimeSettings settings) {
+        this.windowMillis = window.toMillis();
+        this.watermarkDelayMillis = settings.watermarkDelay().toMillis();
+        this.allowedLatenessMillis = settings.allowedLateness().toMillis();
+        long covered = (watermarkDelayMillis + allowedLatenessMillis + windowMillis - 1) / windowMillis;
+        int slots = (int) Math.min(MAX_SLOTS, covered + SPARE_SLOTS);
+        this.temperatures = new StripedAggregate[slots];
+        this.humidities = new StripedAggregate[slots];
+        for (int i = 0; i < slots; i++) {
+            temperatures[i] = new StripedAggregate();
+            humidities[i] = new StripedAggregate();
+        }
+    }
+
+    /**
+     * Range une mesure dans sa fenêtre. Peut être appelée par plusieurs threads à la fois.
+     *
+     * @param type la grandeur mesurée.
+     * @param value la valeur mesurée.
+     * @param eventMillis l'instant de la mesure donné par la sonde.
+     * @param arrivalMillis l'instant de réception, selon l'horloge locale.
+     * @return faux si la fenêtre de la mesure est déjà oubliée : la mesure doit partir vers la sortie des retardataires.
+     */
+    boolean add(MetricType type, double value, long eventMillis, long arrivalMillis) {
+        // Relu avant d'écrire : les mesures d'une même milliseconde ne se disputent pas la ligne de cache
+        if (lastArrivalMillis != arrivalMillis) {
+            lastArrivalMillis = arrivalMillis;
+        }
+        long start = Math.floorDiv(eventMillis, windowMillis) * windowMillis;
+        if (start <= expiredThrough.get()) {
+            lateSamples.incrementAndGet();
+            return false;
+        }
+        long max;
+        while (eventMillis > (max = maxEventMillis.get()) && !maxEventMillis.compareAndSet(max, eventMillis)) {
+            Thread.onSpinWait();
+        }
+        StripedAggregate aggregate = ring(type)[slot(start)];
+        if (aggregate.owner() == StripedAggregate.UNOWNED) {
+            aggregate.claim(start);
+        }
+        if (aggregate.owner() == start && aggregate.add(start, expiredThrough, value, eventMillis)) {
+            return true;
+        }
+        return addToOverflow(type, value, start);
+    }
+
+    /**
+     * Avance le filigrane et renvoie les fenêtres à émettre, par ordre chronologique : d'abord les corrections
+     * des fenêtres déjà émises, puis les fenêtres que le filigrane vient de dépasser, vides comprises.
+     *
+     * @param nowMillis l'instant présent, selon l'horloge locale.
+     * @return les fenêtres à émettre.
+     */
+    synchronized List<Firing> poll(long nowMillis) {
+        advanceWatermark(nowMillis);
+        List<Firing> firings = new ArrayList<>();
+        if (nextWindowStart == Long.MIN_VALUE) {
+            nextWindowStart = nextOccupied(Long.MIN_VALUE, Map.of());
+            if (nextWindowStart == Long.MAX_VALUE) {
+                nextWindowStart = Long.MIN_VALUE;
+                return firings;
+            }
+        }
+        // Dernière fenêtre entièrement passée sous le filigrane
+        long lastStart = watermark == Long.MIN_VALUE
+                ? nextWindowStart - windowMillis
+                : Math.floorDiv(watermark, windowMillis) * windowMillis - windowMillis;
+        TreeMap<Long, Slot> overflowed = takeOverflow(Math.max(lastStart, nextWindowStart - windowMillis));
+        collectCorrections(firings, overflowed);
+        long start = nextWindowStart;
+        while (start <= lastStart) {
+            if (isOccupied(start, overflowed)) {
+                Slot window = drainWindow(start, overflowed);
+                fired.put(start, window);
+                firings.add(new Firing(start, window.temperatures, window.humidities, false));
+                start += windowMillis;
+                continue;
+            }
+            long emptyEnd = Math.min(nextOccupied(start, overflowed), lastStart + windowMillis);
+            for (long empty = Math.max(start, emptyEnd - MAX_EMPTY_WINDOWS * windowMillis); empty < emptyEnd; empty += windowMillis) {
+                firings.add(new Firing(empty, null, null, false));
+            }
+            start = emptyEnd;
+        }
+        nextWindowStart = Math.max(nextWindowStart, start);
+        // Les fenêtres émises à l'instant et déjà hors du retard admis sont libérées aussitôt
+        collectCorrections(firings, overflowed);
+        fired.headMap(expiredThrough.get(), true).clear();
+        return firings;
+    }
+
+    /**
+     * @return le nombre de fenêtres en mémoire.
+     */
+    synchronized int openWindows() {
+        Set<Long> open = new TreeSet<>(fired.keySet());
+        for (int i = 0; i < temperatures.length; i++) {
+            addOwner(open, temperatures[i].owner());
+            addOwner(open, humidities[i].owner());
+        }
+        synchronized (overflow) {
+            open.addAll(overflow.keySet());
+        }
+        return open.size();
+    }
+
+    /**
+     * @return le nombre de mesures refusées car arrivées après l'oubli de leur fenêtre.
+     */
+    long getLateSamples() {
+        return lateSamples.get();
+    }
+
+    private boolean addToOverflow(MetricType type, double value, long start) {
+        synchronized (overflow) {
+            // Relu sous le verrou : le calcul publie l'oubli avant de vider le débordement
+            if (start <= expiredThrough.get()) {
+                lateSamples.incrementAndGet();
+                return false;
+            }
+            overflow.computeIfAbsent(start, key -> new Slot()).add(type, value);
+            return true;
+        }
+    }
+
+    private TreeMap<Long, Slot> takeOverflow(long throughStart) {
+        synchronized (overflow) {
+            Map<Long, Slot> due = overflow.headMap(throughStart, true);
+            TreeMap<Long, Slot> taken = new TreeMap<>(due);
+            due.clear();
+            return taken;
+        }
+    }
+
+    private void advanceWatermark(long nowMillis) {
+        long maxEvent = maxEventMillis.get();
+        if (maxEvent == Long.MIN_VALUE) {
+            return;
+        }
+        watermark = Math.max(watermark, maxEvent - watermarkDelayMillis);
+        long lastArrival = lastArrivalMillis;
+        long silenceMillis = nowMillis - lastArrival;
+        if (lastArrival != Long.MIN_VALUE && silenceMillis > watermarkDelayMillis) {
+            // Source silencieuse : son temps est présumé avancer comme l'horloge locale depuis la dernière mesure,
+            // sans supposer les deux horloges alignées
+            watermark = Math.max(watermark, maxEvent + silenceMillis - watermarkDelayMillis);
+        }
+        expiredThrough.set(watermark - windowMillis - allowedLatenessMillis);
+    }
+
+    /**
+     * Vide dans des corrections les mesures arrivées depuis le dernier calcul dans les fenêtres déjà émises,
+     * et libère les emplacements des fenêtres sorties du retard admis.
+     */
+    private void collectCorrections(List<Firing> firings, TreeMap<Long, Slot> overflowed) {
+        TreeMap<Long, Slot> late = new TreeMap<>();
+        for (int i = 0; i < temperatures.length; i++) {
+            collectLate(MetricType.TEMPERATURE, temperatures[i], late);
+            collectLate(MetricType.HUMIDITY, humidities[i], late);
+        }
+        Map<Long, Slot> overflowedLate = overflowed.headMap(nextWindowStart);
+        overflowedLate.forEach((start, slot) -> late.computeIfAbsent(start, key -> new Slot()).merge(slot));
+        overflowedLate.clear();
+        late.forEach((start, delta) -> firings.add(fired.computeIfAbsent(start, key -> new Slot()).correct(start, delta)));
+    }
+
+    private void collectLate(MetricType type, StripedAggregate aggregate, TreeMap<Long, Slot> late) {
+        long owner = aggregate.owner();
+        if (owner == StripedAggregate.UNOWNED || owner == StripedAggregate.RETIRING || owner >= nextWindowStart) {
+            return;
+        }
+        if (owner <= expiredThrough.get()) {
+            aggregate.retire(owner, drained);
+        } else {
+            aggregate.drainTo(drained);
+        }
+        StatisticsSketch sketch = takeDrained();
+        if (sketch != null) {
+            late.computeIfAbsent(owner, key -> new Slot()).merge(type, sketch);
+        }
+    }
+
+    private Slot drainWindow(long start, TreeMap<Long, Slot> overflowed) {
+        Slot window = new Slot();
+        int slot = slot(start);
+        if (temperatures[slot].owner() == start) {
+            temperatures[slot].drainTo(drained);
+            window.merge(MetricType.TEMPERATURE, takeDrained());
+        }
+        if (humidities[slot].owner() == start) {
+            humidities[slot].drainTo(drained);
+            window.merge(MetricType.HUMIDITY, takeDrained());
+        }
+        Slot spilled = overflowed.remove(start);
+        if (spilled != null) {
+            window.merge(spilled);
+        }
+        return window;
+    }
+
+    private StatisticsSketch takeDrained() {
+        if (drained.isEmpty()) {
+            return null;
+        }
+        StatisticsSketch sketch = drained.statistics();
+        drained.reset();
+        return sketch;
+    }
+
+    private boolean isOccupied(long start, TreeMap<Long, Slot> overflowed) {
+        int slot = slot(start);
+        return temperatures[slot].owner() == start || humidities[slot].owner() == start || overflowed.containsKey(start);
+    }
+
+    /**
+     * @return le début du plus proche volet postérieur à {@code start} qui a reçu des mesures,
+     *         ou {@link Long#MAX_VALUE} s'il n'y en a pas.
+     */
+    private long nextOccupied(long start, Map<Long, Slot> overflowed) {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < temperatures.length; i++) {
+            next = earliestAfter(start, temperatures[i].owner(), next);
+            next = earliestAfter(start, humidities[i].owner(), next);
+        }
+        for (long spilled : overflowed.keySet()) {
+            next = earliestAfter(start, spilled, next);
+        }
+        synchronized (overflow) {
+            Long spilled = overflow.higherKey(start);
+            if (spilled != null) {
+                next = Math.min(next, spilled);
+            }
+        }
+        return next;
+    }
+
+    private static long earliestAfter(long start, long candidate, long next) {
+        if (candidate == StripedAggregate.UNOWNED || candidate == StripedAggregate.RETIRING || candidate <= start) {
+            return next;
+        }
+        return Math.min(next, candidate);
+    }
+
+    private static void addOwner(Set<Long> open, long owner) {
+        if (owner != StripedAggregate.UNOWNED && owner != StripedAggregate.RETIRING) {
+            open.add(owner);
+        }
+    }
+
+    private StripedAggregate[] ring(MetricType type) {
+        return type == MetricType.TEMPERATURE ? temperatures : humidities;
+    }
+
+    private int slot(long start) {
+        return (int) Math.floorMod(Math.floorDiv(start, windowMillis), (long) temperatures.length);
+    }
+
+    /**
+     * Fenêtre à émettre.
+     *
+     * @param start le début de la fenêtre, en millisecondes depuis l'époque.
+     * @param temperatures les températures de la fenêtre, ou {@code null} s'il n'y en a pas.
+     * @param humidities les humidités de la fenêtre, ou {@code null}.
+     * @param correction vrai si la fenêtre a déjà été émise et que des mesures en retard l'ont modifiée.
+     */
+    record Firing(long start, StatisticsSketch temperatures, StatisticsSketch humidities, boolean correction) {
+    }
+
+    /**
+     * Résumés d'une fenêtre : émis, en attente dans le débordement, ou arrivés en retard.
+     */
+    private static final class Slot {
+        private StatisticsSketch temperatures;
+        private StatisticsSketch humidities;
+
+        private void add(MetricType type, double value) {
+            if (type == MetricType.TEMPERATURE) {
+                temperatures = temperatures == null ? new StatisticsSketch() : temperatures;
+                temperatures.add(value);
+            } else {
+                humidities = humidities == null ? new StatisticsSketch() : humidities;
+                humidities.add(value);
+            }
+        }
+
+        private void merge(MetricType type, StatisticsSketch sketch) {
+            if (sketch == null) {
+                return;
+            }
+            if (type == MetricType.TEMPERATURE) {
+                temperatures = merged(temperatures, sketch);
+            } else {
+                humidities = merged(humidities, sketch);
+            }
+        }
+
+        private void merge(Slot other) {
+            merge(MetricType.TEMPERATURE, other.temperatures);
+            merge(MetricType.HUMIDITY, other.humidities);
+        }
+
+        /**
+         * Ajoute des mesures en retard à la fenêtre émise. Les résumés émis ne sont plus modifiés : la correction
+         * en est une copie complétée, qui ne porte que les grandeurs modifiées.
+         */
+        private Firing correct(long start, Slot delta) {
+            StatisticsSketch correctedTemperatures = delta.temperatures == null ? null : copyOf(temperatures, delta.temperatures);
+            StatisticsSketch correctedHumidities = delta.humidities == null ? null : copyOf(humidities, delta.humidities);
+            if (correctedTemperatures != null) {
+                temperatures = correctedTemperatures;
+            }
+            if (correctedHumidities != null) {
+                humidities = correctedHumidities;
+            }
+            return new Firing(start, correctedTemperatures, correctedHumidities, true);
+        }
+
+        private static StatisticsSketch merged(StatisticsSketch sketch, StatisticsSketch other) {
+            if (sketch == null) {
+                return other;
+            }
+            sketch.merge(other);
+            return sketch;
+        }
+
+        private static StatisticsSketch copyOf(StatisticsSketch emitted, StatisticsSketch delta) {
+            StatisticsSketch copy = new StatisticsSketch();
+            if (emitted != null) {
+                copy.merge(emitted);
+            }
+            copy.merge(delta);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package stas.thermometer.domains;
+
+/**
+ * Mesures de la flotte de sondes simulées depuis son démarrage.
+ *
+ * @param probes le nombre de sondes de la flotte.
+ * @param samples le nombre d'échantillonnages réalisés.
+ * @param failures le nombre d'échantillonnages qui ont levé une exception.
+ * @param samplesPerSecond le débit d'échantillonnage obtenu.
+ * @param ticks le nombre de crans traités par l'ensemble des roues, ou de réveils des sondes en mode virtuel.
+ * @param averageLatenessMillis le retard moyen d'un cran, ou d'un réveil, sur son échéance.
+ * @param maxLatenessMillis le plus grand retard d'un cran sur son échéance.
+ */
+public record FleetMetrics(int probes, long samples, long failures, double samplesPerSecond, long ticks,
+                           double averageLatenessMillis, double maxLatenessMillis) {
+}
@@ -0,0 +1,48 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+
+/**
+ * Paramètres de la flotte de sondes simulées ({@link ProbeFleet}), utilisée pour les tests de charge.
+ *
+ * @param probes le nombre de sondes simulées ; 0 désactive la flotte.
+ * @param minPeriod la période d'échantillonnage de la première sonde.
+ * @param maxPeriod la période d'échantillonnage de la dernière sonde ; les autres sont réparties entre les deux.
+ * @param tick la résolution de la roue de temporisation.
+ * @param wheelSize le nombre d'emplacements de chaque roue.
+ * @param threads le nombre de threads, chacun pilotant sa roue et sa part des sondes ; sans effet avec des threads virtuels.
+ */
+public record FleetSettings(int probes, Duration minPeriod, Duration maxPeriod, Duration tick, int wheelSize, int threads) {
+
+    public FleetSettings {
+        if (probes < 0 || wheelSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("La flotte doit avoir un nombre de sondes positif, au moins un emplacement et un thread");
+        }
+        if (tick.isNegative() || tick.isZero() || minPeriod.compareTo(tick) < 0 || maxPeriod.compareTo(minPeriod) < 0) {
+            throw new IllegalArgumentException("Les périodes de la flotte doivent être au moins égales à la résolution de la roue, et la période maximale à la période minimale");
+        }
+    }
+
+    /**
+     * Flotte désactivée ; si elle est activée, périodes de 100 ms à 1 s sur des roues de 512 emplacements
+     * de 10 ms, pilotées par 2 threads.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static FleetSettings defaults() {
+        return new FleetSettings(0, Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofMillis(10), 512, 2);
+    }
+
+    public boolean isEnabled() {
+        return probes > 0;
+    }
+
+    /**
+     * @param probe le rang de la sonde, de 0 à {@code probes - 1}.
+     * @return la période d'échantillonnage de la sonde.
+     */
+    public Duration periodOf(int probe) {
+        long range = maxPeriod.toMillis() - minPeriod.toMillis();
+        return minPeriod.plusMillis(probes <= 1 ? 0 : range * probe / (probes - 1));
+    }
+}
@@ -0,0 +1,18 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+import java.util.OptionalDouble;
+
+/**
+ * Moyenne relue depuis la base, avec l'écart de l'alerte qu'elle a déclenchée s'il y en a une.
+ *
+ * @param type la grandeur moyennée.
+ * @param id la clé primaire de la moyenne.
+ * @param thermometerName le nom du thermomètre.
+ * @param value la valeur moyenne, l'humidité étant exprimée entre 0 et 1.
+ * @param timestamp l'horodatage de la moyenne.
+ * @param alertDifference l'écart de l'alerte associée, ou vide.
+ */
+public record HistoricalAverage(MetricType type, long id, String thermometerName, double value, LocalDateTime timestamp,
+                                OptionalDouble alertDifference) {
+}
@@ -0,0 +1,28 @@
+package stas.thermometer.domains;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Pendant en lecture de {@link DataMapper} : décrit une requête d'historique sur une plage de temps
+ * et la conversion de chaque ligne lue, utilisées par {@link HistoryReader}.
+ *
+ * @param <T> le type d'élément lu.
+ */
+public interface HistoryMapper<T> {
+
+    /**
+     * @return la requête paramétrée par le nom du thermomètre, le début (inclus) et la fin (exclue)
+     *         de la plage, triée par horodatage.
+     */
+    String getRangeSql();
+
+    /**
+     * Convertit la ligne courante du curseur.
+     *
+     * @param resultSet le curseur positionné sur une ligne.
+     * @return l'élément lu.
+     * @throws SQLException si une colonne ne peut être lue.
+     */
+    T map(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,159 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lecture en flux de l'historique des moyennes et des alertes.
+ *
+ * <p>Les lignes sont lues au fil de la consommation du {@link Stream}, par un curseur en avant seule
+ * qui ramène {@code fetchSize} lignes à la fois : des mois d'historique ne sont jamais chargés
+ * entièrement en mémoire. Le flux garde une connexion du pool tant qu'il est ouvert ; il doit
+ * donc être fermé, de préférence avec un try-with-resources.</p>
+ *
+ * <p>Les connexions sont empruntées par le {@link DatabaseManager} : base indisponible, une lecture échoue
+ * aussitôt, comme une écriture, au lieu d'attendre le pool.</p>
+ *
+ * <p>Avec MySQL, le driver ne respecte le {@code fetchSize} que si l'URL contient
+ * {@code useCursorFetch=true}.</p>
+ */
+public class HistoryReader {
+
+    private static final String[][] INDEXES = {
+            {"Temperature", "idx_temperature_name_ts", "thermometer_name, timestamp"},
+            {"Humidity", "idx_humidity_name_ts", "thermometer_name, timestamp"},
+            {"AlertsTemperature", "idx_alerts_temperature_ref", "temperature_id"},
+            {"AlertsHumidity", "idx_alerts_humidity_ref", "humidity_id"}
+    };
+
+    private final DatabaseManager<?> databaseManager;
+    private final int fetchSize;
+
+    /**
+     * @param databaseManager le gestionnaire dont les connexions portent les curseurs.
+     * @param fetchSize le nombre de lignes ramenées par aller-retour.
+     */
+    public HistoryReader(DatabaseManager<?> databaseManager, int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Le nombre de lignes par lecture doit être positif");
+        }
+        this.databaseManager = databaseManager;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Ouvre un flux sur l'historique d'un thermomètre entre deux instants.
+     *
+     * @param mapper la requête et la conversion des lignes.
+     * @param thermometerName le nom du thermomètre.
+     * @param from le début de la plage, inclus.
+     * @param to la fin de la plage, exclue.
+     * @return un flux paresseux, trié par horodatage, à fermer après usage.
+     */
+    public <T> Stream<T> stream(HistoryMapper<T> mapper, String thermometerName, LocalDateTime from, LocalDateTime to) {
+        Connection conn = databaseManager.borrowReadConnection();
+        PreparedStatement statement = null;
+        try {
+            statement = conn.prepareStatement(mapper.getRangeSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            statement.setString(1, thermometerName);
+            statement.setTimestamp(2, Timestamp.valueOf(from));
+            statement.setTimestamp(3, Timestamp.valueOf(to));
+            ResultSet resultSet = statement.executeQuery();
+            PreparedStatement openStatement = statement;
+            return StreamSupport.stream(new RowSpliterator<>(resultSet, mapper), false)
+                    .onClose(() -> close(resultSet, openStatement, conn));
+        } catch (SQLException e) {
+            close(null, statement, conn);
+            throw new RuntimeException("stas.thermometer : unable to read history", e);
+        }
+    }
+
+    /**
+     * Crée les index utilisés par les requêtes d'historique lorsqu'ils n'existent pas encore.
+     *
+     * @return le nombre d'index créés.
+     */
+    public int ensureIndexes() {
+        Connection conn = databaseManager.borrowReadConnection();
+        try (Statement statement = conn.createStatement()) {
+            int created = 0;
+            for (String[] index : INDEXES) {
+                if (!indexExists(conn.getMetaData(), index[0], index[1])) {
+                    statement.executeUpdate("CREATE INDEX " + index[1] + " ON " + index[0] + " (" + index[2] + ")");
+                    created++;
+                }
+            }
+            return created;
+        } catch (SQLException e) {
+            throw new RuntimeException("stas.thermometer : unable to create history indexes", e);
+        } finally {
+            databaseManager.releaseReadConnection(conn);
+        }
+    }
+
+    private boolean indexExists(DatabaseMetaData metaData, String table, String indexName) throws SQLException {
+        // Selon la base, les noms sont conservés tels quels (MySQL) ou mis en majuscules (Derby)
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet indexes = metaData.getIndexInfo(null, null, name, false, true)) {
+                while (indexes.next()) {
+                    if (indexName.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void close(ResultSet resultSet, Statement statement, Connection conn) {
+        try {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            // La connexion rendue au pool sera réinitialisée ou détruite
+        } finally {
+            databaseManager.releaseReadConnection(conn);
+        }
+    }
+
+    private static final class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final ResultSet resultSet;
+        private final HistoryMapper<T> mapper;
+
+        private RowSpliterator(ResultSet resultSet, HistoryMapper<T> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.resultSet = resultSet;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if (!resultSet.next()) {
+                    return false;
+                }
+                action.accept(mapper.map(resultSet));
+                return true;
+            } catch (SQLException e) {
+                throw new RuntimeException("stas.thermometer : unable to read history", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package stas.thermometer.domains;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class HumidityHistoryMapper implements HistoryMapper<Humidity> {
+
+    private static final String RANGE_SQL = "SELECT thermometer_name, humidity, timestamp FROM Humidity "
+            + "WHERE thermometer_name = ? AND timestamp >= ? AND timestamp < ? ORDER BY timestamp";
+
+    @Override
+    public String getRangeSql() {
+        return RANGE_SQL;
+    }
+
+    @Override
+    public Humidity map(ResultSet resultSet) throws SQLException {
+        // L'humidité est stockée en pourcentage par HumidityMapper
+        return new Humidity(resultSet.getString(1), resultSet.getDouble(2) / 100, resultSet.getTimestamp(3).toLocalDateTime());
+    }
+}
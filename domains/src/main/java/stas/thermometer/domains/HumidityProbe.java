@@ -3,11 +3,11 @@ package stas.thermometer.domains;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 public class HumidityProbe {
 
     private final Profiles profile;
+    private final NoiseSource noise;
     private final List<Observer> observers = new ArrayList<>();
     private double humidityOffset = 0.0;
 
@@ -17,7 +17,18 @@ public class HumidityProbe {
      * @param profile         le profil de température utilisé pour déterminer la température attendue.
      */
     public HumidityProbe(Profiles profile) {
+        this(profile, NoiseSource.random());
+    }
+
+    /**
+     * Constructeur de la sonde d'humidité avec une source de bruit dédiée.
+     *
+     * @param profile         le profil d'humidité utilisé pour déterminer l'humidité attendue.
+     * @param noise           la source de l'erreur aléatoire, propre à cette sonde.
+     */
+    public HumidityProbe(Profiles profile, NoiseSource noise) {
         this.profile = profile;
+        this.noise = noise;
     }
 
     /**
@@ -26,12 +37,16 @@ public class HumidityProbe {
      * @param observer l'observateur à ajouter.
      */
     public void addObserver(Observer observer) {
-        observers.add(observer);
+        if (!observers.contains(observer)) {
+            observers.add(observer);
+        }
     }
 
     public void measureAndNotify() {
+        // Horodatage côté sonde : la mesure garde son instant même si elle est transmise en retard
+        long epochMillis = System.currentTimeMillis();
         double humidity = getAdjustedHumidity();
-        notifyObservers(humidity);
+        notifyObservers(humidity, epochMillis);
     }
 
     public void notifyObservers(double humidity) {
@@ -40,6 +55,19 @@ public class HumidityProbe {
         }
     }
 
+    /**
+     * Notifie une mesure avec l'instant où elle a été prise.
+     *
+     * @param humidity l'humidité mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    public void notifyObservers(double humidity, long epochMillis) {
+        // Boucle indexée : pas d'itérateur alloué à chaque mesure
+        for (int i = 0; i < observers.size(); i++) {
+            observers.get(i).updateHumidity(humidity, epochMillis);
+        }
+    }
+
     /**
      * Récupère l'humidité ajustée en y ajoutant une erreur aléatoire et un décalage.
      *
@@ -47,7 +75,7 @@ public class HumidityProbe {
      */
     public double getAdjustedHumidity(){
         double expectedHumidity = profile.getExpectedHumidity(LocalDateTime.now());
-        double randomError = (-5 + new Random().nextDouble() * 10)/100;
+        double randomError = (-5 + noise.nextDouble() * 10)/100;
         return expectedHumidity + randomError + humidityOffset;
     }
 
@@ -0,0 +1,174 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allocateur d'identifiants hi/lo : les identifiants sont attribués côté client, avant l'insertion.
+ *
+ * <p>Pour chaque table, l'allocateur réserve en base un bloc de {@code blockSize} identifiants
+ * (table {@code IdBlocks}), puis les distribue en mémoire sans aucun aller-retour. Une moyenne et son
+ * alerte peuvent ainsi être insérées dans le même lot, sans attendre l'identifiant généré par la base.
+ * Plusieurs thermomètres peuvent partager la même base : chacun réserve des blocs disjoints.</p>
+ *
+ * <p>La ligne d'une table est créée à la première réservation, au-delà des identifiants déjà présents ; si un
+ * autre allocateur la crée au même moment, l'insertion refusée est ignorée et sa ligne est relue. Chaque réservation
+ * verrouille ensuite la ligne ({@code SELECT ... FOR UPDATE}) avant de l'avancer. Les identifiants d'une table
+ * ne sont sûrs que si toutes ses insertions passent par un allocateur : c'est le cas de {@link WriteBehindSink}
+ * et de {@link DirectAverageSink}.</p>
+ */
+public class IdAllocator {
+
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TABLE IdBlocks (sequence_name VARCHAR(64) NOT NULL PRIMARY KEY, next_hi BIGINT NOT NULL)";
+    private static final String UPDATE_SQL = "UPDATE IdBlocks SET next_hi = ? WHERE sequence_name = ?";
+    private static final String SELECT_SQL = "SELECT next_hi FROM IdBlocks WHERE sequence_name = ?";
+    private static final String LOCK_SQL = SELECT_SQL + " FOR UPDATE";
+    private static final String INSERT_SQL = "INSERT INTO IdBlocks (sequence_name, next_hi) VALUES (?, ?)";
+
+    private final DatabaseManager<?> databaseManager;
+    private final int blockSize;
+    private final Map<String, Block> blocks = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean tableReady;
+    private long reservedBlocks;
+
+    /**
+     * @param databaseManager le gestionnaire utilisé pour réserver les blocs.
+     * @param blockSize le nombre d'identifiants réservés à chaque aller-retour.
+     */
+    public IdAllocator(DatabaseManager<?> databaseManager, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("La taille d'un bloc doit être positive");
+        }
+        this.databaseManager = databaseManager;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Attribue le prochain identifiant libre de la table. Seul l'épuisement du bloc courant
+     * provoque une transaction, en dehors de toute transaction d'écriture en cours.
+     *
+     * @param table la table dont la clé primaire est attribuée.
+     * @return un identifiant jamais attribué pour cette table.
+     */
+    public long nextId(String table) {
+        lock.lock();
+        try {
+            Block block = blocks.computeIfAbsent(table, name -> new Block());
+            if (block.next >= block.end) {
+                long hi = reserveBlock(table);
+                block.next = hi * blockSize;
+                block.end = block.next + blockSize;
+            }
+            return block.next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return le nombre de blocs réservés en base depuis la création de l'allocateur.
+     */
+    public long getReservedBlocks() {
+        lock.lock();
+        try {
+            return reservedBlocks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long reserveBlock(String table) {
+        long[] hi = new long[1];
+        databaseManager.executeInTransaction(conn -> hi[0] = reserveBlock(conn, table));
+        reservedBlocks++;
+        return hi[0];
+    }
+
+    private long reserveBlock(Connection conn, String table) throws SQLException {
+        ensureBlockTable(conn);
+        seedIfAbsent(conn, table);
+        long hi;
+        try (PreparedStatement select = conn.prepareStatement(LOCK_SQL)) {
+            select.setString(1, table);
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("Aucune ligne IdBlocks pour " + table);
+                }
+                hi = resultSet.getLong(1);
+            }
+        }
+        try (PreparedStatement update = conn.prepareStatement(UPDATE_SQL)) {
+            update.setLong(1, hi + 1);
+            update.setString(2, table);
+            update.executeUpdate();
+        }
+        return hi;
+    }
+
+    /**
+     * Crée la ligne de la table si elle n'existe pas : les blocs commencent après les lignes déjà présentes.
+     */
+    private void seedIfAbsent(Connection conn, String table) throws SQLException {
+        try (PreparedStatement select = conn.prepareStatement(SELECT_SQL)) {
+            select.setString(1, table);
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (resultSet.next()) {
+                    return;
+                }
+            }
+        }
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+            insert.setString(1, table);
+            insert.setLong(2, firstFreeBlock(conn, table));
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            // Un autre allocateur a créé la ligne entre-temps : la réservation la relit
+            if (!isDuplicateKey(e)) {
+                throw e;
+            }
+        }
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
+    private long firstFreeBlock(Connection conn, String table) throws SQLException {
+        try (Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(id) FROM " + table)) {
+            long maxId = resultSet.next() ? resultSet.getLong(1) : 0;
+            return maxId / blockSize + 1;
+        }
+    }
+
+    private void ensureBlockTable(Connection conn) throws SQLException {
+        if (tableReady) {
+            return;
+        }
+        try (Statement statement = conn.createStatement()) {
+            try {
+                // Seule l'existence de la table compte : le résultat vide est fermé aussitôt
+                statement.executeQuery("SELECT next_hi FROM IdBlocks WHERE 1 = 0").close();
+                tableReady = true;
+            } catch (SQLException e) {
+                statement.executeUpdate(CREATE_TABLE_SQL);
+                tableReady = true;
+            }
+        }
+    }
+
+    private static final class Block {
+        private long next;
+        private long end;
+    }
+}
@@ -0,0 +1,63 @@
+package stas.thermometer.domains;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * File de moyennes en mémoire : perdue à l'arrêt de l'application.
+ */
+public class InMemoryPendingQueue implements PendingAverageQueue {
+
+    private final Deque<PendingAverage> averages = new ArrayDeque<>();
+    private long oldestPendingNanos;
+
+    @Override
+    public synchronized void append(PendingAverage average) {
+        if (averages.isEmpty()) {
+            oldestPendingNanos = System.nanoTime();
+        }
+        averages.add(average);
+    }
+
+    @Override
+    public synchronized List<PendingAverage> peek(int max) {
+        List<PendingAverage> batch = new ArrayList<>(Math.min(max, averages.size()));
+        Iterator<PendingAverage> iterator = averages.iterator();
+        while (iterator.hasNext() && batch.size() < max) {
+            batch.add(iterator.next());
+        }
+        return batch;
+    }
+
+    @Override
+    public synchronized void assignIds(List<PendingAverage> identified) {
+        int count = Math.min(identified.size(), averages.size());
+        for (int i = 0; i < count; i++) {
+            averages.poll();
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            averages.addFirst(identified.get(i));
+        }
+    }
+
+    @Override
+    public synchronized void acknowledge(int count) {
+        for (int i = 0; i < count && !averages.isEmpty(); i++) {
+            averages.poll();
+        }
+        oldestPendingNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized int size() {
+        return averages.size();
+    }
+
+    @Override
+    public synchronized long oldestPendingNanos() {
+        return oldestPendingNanos;
+    }
+}
@@ -0,0 +1,18 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reçoit les mesures arrivées trop tard pour être comptées dans leur fenêtre (sortie secondaire du fenêtrage
+ * en temps d'événement).
+ */
+public interface LateSampleObserver {
+
+    /**
+     * @param type la grandeur mesurée.
+     * @param thermometerName le thermomètre qui a pris la mesure.
+     * @param value la valeur mesurée.
+     * @param timestamp l'instant de la mesure, donné par la sonde.
+     */
+    void updateLateSample(MetricType type, String thermometerName, double value, LocalDateTime timestamp);
+}
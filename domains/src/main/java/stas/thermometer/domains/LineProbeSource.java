@@ -0,0 +1,120 @@
+package stas.thermometer.domains;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Source qui lit des mesures texte, une par ligne : {@code <instant en ms depuis l'époque>;<temperature|humidity>;<valeur>}.
+ *
+ * <p>Le flux peut venir d'un fichier, d'un tube nommé (ouvert comme un fichier) ou d'un socket local. Seules
+ * les lignes demandées sont lues : le reste attend dans le fichier, ou dans les tampons du système pour un tube
+ * ou un socket, ce qui freine l'émetteur. Les lignes illisibles sont ignorées et comptées.</p>
+ */
+public class LineProbeSource implements ProbeSource {
+
+    private final BufferedReader reader;
+    private final Closeable resource;
+    private long rejectedLines;
+
+    /**
+     * @param input le flux des mesures, en UTF-8.
+     */
+    public LineProbeSource(InputStream input) {
+        this(input, input);
+    }
+
+    private LineProbeSource(InputStream input, Closeable resource) {
+        this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        this.resource = resource;
+    }
+
+    /**
+     * @param path un fichier ou un tube nommé.
+     * @return une source qui lit le fichier jusqu'à sa fin, ou le tube jusqu'à la fermeture de l'émetteur.
+     * @throws IOException si le fichier ne peut être ouvert.
+     */
+    public static LineProbeSource open(Path path) throws IOException {
+        return new LineProbeSource(Files.newInputStream(path));
+    }
+
+    /**
+     * @param host l'hôte, en général {@code localhost}.
+     * @param port le port.
+     * @return une source qui lit le socket jusqu'à sa fermeture par l'émetteur.
+     * @throws IOException si la connexion échoue.
+     */
+    public static LineProbeSource connect(String host, int port) throws IOException {
+        Socket socket = new Socket(host, port);
+        return new LineProbeSource(socket.getInputStream(), socket);
+    }
+
+    @Override
+    public int poll(int max, SampleConsumer consumer) throws IOException {
+        int delivered = 0;
+        // La première ligne est attendue ; les suivantes ne sont lues que si elles sont déjà disponibles
+        while (delivered < max && (delivered == 0 || reader.ready())) {
+            String line = reader.readLine();
+            if (line == null) {
+                return delivered == 0 ? -1 : delivered;
+            }
+            if (parse(line, consumer)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * @return le nombre de lignes ignorées car illisibles.
+     */
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    /**
+     * Ferme le flux sous-jacent, ce qui débloque une lecture en cours sur un autre thread.
+     */
+    @Override
+    public void close() throws IOException {
+        // Le lecteur tamponné n'est pas fermé directement : il est verrouillé pendant une lecture bloquée
+        resource.close();
+    }
+
+    private boolean parse(String line, SampleConsumer consumer) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return false;
+        }
+        String[] fields = trimmed.split(";");
+        if (fields.length != 3) {
+            rejectedLines++;
+            return false;
+        }
+        MetricType type = switch (fields[1].trim().toLowerCase(Locale.ROOT)) {
+            case "temperature" -> MetricType.TEMPERATURE;
+            case "humidity" -> MetricType.HUMIDITY;
+            default -> null;
+        };
+        try {
+            long epochMillis = Long.parseLong(fields[0].trim());
+            double value = Double.parseDouble(fields[2].trim());
+            if (type == null || !Double.isFinite(value)) {
+                rejectedLines++;
+                return false;
+            }
+            consumer.accept(type, value, epochMillis);
+            return true;
+        } catch (NumberFormatException e) {
+            rejectedLines++;
+            return false;
+        }
+    }
+}
@@ -1,53 +1,195 @@
 package stas.thermometer.domains;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 /**
  * Aggrège et gère les mesures de température et notifie les observateurs.
  *
  * <p>Cette classe est responsable de la collecte des mesures de température, du calcul de la température moyenne
  * et de la notification des observateurs des changements de température et des mesures moyennes.</p>
  *
+ * <p>Les mesures peuvent être ajoutées par plusieurs threads à la fois, sans verrou ; le calcul des moyennes
+ * clôt atomiquement la fenêtre en cours.</p>
+ *
+ * <p>Chaque calcul clôt un volet. Les fenêtres plus longues ajoutées par {@link #addResolution(WindowResolution)}
+ * sont construites en fusionnant les résumés des volets : une mesure n'est parcourue qu'une fois, quel que soit
+ * le nombre de fenêtres.</p>
+ *
+ * <p>Avec {@link #enableEventTime(EventTimeSettings)}, les volets sont découpés selon l'horodatage de la sonde
+ * et non selon l'instant du calcul : une mesure transmise en retard compte dans la fenêtre où elle a été prise.</p>
+ *
+ * <p>L'heure courante, qui horodate les mesures reçues sans instant et fait avancer le filigrane, est lue sur
+ * l'horloge système, ou sur celle d'une relecture fournie par {@link #useClock(LongSupplier)}.</p>
+ *
  * @author Ruben Yildiz
  * @version 1.0
  */
 public class MeasurementAggregator implements Observer {
 
-    private final List<Measurement> measurements = new ArrayList<>();
-    private final List<Humidity> humidities = new ArrayList<>();
+    public static final Duration DEFAULT_PANE = Duration.ofSeconds(2);
+
+    // Agrégats courants de la fenêtre : aucune allocation ni verrou par mesure
+    private final StripedAggregate temperatures = new StripedAggregate();
+    private final StripedAggregate humidities = new StripedAggregate();
+    // Fenêtres closes, utilisées uniquement par le calcul des moyennes
+    private final RunningAggregate temperatureWindow = new RunningAggregate();
+    private final RunningAggregate humidityWindow = new RunningAggregate();
+    private StatisticsSketch temperatureStatistics;
+    private StatisticsSketch humidityStatistics;
+    // Volets clos par le calcul en cours, transmis ensuite aux fenêtres plus longues
+    private PaneWindow.Pane temperaturePane;
+    private PaneWindow.Pane humidityPane;
+    private final Duration pane;
+    private final List<PaneWindow> resolutions = new CopyOnWriteArrayList<>();
+    private volatile EventTimeWindows eventTimeWindows;
+    private volatile AlertRuleEngine alertRules = new AlertRuleEngine(AlertRule.defaults());
+    private volatile SampleDemand demand;
+    private volatile int samplesPerPane;
+    private volatile LongSupplier clock = System::currentTimeMillis;
     private final ObserverManager observerManager;
-    private boolean newMeasurmentAdded = false;
+    private final AtomicBoolean newMeasurmentAdded = new AtomicBoolean();
     private final Profiles profiles;
     private final String thermometerName;
-    private final DatabaseManager<Measurement> measurementDatabaseManager;
-    private final DatabaseManager<Humidity> humidityDatabaseManager;
+    private final AverageSink averageSink;
 
 
     public MeasurementAggregator(ObserverManager observerManager, Profiles profiles, String thermometerName, DatabaseManager<Measurement> measurementDatabaseManager, DatabaseManager<Humidity> humidityDatabaseManager) {
+        this(observerManager, profiles, thermometerName, new DirectAverageSink(measurementDatabaseManager, humidityDatabaseManager));
+    }
+
+    /**
+     * Construit un agrégateur qui confie la persistance des moyennes et des alertes au sink fourni.
+     *
+     * @param averageSink la destination des moyennes calculées.
+     */
+    public MeasurementAggregator(ObserverManager observerManager, Profiles profiles, String thermometerName, AverageSink averageSink) {
+        this(observerManager, profiles, thermometerName, averageSink, DEFAULT_PANE);
+    }
+
+    /**
+     * @param pane l'intervalle entre deux calculs, qui sert d'unité aux fenêtres plus longues.
+     */
+    public MeasurementAggregator(ObserverManager observerManager, Profiles profiles, String thermometerName, AverageSink averageSink, Duration pane) {
+        this.pane = pane;
         this.observerManager = observerManager;
         this.profiles = profiles;
         this.thermometerName = thermometerName;
-        this.measurementDatabaseManager = measurementDatabaseManager;
-        this.humidityDatabaseManager = humidityDatabaseManager;
+        this.averageSink = averageSink;
+    }
+
+    /**
+     * Ajoute une fenêtre calculée à partir des volets, en plus de la fenêtre de base.
+     *
+     * @param resolution la durée, le pas et les destinataires de la fenêtre ; durée et pas sont des multiples du volet.
+     */
+    public synchronized void addResolution(WindowResolution resolution) {
+        resolutions.add(new PaneWindow(resolution, pane, alertRules.newState()));
+    }
+
+    /**
+     * Remplace les règles d'alerte historiques, pour la fenêtre de base comme pour les fenêtres plus longues.
+     * Les règles sont compilées une fois ; chaque fenêtre repart sans alerte en cours.
+     *
+     * @param rules les règles à appliquer.
+     */
+    public synchronized void useAlertRules(List<AlertRule> rules) {
+        alertRules = new AlertRuleEngine(rules);
+        for (PaneWindow window : resolutions) {
+            window.setAlertRules(alertRules.newState());
+        }
+    }
+
+    /**
+     * Règle le débit des sources de mesures : à chaque calcul, l'agrégateur leur accorde {@code samplesPerPane}
+     * mesures de plus, sauf si le sink des moyennes est engorgé. Une source rapide ne dépasse donc jamais ce débit,
+     * et une base lente ralentit les sources au lieu de faire grossir les files.
+     *
+     * @param demand les crédits lus par les {@link ProbeSourceDriver}.
+     * @param samplesPerPane le nombre de mesures accordées par volet.
+     */
+    public void useDemand(SampleDemand demand, int samplesPerPane) {
+        this.samplesPerPane = samplesPerPane;
+        this.demand = demand;
+    }
+
+    /**
+     * Remplace l'horloge système, par exemple par l'heure rejouée d'une {@link ReplayProbeSource} : les volets,
+     * le filigrane et les retards suivent alors le temps de l'enregistrement, quelle que soit la vitesse de relecture.
+     *
+     * @param clock l'heure courante, en millisecondes depuis l'époque.
+     */
+    public void useClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Découpe les volets selon l'horodatage des mesures, à appeler avant la première mesure.
+     *
+     * <p>Un volet est calculé quand le filigrane dépasse sa fin. Les mesures arrivées pendant le retard admis
+     * sont notifiées comme corrections ({@link AverageMeasurementObserver#updateWindowCorrection(WindowStatistics)}),
+     * sans réécrire la moyenne déjà persistée ; les suivantes sont notifiées aux {@link LateSampleObserver}.</p>
+     *
+     * @param settings le retard toléré et le retard admis ; sans effet si le fenêtrage n'est pas activé.
+     */
+    public void enableEventTime(EventTimeSettings settings) {
+        if (settings.enabled()) {
+            eventTimeWindows = new EventTimeWindows(pane, settings);
+        }
     }
 
     /**
-     * Ajoute une nouvelle mesure à la liste des mesures.
+     * Ajoute une nouvelle mesure à la fenêtre courante.
      *
      * @param measurement la nouvelle mesure à ajouter.
      */
     public void addMeasurement(Measurement measurement) {
-        measurements.add(measurement);
-        newMeasurmentAdded = true;
-        notifyObservers(measurement.temperature());
-
+        addTemperatureSample(measurement.temperature(), toEpochMillis(measurement.timestamp()));
     }
 
     public void addHumidityMeasurement(Humidity humidity){
-        humidities.add(humidity);
-        newMeasurmentAdded = true;
-        notifyHumidityObservers(humidity.humidity());
+        addHumiditySample(humidity.humidity(), toEpochMillis(humidity.timestamp()));
+    }
+
+    /**
+     * Ajoute une mesure de température à la fenêtre courante sans créer d'objet.
+     *
+     * @param temperature la température mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    public void addTemperatureSample(double temperature, long epochMillis) {
+        EventTimeWindows windows = eventTimeWindows;
+        if (windows == null) {
+            temperatures.add(temperature, epochMillis);
+        } else if (!windows.add(MetricType.TEMPERATURE, temperature, epochMillis, clock.getAsLong())) {
+            observerManager.notifyLateSampleObservers(MetricType.TEMPERATURE, thermometerName, temperature, toLocalDateTime(epochMillis));
+        }
+        markNewMeasurement();
+        notifyObservers(temperature);
+    }
+
+    /**
+     * Ajoute une mesure d'humidité à la fenêtre courante sans créer d'objet.
+     *
+     * @param humidity l'humidité mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    public void addHumiditySample(double humidity, long epochMillis) {
+        EventTimeWindows windows = eventTimeWindows;
+        if (windows == null) {
+            humidities.add(humidity, epochMillis);
+        } else if (!windows.add(MetricType.HUMIDITY, humidity, epochMillis, clock.getAsLong())) {
+            observerManager.notifyLateSampleObservers(MetricType.HUMIDITY, thermometerName, humidity, toLocalDateTime(epochMillis));
+        }
+        markNewMeasurement();
+        notifyHumidityObservers(humidity);
     }
 
     /**
@@ -55,33 +197,121 @@ public class MeasurementAggregator implements Observer {
      *
      * @return la mesure moyenne ou null si aucune mesure n'est enregistrée.
      */
-    protected Measurement getAverageMeasurement() {
-        if (measurements.isEmpty()){
+    protected synchronized Measurement getAverageMeasurement() {
+        temperatures.drainTo(temperatureWindow);
+        if (temperatureWindow.isEmpty()){
             return null;
         }
+        Measurement average = new Measurement(thermometerName, temperatureWindow.average(), toLocalDateTime(temperatureWindow.firstEpochMillis()));
+        temperatureStatistics = temperatureWindow.statistics();
+        temperatureWindow.reset();
+        return average;
+    }
 
-        double sum = measurements.stream()
-                .mapToDouble(Measurement::temperature)
-                .sum();
+    protected synchronized Humidity getAverageHumidity(){
+        humidities.drainTo(humidityWindow);
+        if(humidityWindow.isEmpty()){
+            return null;
+        }
+        Humidity average = new Humidity(thermometerName, humidityWindow.average(), toLocalDateTime(humidityWindow.firstEpochMillis()));
+        humidityStatistics = humidityWindow.statistics();
+        humidityWindow.reset();
+        return average;
+    }
 
-        double average = sum / measurements.size();
+    /**
+     * Calcule les moyennes de température et d'humidité, puis signale au sink la fin du calcul :
+     * les deux moyennes et leurs alertes sont écrites dans la même transaction.
+     *
+     * <p>Le volet est clos même sans mesure, afin que les fenêtres plus longues gardent leur durée ;
+     * il faut donc appeler cette méthode à chaque intervalle.</p>
+     */
+    public void calculateAndNotifyAverages() {
+        calculateAndNotifyAverages(clock.getAsLong());
+    }
 
-        LocalDateTime firstTimestamp = measurements.get(0).timestamp();
-        String thermometerName = measurements.get(0).thermometerName();
-        measurements.clear();
-        return new Measurement(thermometerName,average, firstTimestamp);
+    void calculateAndNotifyAverages(long nowMillis) {
+        EventTimeWindows windows = eventTimeWindows;
+        if (windows != null) {
+            for (EventTimeWindows.Firing firing : windows.poll(nowMillis)) {
+                notifyEventTimeWindow(firing);
+            }
+        } else {
+            temperaturePane = null;
+            humidityPane = null;
+            calculateAndNotifyAverageTemperature();
+            calculateAndNotifyAverageHumidity();
+            closePane();
+        }
+        grantDemand();
     }
 
-    protected Humidity getAverageHumidity(){
-        if(humidities.isEmpty()){
-            return null;
+    private void grantDemand() {
+        SampleDemand sources = demand;
+        if (sources != null && !averageSink.isBackedUp()) {
+            sources.request(samplesPerPane);
+        }
+    }
+
+    private void notifyEventTimeWindow(EventTimeWindows.Firing firing) {
+        LocalDateTime start = toLocalDateTime(firing.start());
+        if (firing.correction()) {
+            if (firing.temperatures() != null) {
+                observerManager.notifyWindowCorrectionObservers(new WindowStatistics(MetricType.TEMPERATURE, thermometerName, start, firing.temperatures()));
+            }
+            if (firing.humidities() != null) {
+                observerManager.notifyWindowCorrectionObservers(new WindowStatistics(MetricType.HUMIDITY, thermometerName, start, firing.humidities()));
+            }
+            return;
+        }
+        temperaturePane = null;
+        humidityPane = null;
+        if (firing.temperatures() != null) {
+            notifyAverageTemperature(new Measurement(thermometerName, firing.temperatures().mean(), start), firing.temperatures());
+        }
+        if (firing.humidities() != null) {
+            notifyAverageHumidity(new Humidity(thermometerName, firing.humidities().mean(), start), firing.humidities());
+        }
+        closePane();
+    }
+
+    private void closePane() {
+        if (temperaturePane != null || humidityPane != null) {
+            averageSink.endTick();
+        }
+        for (PaneWindow window : resolutions) {
+            if (window.closePane(temperaturePane, humidityPane)) {
+                notifyResolution(window);
+            }
+        }
+    }
+
+    private void notifyResolution(PaneWindow window) {
+        WindowResolution resolution = window.resolution();
+        AverageSink sink = resolution.sink();
+        WindowStatistics temperature = window.statistics(MetricType.TEMPERATURE, thermometerName);
+        if (temperature != null) {
+            Measurement average = new Measurement(thermometerName, temperature.sketch().mean(), temperature.timestamp());
+            resolution.observers().notifyAverageTemperatureObservers(average);
+            resolution.observers().notifyWindowStatisticsObservers(temperature);
+            OptionalDouble alertDifference = checkAndTriggerTemperatureAlert(resolution.observers(), window.alertRules(), average);
+            if (sink != null) {
+                sink.submitTemperature(average, alertDifference, temperature.summary());
+            }
+        }
+        WindowStatistics humidity = window.statistics(MetricType.HUMIDITY, thermometerName);
+        if (humidity != null) {
+            Humidity average = new Humidity(thermometerName, humidity.sketch().mean(), humidity.timestamp());
+            resolution.observers().notifyAverageHumidityObservers(average);
+            resolution.observers().notifyWindowStatisticsObservers(humidity);
+            OptionalDouble alertDifference = checkAndTriggerHumidityAlert(resolution.observers(), window.alertRules(), average);
+            if (sink != null) {
+                sink.submitHumidity(average, alertDifference, humidity.summary());
+            }
+        }
+        if (sink != null && (temperature != null || humidity != null)) {
+            sink.endTick();
         }
-        double sum = humidities.stream().mapToDouble(Humidity::humidity).sum();
-        double average = sum / humidities.size();
-        LocalDateTime firstTimeStamp = humidities.get(0).timestamp();
-        String thermometerName = humidities.get(0).thermometerName();
-        humidities.clear();
-        return new Humidity(thermometerName,average, firstTimeStamp);
     }
 
     /**
@@ -90,64 +320,97 @@ public class MeasurementAggregator implements Observer {
     public void calculateAndNotifyAverageTemperature() {
         Measurement averageMeasurement = getAverageMeasurement();
         if (averageMeasurement != null) {
-            observerManager.notifyAverageTemperatureObservers(averageMeasurement);
-            DataMapper<Measurement> operation = new TemperatureMapper();
-            long measurementId = measurementDatabaseManager.executeOperation(operation, averageMeasurement);
-            checkAndTriggerTemperatureAlert(averageMeasurement, measurementId);
+            notifyAverageTemperature(averageMeasurement, temperatureStatistics);
         }
     }
 
+    private void notifyAverageTemperature(Measurement averageMeasurement, StatisticsSketch sketch) {
+        WindowStatistics statistics = new WindowStatistics(MetricType.TEMPERATURE, thermometerName, averageMeasurement.timestamp(), sketch);
+        observerManager.notifyAverageTemperatureObservers(averageMeasurement);
+        observerManager.notifyWindowStatisticsObservers(statistics);
+        OptionalDouble alertDifference = checkAndTriggerTemperatureAlert(observerManager, alertRules, averageMeasurement);
+        averageSink.submitTemperature(averageMeasurement, alertDifference, statistics.summary());
+        temperaturePane = new PaneWindow.Pane(sketch, averageMeasurement.timestamp());
+    }
+
     public void calculateAndNotifyAverageHumidity() {
         Humidity averageHumidity = getAverageHumidity();
         if (averageHumidity != null) {
-            observerManager.notifyAverageHumidityObservers(averageHumidity);
-            DataMapper<Humidity> operation = new HumidityMapper();
-            long humidityId = humidityDatabaseManager.executeOperation(operation, averageHumidity);
-            checkAndTriggerHumidityAlert(averageHumidity, humidityId);
+            notifyAverageHumidity(averageHumidity, humidityStatistics);
         }
+    }
 
+    private void notifyAverageHumidity(Humidity averageHumidity, StatisticsSketch sketch) {
+        WindowStatistics statistics = new WindowStatistics(MetricType.HUMIDITY, thermometerName, averageHumidity.timestamp(), sketch);
+        observerManager.notifyAverageHumidityObservers(averageHumidity);
+        observerManager.notifyWindowStatisticsObservers(statistics);
+        OptionalDouble alertDifference = checkAndTriggerHumidityAlert(observerManager, alertRules, averageHumidity);
+        averageSink.submitHumidity(averageHumidity, alertDifference, statistics.summary());
+        humidityPane = new PaneWindow.Pane(sketch, averageHumidity.timestamp());
     }
 
-    private void checkAndTriggerTemperatureAlert(Measurement averageMeasurement, long measurementId) {
+    /**
+     * Évalue les règles d'alerte de la température et notifie les alertes déclenchées aux observateurs donnés.
+     *
+     * @return l'écart à persister avec la moyenne, ou vide s'il n'y a pas d'alerte.
+     */
+    private OptionalDouble checkAndTriggerTemperatureAlert(ObserverManager observers, AlertRuleEngine rules, Measurement averageMeasurement) {
         double expectedTemperature = profiles.getExpectedTemperature(averageMeasurement.timestamp());
-        double difference = Math.abs(expectedTemperature - averageMeasurement.temperature());
-        if (difference > expectedTemperature * 0.1 && difference > 10) {
-            String alertType = averageMeasurement.temperature() > expectedTemperature ? "Surchauffe" : "Refroidissement";
-            AlertsTemperatureMapper alertsTemperatureMapper = new AlertsTemperatureMapper(measurementId, difference);
-            measurementDatabaseManager.executeOperation(alertsTemperatureMapper, averageMeasurement);
-            alertTriggeredTemperature(alertType, expectedTemperature, difference);
-        }
+        double difference = rules.evaluate(MetricType.TEMPERATURE, averageMeasurement.temperature(), expectedTemperature,
+                toRuleMillis(averageMeasurement.timestamp()), observers);
+        return Double.isNaN(difference) ? OptionalDouble.empty() : OptionalDouble.of(difference);
     }
 
-    private void checkAndTriggerHumidityAlert(Humidity averageHumidity, long humidityId) {
+    private OptionalDouble checkAndTriggerHumidityAlert(ObserverManager observers, AlertRuleEngine rules, Humidity averageHumidity) {
         double expectedHumidity = profiles.getExpectedHumidity(averageHumidity.timestamp());
-        double difference = Math.abs(expectedHumidity - averageHumidity.humidity());
-        if (difference > expectedHumidity * 0.1 && difference > 0.1) {
-            String alertType = averageHumidity.humidity() > expectedHumidity ? "Trop humide" : "Trop sec";
-            AlertsHumidityMapper alertsHumidityMapper = new AlertsHumidityMapper(humidityId, difference);
-            humidityDatabaseManager.executeOperation(alertsHumidityMapper, averageHumidity);
-            alertTriggeredHumidity(alertType, expectedHumidity, difference);
-        }
+        double difference = rules.evaluate(MetricType.HUMIDITY, averageHumidity.humidity(), expectedHumidity,
+                toRuleMillis(averageHumidity.timestamp()), observers);
+        return Double.isNaN(difference) ? OptionalDouble.empty() : OptionalDouble.of(difference);
+    }
+
+    // Les règles ne comparent que des écarts entre instants : un décalage fixe évite de passer par un fuseau
+    private static long toRuleMillis(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
     }
 
     public boolean hasNewMeasurement(){
-        boolean hasNew = newMeasurmentAdded;
-        newMeasurmentAdded = false;
-        return hasNew;
+        return newMeasurmentAdded.getAndSet(false);
+    }
+
+    private void markNewMeasurement() {
+        // Lecture d'abord : les producteurs n'écrivent l'indicateur partagé qu'une fois par fenêtre
+        if (!newMeasurmentAdded.get()) {
+            newMeasurmentAdded.set(true);
+        }
     }
 
+    // Point d'entrée unique des sondes : la mesure est comptée puis transmise une seule fois aux abonnés
     @Override
     public void updateTemperature(double temperature) {
-        Measurement measurement = new Measurement(thermometerName, temperature, LocalDateTime.now());
-        addMeasurement(measurement);
-        observerManager.notifyTemperatureObservers(temperature);
+        addTemperatureSample(temperature, clock.getAsLong());
     }
 
     @Override
     public void updateHumidity(double humidity) {
-        Humidity measurement = new Humidity(thermometerName,humidity, LocalDateTime.now());
-        addHumidityMeasurement(measurement);
-        observerManager.notifyHumidityObservers(humidity);
+        addHumiditySample(humidity, clock.getAsLong());
+    }
+
+    @Override
+    public void updateTemperature(double temperature, long epochMillis) {
+        addTemperatureSample(temperature, epochMillis);
+    }
+
+    @Override
+    public void updateHumidity(double humidity, long epochMillis) {
+        addHumiditySample(humidity, epochMillis);
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
 
 
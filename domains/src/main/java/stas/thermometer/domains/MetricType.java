@@ -0,0 +1,19 @@
+package stas.thermometer.domains;
+
+/**
+ * Grandeur mesurée par une sonde.
+ */
+public enum MetricType {
+    TEMPERATURE,
+    HUMIDITY;
+
+    /**
+     * Les humidités sont des fractions en mémoire et des pourcentages en base, comme dans la table {@code Humidity} :
+     * toutes les tables écrivent une grandeur multipliée par ce facteur.
+     *
+     * @return le facteur entre la valeur en mémoire et la valeur écrite en base.
+     */
+    public double storageScale() {
+        return this == HUMIDITY ? 100 : 1;
+    }
+}
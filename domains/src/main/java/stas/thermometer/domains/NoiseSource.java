@@ -0,0 +1,39 @@
+package stas.thermometer.domains;
+
+import java.util.SplittableRandom;
+
+/**
+ * Source du bruit ajouté aux valeurs simulées par les sondes.
+ *
+ * <p>Chaque sonde reçoit sa propre source, obtenue par {@link #split()} au démarrage : les tirages ne partagent
+ * aucun état entre sondes, n'allouent rien et ne prennent aucun verrou. Une source n'est pas partagée entre threads.
+ * Avec {@link #seeded(long)}, et des sondes créées dans le même ordre, une simulation rejoue exactement
+ * les mêmes erreurs de mesure.</p>
+ */
+public interface NoiseSource {
+
+    /**
+     * @return un tirage uniforme dans {@code [0, 1)}.
+     */
+    double nextDouble();
+
+    /**
+     * @return une source indépendante pour une autre sonde, déterminée par l'état de celle-ci.
+     */
+    NoiseSource split();
+
+    /**
+     * @param seed la graine de la simulation.
+     * @return une source déterministe.
+     */
+    static NoiseSource seeded(long seed) {
+        return new SplittableNoiseSource(new SplittableRandom(seed));
+    }
+
+    /**
+     * @return une source initialisée différemment à chaque exécution.
+     */
+    static NoiseSource random() {
+        return new SplittableNoiseSource(new SplittableRandom());
+    }
+}
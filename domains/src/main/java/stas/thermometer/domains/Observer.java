@@ -26,6 +26,26 @@ public interface Observer {
      */
     void updateHumidity(double humidity);
 
+    /**
+     * Met à jour la température observée, horodatée par la sonde au moment de la mesure.
+     *
+     * @param temperature la nouvelle valeur de température.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    default void updateTemperature(double temperature, long epochMillis) {
+        updateTemperature(temperature);
+    }
+
+    /**
+     * Met à jour l'humidité observée, horodatée par la sonde au moment de la mesure.
+     *
+     * @param humidity la nouvelle valeur d'humidité.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    default void updateHumidity(double humidity, long epochMillis) {
+        updateHumidity(humidity);
+    }
+
     /**
      * Ajoute un observateur à la liste des observateurs.
      *
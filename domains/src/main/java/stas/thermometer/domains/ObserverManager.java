@@ -1,35 +1,59 @@
 package stas.thermometer.domains;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Distribue les événements de l'agrégateur à leurs abonnés, chacun recevant chaque événement une seule fois.
+ *
+ * <p>Les mesures brutes, notifiées par les producteurs à chaque échantillon, sont distribuées à partir d'un tableau
+ * remplacé à chaque inscription : la diffusion ne prend pas de verrou et n'alloue rien.</p>
+ */
 public class ObserverManager {
-    private final List<Observer> temperatureObservers = new ArrayList<>();
+    private volatile Observer[] temperatureObservers = new Observer[0];
     private final List<AverageMeasurementObserver> averageObservers = new ArrayList<>();
     private final List<Observer> alertObservers = new ArrayList<>();
+    private final List<LateSampleObserver> lateSampleObservers = new ArrayList<>();
+    private final List<AnomalyObserver> anomalyObservers = new ArrayList<>();
 
-    public void addTemperatureObserver(Observer observer){
-        temperatureObservers.add(observer);
+    /**
+     * Abonne un observateur aux mesures brutes ; un observateur déjà abonné n'est pas ajouté une seconde fois.
+     */
+    public synchronized void addTemperatureObserver(Observer observer){
+        Observer[] observers = temperatureObservers;
+        if (!Arrays.asList(observers).contains(observer)) {
+            Observer[] extended = Arrays.copyOf(observers, observers.length + 1);
+            extended[observers.length] = observer;
+            temperatureObservers = extended;
+        }
     }
 
     public void addAlertObserver(Observer observer){
-        alertObservers.add(observer);
+        if (!alertObservers.contains(observer)) {
+            alertObservers.add(observer);
+        }
     }
 
     public void notifyTemperatureObservers(double temperature){
-        for(Observer observer : temperatureObservers){
-            observer.updateTemperature(temperature);
+        Observer[] observers = temperatureObservers;
+        for (int i = 0; i < observers.length; i++) {
+            observers[i].updateTemperature(temperature);
         }
     }
 
     public void notifyHumidityObservers(double humidity){
-        for(Observer observer : temperatureObservers){
-            observer.updateHumidity(humidity);
+        Observer[] observers = temperatureObservers;
+        for (int i = 0; i < observers.length; i++) {
+            observers[i].updateHumidity(humidity);
         }
     }
 
     public void addAverageObserver(AverageMeasurementObserver observer){
-        averageObservers.add(observer);
+        if (!averageObservers.contains(observer)) {
+            averageObservers.add(observer);
+        }
     }
 
     public void notifyAverageTemperatureObservers(Measurement averageMeasurement){
@@ -44,6 +68,40 @@ public class ObserverManager {
         }
     }
 
+    public void notifyWindowStatisticsObservers(WindowStatistics statistics){
+        for (AverageMeasurementObserver observer : averageObservers){
+            observer.updateWindowStatistics(statistics);
+        }
+    }
+
+    public void notifyWindowCorrectionObservers(WindowStatistics statistics){
+        for (AverageMeasurementObserver observer : averageObservers){
+            observer.updateWindowCorrection(statistics);
+        }
+    }
+
+    public void addLateSampleObserver(LateSampleObserver observer){
+        lateSampleObservers.add(observer);
+    }
+
+    public void notifyLateSampleObservers(MetricType type, String thermometerName, double value, LocalDateTime timestamp){
+        for (LateSampleObserver observer : lateSampleObservers){
+            observer.updateLateSample(type, thermometerName, value, timestamp);
+        }
+    }
+
+    public void addAnomalyObserver(AnomalyObserver observer){
+        if (!anomalyObservers.contains(observer)) {
+            anomalyObservers.add(observer);
+        }
+    }
+
+    public void notifyAnomalyObservers(Anomaly anomaly){
+        for (AnomalyObserver observer : anomalyObservers){
+            observer.updateAnomaly(anomaly);
+        }
+    }
+
     public void notifyTemperatureAlert(String alertType, double expectedTemperature, double difference) {
         for (Observer observer : alertObservers) {
             observer.alertTriggeredTemperature(alertType, expectedTemperature, difference);
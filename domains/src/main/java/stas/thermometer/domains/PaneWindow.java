@@ -0,0 +1,96 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Fenêtre glissante composée de volets : garde les résumés des derniers volets dans un anneau
+ * et les fusionne quand la fenêtre doit être émise, sans jamais relire les mesures.
+ *
+ * <p>Un volet sans mesure occupe sa place dans l'anneau, de sorte que la fenêtre couvre toujours
+ * la même durée. Utilisée uniquement par le thread qui calcule les moyennes.</p>
+ */
+final class PaneWindow {
+
+    private final WindowResolution resolution;
+    private AlertRuleEngine alertRules;
+    private final int panesPerSlide;
+    private final Pane[] temperatures;
+    private final Pane[] humidities;
+    private int next;
+    private long closedPanes;
+
+    PaneWindow(WindowResolution resolution, Duration pane, AlertRuleEngine alertRules) {
+        this.resolution = resolution;
+        this.alertRules = alertRules;
+        this.temperatures = new Pane[panes(resolution.range(), pane)];
+        this.humidities = new Pane[temperatures.length];
+        this.panesPerSlide = panes(resolution.slide(), pane);
+    }
+
+    WindowResolution resolution() {
+        return resolution;
+    }
+
+    /**
+     * @return l'évaluateur des alertes de cette fenêtre, dont l'état est indépendant des autres fenêtres.
+     */
+    AlertRuleEngine alertRules() {
+        return alertRules;
+    }
+
+    void setAlertRules(AlertRuleEngine alertRules) {
+        this.alertRules = alertRules;
+    }
+
+    /**
+     * Ajoute le volet qui vient d'être clos, en remplaçant le plus ancien.
+     *
+     * @param temperature les températures du volet, ou {@code null} s'il n'y en a pas eu.
+     * @param humidity les humidités du volet, ou {@code null}.
+     * @return vrai si la fenêtre doit être émise après ce volet.
+     */
+    boolean closePane(Pane temperature, Pane humidity) {
+        temperatures[next] = temperature;
+        humidities[next] = humidity;
+        next = (next + 1) % temperatures.length;
+        closedPanes++;
+        return closedPanes >= temperatures.length && closedPanes % panesPerSlide == 0;
+    }
+
+    /**
+     * Fusionne les volets de la fenêtre pour une grandeur.
+     *
+     * @return les statistiques de la fenêtre, ou {@code null} si aucun de ses volets n'a de mesure.
+     */
+    WindowStatistics statistics(MetricType type, String thermometerName) {
+        Pane[] panes = type == MetricType.TEMPERATURE ? temperatures : humidities;
+        StatisticsSketch sketch = new StatisticsSketch();
+        LocalDateTime start = null;
+        for (Pane pane : panes) {
+            if (pane != null) {
+                sketch.merge(pane.sketch());
+                if (start == null || pane.start().isBefore(start)) {
+                    start = pane.start();
+                }
+            }
+        }
+        return start == null ? null : new WindowStatistics(type, thermometerName, start, sketch);
+    }
+
+    private static int panes(Duration length, Duration pane) {
+        if (length.toMillis() % pane.toMillis() != 0) {
+            throw new IllegalArgumentException("La fenêtre de " + length.toMillis() + " ms n'est pas un multiple du volet");
+        }
+        return (int) (length.toMillis() / pane.toMillis());
+    }
+
+    /**
+     * Résumé d'un volet clos, qui n'est plus modifié.
+     *
+     * @param sketch les statistiques des mesures du volet.
+     * @param start l'instant de la première mesure du volet.
+     */
+    record Pane(StatisticsSketch sketch, LocalDateTime start) {
+    }
+}
@@ -0,0 +1,62 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * Moyenne en attente d'écriture, accompagnée de l'écart de l'alerte qu'elle a déclenchée s'il y en a une
+ * et des statistiques des mesures de sa fenêtre si elles sont connues.
+ *
+ * @param type la grandeur moyennée.
+ * @param thermometerName le nom du thermomètre.
+ * @param value la valeur moyenne.
+ * @param timestamp l'horodatage de la moyenne.
+ * @param alertDifference l'écart à l'origine d'une alerte, ou vide.
+ * @param statistics les statistiques de la fenêtre, ou vide.
+ * @param id la clé primaire attribuée côté client à la première tentative d'écriture, ou 0 tant qu'elle ne l'est pas.
+ */
+public record PendingAverage(MetricType type, String thermometerName, double value, LocalDateTime timestamp,
+                             OptionalDouble alertDifference, Optional<StatisticsSummary> statistics, long id) {
+
+    public PendingAverage(MetricType type, String thermometerName, double value, LocalDateTime timestamp,
+                          OptionalDouble alertDifference) {
+        this(type, thermometerName, value, timestamp, alertDifference, Optional.empty());
+    }
+
+    public PendingAverage(MetricType type, String thermometerName, double value, LocalDateTime timestamp,
+                          OptionalDouble alertDifference, Optional<StatisticsSummary> statistics) {
+        this(type, thermometerName, value, timestamp, alertDifference, statistics, 0);
+    }
+
+    public static PendingAverage of(Measurement average, OptionalDouble alertDifference) {
+        return new PendingAverage(MetricType.TEMPERATURE, average.thermometerName(), average.temperature(), average.timestamp(), alertDifference);
+    }
+
+    public static PendingAverage of(Humidity average, OptionalDouble alertDifference) {
+        return new PendingAverage(MetricType.HUMIDITY, average.thermometerName(), average.humidity(), average.timestamp(), alertDifference);
+    }
+
+    public PendingAverage withStatistics(StatisticsSummary statistics) {
+        return new PendingAverage(type, thermometerName, value, timestamp, alertDifference, Optional.of(statistics), id);
+    }
+
+    public PendingAverage withId(long id) {
+        return new PendingAverage(type, thermometerName, value, timestamp, alertDifference, statistics, id);
+    }
+
+    /**
+     * @return vrai si une clé a déjà été attribuée, donc si la moyenne a peut-être déjà été écrite.
+     */
+    public boolean hasId() {
+        return id != 0;
+    }
+
+    public Measurement toMeasurement() {
+        return new Measurement(thermometerName, value, timestamp);
+    }
+
+    public Humidity toHumidity() {
+        return new Humidity(thermometerName, value, timestamp);
+    }
+}
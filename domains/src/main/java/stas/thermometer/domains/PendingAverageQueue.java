@@ -0,0 +1,42 @@
+package stas.thermometer.domains;
+
+import java.util.List;
+
+/**
+ * File ordonnée des moyennes en attente d'écriture dans la base.
+ *
+ * <p>Les moyennes sont lues avec {@link #peek(int)} puis retirées avec {@link #acknowledge(int)}
+ * une fois la transaction validée : une écriture qui échoue laisse la file intacte.</p>
+ */
+public interface PendingAverageQueue {
+
+    void append(PendingAverage average);
+
+    /**
+     * @param max le nombre maximal de moyennes à lire.
+     * @return les plus anciennes moyennes en attente, dans leur ordre d'arrivée.
+     */
+    List<PendingAverage> peek(int max);
+
+    /**
+     * Mémorise les clés attribuées aux plus anciennes moyennes, avant la transaction qui les écrit. Une moyenne
+     * relue après un commit dont l'acquittement a été perdu garde ainsi sa clé, et l'écriture la reconnaît.
+     *
+     * @param identified les moyennes rendues par {@link #peek(int)}, dans le même ordre, avec leur clé.
+     */
+    void assignIds(List<PendingAverage> identified);
+
+    /**
+     * Retire les {@code count} plus anciennes moyennes, désormais écrites.
+     *
+     * @param count le nombre de moyennes écrites.
+     */
+    void acknowledge(int count);
+
+    int size();
+
+    /**
+     * @return l'instant ({@link System#nanoTime()}) auquel la plus ancienne moyenne en attente est arrivée.
+     */
+    long oldestPendingNanos();
+}
@@ -0,0 +1,28 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+
+/**
+ * Paramètres du regroupement des écritures en base ({@link WriteBehindSink}).
+ *
+ * @param ticksPerCommit nombre de calculs de moyennes regroupés dans une même transaction.
+ * @param maxBatchSize nombre maximal de moyennes écrites par transaction.
+ * @param maxLatency durée d'attente maximale d'une moyenne avant son écriture.
+ */
+public record PersistenceSettings(int ticksPerCommit, int maxBatchSize, Duration maxLatency) {
+
+    public PersistenceSettings {
+        if (ticksPerCommit <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Le regroupement des écritures doit porter sur au moins un élément");
+        }
+    }
+
+    /**
+     * Une transaction toutes les 5 moyennes calculées (10 secondes), et au plus 10 secondes d'attente.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static PersistenceSettings defaults() {
+        return new PersistenceSettings(5, 100, Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,32 @@
+package stas.thermometer.domains;
+
+/**
+ * Instantané des compteurs d'un {@link ConnectionPool}.
+ *
+ * @param active connexions actuellement empruntées.
+ * @param idle connexions ouvertes disponibles dans le pool.
+ * @param created connexions physiques ouvertes depuis la création du pool.
+ * @param destroyed connexions physiques fermées (expirées, invalides ou évincées).
+ * @param borrowed nombre total d'emprunts réussis.
+ * @param validationFailures connexions rejetées par la validation à l'emprunt.
+ * @param statementHits requêtes préparées servies par le {@link StatementCache} d'une connexion.
+ * @param statementMisses requêtes préparées absentes du cache, donc analysées par la base.
+ */
+public record PoolMetrics(int active, int idle, long created, long destroyed, long borrowed, long validationFailures,
+                          long statementHits, long statementMisses) {
+
+    /**
+     * @return la part des emprunts servis par une connexion déjà ouverte.
+     */
+    public double reuseRatio() {
+        return borrowed == 0 ? 0 : 1.0 - (double) created / borrowed;
+    }
+
+    /**
+     * @return la part des requêtes préparées servies par le cache.
+     */
+    public double statementHitRatio() {
+        long requests = statementHits + statementMisses;
+        return requests == 0 ? 0 : (double) statementHits / requests;
+    }
+}
@@ -0,0 +1,32 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+
+/**
+ * Paramètres du pool de connexions partagé par les {@link DatabaseManager}.
+ *
+ * @param maxSize nombre maximal de connexions ouvertes simultanément (actives + inactives).
+ * @param borrowTimeout temps d'attente maximal pour obtenir une connexion lorsque le pool est plein.
+ * @param idleTimeout durée au-delà de laquelle une connexion inactive est fermée.
+ * @param maxLifetime durée de vie maximale d'une connexion, quelle que soit son utilisation.
+ * @param validationTimeoutSeconds délai accordé à {@code Connection.isValid} lors de l'emprunt.
+ */
+public record PoolSettings(int maxSize, Duration borrowTimeout, Duration idleTimeout, Duration maxLifetime,
+                           int validationTimeoutSeconds) {
+
+    public PoolSettings {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("La taille du pool doit être positive");
+        }
+    }
+
+    /**
+     * Valeurs par défaut adaptées à un thermomètre : quelques connexions suffisent
+     * pour les écritures périodiques et les vérifications de connexion.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static PoolSettings defaults() {
+        return new PoolSettings(4, Duration.ofSeconds(5), Duration.ofMinutes(5), Duration.ofMinutes(30), 2);
+    }
+}
@@ -0,0 +1,205 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flotte de sondes simulées pour les tests de charge, échantillonnées par des roues de temporisation hachées.
+ *
+ * <p>Plutôt qu'une tâche planifiée par sonde, chaque thread d'un petit groupe fixe pilote une {@link TimerWheel}
+ * qui contient sa part des sondes : un cran ne parcourt que les sondes de son emplacement, et aucune file
+ * ni verrou n'est partagé entre threads. Le premier échantillonnage de chaque sonde est décalé dans sa période
+ * pour étaler la charge.</p>
+ *
+ * <p>En mode {@link ThreadMode#VIRTUAL}, chaque sonde a au contraire sa propre boucle sur un thread virtuel,
+ * qui dort jusqu'à son échéance : le nombre de sondes n'est plus limité par la taille d'un groupe de threads.</p>
+ *
+ * <p>La flotte mesure le débit d'échantillonnage obtenu et le retard des crans sur leur échéance : un retard
+ * qui croît indique que les threads ne suivent plus la charge demandée.</p>
+ *
+ * <p>Un échantillonnage qui lève une exception est compté comme échec ; la sonde reste planifiée et le thread
+ * continue de piloter les autres.</p>
+ */
+public class ProbeFleet implements AutoCloseable {
+
+    private final FleetSettings settings;
+    private final long tickNanos;
+    private final ThreadMode mode;
+    private final TimerWheel[] wheels;
+    private final List<Member> members = new ArrayList<>();
+    private final ExecutorService pool;
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder latenessNanos = new LongAdder();
+    private final AtomicLong maxLatenessNanos = new AtomicLong();
+    private volatile int probes;
+    private volatile boolean started;
+    private volatile boolean running;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+
+    /**
+     * @param settings la résolution et la taille des roues, et le nombre de threads.
+     */
+    public ProbeFleet(FleetSettings settings) {
+        this(settings, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * @param settings la résolution et la taille des roues, et le nombre de threads.
+     * @param mode {@link ThreadMode#PLATFORM} pour des roues réparties sur {@code threads} threads,
+     *             {@link ThreadMode#VIRTUAL} pour un thread virtuel par sonde.
+     */
+    public ProbeFleet(FleetSettings settings, ThreadMode mode) {
+        this.settings = settings;
+        this.mode = mode;
+        this.tickNanos = settings.tick().toNanos();
+        if (mode == ThreadMode.VIRTUAL) {
+            this.wheels = new TimerWheel[0];
+            this.pool = Executors.newThreadPerTaskExecutor(mode.factory("stas-fleet"));
+        } else {
+            this.wheels = new TimerWheel[settings.threads()];
+            for (int i = 0; i < wheels.length; i++) {
+                wheels[i] = new TimerWheel(settings.wheelSize());
+            }
+            this.pool = Executors.newFixedThreadPool(settings.threads(), mode.factory("stas-fleet"));
+        }
+    }
+
+    /**
+     * Ajoute une sonde à la flotte, avant son démarrage.
+     *
+     * @param sampling l'échantillonnage de la sonde, par exemple une {@link RefreshProbeTask}.
+     * @param period la période d'échantillonnage, arrondie au cran de la roue.
+     */
+    public synchronized void add(Runnable sampling, Duration period) {
+        if (started) {
+            throw new IllegalStateException("Les sondes doivent être ajoutées avant le démarrage de la flotte");
+        }
+        long periodTicks = Math.max(1, Math.round((double) period.toNanos() / tickNanos));
+        // Répartition des sondes entre les roues, et de leurs échéances dans leur période
+        long firstTick = 1 + probes % periodTicks;
+        if (mode == ThreadMode.VIRTUAL) {
+            members.add(new Member(sampling, periodTicks, firstTick));
+        } else {
+            wheels[probes % wheels.length].schedule(sampling, periodTicks, firstTick);
+        }
+        probes++;
+    }
+
+    /**
+     * Démarre l'échantillonnage : chaque thread avance sa roue d'un cran à chaque échéance.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        running = true;
+        startNanos = System.nanoTime();
+        for (TimerWheel wheel : wheels) {
+            pool.execute(() -> drive(wheel));
+        }
+        for (Member member : members) {
+            pool.execute(() -> loop(member));
+        }
+    }
+
+    /**
+     * @return le débit d'échantillonnage et le retard des crans depuis le démarrage.
+     */
+    public FleetMetrics getMetrics() {
+        long sampleCount = samples.sum();
+        long tickCount = ticks.sum();
+        double elapsedSeconds = !started ? 0 : ((running ? System.nanoTime() : stopNanos) - startNanos) / 1e9;
+        return new FleetMetrics(probes, sampleCount, failures.sum(),
+                elapsedSeconds > 0 ? sampleCount / elapsedSeconds : 0,
+                tickCount,
+                tickCount > 0 ? latenessNanos.sum() / 1e6 / tickCount : 0,
+                maxLatenessNanos.get() / 1e6);
+    }
+
+    /**
+     * Arrête l'échantillonnage après le cran en cours.
+     */
+    @Override
+    public synchronized void close() {
+        if (running) {
+            running = false;
+            stopNanos = System.nanoTime();
+        }
+        pool.shutdown();
+        try {
+            // Une sonde virtuelle endormie ne voit l'arrêt qu'à son échéance suivante
+            if (!pool.awaitTermination(settings.maxPeriod().toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drive(TimerWheel wheel) {
+        long start = startNanos;
+        long tick = 0;
+        while (running) {
+            tick++;
+            long deadline = start + tick * tickNanos;
+            long wait;
+            while ((wait = deadline - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                return;
+            }
+            // Un cran en retard est traité aussitôt, sans attente : les sondes gardent leur période moyenne
+            long lateness = -wait;
+            latenessNanos.add(lateness);
+            maxLatenessNanos.accumulateAndGet(lateness, Math::max);
+            ticks.increment();
+            long failed = wheel.failures();
+            int fired = wheel.advance(tick);
+            failed = wheel.failures() - failed;
+            samples.add(fired - failed);
+            failures.add(failed);
+        }
+    }
+
+    private void loop(Member member) {
+        long start = startNanos;
+        long tick = member.firstTick;
+        while (running) {
+            long deadline = start + tick * tickNanos;
+            long wait;
+            while ((wait = deadline - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                return;
+            }
+            long lateness = -wait;
+            latenessNanos.add(lateness);
+            maxLatenessNanos.accumulateAndGet(lateness, Math::max);
+            ticks.increment();
+            try {
+                member.sampling.run();
+                samples.increment();
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+            tick += member.periodTicks;
+        }
+    }
+
+    private record Member(Runnable sampling, long periodTicks, long firstTick) {
+    }
+}
@@ -0,0 +1,31 @@
+package stas.thermometer.domains;
+
+import java.io.IOException;
+
+/**
+ * Source de mesures d'une sonde : courbe simulée, fichier, tube nommé ou socket local.
+ *
+ * <p>La source est tirée par le consommateur, jamais poussée : elle ne lit ou ne produit pas plus de mesures
+ * que ce qui lui est demandé à chaque appel de {@link #poll(int, SampleConsumer)}. Tant que le consommateur
+ * ne demande rien, une source adossée à un fichier ou à un socket laisse les données dans le système
+ * d'exploitation, et l'émetteur est freiné par le contrôle de flux du tube ou de TCP.</p>
+ *
+ * <p>Une source est lue par un seul thread ; seule {@link #close()} peut être appelée depuis un autre thread,
+ * pour débloquer une lecture en cours.</p>
+ */
+public interface ProbeSource extends AutoCloseable {
+
+    /**
+     * Remet au plus {@code max} mesures au consommateur. Bloque jusqu'à ce qu'au moins une mesure soit
+     * disponible, puis remet sans attendre celles qui le sont déjà.
+     *
+     * @param max le nombre maximal de mesures demandées, au moins 1.
+     * @param consumer le destinataire des mesures.
+     * @return le nombre de mesures remises, ou -1 si la source est épuisée ou fermée.
+     * @throws IOException si la lecture échoue.
+     */
+    int poll(int max, SampleConsumer consumer) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,124 @@
+package stas.thermometer.domains;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lit une {@link ProbeSource} sur un thread dédié et transmet ses mesures à un observateur, typiquement
+ * le {@link MeasurementAggregator}, au rythme de la {@link SampleDemand}.
+ *
+ * <p>Avant chaque lecture, le lecteur prend des crédits : sans crédit, il attend au lieu de lire. Une source
+ * rapide ne peut donc pas dépasser le débit accordé par l'aval, et un aval lent freine la source au lieu
+ * d'accumuler les mesures en mémoire.</p>
+ */
+public class ProbeSourceDriver implements AutoCloseable {
+
+    // Nombre maximal de mesures lues par appel à la source
+    private static final int BATCH = 64;
+
+    private final ProbeSource source;
+    private final SampleDemand demand;
+    private final ThreadFactory threads;
+    private final SampleConsumer consumer;
+    private final AtomicLong samples = new AtomicLong();
+    private volatile boolean running;
+    private volatile Exception failure;
+    private Thread reader;
+
+    /**
+     * @param source la source à lire.
+     * @param demand les crédits accordés par l'aval.
+     * @param target le destinataire des mesures.
+     * @param threads la fabrique du thread de lecture, par exemple {@link ThreadMode#factory(String)}.
+     */
+    public ProbeSourceDriver(ProbeSource source, SampleDemand demand, Observer target, ThreadFactory threads) {
+        this.source = source;
+        this.demand = demand;
+        this.threads = threads;
+        this.consumer = (type, value, epochMillis) -> {
+            if (type == MetricType.TEMPERATURE) {
+                target.updateTemperature(value, epochMillis);
+            } else {
+                target.updateHumidity(value, epochMillis);
+            }
+        };
+    }
+
+    /**
+     * Démarre la lecture de la source.
+     */
+    public synchronized void start() {
+        if (reader != null) {
+            return;
+        }
+        running = true;
+        reader = threads.newThread(this::readLoop);
+        reader.start();
+    }
+
+    /**
+     * @return le nombre de mesures transmises.
+     */
+    public long getSamples() {
+        return samples.get();
+    }
+
+    /**
+     * @return l'erreur qui a arrêté la lecture, ou {@code null}.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return vrai tant que la source n'est ni épuisée, ni en échec, ni fermée.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Arrête la lecture et ferme la source.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        try {
+            source.close();
+        } catch (IOException e) {
+            failure = e;
+        }
+        if (reader != null) {
+            reader.interrupt();
+            try {
+                reader.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (running) {
+                int credits = (int) demand.acquire(BATCH);
+                int read = source.poll(credits, consumer);
+                if (read < 0) {
+                    break;
+                }
+                samples.addAndGet(read);
+                demand.release(credits - read);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            // Une source fermée pendant une lecture bloquée n'est pas une erreur
+            if (running) {
+                failure = e;
+            }
+        } finally {
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package stas.thermometer.domains;
+
+/**
+ * Origine des mesures du thermomètre et débit accordé aux sources.
+ *
+ * @param type la nature de la source.
+ * @param location le chemin du fichier, du tube nommé ou de l'enregistrement rejoué, ou {@code hôte:port} du socket ;
+ *                 ignoré pour la source simulée.
+ * @param samplesPerPane le nombre de mesures accordées aux sources à chaque calcul des moyennes.
+ * @param recording le fichier où enregistrer les mesures tirées de la source, ou {@code null} pour ne pas enregistrer.
+ * @param replaySpeed le facteur de vitesse d'une relecture, {@link Double#POSITIVE_INFINITY} pour rejouer au plus vite.
+ */
+public record ProbeSourceSettings(Type type, String location, int samplesPerPane, String recording, double replaySpeed) {
+
+    public ProbeSourceSettings {
+        if (type != Type.SIMULATED && (location == null || location.isBlank())) {
+            throw new IllegalArgumentException("La source " + type + " doit préciser son emplacement");
+        }
+        if (samplesPerPane <= 0) {
+            throw new IllegalArgumentException("Le débit accordé aux sources doit être positif");
+        }
+        if (!(replaySpeed > 0)) {
+            throw new IllegalArgumentException("La vitesse de relecture doit être positive");
+        }
+    }
+
+    /**
+     * Sondes simulées, avec 1000 mesures accordées par volet, sans enregistrement ; une relecture se fait en temps réel.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static ProbeSourceSettings defaults() {
+        return new ProbeSourceSettings(Type.SIMULATED, null, 1000, null, 1);
+    }
+
+    /**
+     * @return vrai si les mesures tirées de la source sont enregistrées.
+     */
+    public boolean isRecording() {
+        return recording != null && !recording.isBlank();
+    }
+
+    /**
+     * Nature d'une source de mesures.
+     */
+    public enum Type {
+        /**
+         * Sondes simulées à partir du profil.
+         */
+        SIMULATED,
+        /**
+         * Fichier ou tube nommé de mesures texte.
+         */
+        FILE,
+        /**
+         * Socket local de mesures texte.
+         */
+        SOCKET,
+        /**
+         * Enregistrement binaire d'un {@link SampleRecorder}, rejoué par {@link ReplayProbeSource}.
+         */
+        REPLAY
+    }
+}
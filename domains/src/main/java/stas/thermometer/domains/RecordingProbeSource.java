@@ -0,0 +1,41 @@
+package stas.thermometer.domains;
+
+import java.io.IOException;
+
+/**
+ * Source qui transmet les mesures d'une autre source en les copiant dans un {@link SampleRecorder}.
+ *
+ * <p>Seules les mesures effectivement tirées sont enregistrées : la relecture reproduit le flux reçu par
+ * l'agrégateur, horodatages compris.</p>
+ */
+public class RecordingProbeSource implements ProbeSource {
+
+    private final ProbeSource source;
+    private final SampleRecorder recorder;
+
+    /**
+     * @param source la source enregistrée.
+     * @param recorder la destination de la copie, fermée avec la source.
+     */
+    public RecordingProbeSource(ProbeSource source, SampleRecorder recorder) {
+        this.source = source;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public int poll(int max, SampleConsumer consumer) throws IOException {
+        return source.poll(max, (type, value, epochMillis) -> {
+            recorder.accept(type, value, epochMillis);
+            consumer.accept(type, value, epochMillis);
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            recorder.close();
+        }
+    }
+}
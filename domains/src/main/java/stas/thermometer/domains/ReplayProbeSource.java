@@ -0,0 +1,190 @@
+package stas.thermometer.domains;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Source qui rejoue un enregistrement de {@link SampleRecorder}, pour reproduire un incident ou mesurer l'effet d'une
+ * modification sur un flux réel.
+ *
+ * <p>Le fichier est projeté en mémoire ({@link MappedByteBuffer}) par tranches : les mesures sont lues directement
+ * dans le cache de pages du système, sans copie ni allocation. Elles gardent l'horodatage enregistré.</p>
+ *
+ * <p>À vitesse finie, une mesure est remise quand le temps écoulé depuis le début de la relecture, multiplié par la
+ * vitesse, atteint son écart à la première mesure : {@code 1} rejoue en temps réel, {@code 10} dix fois plus vite.
+ * À vitesse infinie, les mesures sont remises aussi vite que l'aval les demande. {@link #currentMillis()} donne
+ * l'heure de l'enregistrement à l'instant présent, à fournir à {@link MeasurementAggregator#useClock} pour que
+ * filigrane et retards soient mesurés dans le temps rejoué.</p>
+ */
+public class ReplayProbeSource implements ProbeSource {
+
+    // Plus grand nombre d'enregistrements projetés à la fois, pour rester sous la limite d'une projection
+    private static final long CHUNK_RECORDS = (Integer.MAX_VALUE / SampleRecorder.RECORD_SIZE) & ~0xFFFL;
+    private static final MetricType[] METRICS = MetricType.values();
+
+    private final FileChannel channel;
+    private final long count;
+    private final double speed;
+    private final boolean paced;
+    private final long firstMillis;
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private volatile long next;
+    private long startNanos;
+    private volatile long lastMillis;
+    // Instant de la fin de la relecture ; l'heure rejouée avance ensuite au rythme réel
+    private volatile long endNanos;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    private ReplayProbeSource(FileChannel channel, long count, double speed) throws IOException {
+        this.channel = channel;
+        this.count = count;
+        this.speed = speed;
+        this.paced = speed != Double.POSITIVE_INFINITY;
+        this.firstMillis = count > 0 ? recordAt(0).getLong(0) : System.currentTimeMillis();
+        this.lastMillis = firstMillis;
+    }
+
+    /**
+     * Ouvre un enregistrement.
+     *
+     * @param path le fichier écrit par un {@link SampleRecorder}.
+     * @param speed le facteur de vitesse, ou {@link Double#POSITIVE_INFINITY} pour rejouer au plus vite.
+     * @return la source, positionnée sur la première mesure.
+     * @throws IOException si le fichier ne peut être lu ou n'est pas un enregistrement.
+     */
+    public static ReplayProbeSource open(Path path, double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("La vitesse de relecture doit être positive");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, SampleRecorder.HEADER_SIZE));
+            if (size < SampleRecorder.HEADER_SIZE || header.getInt(0) != SampleRecorder.MAGIC) {
+                throw new IOException("Le fichier n'est pas un enregistrement de mesures : " + path);
+            }
+            if (header.getInt(4) != SampleRecorder.VERSION) {
+                throw new IOException("Version d'enregistrement non prise en charge : " + header.getInt(4));
+            }
+            // Un dernier enregistrement incomplet est ignoré
+            long count = (size - SampleRecorder.HEADER_SIZE) / SampleRecorder.RECORD_SIZE;
+            return new ReplayProbeSource(channel, count, speed);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int poll(int max, SampleConsumer consumer) throws IOException {
+        if (closed) {
+            return -1;
+        }
+        if (next >= count) {
+            if (endNanos == 0) {
+                endNanos = System.nanoTime();
+            }
+            return -1;
+        }
+        if (!started) {
+            startNanos = System.nanoTime();
+            started = true;
+        }
+        // Position publiée une fois par lot ; l'heure l'est à chaque mesure, car l'aval la lit comme instant d'arrivée
+        long index = next;
+        int read = 0;
+        try {
+            while (read < max && index < count) {
+                MappedByteBuffer buffer = recordAt(index);
+                int offset = (int) ((index - chunkStart) * SampleRecorder.RECORD_SIZE);
+                long epochMillis = buffer.getLong(offset);
+                if (paced) {
+                    long wait = dueNanos(epochMillis) - System.nanoTime();
+                    if (wait > 0) {
+                        if (read > 0) {
+                            break;
+                        }
+                        LockSupport.parkNanos(wait);
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException("Relecture interrompue");
+                        }
+                        if (closed) {
+                            return -1;
+                        }
+                        continue;
+                    }
+                }
+                int metric = buffer.get(offset + Long.BYTES);
+                if (metric < 0 || metric >= METRICS.length) {
+                    throw new IOException("Enregistrement illisible à la position " + index);
+                }
+                lastMillis = epochMillis;
+                consumer.accept(METRICS[metric], buffer.getDouble(offset + Long.BYTES + 1), epochMillis);
+                index++;
+                read++;
+            }
+        } finally {
+            next = index;
+        }
+        return read;
+    }
+
+    /**
+     * Heure de l'enregistrement correspondant à l'instant présent : l'heure de la première mesure avant la relecture,
+     * puis le temps rejoué (ou, au plus vite, l'heure de la dernière mesure remise), puis, une fois l'enregistrement
+     * épuisé, l'heure de la dernière mesure augmentée du temps écoulé depuis la fin.
+     *
+     * @return l'heure rejouée, en millisecondes depuis l'époque.
+     */
+    public long currentMillis() {
+        long end = endNanos;
+        if (end != 0) {
+            return lastMillis + (System.nanoTime() - end) / 1_000_000;
+        }
+        if (!started || !paced) {
+            return lastMillis;
+        }
+        return firstMillis + (long) ((System.nanoTime() - startNanos) / 1_000_000.0 * speed);
+    }
+
+    /**
+     * @return le nombre de mesures de l'enregistrement.
+     */
+    public long getRecordCount() {
+        return count;
+    }
+
+    /**
+     * @return le nombre de mesures déjà remises.
+     */
+    public long getReplayedCount() {
+        return next;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    private long dueNanos(long epochMillis) {
+        return startNanos + (long) ((epochMillis - firstMillis) * 1_000_000.0 / speed);
+    }
+
+    private MappedByteBuffer recordAt(long index) throws IOException {
+        if (chunk == null || index < chunkStart || index >= chunkStart + CHUNK_RECORDS) {
+            chunkStart = index - index % CHUNK_RECORDS;
+            long records = Math.min(CHUNK_RECORDS, count - chunkStart);
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                    SampleRecorder.HEADER_SIZE + chunkStart * SampleRecorder.RECORD_SIZE, records * SampleRecorder.RECORD_SIZE);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,219 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Purge en tâche de fond des moyennes d'un thermomètre plus anciennes que la durée de rétention.
+ *
+ * <p>Les lignes sont supprimées par petits lots, chacun dans sa propre transaction courte : la borne
+ * de chaque lot est l'horodatage de la {@code chunkSize}-ième moyenne expirée, lue sur l'index
+ * {@code (thermometer_name, timestamp)}. Les statistiques de fenêtre et les alertes d'un lot sont supprimées
+ * avant leurs moyennes, dans la même transaction.
+ * Entre deux lots, le thread de purge attend au moins la durée du lot précédent, de sorte qu'il n'occupe
+ * jamais la base plus de la moitié du temps ; il s'arrête dès que le disjoncteur n'est plus fermé.</p>
+ */
+public class RetentionService implements AutoCloseable {
+
+    private static final Target[] TARGETS = {
+            new Target(TemperatureMapper.TABLE, AlertsTemperatureMapper.TABLE, "temperature_id", MetricType.TEMPERATURE),
+            new Target(HumidityMapper.TABLE, AlertsHumidityMapper.TABLE, "humidity_id", MetricType.HUMIDITY)
+    };
+
+    private final DatabaseManager<?> databaseManager;
+    private final String thermometerName;
+    private final RetentionSettings settings;
+    private final AtomicLong deletedRows = new AtomicLong();
+    private final ThreadFactory threads;
+    private ScheduledExecutorService executor;
+    private volatile boolean statisticsTableReady;
+
+    /**
+     * @param databaseManager le gestionnaire utilisé pour les suppressions.
+     * @param thermometerName le thermomètre dont les moyennes sont purgées.
+     * @param settings la durée de rétention et le rythme de la purge.
+     */
+    public RetentionService(DatabaseManager<?> databaseManager, String thermometerName, RetentionSettings settings) {
+        this(databaseManager, thermometerName, settings, runnable -> {
+            Thread thread = new Thread(runnable, "stas-retention");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * @param databaseManager le gestionnaire utilisé pour les suppressions.
+     * @param thermometerName le thermomètre dont les moyennes sont purgées.
+     * @param settings la durée de rétention et le rythme de la purge.
+     * @param threads la fabrique du thread de purge, par exemple {@link ThreadMode#factory(String)}.
+     */
+    public RetentionService(DatabaseManager<?> databaseManager, String thermometerName, RetentionSettings settings,
+                            ThreadFactory threads) {
+        this.threads = threads;
+        this.databaseManager = databaseManager;
+        this.thermometerName = thermometerName;
+        this.settings = settings;
+    }
+
+    /**
+     * Démarre la purge périodique sur un thread dédié, sauf si la rétention est désactivée.
+     */
+    public synchronized void start() {
+        if (!settings.isEnabled() || executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(threads);
+        long intervalMillis = settings.interval().toMillis();
+        executor.scheduleWithFixedDelay(this::purgeSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Supprime les moyennes plus anciennes que la durée de rétention.
+     *
+     * @return le nombre de moyennes supprimées.
+     */
+    public long purge() {
+        return purgeBefore(LocalDateTime.now().minus(settings.maxAge()));
+    }
+
+    /**
+     * Supprime, lot par lot, les moyennes antérieures à {@code cutoff}, leurs statistiques et leurs alertes.
+     *
+     * @param cutoff l'horodatage (exclu) avant lequel les moyennes sont supprimées.
+     * @return le nombre de moyennes supprimées.
+     */
+    public long purgeBefore(LocalDateTime cutoff) {
+        long deleted = 0;
+        for (Target target : TARGETS) {
+            int chunk;
+            do {
+                if (databaseManager.getCircuitState() != CircuitState.CLOSED) {
+                    return deleted;
+                }
+                long start = System.nanoTime();
+                chunk = deleteChunk(target, cutoff);
+                deleted += chunk;
+                deletedRows.addAndGet(chunk);
+                if (chunk > 0 && !pause(System.nanoTime() - start)) {
+                    return deleted;
+                }
+            } while (chunk >= settings.chunkSize());
+        }
+        return deleted;
+    }
+
+    /**
+     * @return le nombre total de moyennes supprimées depuis la création du service.
+     */
+    public long getDeletedRows() {
+        return deletedRows.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private int deleteChunk(Target target, LocalDateTime cutoff) {
+        int[] deleted = {0};
+        databaseManager.executeInTransaction(conn -> {
+            Timestamp bound = findChunkBound(conn, target, cutoff);
+            if (bound == null) {
+                return;
+            }
+            if (!statisticsTableReady) {
+                AverageStatisticsMapper.createTableIfMissing(conn);
+                statisticsTableReady = true;
+            }
+            try (PreparedStatement statistics = conn.prepareStatement(target.deleteStatisticsSql());
+                 PreparedStatement alerts = conn.prepareStatement(target.deleteAlertsSql());
+                 PreparedStatement averages = conn.prepareStatement(target.deleteAveragesSql())) {
+                statistics.setString(1, target.metric().name());
+                statistics.setString(2, thermometerName);
+                statistics.setTimestamp(3, bound);
+                statistics.executeUpdate();
+                alerts.setString(1, thermometerName);
+                alerts.setTimestamp(2, bound);
+                alerts.executeUpdate();
+                averages.setString(1, thermometerName);
+                averages.setTimestamp(2, bound);
+                deleted[0] = averages.executeUpdate();
+            }
+        });
+        return deleted[0];
+    }
+
+    /**
+     * @return l'horodatage de la dernière moyenne du prochain lot, ou {@code null} s'il ne reste rien à purger.
+     */
+    private Timestamp findChunkBound(Connection conn, Target target, LocalDateTime cutoff) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(target.selectChunkSql())) {
+            statement.setMaxRows(settings.chunkSize());
+            statement.setString(1, thermometerName);
+            statement.setTimestamp(2, Timestamp.valueOf(cutoff));
+            Timestamp bound = null;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    bound = resultSet.getTimestamp(1);
+                }
+            }
+            return bound;
+        }
+    }
+
+    /**
+     * @return {@code false} si le thread a été interrompu pendant la pause.
+     */
+    private boolean pause(long chunkNanos) {
+        long millis = Math.max(settings.pause().toMillis(), TimeUnit.NANOSECONDS.toMillis(chunkNanos));
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void purgeSafely() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            // La purge reprendra au prochain passage ; une exception arrêterait la tâche planifiée
+        }
+    }
+
+    private record Target(String table, String alertTable, String foreignKey, MetricType metric) {
+
+        private String selectChunkSql() {
+            return "SELECT timestamp FROM " + table + " WHERE thermometer_name = ? AND timestamp < ? ORDER BY timestamp";
+        }
+
+        private String deleteStatisticsSql() {
+            return "DELETE FROM " + AverageStatisticsMapper.TABLE + " WHERE metric = ? AND average_id IN (SELECT id FROM "
+                    + table + " WHERE thermometer_name = ? AND timestamp <= ?)";
+        }
+
+        private String deleteAlertsSql() {
+            return "DELETE FROM " + alertTable + " WHERE " + foreignKey + " IN (SELECT id FROM " + table
+                    + " WHERE thermometer_name = ? AND timestamp <= ?)";
+        }
+
+        private String deleteAveragesSql() {
+            return "DELETE FROM " + table + " WHERE thermometer_name = ? AND timestamp <= ?";
+        }
+    }
+}
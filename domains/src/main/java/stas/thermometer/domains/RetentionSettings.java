@@ -0,0 +1,36 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+
+/**
+ * Paramètres de la purge des anciennes moyennes ({@link RetentionService}).
+ *
+ * @param maxAge âge au-delà duquel les moyennes et leurs alertes sont supprimées ; {@link Duration#ZERO} désactive la purge.
+ * @param chunkSize nombre maximal de moyennes supprimées par transaction.
+ * @param pause pause minimale entre deux transactions de suppression.
+ * @param interval délai entre deux purges.
+ */
+public record RetentionSettings(Duration maxAge, int chunkSize, Duration pause, Duration interval) {
+
+    public RetentionSettings {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("La purge doit supprimer au moins une moyenne par transaction");
+        }
+        if (maxAge.isNegative() || pause.isNegative() || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Les durées de rétention doivent être positives");
+        }
+    }
+
+    /**
+     * Conservation de 30 jours, purgée toutes les heures par lots de 500 moyennes espacés de 200 ms.
+     *
+     * @return les paramètres par défaut.
+     */
+    public static RetentionSettings defaults() {
+        return new RetentionSettings(Duration.ofDays(30), 500, Duration.ofMillis(200), Duration.ofHours(1));
+    }
+
+    public boolean isEnabled() {
+        return !maxAge.isZero();
+    }
+}
@@ -0,0 +1,28 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+
+/**
+ * Agrégat des moyennes d'un thermomètre sur un intervalle de temps.
+ *
+ * @param type la grandeur agrégée.
+ * @param thermometerName le nom du thermomètre.
+ * @param granularity la durée de l'intervalle.
+ * @param bucketStart le début de l'intervalle.
+ * @param min la plus petite moyenne de l'intervalle.
+ * @param max la plus grande moyenne de l'intervalle.
+ * @param sum la somme des moyennes de l'intervalle.
+ * @param count le nombre de moyennes de l'intervalle.
+ * @param standardDeviation l'écart type des mesures brutes de l'intervalle, ou NaN s'il n'est pas connu.
+ * @param p50 la médiane des mesures brutes, ou NaN.
+ * @param p95 le 95e centile des mesures brutes, ou NaN.
+ * @param p99 le 99e centile des mesures brutes, ou NaN.
+ */
+public record Rollup(MetricType type, String thermometerName, RollupGranularity granularity, LocalDateTime bucketStart,
+                     double min, double max, double sum, long count,
+                     double standardDeviation, double p50, double p95, double p99) {
+
+    public double average() {
+        return count == 0 ? 0 : sum / count;
+    }
+}
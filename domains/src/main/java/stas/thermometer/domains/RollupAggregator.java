@@ -0,0 +1,378 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Étage d'agrégation à long terme : maintient min/max/somme/nombre des moyennes par minute, heure et jour.
+ *
+ * <p>Inscrit comme {@link AverageMeasurementObserver}, il met à jour en mémoire les intervalles ouverts
+ * à chaque moyenne, puis {@link #flush()} les écrit par lots dans la table {@code Rollup} (mise à jour, puis
+ * insertion des intervalles encore absents). Chaque écriture porte les valeurs complètes de l'intervalle :
+ * la réécrire est sans effet. Les intervalles fermés sont retirés de la mémoire une fois écrits. Les humidités
+ * y sont écrites en pourcentage, comme dans la table {@code Humidity}.</p>
+ *
+ * <p>Les statistiques de fenêtre ({@link WindowStatistics}) sont fusionnées dans l'intervalle de leur moyenne :
+ * écart type et quantiles portent alors sur toutes les mesures brutes de l'intervalle, sans les relire.</p>
+ *
+ * <p>Au redémarrage, seuls les intervalles encore ouverts sont recalculés à partir des moyennes déjà en base,
+ * avant la première écriture ; leurs quantiles ne couvrent que les fenêtres reçues depuis. Une moyenne qui arrive après la fermeture de son intervalle est ignorée.</p>
+ *
+ * <p>Les moyennes arrivent sur le thread de calcul : elles ne prennent qu'un verrou court sur les intervalles en
+ * mémoire. {@link #flush()} copie les intervalles modifiés sous ce verrou, puis lit et écrit la base sans le tenir,
+ * de sorte qu'une base lente ou injoignable ne retarde jamais le calcul des moyennes.</p>
+ */
+public class RollupAggregator implements AverageMeasurementObserver {
+
+    private static final String CREATE_TABLE_SQL = "CREATE TABLE Rollup (metric VARCHAR(16) NOT NULL, "
+            + "thermometer_name VARCHAR(255) NOT NULL, granularity VARCHAR(8) NOT NULL, bucket_start TIMESTAMP NOT NULL, "
+            + "min_value DOUBLE, max_value DOUBLE, sum_value DOUBLE, sample_count BIGINT, "
+            + "std_dev DOUBLE, p50_value DOUBLE, p95_value DOUBLE, p99_value DOUBLE, "
+            + "PRIMARY KEY (metric, thermometer_name, granularity, bucket_start))";
+    private static final String UPDATE_SQL = "UPDATE Rollup SET min_value = ?, max_value = ?, sum_value = ?, sample_count = ?, "
+            + "std_dev = ?, p50_value = ?, p95_value = ?, p99_value = ? "
+            + "WHERE metric = ? AND thermometer_name = ? AND granularity = ? AND bucket_start = ?";
+    private static final String INSERT_SQL = "INSERT INTO Rollup (min_value, max_value, sum_value, sample_count, "
+            + "std_dev, p50_value, p95_value, p99_value, metric, thermometer_name, granularity, bucket_start) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final DatabaseManager<?> databaseManager;
+    private final HistoryReader historyReader;
+    private final String thermometerName;
+    private final LocalDateTime recoveryCutoff;
+    private final Map<RollupKey, Bucket> buckets = new HashMap<>();
+    private final Map<MetricType, LocalDateTime> latest = new EnumMap<>(MetricType.class);
+    // Protège les intervalles en mémoire ; jamais tenu pendant un accès à la base
+    private final ReentrantLock lock = new ReentrantLock();
+    // Sérialise les écritures, qui se font hors du verrou des intervalles
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private boolean recovered;
+    private boolean tableReady;
+    private long lateAverages;
+
+    /**
+     * @param databaseManager le gestionnaire utilisé pour écrire les agrégats.
+     * @param historyReader le lecteur utilisé pour recalculer les intervalles ouverts au démarrage.
+     * @param thermometerName le thermomètre dont les intervalles sont recalculés.
+     */
+    public RollupAggregator(DatabaseManager<?> databaseManager, HistoryReader historyReader, String thermometerName) {
+        this(databaseManager, historyReader, thermometerName, LocalDateTime.now());
+    }
+
+    RollupAggregator(DatabaseManager<?> databaseManager, HistoryReader historyReader, String thermometerName,
+                     LocalDateTime recoveryCutoff) {
+        this.databaseManager = databaseManager;
+        this.historyReader = historyReader;
+        this.thermometerName = thermometerName;
+        this.recoveryCutoff = recoveryCutoff;
+    }
+
+    @Override
+    public void updateAverageMeasurement(Measurement averageMeasurement) {
+        add(MetricType.TEMPERATURE, averageMeasurement.thermometerName(), averageMeasurement.temperature(), averageMeasurement.timestamp());
+    }
+
+    @Override
+    public void updateAverageHumidity(Humidity averageHumidity) {
+        add(MetricType.HUMIDITY, averageHumidity.thermometerName(), averageHumidity.humidity(), averageHumidity.timestamp());
+    }
+
+    @Override
+    public void updateWindowStatistics(WindowStatistics statistics) {
+        lock.lock();
+        try {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                RollupKey key = new RollupKey(statistics.type(), statistics.thermometerName(), granularity,
+                        granularity.bucketStart(statistics.timestamp()));
+                Bucket bucket = buckets.get(key);
+                // Sans intervalle en mémoire, la moyenne correspondante a été ignorée comme tardive
+                if (bucket != null) {
+                    bucket.addStatistics(statistics.sketch());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Écrit dans la base tous les intervalles modifiés depuis la dernière écriture, en une transaction.
+     * Les intervalles ouverts au démarrage sont d'abord complétés avec les moyennes déjà en base.
+     *
+     * <p>Les intervalles sont copiés sous le verrou puis écrits sans lui ; un intervalle modifié pendant l'écriture
+     * reste à écrire au passage suivant.</p>
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (!recovered) {
+                // Complété à part puis fusionné d'un bloc : un échec de lecture ne laisse rien de compté à moitié
+                Map<RollupKey, Bucket> recoveredBuckets = recoverOpenBuckets();
+                lock.lock();
+                try {
+                    recoveredBuckets.forEach((key, bucket) -> buckets.merge(key, bucket, Bucket::merge));
+                } finally {
+                    lock.unlock();
+                }
+                recovered = true;
+            }
+            List<BucketSnapshot> dirty = snapshotDirtyBuckets();
+            if (!dirty.isEmpty()) {
+                databaseManager.executeInTransaction(conn -> upsert(conn, dirty));
+            }
+            lock.lock();
+            try {
+                for (BucketSnapshot snapshot : dirty) {
+                    if (snapshot.bucket().version == snapshot.version()) {
+                        snapshot.bucket().dirty = false;
+                    }
+                }
+                evictClosedBuckets();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return les agrégats actuellement tenus en mémoire (intervalles ouverts ou pas encore écrits).
+     */
+    public List<Rollup> openRollups() {
+        lock.lock();
+        try {
+            List<Rollup> rollups = new ArrayList<>(buckets.size());
+            buckets.forEach((key, bucket) -> rollups.add(bucket.toRollup(key)));
+            return rollups;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return le nombre de mises à jour ignorées parce que leur intervalle était déjà fermé.
+     */
+    public long getLateAverages() {
+        lock.lock();
+        try {
+            return lateAverages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(MetricType type, String name, double value, LocalDateTime timestamp) {
+        lock.lock();
+        try {
+            LocalDateTime last = latest.get(type);
+            if (last == null || timestamp.isAfter(last)) {
+                latest.put(type, timestamp);
+            }
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                LocalDateTime bucketStart = granularity.bucketStart(timestamp);
+                RollupKey key = new RollupKey(type, name, granularity, bucketStart);
+                Bucket bucket = buckets.get(key);
+                if (bucket == null) {
+                    if (last != null && !granularity.bucketEnd(bucketStart).isAfter(last)) {
+                        // L'intervalle est fermé et a quitté la mémoire : l'écraser effacerait ses valeurs en base
+                        lateAverages++;
+                        continue;
+                    }
+                    bucket = new Bucket();
+                    buckets.put(key, bucket);
+                }
+                bucket.add(value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<BucketSnapshot> snapshotDirtyBuckets() {
+        lock.lock();
+        try {
+            List<BucketSnapshot> dirty = new ArrayList<>();
+            for (Map.Entry<RollupKey, Bucket> entry : buckets.entrySet()) {
+                Bucket bucket = entry.getValue();
+                if (bucket.dirty) {
+                    dirty.add(new BucketSnapshot(entry.getKey(), bucket, bucket.version, bucket.min, bucket.max, bucket.sum,
+                            bucket.count, bucket.statistics.count() == 0 ? null : bucket.statistics.summary()));
+                }
+            }
+            return dirty;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<RollupKey, Bucket> recoverOpenBuckets() {
+        Map<RollupKey, Bucket> recoveredBuckets = new HashMap<>();
+        LocalDateTime dayStart = RollupGranularity.DAY.bucketStart(recoveryCutoff);
+        try (Stream<Measurement> temperatures = historyReader.stream(new TemperatureHistoryMapper(), thermometerName, dayStart, recoveryCutoff)) {
+            temperatures.forEach(average -> recover(recoveredBuckets, MetricType.TEMPERATURE, average.temperature(), average.timestamp()));
+        }
+        try (Stream<Humidity> humidities = historyReader.stream(new HumidityHistoryMapper(), thermometerName, dayStart, recoveryCutoff)) {
+            humidities.forEach(average -> recover(recoveredBuckets, MetricType.HUMIDITY, average.humidity(), average.timestamp()));
+        }
+        return recoveredBuckets;
+    }
+
+    private void recover(Map<RollupKey, Bucket> recoveredBuckets, MetricType type, double value, LocalDateTime timestamp) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            LocalDateTime openBucket = granularity.bucketStart(recoveryCutoff);
+            if (!timestamp.isBefore(openBucket)) {
+                Bucket bucket = recoveredBuckets.computeIfAbsent(new RollupKey(type, thermometerName, granularity, openBucket), key -> new Bucket());
+                bucket.add(value);
+            }
+        }
+    }
+
+    private void upsert(Connection conn, List<BucketSnapshot> dirty) throws SQLException {
+        ensureTable(conn);
+        List<BucketSnapshot> missing = new ArrayList<>();
+        try (PreparedStatement update = conn.prepareStatement(UPDATE_SQL)) {
+            for (BucketSnapshot snapshot : dirty) {
+                bind(update, snapshot);
+                update.addBatch();
+            }
+            int[] counts = update.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    missing.add(dirty.get(i));
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+            for (BucketSnapshot snapshot : missing) {
+                bind(insert, snapshot);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static void bind(PreparedStatement statement, BucketSnapshot snapshot) throws SQLException {
+        RollupKey key = snapshot.key();
+        double scale = key.type().storageScale();
+        statement.setDouble(1, snapshot.min() * scale);
+        statement.setDouble(2, snapshot.max() * scale);
+        statement.setDouble(3, snapshot.sum() * scale);
+        statement.setLong(4, snapshot.count());
+        StatisticsSummary summary = snapshot.statistics();
+        if (summary == null) {
+            for (int i = 5; i <= 8; i++) {
+                statement.setNull(i, Types.DOUBLE);
+            }
+        } else {
+            statement.setDouble(5, summary.standardDeviation() * scale);
+            statement.setDouble(6, summary.p50() * scale);
+            statement.setDouble(7, summary.p95() * scale);
+            statement.setDouble(8, summary.p99() * scale);
+        }
+        statement.setString(9, key.type().name());
+        statement.setString(10, key.thermometerName());
+        statement.setString(11, key.granularity().name());
+        statement.setTimestamp(12, Timestamp.valueOf(key.bucketStart()));
+    }
+
+    private void ensureTable(Connection conn) throws SQLException {
+        if (tableReady) {
+            return;
+        }
+        try (Statement statement = conn.createStatement()) {
+            try {
+                // Seule l'existence de la table compte : le résultat vide est fermé aussitôt
+                statement.executeQuery("SELECT sample_count FROM Rollup WHERE 1 = 0").close();
+            } catch (SQLException e) {
+                statement.executeUpdate(CREATE_TABLE_SQL);
+            }
+            tableReady = true;
+        }
+    }
+
+    private void evictClosedBuckets() {
+        Iterator<Map.Entry<RollupKey, Bucket>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<RollupKey, Bucket> entry = iterator.next();
+            RollupKey key = entry.getKey();
+            LocalDateTime last = latest.get(key.type());
+            if (!entry.getValue().dirty && last != null && !key.granularity().bucketEnd(key.bucketStart()).isAfter(last)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private record RollupKey(MetricType type, String thermometerName, RollupGranularity granularity, LocalDateTime bucketStart) {
+    }
+
+    /**
+     * Valeurs d'un intervalle copiées sous le verrou, écrites ensuite sans lui ; {@code version} indique si
+     * l'intervalle a changé depuis la copie.
+     */
+    private record BucketSnapshot(RollupKey key, Bucket bucket, long version, double min, double max, double sum,
+                                  long count, StatisticsSummary statistics) {
+    }
+
+    private static final class Bucket {
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+        private long count;
+        private boolean dirty;
+        private long version;
+        private final StatisticsSketch statistics = new StatisticsSketch();
+
+        private void add(double value) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+            dirty = true;
+            version++;
+        }
+
+        private void addStatistics(StatisticsSketch sketch) {
+            statistics.merge(sketch);
+            dirty = true;
+            version++;
+        }
+
+        private Bucket merge(Bucket other) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            sum += other.sum;
+            count += other.count;
+            statistics.merge(other.statistics);
+            dirty = true;
+            version++;
+            return this;
+        }
+
+        private Rollup toRollup(RollupKey key) {
+            if (statistics.count() == 0) {
+                return new Rollup(key.type(), key.thermometerName(), key.granularity(), key.bucketStart(), min, max, sum, count,
+                        Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            }
+            StatisticsSummary summary = statistics.summary();
+            return new Rollup(key.type(), key.thermometerName(), key.granularity(), key.bucketStart(), min, max, sum, count,
+                    summary.standardDeviation(), summary.p50(), summary.p95(), summary.p99());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Résolution d'un agrégat pré-calculé ({@link Rollup}).
+ */
+public enum RollupGranularity {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    RollupGranularity(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @param timestamp un instant.
+     * @return le début de l'intervalle qui contient cet instant.
+     */
+    public LocalDateTime bucketStart(LocalDateTime timestamp) {
+        return timestamp.truncatedTo(unit);
+    }
+
+    /**
+     * @param bucketStart le début d'un intervalle.
+     * @return la fin (exclue) de cet intervalle.
+     */
+    public LocalDateTime bucketEnd(LocalDateTime bucketStart) {
+        return bucketStart.plus(1, unit);
+    }
+}
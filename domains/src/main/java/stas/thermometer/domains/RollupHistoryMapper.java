@@ -0,0 +1,45 @@
+package stas.thermometer.domains;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Lit les agrégats d'une grandeur à une résolution donnée, pour les requêtes sur de longues périodes.
+ * Les humidités, écrites en pourcentage, sont ramenées à des fractions comme dans {@link HumidityHistoryMapper}.
+ */
+public class RollupHistoryMapper implements HistoryMapper<Rollup> {
+
+    private final MetricType type;
+    private final RollupGranularity granularity;
+    private final String rangeSql;
+
+    public RollupHistoryMapper(MetricType type, RollupGranularity granularity) {
+        this.type = type;
+        this.granularity = granularity;
+        this.rangeSql = "SELECT thermometer_name, bucket_start, min_value, max_value, sum_value, sample_count, "
+                + "std_dev, p50_value, p95_value, p99_value FROM Rollup "
+                + "WHERE metric = '" + type.name() + "' AND granularity = '" + granularity.name() + "' "
+                + "AND thermometer_name = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start";
+    }
+
+    @Override
+    public String getRangeSql() {
+        return rangeSql;
+    }
+
+    @Override
+    public Rollup map(ResultSet resultSet) throws SQLException {
+        return new Rollup(type, resultSet.getString(1), granularity, resultSet.getTimestamp(2).toLocalDateTime(),
+                value(resultSet, 3), value(resultSet, 4), value(resultSet, 5), resultSet.getLong(6),
+                nullable(resultSet, 7), nullable(resultSet, 8), nullable(resultSet, 9), nullable(resultSet, 10));
+    }
+
+    private double value(ResultSet resultSet, int column) throws SQLException {
+        return resultSet.getDouble(column) / type.storageScale();
+    }
+
+    private double nullable(ResultSet resultSet, int column) throws SQLException {
+        double value = value(resultSet, column);
+        return resultSet.wasNull() ? Double.NaN : value;
+    }
+}
@@ -0,0 +1,81 @@
+package stas.thermometer.domains;
+
+/**
+ * Agrégat courant des mesures d'une fenêtre : résumé statistique et instant de la première mesure.
+ *
+ * <p>Les parties d'une fenêtre alimentées par des threads différents y sont fusionnées par
+ * {@link #merge} et {@link #addToHistogram} ; {@link #reset()} cède le résumé et en commence un nouveau.</p>
+ */
+final class RunningAggregate {
+
+    private StatisticsSketch statistics = new StatisticsSketch();
+    private long firstEpochMillis;
+
+    /**
+     * @param value la valeur mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    void add(double value, long epochMillis) {
+        if (isEmpty()) {
+            firstEpochMillis = epochMillis;
+        }
+        statistics.add(value);
+    }
+
+    /**
+     * Ajoute à cet agrégat les moments d'une autre partie de la même fenêtre.
+     */
+    void merge(long otherCount, double otherMean, double otherM2, double otherMin, double otherMax, long otherFirstEpochMillis) {
+        if (otherCount == 0) {
+            return;
+        }
+        firstEpochMillis = isEmpty() ? otherFirstEpochMillis : Math.min(firstEpochMillis, otherFirstEpochMillis);
+        statistics.mergeMoments(otherCount, otherMean, otherM2, otherMin, otherMax);
+    }
+
+    /**
+     * Ajoute l'histogramme d'une autre partie de la même fenêtre, intervalle par intervalle.
+     */
+    void addToHistogram(int bucket, long occurrences) {
+        statistics.addToBucket(bucket, occurrences);
+    }
+
+    boolean isEmpty() {
+        return statistics.count() == 0;
+    }
+
+    long count() {
+        return statistics.count();
+    }
+
+    double average() {
+        return statistics.mean();
+    }
+
+    double min() {
+        return statistics.min();
+    }
+
+    double max() {
+        return statistics.max();
+    }
+
+    long firstEpochMillis() {
+        return firstEpochMillis;
+    }
+
+    /**
+     * @return le résumé statistique de la fenêtre en cours.
+     */
+    StatisticsSketch statistics() {
+        return statistics;
+    }
+
+    /**
+     * Vide l'agrégat pour la fenêtre suivante. Le résumé précédent n'est plus modifié.
+     */
+    void reset() {
+        statistics = new StatisticsSketch();
+        firstEpochMillis = 0;
+    }
+}
@@ -0,0 +1,15 @@
+package stas.thermometer.domains;
+
+/**
+ * Destinataire des mesures remises par une {@link ProbeSource}.
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+
+    /**
+     * @param type la grandeur mesurée.
+     * @param value la valeur mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    void accept(MetricType type, double value, long epochMillis);
+}
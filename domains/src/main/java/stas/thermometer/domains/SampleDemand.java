@@ -0,0 +1,92 @@
+package stas.thermometer.domains;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Demande de mesures accordée aux sources par l'aval (contre-pression par crédits, « request-n »).
+ *
+ * <p>L'aval accorde des crédits avec {@link #request(long)} ; une source n'est lue que contre des crédits,
+ * et son lecteur attend quand il n'y en a plus. Les crédits accumulés sont plafonnés : un aval inactif ne laisse
+ * pas une source déverser d'un coup des heures de mesures.</p>
+ */
+public final class SampleDemand {
+
+    private final long limit;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private long credits;
+
+    /**
+     * @param limit le nombre maximal de crédits en réserve.
+     * @param initial les crédits accordés d'emblée.
+     */
+    public SampleDemand(long limit, long initial) {
+        if (limit <= 0 || initial < 0) {
+            throw new IllegalArgumentException("La demande doit avoir un plafond positif et des crédits initiaux positifs ou nuls");
+        }
+        this.limit = limit;
+        this.credits = Math.min(limit, initial);
+    }
+
+    /**
+     * Accorde des crédits supplémentaires, dans la limite du plafond.
+     *
+     * @param n le nombre de mesures demandées.
+     */
+    public void request(long n) {
+        lock.lock();
+        try {
+            credits = Math.min(limit, credits + n);
+            if (credits > 0) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return les crédits en réserve.
+     */
+    public long available() {
+        lock.lock();
+        try {
+            return credits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Prend au plus {@code max} crédits, en attendant qu'il y en ait au moins un.
+     *
+     * @param max le nombre maximal de crédits à prendre.
+     * @return les crédits pris, au moins 1.
+     * @throws InterruptedException si l'attente est interrompue.
+     */
+    long acquire(long max) throws InterruptedException {
+        lock.lock();
+        try {
+            while (credits == 0) {
+                available.await();
+            }
+            long taken = Math.min(max, credits);
+            credits -= taken;
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rend les crédits pris mais non consommés.
+     *
+     * @param n les crédits rendus.
+     */
+    void release(long n) {
+        if (n > 0) {
+            request(n);
+        }
+    }
+}
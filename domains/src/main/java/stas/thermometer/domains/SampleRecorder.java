@@ -0,0 +1,122 @@
+package stas.thermometer.domains;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Enregistre les mesures des sondes dans un fichier binaire compact, relu ensuite par {@link ReplayProbeSource}.
+ *
+ * <p>Le fichier commence par un en-tête ({@link #MAGIC}, {@link #VERSION}), suivi d'enregistrements de taille fixe :
+ * l'instant de la mesure en millisecondes depuis l'époque, l'ordinal de la {@link MetricType} et la valeur. La taille
+ * fixe permet à la relecture de projeter le fichier en mémoire et d'y accéder sans décodage ni allocation. Un
+ * enregistrement incomplet, après un arrêt brutal, est ignoré à la relecture.</p>
+ *
+ * <p>Les mesures sont accumulées dans un tampon et écrites par blocs. Les mesures reçues après la fermeture,
+ * par une lecture encore en cours, sont ignorées.</p>
+ */
+public class SampleRecorder implements SampleConsumer, AutoCloseable {
+
+    static final int MAGIC = 0x53545352;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = Long.BYTES + 1 + Double.BYTES;
+    private static final int BUFFER_SIZE = RECORD_SIZE * 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long samples;
+    private boolean closed;
+
+    private SampleRecorder(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Crée l'enregistrement, en remplaçant un éventuel fichier existant.
+     *
+     * @param path le fichier de l'enregistrement.
+     * @return l'enregistreur prêt à l'emploi.
+     * @throws IOException si le fichier ne peut être créé.
+     */
+    public static SampleRecorder create(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        SampleRecorder recorder = new SampleRecorder(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        recorder.buffer.putInt(MAGIC).putInt(VERSION);
+        return recorder;
+    }
+
+    @Override
+    public void accept(MetricType type, double value, long epochMillis) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            buffer.putLong(epochMillis).put((byte) type.ordinal()).putDouble(value);
+            samples++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Écrit dans le fichier les mesures encore dans le tampon.
+     *
+     * @throws UncheckedIOException si l'écriture échoue.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return le nombre de mesures enregistrées.
+     */
+    public long getSamples() {
+        lock.lock();
+        try {
+            return samples;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flush();
+        } finally {
+            channel.close();
+            lock.unlock();
+        }
+    }
+}
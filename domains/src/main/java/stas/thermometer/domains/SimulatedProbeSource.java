@@ -0,0 +1,78 @@
+package stas.thermometer.domains;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Source simulée : les sondes de température et d'humidité tirent leurs valeurs de la courbe de leur profil,
+ * une paire de mesures par période.
+ *
+ * <p>Les sondes restent les objets que le présentateur ajuste (décalage de la valeur générée) ; la source ne fait
+ * que les échantillonner quand elle est tirée.</p>
+ */
+public class SimulatedProbeSource implements ProbeSource {
+
+    private final TemperatureProbe probe;
+    private final HumidityProbe humidityProbe;
+    private final long periodNanos;
+    private long nextSampleNanos;
+    // Mesure d'humidité de la paire courante, quand la demande n'a permis de remettre que la température
+    private boolean humidityPending;
+    private long pendingMillis;
+    private volatile boolean closed;
+
+    /**
+     * @param probe la sonde de température.
+     * @param humidityProbe la sonde d'humidité.
+     * @param period l'intervalle entre deux paires de mesures.
+     */
+    public SimulatedProbeSource(TemperatureProbe probe, HumidityProbe humidityProbe, Duration period) {
+        this.probe = probe;
+        this.humidityProbe = humidityProbe;
+        this.periodNanos = period.toNanos();
+        this.nextSampleNanos = System.nanoTime();
+    }
+
+    @Override
+    public int poll(int max, SampleConsumer consumer) throws InterruptedIOException {
+        if (closed) {
+            return -1;
+        }
+        if (humidityPending) {
+            consumer.accept(MetricType.HUMIDITY, humidityProbe.getAdjustedHumidity(), pendingMillis);
+            humidityPending = false;
+            return 1;
+        }
+        long wait;
+        while ((wait = nextSampleNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Échantillonnage interrompu");
+            }
+            if (closed) {
+                return -1;
+            }
+        }
+        nextSampleNanos += periodNanos;
+        long now = System.nanoTime();
+        if (nextSampleNanos < now) {
+            // Faute de demande, les échantillons manqués ne sont pas rattrapés : la sonde simulée ralentit
+            nextSampleNanos = now + periodNanos;
+        }
+        long epochMillis = System.currentTimeMillis();
+        consumer.accept(MetricType.TEMPERATURE, probe.getAdjustedTemperature(), epochMillis);
+        if (max > 1) {
+            consumer.accept(MetricType.HUMIDITY, humidityProbe.getAdjustedHumidity(), epochMillis);
+            return 2;
+        }
+        humidityPending = true;
+        pendingMillis = epochMillis;
+        return 1;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,21 @@
+package stas.thermometer.domains;
+
+/**
+ * Compteurs d'un {@link WriteBehindSink}.
+ *
+ * @param flushes nombre de lots écrits avec succès.
+ * @param rowsWritten nombre de moyennes écrites (hors alertes).
+ * @param lastBatchSize taille du dernier lot écrit.
+ * @param lastFlushNanos durée du dernier lot, transaction comprise.
+ * @param totalFlushNanos durée cumulée de tous les lots.
+ */
+public record SinkMetrics(long flushes, long rowsWritten, int lastBatchSize, long lastFlushNanos, long totalFlushNanos) {
+
+    public double averageBatchSize() {
+        return flushes == 0 ? 0 : (double) rowsWritten / flushes;
+    }
+
+    public double averageFlushMillis() {
+        return flushes == 0 ? 0 : totalFlushNanos / 1_000_000.0 / flushes;
+    }
+}
@@ -0,0 +1,25 @@
+package stas.thermometer.domains;
+
+import java.util.SplittableRandom;
+
+/**
+ * Source de bruit adossée à un {@link SplittableRandom}.
+ */
+final class SplittableNoiseSource implements NoiseSource {
+
+    private final SplittableRandom random;
+
+    SplittableNoiseSource(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    @Override
+    public NoiseSource split() {
+        return new SplittableNoiseSource(random.split());
+    }
+}
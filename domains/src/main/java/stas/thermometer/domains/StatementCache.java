@@ -0,0 +1,95 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Requêtes préparées d'une connexion du {@link ConnectionPool}, indexées par type de mapper et texte de requête.
+ * Un mapper qui prépare plusieurs requêtes (insertion simple, insertion avec identifiant) en garde une par texte.
+ *
+ * <p>Chaque requête n'est analysée et planifiée qu'une fois par connexion physique. Les requêtes
+ * renvoyées appartiennent au cache : l'appelant ne doit pas les fermer. Elles sont fermées avec
+ * la connexion lorsque le pool la détruit.</p>
+ */
+public class StatementCache {
+
+    private final Connection connection;
+    private final Map<Key, PreparedStatement> statements = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    StatementCache(Connection connection, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * Renvoie la requête préparée du mapper, en la préparant au premier appel sur cette connexion.
+     *
+     * @param mapperType le type du mapper propriétaire de la requête.
+     * @param sql la requête à préparer si elle n'est pas encore en cache.
+     * @param returnGeneratedKeys {@code true} si les identifiants générés doivent être récupérables.
+     * @return la requête préparée, sans paramètre ni lot en attente.
+     * @throws SQLException si la requête ne peut être préparée.
+     */
+    public PreparedStatement prepare(Class<?> mapperType, String sql, boolean returnGeneratedKeys) throws SQLException {
+        lock.lock();
+        try {
+            Key key = new Key(mapperType, sql, returnGeneratedKeys);
+            PreparedStatement statement = statements.get(key);
+            if (statement != null && !statement.isClosed()) {
+                hits.increment();
+                statement.clearParameters();
+                statement.clearBatch();
+                return statement;
+            }
+            misses.increment();
+            statement = returnGeneratedKeys
+                    ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : connection.prepareStatement(sql);
+            statements.put(key, statement);
+            return statement;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return statements.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ferme toutes les requêtes du cache.
+     */
+    void close() {
+        lock.lock();
+        try {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    // La connexion va être fermée, la requête avec elle.
+                }
+            }
+            statements.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Key(Class<?> mapperType, String sql, boolean returnGeneratedKeys) {
+    }
+}
@@ -0,0 +1,186 @@
+package stas.thermometer.domains;
+
+/**
+ * Résumé fusionnable d'une série de mesures : nombre, moyenne et variance (Welford, fusion de Chan),
+ * minimum, maximum et histogramme log-linéaire pour les quantiles.
+ *
+ * <p>L'histogramme suit le principe de HdrHistogram : chaque puissance de deux est découpée en
+ * {@value #SUB_BUCKETS} intervalles égaux, soit une erreur relative inférieure à 1 % sur les quantiles,
+ * avec une mémoire bornée quel que soit le nombre de mesures. Seule la plage d'intervalles réellement
+ * occupée est allouée. Deux résumés se fusionnent en additionnant leurs histogrammes : les fenêtres
+ * se regroupent en agrégats minute, heure ou jour sans relire les mesures.</p>
+ *
+ * <p>Les valeurs inférieures à 2<sup>-8</sup> en valeur absolue tombent dans l'intervalle de zéro,
+ * celles supérieures à 2<sup>12</sup> dans le dernier intervalle ; les quantiles sont toujours
+ * ramenés entre le minimum et le maximum exacts.</p>
+ */
+public final class StatisticsSketch {
+
+    static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = -8;
+    private static final int MAX_EXPONENT = 12;
+    private static final double MIN_MAGNITUDE = Math.scalb(1.0, MIN_EXPONENT);
+    /** Indice maximal d'un intervalle, en valeur absolue : les indices vont de {@code -HALF_RANGE} à {@code HALF_RANGE}. */
+    static final int HALF_RANGE = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS;
+    static final int BUCKET_COUNT = 2 * HALF_RANGE + 1;
+
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long[] counts = new long[0];
+    private int lowestBucket;
+
+    /**
+     * Ajoute une mesure.
+     *
+     * @param value la valeur mesurée.
+     */
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        addToBucket(bucketIndex(value), 1);
+    }
+
+    /**
+     * Ajoute à ce résumé toutes les mesures d'un autre résumé, qui n'est pas modifié.
+     *
+     * @param other le résumé à fusionner.
+     */
+    public void merge(StatisticsSketch other) {
+        mergeMoments(other.count, other.mean, other.m2, other.min, other.max);
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                addToBucket(other.lowestBucket + i, other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Fusionne les moments d'une autre partie de la série (formule de Chan). L'histogramme
+     * correspondant doit être ajouté séparément avec {@link #addToBucket(int, long)}.
+     */
+    void mergeMoments(long otherCount, double otherMean, double otherM2, double otherMin, double otherMax) {
+        if (otherCount == 0) {
+            return;
+        }
+        long total = count + otherCount;
+        double delta = otherMean - mean;
+        mean += delta * otherCount / total;
+        m2 += otherM2 + delta * delta * ((double) count * otherCount / total);
+        count = total;
+        min = Math.min(min, otherMin);
+        max = Math.max(max, otherMax);
+    }
+
+    /**
+     * Ajoute {@code occurrences} mesures à l'intervalle d'indice {@code bucket}.
+     */
+    void addToBucket(int bucket, long occurrences) {
+        if (counts.length == 0) {
+            counts = new long[1];
+            lowestBucket = bucket;
+        } else if (bucket < lowestBucket || bucket >= lowestBucket + counts.length) {
+            int low = Math.max(-HALF_RANGE, Math.min(lowestBucket, bucket) - SUB_BUCKETS / 8);
+            int high = Math.min(HALF_RANGE, Math.max(lowestBucket + counts.length - 1, bucket) + SUB_BUCKETS / 8);
+            long[] grown = new long[high - low + 1];
+            System.arraycopy(counts, 0, grown, lowestBucket - low, counts.length);
+            counts = grown;
+            lowestBucket = low;
+        }
+        counts[bucket - lowestBucket] += occurrences;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return la variance de l'échantillon (dénominateur {@code n - 1}), nulle pour une seule mesure.
+     */
+    public double variance() {
+        return count < 2 ? 0 : m2 / (count - 1);
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    public double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * @param quantile le quantile voulu, entre 0 et 1 (0.99 pour le p99).
+     * @return la valeur estimée du quantile, ou {@code NaN} si le résumé est vide.
+     */
+    public double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, bucketValue(lowestBucket + i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return les valeurs à conserver de ce résumé.
+     */
+    public StatisticsSummary summary() {
+        return new StatisticsSummary(count, standardDeviation(), min(), max(), quantile(0.5), quantile(0.95), quantile(0.99));
+    }
+
+    /**
+     * @return l'indice de l'intervalle de l'histogramme qui contient {@code value}, sans allocation.
+     */
+    static int bucketIndex(double value) {
+        double magnitude = Math.abs(value);
+        if (!(magnitude >= MIN_MAGNITUDE)) {
+            return 0;
+        }
+        int exponent = Math.getExponent(magnitude);
+        int subBucket;
+        if (exponent >= MAX_EXPONENT) {
+            exponent = MAX_EXPONENT - 1;
+            subBucket = SUB_BUCKETS - 1;
+        } else {
+            subBucket = (int) ((Double.doubleToRawLongBits(magnitude) >>> (52 - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        }
+        int index = 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+        return value < 0 ? -index : index;
+    }
+
+    /**
+     * @return le milieu de l'intervalle d'indice {@code bucket}.
+     */
+    static double bucketValue(int bucket) {
+        if (bucket == 0) {
+            return 0;
+        }
+        int magnitudeIndex = Math.abs(bucket) - 1;
+        int exponent = magnitudeIndex / SUB_BUCKETS + MIN_EXPONENT;
+        int subBucket = magnitudeIndex % SUB_BUCKETS;
+        double value = Math.scalb(1.0 + (subBucket + 0.5) / SUB_BUCKETS, exponent);
+        return bucket < 0 ? -value : value;
+    }
+}
@@ -0,0 +1,16 @@
+package stas.thermometer.domains;
+
+/**
+ * Valeurs conservées d'un {@link StatisticsSketch} : ce qui est affiché et écrit en base avec une moyenne.
+ *
+ * @param count le nombre de mesures.
+ * @param standardDeviation l'écart type de l'échantillon.
+ * @param min la plus petite mesure.
+ * @param max la plus grande mesure.
+ * @param p50 la médiane.
+ * @param p95 le 95e centile.
+ * @param p99 le 99e centile.
+ */
+public record StatisticsSummary(long count, double standardDeviation, double min, double max,
+                                double p50, double p95, double p99) {
+}
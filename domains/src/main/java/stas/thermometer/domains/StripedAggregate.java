@@ -0,0 +1,239 @@
+package stas.thermometer.domains;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Agrégat d'une fenêtre de mesures alimenté sans verrou par plusieurs threads producteurs.
+ *
+ * <p>Comme un {@code LongAdder}, l'agrégat est réparti sur plusieurs cellules choisies selon le thread,
+ * pour que des sondes concurrentes ne se disputent pas les mêmes variables. Deux fenêtres alternent :
+ * {@link #drainTo(RunningAggregate)} remplace atomiquement la fenêtre courante par la fenêtre vide,
+ * attend la fin des ajouts déjà commencés dans l'ancienne, puis la vide dans l'agrégat du consommateur.
+ * Aucune mesure n'est perdue ni comptée dans deux fenêtres.</p>
+ *
+ * <p>Chaque cellule tient les sommes des écarts à sa première valeur et de leurs carrés (variance par
+ * données décalées, sans perte de précision autour de 20 °C) et l'histogramme de ses mesures ; elles sont
+ * fusionnées dans le {@link StatisticsSketch} de la fenêtre à sa clôture.</p>
+ *
+ * <p>Un agrégat peut aussi être attribué à un volet ({@link #claim(long)}), pour être réutilisé volet après volet
+ * dans un anneau : {@link #add(long, AtomicLong, double, long)} n'ajoute la mesure que si l'agrégat appartient
+ * encore à son volet, et {@link #retire(long, RunningAggregate)} le libère sans perdre un ajout en cours.</p>
+ */
+final class StripedAggregate {
+
+    private static final int MAX_STRIPES = 8;
+    /** Propriétaire d'un agrégat libre. */
+    static final long UNOWNED = Long.MIN_VALUE;
+    /** Propriétaire d'un agrégat en cours de libération. */
+    static final long RETIRING = Long.MIN_VALUE + 1;
+
+    private final AtomicReference<Window> current;
+    private final AtomicLong owner = new AtomicLong(UNOWNED);
+    private Window spare;
+
+    StripedAggregate() {
+        // Chaque cellule porte un histogramme complet : le nombre de cellules est plafonné
+        int stripes = Integer.highestOneBit(Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.current = new AtomicReference<>(new Window(stripes));
+        this.spare = new Window(stripes);
+    }
+
+    /**
+     * Ajoute une mesure à la fenêtre courante. Peut être appelée par plusieurs threads à la fois.
+     *
+     * @param value la valeur mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    void add(double value, long epochMillis) {
+        Cell cell = enter();
+        try {
+            cell.add(value, epochMillis);
+        } finally {
+            cell.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Ajoute une mesure si l'agrégat appartient toujours au volet et que celui-ci accepte encore des mesures.
+     * Les deux conditions sont vérifiées une fois l'ajout annoncé : {@link #retire} attend les ajouts qui les ont vues
+     * remplies. Peut être appelée par plusieurs threads à la fois.
+     *
+     * @param pane le volet de la mesure.
+     * @param expiredThrough le dernier volet qui n'accepte plus de mesures.
+     * @param value la valeur mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     * @return faux si la mesure n'a pas été ajoutée.
+     */
+    boolean add(long pane, AtomicLong expiredThrough, double value, long epochMillis) {
+        Cell cell = enter();
+        try {
+            if (owner.get() != pane || pane <= expiredThrough.get()) {
+                return false;
+            }
+            cell.add(value, epochMillis);
+            return true;
+        } finally {
+            cell.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return le volet propriétaire, {@link #UNOWNED} ou {@link #RETIRING}.
+     */
+    long owner() {
+        return owner.get();
+    }
+
+    /**
+     * Attribue l'agrégat libre à un volet.
+     *
+     * @param pane le volet.
+     * @return faux si l'agrégat n'était pas libre.
+     */
+    boolean claim(long pane) {
+        return owner.compareAndSet(UNOWNED, pane);
+    }
+
+    /**
+     * Clôt l'agrégat du volet, ajoute son contenu à {@code target} et le rend libre. Un seul consommateur à la fois.
+     *
+     * @param pane le volet propriétaire.
+     * @param target l'agrégat du consommateur.
+     * @return faux si l'agrégat n'appartenait pas au volet.
+     */
+    synchronized boolean retire(long pane, RunningAggregate target) {
+        if (!owner.compareAndSet(pane, RETIRING)) {
+            return false;
+        }
+        // Un ajout annoncé avant la fermeture a pu voir le volet ouvert : il doit se terminer avant la vidange
+        awaitWriters(current.get());
+        awaitWriters(spare);
+        drainTo(target);
+        owner.set(UNOWNED);
+        return true;
+    }
+
+    /**
+     * Clôt la fenêtre courante et ajoute son contenu à {@code target}. Un seul consommateur à la fois.
+     *
+     * @param target l'agrégat du consommateur.
+     */
+    synchronized void drainTo(RunningAggregate target) {
+        Window closed = current.getAndSet(spare);
+        awaitWriters(closed);
+        for (Cell cell : closed.cells) {
+            cell.drainTo(target);
+        }
+        spare = closed;
+    }
+
+    private Cell enter() {
+        Window window = current.get();
+        Cell cell = window.cellForCurrentThread();
+        cell.writers.incrementAndGet();
+        while (current.get() != window) {
+            // La fenêtre vient d'être échangée : l'ajout revient à la nouvelle fenêtre
+            cell.writers.decrementAndGet();
+            window = current.get();
+            cell = window.cellForCurrentThread();
+            cell.writers.incrementAndGet();
+        }
+        return cell;
+    }
+
+    private static void awaitWriters(Window window) {
+        for (Cell cell : window.cells) {
+            while (cell.writers.get() != 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static final class Window {
+        private final Cell[] cells;
+
+        private Window(int stripes) {
+            cells = new Cell[stripes];
+            for (int i = 0; i < stripes; i++) {
+                cells[i] = new Cell();
+            }
+        }
+
+        private Cell cellForCurrentThread() {
+            long id = Thread.currentThread().threadId();
+            int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+            return cells[(hash >>> 16) & (cells.length - 1)];
+        }
+    }
+
+    private static final class Cell {
+        private static final long NO_SHIFT = Double.doubleToRawLongBits(Double.NaN);
+
+        private final AtomicInteger writers = new AtomicInteger();
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong shiftBits = new AtomicLong(NO_SHIFT);
+        private final AtomicLong sumBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final AtomicLong sumOfSquaresBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final AtomicLong minBits = new AtomicLong(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+        private final AtomicLong maxBits = new AtomicLong(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+        private final AtomicLong firstEpochMillis = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLongArray histogram = new AtomicLongArray(StatisticsSketch.BUCKET_COUNT);
+
+        private void add(double value, long epochMillis) {
+            if (shiftBits.get() == NO_SHIFT) {
+                shiftBits.compareAndSet(NO_SHIFT, Double.doubleToRawLongBits(value));
+            }
+            double shifted = value - Double.longBitsToDouble(shiftBits.get());
+            addTo(sumBits, shifted);
+            addTo(sumOfSquaresBits, shifted * shifted);
+            long bits;
+            do {
+                bits = minBits.get();
+            } while (value < Double.longBitsToDouble(bits) && !minBits.compareAndSet(bits, Double.doubleToRawLongBits(value)));
+            do {
+                bits = maxBits.get();
+            } while (value > Double.longBitsToDouble(bits) && !maxBits.compareAndSet(bits, Double.doubleToRawLongBits(value)));
+            long first;
+            do {
+                first = firstEpochMillis.get();
+            } while (epochMillis < first && !firstEpochMillis.compareAndSet(first, epochMillis));
+            histogram.incrementAndGet(StatisticsSketch.bucketIndex(value) + StatisticsSketch.HALF_RANGE);
+            count.incrementAndGet();
+        }
+
+        private static void addTo(AtomicLong doubleBits, double value) {
+            long bits;
+            do {
+                bits = doubleBits.get();
+            } while (!doubleBits.compareAndSet(bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + value)));
+        }
+
+        private void drainTo(RunningAggregate target) {
+            long drained = count.getAndSet(0);
+            if (drained > 0) {
+                double sum = Double.longBitsToDouble(sumBits.get());
+                double sumOfSquares = Double.longBitsToDouble(sumOfSquaresBits.get());
+                double mean = Double.longBitsToDouble(shiftBits.get()) + sum / drained;
+                double m2 = Math.max(0, sumOfSquares - sum * sum / drained);
+                target.merge(drained, mean, m2, Double.longBitsToDouble(minBits.get()),
+                        Double.longBitsToDouble(maxBits.get()), firstEpochMillis.get());
+                for (int i = 0; i < histogram.length(); i++) {
+                    long occurrences = histogram.get(i);
+                    if (occurrences != 0) {
+                        histogram.set(i, 0);
+                        target.addToHistogram(i - StatisticsSketch.HALF_RANGE, occurrences);
+                    }
+                }
+            }
+            shiftBits.set(NO_SHIFT);
+            sumBits.set(Double.doubleToRawLongBits(0));
+            sumOfSquaresBits.set(Double.doubleToRawLongBits(0));
+            minBits.set(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+            maxBits.set(Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+            firstEpochMillis.set(Long.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package stas.thermometer.domains;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class TemperatureHistoryMapper implements HistoryMapper<Measurement> {
+
+    private static final String RANGE_SQL = "SELECT thermometer_name, temperature, timestamp FROM Temperature "
+            + "WHERE thermometer_name = ? AND timestamp >= ? AND timestamp < ? ORDER BY timestamp";
+
+    @Override
+    public String getRangeSql() {
+        return RANGE_SQL;
+    }
+
+    @Override
+    public Measurement map(ResultSet resultSet) throws SQLException {
+        return new Measurement(resultSet.getString(1), resultSet.getDouble(2), resultSet.getTimestamp(3).toLocalDateTime());
+    }
+}
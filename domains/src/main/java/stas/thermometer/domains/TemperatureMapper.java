@@ -2,14 +2,38 @@ package stas.thermometer.domains;
 
 import java.sql.*;
 
-public class TemperatureMapper implements DataMapper<Measurement>{
+public class TemperatureMapper implements BatchDataMapper<Measurement> {
+
+    public static final String TABLE = "Temperature";
+    private static final String INSERT_SQL = "INSERT INTO Temperature (thermometer_name, temperature, timestamp) VALUES (?, ?, ?)";
+    private static final String INSERT_WITH_ID_SQL = "INSERT INTO Temperature (thermometer_name, temperature, timestamp, id) VALUES (?, ?, ?, ?)";
+    @Override
+    public String getInsertSql() {
+        return INSERT_SQL;
+    }
+
+    @Override
+    public String getInsertWithIdSql() {
+        return INSERT_WITH_ID_SQL;
+    }
+
+    @Override
+    public void bindParameters(PreparedStatement statement, Measurement item) throws SQLException {
+        statement.setString(1, item.thermometerName());
+        statement.setDouble(2, item.temperature());
+        statement.setTimestamp(3, java.sql.Timestamp.valueOf(item.timestamp()));
+    }
+
+    @Override
+    public void bindParameters(PreparedStatement statement, Measurement item, long id) throws SQLException {
+        bindParameters(statement, item);
+        statement.setLong(4, id);
+    }
+
     @Override
     public long insert(Connection conn, Measurement item) throws SQLException {
-        String sql = "INSERT INTO Temperature (thermometer_name, temperature, timestamp) VALUES (?, ?, ?)";
-        try (PreparedStatement statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            statement.setString(1, item.thermometerName());
-            statement.setDouble(2, item.temperature());
-            statement.setTimestamp(3, java.sql.Timestamp.valueOf(item.timestamp()));
+        try (PreparedStatement statement = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            bindParameters(statement, item);
             statement.executeUpdate();
             try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
@@ -3,7 +3,6 @@ package stas.thermometer.domains;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Classe représentant la sonde de température.
@@ -18,6 +17,7 @@ import java.util.Random;
 public class TemperatureProbe {
 
     private final Profiles profile;
+    private final NoiseSource noise;
     private final List<Observer> observers = new ArrayList<>();
     private double temperatureOffset = 0.0;
 
@@ -27,7 +27,18 @@ public class TemperatureProbe {
      * @param profile         le profil de température utilisé pour déterminer la température attendue.
      */
     public TemperatureProbe(Profiles profile) {
+        this(profile, NoiseSource.random());
+    }
+
+    /**
+     * Constructeur de la sonde de température avec une source de bruit dédiée.
+     *
+     * @param profile         le profil de température utilisé pour déterminer la température attendue.
+     * @param noise           la source de l'erreur aléatoire, propre à cette sonde.
+     */
+    public TemperatureProbe(Profiles profile, NoiseSource noise) {
         this.profile = profile;
+        this.noise = noise;
     }
 
     /**
@@ -36,7 +47,9 @@ public class TemperatureProbe {
      * @param observer l'observateur à ajouter.
      */
     public void addObserver(Observer observer) {
-        observers.add(observer);
+        if (!observers.contains(observer)) {
+            observers.add(observer);
+        }
     }
 
     /**
@@ -53,9 +66,24 @@ public class TemperatureProbe {
     /**
      * Effectue une mesure de la température et notifie les observateurs.
      */
+    /**
+     * Notifie une mesure avec l'instant où elle a été prise.
+     *
+     * @param temperature la température mesurée.
+     * @param epochMillis l'instant de la mesure, en millisecondes depuis l'époque.
+     */
+    public void notifyObservers(double temperature, long epochMillis) {
+        // Boucle indexée : pas d'itérateur alloué à chaque mesure
+        for (int i = 0; i < observers.size(); i++) {
+            observers.get(i).updateTemperature(temperature, epochMillis);
+        }
+    }
+
     public void measureAndNotify() {
+        // Horodatage côté sonde : la mesure garde son instant même si elle est transmise en retard
+        long epochMillis = System.currentTimeMillis();
         double temperature = getAdjustedTemperature();
-        notifyObservers(temperature);
+        notifyObservers(temperature, epochMillis);
     }
 
     /**
@@ -65,7 +93,7 @@ public class TemperatureProbe {
      */
     public double getAdjustedTemperature() {
         double expectedTemperature = profile.getExpectedTemperature(LocalDateTime.now());
-        double randomError = (new Random().nextDouble() - 0.5);  // Erreur aléatoire entre -0.5 et 0.5
+        double randomError = (noise.nextDouble() - 0.5);  // Erreur aléatoire entre -0.5 et 0.5
         return expectedTemperature + randomError + temperatureOffset;
     }
 
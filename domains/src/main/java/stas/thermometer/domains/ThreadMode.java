@@ -0,0 +1,35 @@
+package stas.thermometer.domains;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Nature des threads qui exécutent les sondes, les calculs planifiés et les écritures bloquantes en base.
+ *
+ * <p>Avec {@link #VIRTUAL}, chaque boucle de sonde et chaque thread d'écriture est un thread virtuel : une attente
+ * sur JDBC ou un sommeil ne mobilise aucun thread du système, et des milliers de thermomètres tournent sans
+ * dimensionner de groupe de threads. {@link #PLATFORM} garde des threads du système, en démon.</p>
+ *
+ * <p>Les classes dont ces threads attendent la base ou le disque sous un verrou (écritures, réservation
+ * d'identifiants, préparation des requêtes, enregistrement des mesures) prennent un
+ * {@link java.util.concurrent.locks.ReentrantLock} plutôt qu'un moniteur : un thread virtuel qui y attend libère
+ * son thread porteur, alors qu'un bloc {@code synchronized} l'épinglerait.</p>
+ */
+public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL;
+
+    /**
+     * @param name le nom donné aux threads créés.
+     * @return une fabrique de threads de cette nature ; les threads ne retiennent pas l'arrêt de l'application.
+     */
+    public ThreadFactory factory(String name) {
+        if (this == VIRTUAL) {
+            return Thread.ofVirtual().name(name).factory();
+        }
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,456 @@
+package stas.thermometer.domains;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * Stockage local des moyennes dans des fichiers compressés, pour les sites sans base de données.
+ *
+ * <p>Chaque grandeur a son fichier, en ajout seul, découpé en blocs de taille fixe. Dans un bloc,
+ * les points sont compressés comme dans Gorilla : horodatages en delta de delta (un seul bit lorsque
+ * la période est régulière) et valeurs en XOR avec la valeur précédente. Un en-tête par bloc
+ * (nombre de points, premier et dernier horodatage) sert d'index temporel creux : une lecture
+ * d'intervalle ne décode que les blocs qui le recoupent.</p>
+ *
+ * <p>Seul le dernier bloc est réécrit, et seulement ses octets modifiés, à chaque fin de calcul.
+ * Les horodatages sont conservés à la milliseconde et doivent être croissants.</p>
+ */
+public class TimeSeriesFileStore implements AverageSink, AutoCloseable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static final int HEADER_SIZE = 24;
+    // Pire cas d'un point : horodatage brut, valeur avec nouvelle fenêtre, alerte brute
+    private static final int MAX_POINT_BITS = 4 + 64 + 2 + 5 + 6 + 64 + 1 + 64;
+
+    private final String thermometerName;
+    private final int blockSize;
+    private final Map<MetricType, Series> series = new EnumMap<>(MetricType.class);
+
+    private TimeSeriesFileStore(String thermometerName, int blockSize) {
+        this.thermometerName = thermometerName;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Ouvre (ou crée) les fichiers du répertoire donné et reprend l'écriture après le dernier point.
+     *
+     * @param directory le répertoire des fichiers.
+     * @param thermometerName le thermomètre dont les moyennes sont stockées.
+     * @param blockSize la taille d'un bloc en octets.
+     * @return le stockage prêt à l'emploi.
+     * @throws IOException si les fichiers ne peuvent être ouverts.
+     */
+    public static TimeSeriesFileStore open(Path directory, String thermometerName, int blockSize) throws IOException {
+        if (blockSize * 8 < HEADER_SIZE * 8 + 2 * MAX_POINT_BITS) {
+            throw new IllegalArgumentException("Bloc trop petit pour le stockage des moyennes");
+        }
+        Files.createDirectories(directory);
+        TimeSeriesFileStore store = new TimeSeriesFileStore(thermometerName, blockSize);
+        for (MetricType type : MetricType.values()) {
+            Path file = directory.resolve(type.name().toLowerCase(Locale.ROOT) + ".gts");
+            store.series.put(type, store.new Series(FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)));
+        }
+        return store;
+    }
+
+    @Override
+    public synchronized void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+        series.get(MetricType.TEMPERATURE).append(toMillis(average.timestamp()), average.temperature(), alertDifference);
+    }
+
+    @Override
+    public synchronized void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+        series.get(MetricType.HUMIDITY).append(toMillis(average.timestamp()), average.humidity(), alertDifference);
+    }
+
+    /**
+     * Écrit les octets ajoutés au dernier bloc de chaque fichier depuis la fin du calcul précédent.
+     */
+    @Override
+    public synchronized void endTick() {
+        for (Series values : series.values()) {
+            values.writeTail();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        for (Series values : series.values()) {
+            values.writeTail();
+            values.force();
+        }
+    }
+
+    /**
+     * Relit les moyennes d'une grandeur sur un intervalle.
+     *
+     * @param type la grandeur à relire.
+     * @param from le début de l'intervalle, inclus.
+     * @param to la fin de l'intervalle, exclue.
+     * @return les moyennes de l'intervalle par ordre chronologique ; l'identifiant est le rang du point dans le fichier.
+     */
+    public synchronized List<HistoricalAverage> scan(MetricType type, LocalDateTime from, LocalDateTime to) {
+        return series.get(type).scan(type, toMillis(from), toMillis(to));
+    }
+
+    /**
+     * @return la place occupée sur le disque par les fichiers, en octets.
+     */
+    public synchronized long sizeOnDisk() {
+        long size = 0;
+        for (Series values : series.values()) {
+            size += values.size();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (Series values : series.values()) {
+            values.channel.close();
+        }
+    }
+
+    private static long toMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    /**
+     * Fichier d'une grandeur : index des blocs écrits et bloc en cours de remplissage.
+     */
+    private final class Series {
+        private final FileChannel channel;
+        private final List<BlockIndex> index = new ArrayList<>();
+        private Block tail;
+        private int persistedBits;
+        private long pointCount;
+
+        private Series(FileChannel channel) throws IOException {
+            this.channel = channel;
+            long blocks = (channel.size() + blockSize - 1) / blockSize;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            for (int i = 0; i < blocks; i++) {
+                header.clear();
+                channel.read(header, (long) i * blockSize);
+                int count = header.getInt(0);
+                if (count <= 0) {
+                    break;
+                }
+                index.add(new BlockIndex(header.getLong(8), header.getLong(16), count, pointCount));
+                pointCount += count;
+            }
+            if (index.isEmpty()) {
+                tail = new Block();
+            } else {
+                // Le dernier bloc est réencodé à l'identique pour retrouver l'état du compresseur
+                tail = new Block();
+                for (Point point : decode(readBlock(index.size() - 1))) {
+                    tail.append(point.millis, point.value, point.alertDifference);
+                }
+                persistedBits = tail.bitLength;
+                pointCount -= tail.count;
+            }
+        }
+
+        private void append(long millis, double value, OptionalDouble alertDifference) {
+            if (tail.count > 0 && millis < tail.lastMillis) {
+                throw new IllegalArgumentException("Les moyennes doivent être ajoutées par ordre chronologique");
+            }
+            if (tail.count > 0 && HEADER_SIZE * 8 + tail.bitLength + MAX_POINT_BITS > blockSize * 8) {
+                writeTail();
+                pointCount += tail.count;
+                tail = new Block();
+                persistedBits = 0;
+            }
+            tail.append(millis, value, alertDifference);
+            BlockIndex entry = new BlockIndex(tail.firstMillis, tail.lastMillis, tail.count, pointCount);
+            if (tail.count == 1) {
+                index.add(entry);
+            } else {
+                index.set(index.size() - 1, entry);
+            }
+        }
+
+        private void writeTail() {
+            if (tail.count == 0 || persistedBits == tail.bitLength) {
+                return;
+            }
+            long position = (long) (index.size() - 1) * blockSize;
+            int from = HEADER_SIZE + persistedBits / 8;
+            int to = HEADER_SIZE + (tail.bitLength + 7) / 8;
+            try {
+                // Les données d'abord, l'en-tête ensuite : un en-tête ancien ignore simplement les nouveaux bits
+                channel.write(ByteBuffer.wrap(tail.bytes, from, to - from), position + from);
+                tail.updateHeader();
+                channel.write(ByteBuffer.wrap(tail.bytes, 0, HEADER_SIZE), position);
+            } catch (IOException e) {
+                throw new UncheckedIOException("stas.thermometer : unable to write time series block", e);
+            }
+            persistedBits = tail.bitLength;
+        }
+
+        private void force() {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("stas.thermometer : unable to sync time series file", e);
+            }
+        }
+
+        private long size() {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException("stas.thermometer : unable to read time series file size", e);
+            }
+        }
+
+        private List<HistoricalAverage> scan(MetricType type, long fromMillis, long toMillis) {
+            List<HistoricalAverage> averages = new ArrayList<>();
+            for (int i = firstBlockEndingAfter(fromMillis); i < index.size() && index.get(i).firstMillis < toMillis; i++) {
+                long id = index.get(i).firstPoint;
+                byte[] block;
+                if (i == index.size() - 1) {
+                    tail.updateHeader();
+                    block = tail.bytes;
+                } else {
+                    block = readBlock(i);
+                }
+                for (Point point : decode(block)) {
+                    if (point.millis >= fromMillis && point.millis < toMillis) {
+                        averages.add(new HistoricalAverage(type, id, thermometerName, point.value, fromMillis(point.millis), point.alertDifference));
+                    }
+                    id++;
+                }
+            }
+            return averages;
+        }
+
+        private int firstBlockEndingAfter(long millis) {
+            int low = 0;
+            int high = index.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (index.get(middle).lastMillis < millis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private byte[] readBlock(int block) {
+            ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+            try {
+                long position = (long) block * blockSize;
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                    // lecture jusqu'à la fin du bloc ou du fichier
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("stas.thermometer : unable to read time series block", e);
+            }
+            return buffer.array();
+        }
+    }
+
+    private List<Point> decode(byte[] block) {
+        ByteBuffer header = ByteBuffer.wrap(block, 0, HEADER_SIZE);
+        int count = header.getInt(0);
+        List<Point> points = new ArrayList<>(count);
+        BitReader reader = new BitReader(block);
+        long millis = 0;
+        long delta = 0;
+        long valueBits = 0;
+        int leading = -1;
+        int trailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                millis = reader.read(64);
+                valueBits = reader.read(64);
+            } else {
+                long deltaOfDelta = readDeltaOfDelta(reader);
+                delta += deltaOfDelta;
+                millis += delta;
+                if (reader.read(1) == 1) {
+                    if (reader.read(1) == 1) {
+                        leading = (int) reader.read(5);
+                        int significant = (int) reader.read(6);
+                        if (significant == 0) {
+                            significant = 64;
+                        }
+                        trailing = 64 - leading - significant;
+                    }
+                    valueBits ^= reader.read(64 - leading - trailing) << trailing;
+                }
+            }
+            OptionalDouble alertDifference = reader.read(1) == 1
+                    ? OptionalDouble.of(Double.longBitsToDouble(reader.read(64)))
+                    : OptionalDouble.empty();
+            points.add(new Point(millis, Double.longBitsToDouble(valueBits), alertDifference));
+        }
+        return points;
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        if (reader.read(1) == 0) {
+            return 0;
+        }
+        if (reader.read(1) == 0) {
+            return signed(reader.read(7), 7);
+        }
+        if (reader.read(1) == 0) {
+            return signed(reader.read(9), 9);
+        }
+        if (reader.read(1) == 0) {
+            return signed(reader.read(12), 12);
+        }
+        return reader.read(64);
+    }
+
+    private static long signed(long value, int bits) {
+        return value > (1L << (bits - 1)) ? value - (1L << bits) : value;
+    }
+
+    /**
+     * Bloc en cours de remplissage et état du compresseur.
+     */
+    private final class Block {
+        private final byte[] bytes = new byte[blockSize];
+        private int count;
+        private int bitLength;
+        private long firstMillis;
+        private long lastMillis;
+        private long delta;
+        private long valueBits;
+        private int leading = -1;
+        private int trailing;
+
+        private void append(long millis, double value, OptionalDouble alertDifference) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (count == 0) {
+                firstMillis = millis;
+                write(millis, 64);
+                write(bits, 64);
+            } else {
+                long newDelta = millis - lastMillis;
+                writeDeltaOfDelta(newDelta - delta);
+                delta = newDelta;
+                writeValue(bits ^ valueBits);
+            }
+            if (alertDifference.isPresent()) {
+                write(1, 1);
+                write(Double.doubleToRawLongBits(alertDifference.getAsDouble()), 64);
+            } else {
+                write(0, 1);
+            }
+            lastMillis = millis;
+            valueBits = bits;
+            count++;
+        }
+
+        private void writeDeltaOfDelta(long deltaOfDelta) {
+            if (deltaOfDelta == 0) {
+                write(0, 1);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                write(0b10, 2);
+                write(deltaOfDelta, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                write(0b110, 3);
+                write(deltaOfDelta, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                write(0b1110, 4);
+                write(deltaOfDelta, 12);
+            } else {
+                write(0b1111, 4);
+                write(deltaOfDelta, 64);
+            }
+        }
+
+        private void writeValue(long xor) {
+            if (xor == 0) {
+                write(0, 1);
+                return;
+            }
+            write(1, 1);
+            int newLeading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int newTrailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && newLeading >= leading && newTrailing >= trailing) {
+                // Les bits significatifs tiennent dans la fenêtre du point précédent
+                write(0, 1);
+                write(xor >>> trailing, 64 - leading - trailing);
+            } else {
+                int significant = 64 - newLeading - newTrailing;
+                write(1, 1);
+                write(newLeading, 5);
+                write(significant == 64 ? 0 : significant, 6);
+                write(xor >>> newTrailing, significant);
+                leading = newLeading;
+                trailing = newTrailing;
+            }
+        }
+
+        private void write(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                if (((value >>> i) & 1) == 1) {
+                    int position = HEADER_SIZE * 8 + bitLength;
+                    bytes[position >>> 3] |= (byte) (0x80 >>> (position & 7));
+                }
+                bitLength++;
+            }
+        }
+
+        private void updateHeader() {
+            ByteBuffer header = ByteBuffer.wrap(bytes, 0, HEADER_SIZE);
+            header.putInt(0, count);
+            header.putInt(4, bitLength);
+            header.putLong(8, firstMillis);
+            header.putLong(16, lastMillis);
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] bytes;
+        private int position = HEADER_SIZE * 8;
+
+        private BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long read(int bits) {
+            long value = 0;
+            for (int i = 0; i < bits; i++) {
+                value = (value << 1) | ((bytes[position >>> 3] >>> (7 - (position & 7))) & 1);
+                position++;
+            }
+            return value;
+        }
+    }
+
+    private record BlockIndex(long firstMillis, long lastMillis, int count, long firstPoint) {
+    }
+
+    private record Point(long millis, double value, OptionalDouble alertDifference) {
+    }
+}
@@ -0,0 +1,121 @@
+package stas.thermometer.domains;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Roue de temporisation hachée pour des tâches périodiques, utilisée par un seul thread.
+ *
+ * <p>Une tâche est rangée dans l'emplacement {@code échéance mod taille} ; un cran ne parcourt que son emplacement,
+ * quel que soit le nombre de tâches. Les tâches dont l'échéance est plus lointaine qu'un tour de roue restent
+ * dans l'emplacement et sont ignorées jusqu'au bon tour.</p>
+ *
+ * <p>Une tâche qui lève une exception est comptée dans {@link #failures()} et reste planifiée : une sonde en échec
+ * ne doit ni arrêter le cran, ni priver les autres tâches de l'emplacement de leur exécution.</p>
+ */
+final class TimerWheel {
+
+    private final List<List<Entry>> buckets;
+    private final int mask;
+    private int size;
+    private long failures;
+
+    /**
+     * @param wheelSize le nombre d'emplacements, arrondi à la puissance de 2 supérieure.
+     */
+    TimerWheel(int wheelSize) {
+        int slots = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        buckets = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        mask = slots - 1;
+    }
+
+    /**
+     * Planifie une tâche périodique.
+     *
+     * @param task la tâche.
+     * @param periodTicks la période, en crans, au moins 1.
+     * @param firstTick le cran de la première exécution.
+     */
+    void schedule(Runnable task, long periodTicks, long firstTick) {
+        if (periodTicks < 1) {
+            throw new IllegalArgumentException("La période doit durer au moins un cran");
+        }
+        Entry entry = new Entry(task, periodTicks, firstTick);
+        buckets.get(slot(firstTick)).add(entry);
+        size++;
+    }
+
+    /**
+     * Exécute les tâches échues au cran donné et les replanifie à leur échéance suivante.
+     * Les crans doivent être avancés un à un, sans en sauter.
+     *
+     * @param tick le cran courant.
+     * @return le nombre de tâches exécutées, en échec comprises.
+     */
+    int advance(long tick) {
+        int bucket = slot(tick);
+        List<Entry> entries = buckets.get(bucket);
+        int fired = 0;
+        int i = 0;
+        while (i < entries.size()) {
+            Entry entry = entries.get(i);
+            if (entry.deadline > tick) {
+                // Tour suivant de la roue
+                i++;
+                continue;
+            }
+            try {
+                entry.task.run();
+            } catch (RuntimeException e) {
+                failures++;
+            }
+            fired++;
+            entry.deadline += entry.period;
+            int next = slot(entry.deadline);
+            if (next == bucket) {
+                i++;
+            } else {
+                // Retrait sans décalage : le dernier élément prend la place de la tâche déplacée
+                Entry last = entries.remove(entries.size() - 1);
+                if (last != entry) {
+                    entries.set(i, last);
+                }
+                buckets.get(next).add(entry);
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * @return le nombre de tâches planifiées.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return le nombre d'exécutions qui ont levé une exception.
+     */
+    long failures() {
+        return failures;
+    }
+
+    private int slot(long tick) {
+        return (int) (tick & mask);
+    }
+
+    private static final class Entry {
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+
+        private Entry(Runnable task, long period, long deadline) {
+            this.task = task;
+            this.period = period;
+            this.deadline = deadline;
+        }
+    }
+}
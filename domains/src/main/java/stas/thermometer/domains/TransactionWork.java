@@ -0,0 +1,13 @@
+package stas.thermometer.domains;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Travail exécuté par {@link DatabaseManager#executeInTransaction} sur une connexion
+ * dont l'auto-commit est désactivé.
+ */
+@FunctionalInterface
+public interface TransactionWork {
+    void execute(Connection conn) throws SQLException;
+}
@@ -0,0 +1,78 @@
+package stas.thermometer.domains;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ensemble d'insertions validées par un seul commit, obtenu avec {@link DatabaseManager#beginUnitOfWork()}.
+ *
+ * <p>Les insertions sont regroupées par type de mapper : chaque groupe part en un seul
+ * {@code addBatch/executeBatch}, dans l'ordre où le groupe a été rencontré. Une alerte enregistrée
+ * après sa moyenne est donc toujours écrite après elle. Les clés primaires sont fournies par
+ * l'appelant (voir {@link IdAllocator}).</p>
+ */
+public class UnitOfWork {
+
+    private final DatabaseManager<?> databaseManager;
+    private final Map<Class<?>, List<Insert<?>>> inserts = new LinkedHashMap<>();
+    private int size;
+
+    UnitOfWork(DatabaseManager<?> databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    /**
+     * Enregistre une insertion, exécutée au {@link #commit()}.
+     *
+     * @param mapper le mapper de la table.
+     * @param item l'élément à insérer.
+     * @param id la clé primaire de la ligne.
+     */
+    public <T> void insert(BatchDataMapper<T> mapper, T item, long id) {
+        inserts.computeIfAbsent(mapper.getClass(), type -> new ArrayList<>()).add(new Insert<>(mapper, item, id));
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Exécute toutes les insertions dans une seule transaction. Si l'une d'elles échoue,
+     * aucune n'est validée et les insertions restent enregistrées.
+     */
+    public void commit() {
+        if (isEmpty()) {
+            return;
+        }
+        databaseManager.executeInTransaction(conn -> {
+            StatementCache statements = databaseManager.statementCache(conn);
+            for (List<Insert<?>> group : inserts.values()) {
+                BatchDataMapper<?> mapper = group.get(0).mapper();
+                PreparedStatement statement = statements.prepare(mapper.getClass(), mapper.getInsertWithIdSql(), false);
+                for (Insert<?> insert : group) {
+                    insert.bind(statement);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+        inserts.clear();
+        size = 0;
+    }
+
+    private record Insert<T>(BatchDataMapper<T> mapper, T item, long id) {
+
+        private void bind(PreparedStatement statement) throws SQLException {
+            mapper.bindParameters(statement, item, id);
+        }
+    }
+}
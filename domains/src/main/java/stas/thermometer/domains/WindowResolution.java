@@ -0,0 +1,34 @@
+package stas.thermometer.domains;
+
+import java.time.Duration;
+
+/**
+ * Fenêtre supplémentaire calculée par {@link MeasurementAggregator} à partir des volets déjà agrégés.
+ *
+ * <p>Toutes les {@code slide}, la fenêtre couvre les {@code range} précédentes ; une fenêtre glissante a un pas
+ * plus court que sa durée. Ses moyennes, statistiques et alertes sont notifiées à ses propres observateurs
+ * et, si un sink est fourni, écrites dans celui-ci.</p>
+ *
+ * @param range la durée couverte par chaque moyenne.
+ * @param slide l'intervalle entre deux moyennes.
+ * @param observers les observateurs des moyennes de cette fenêtre.
+ * @param sink la destination des moyennes de cette fenêtre, ou {@code null} pour ne pas les persister.
+ */
+public record WindowResolution(Duration range, Duration slide, ObserverManager observers, AverageSink sink) {
+
+    public WindowResolution {
+        if (range.isNegative() || range.isZero() || slide.isNegative() || slide.isZero() || slide.compareTo(range) > 0) {
+            throw new IllegalArgumentException("Le pas d'une fenêtre doit être positif et ne pas dépasser sa durée");
+        }
+        if (observers == null) {
+            throw new IllegalArgumentException("Une fenêtre nécessite un gestionnaire d'observateurs");
+        }
+    }
+
+    /**
+     * @return une fenêtre dont les moyennes se succèdent sans se chevaucher.
+     */
+    public static WindowResolution tumbling(Duration range, ObserverManager observers, AverageSink sink) {
+        return new WindowResolution(range, range, observers, sink);
+    }
+}
@@ -0,0 +1,21 @@
+package stas.thermometer.domains;
+
+import java.time.LocalDateTime;
+
+/**
+ * Statistiques des mesures d'une fenêtre de calcul de moyenne.
+ *
+ * <p>Le résumé appartient aux observateurs une fois la fenêtre close : ils peuvent le fusionner
+ * dans leurs propres agrégats ({@link StatisticsSketch#merge}) mais ne doivent pas le modifier.</p>
+ *
+ * @param type la grandeur mesurée.
+ * @param thermometerName le nom du thermomètre.
+ * @param timestamp l'horodatage de la moyenne de la fenêtre.
+ * @param sketch le résumé des mesures de la fenêtre.
+ */
+public record WindowStatistics(MetricType type, String thermometerName, LocalDateTime timestamp, StatisticsSketch sketch) {
+
+    public StatisticsSummary summary() {
+        return sketch.summary();
+    }
+}
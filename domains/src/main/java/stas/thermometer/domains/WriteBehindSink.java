@@ -0,0 +1,299 @@
+package stas.thermometer.domains;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Sink à écriture différée : les moyennes sont mises en file puis écrites par lots
+ * ({@code addBatch/executeBatch}) dans une seule transaction.
+ *
+ * <p>Un lot est écrit dès que {@code maxBatchSize} moyennes sont en attente, ou lorsque la plus ancienne
+ * attend depuis plus de {@code maxLatency} (voir {@link #flushIfDue()}, à appeler périodiquement).
+ * Si l'écriture échoue, la transaction est annulée et les moyennes restent en file pour le lot suivant.</p>
+ *
+ * <p>La file est une {@link PendingAverageQueue} : avec un {@link AverageJournal}, les moyennes survivent
+ * à une coupure de la base comme à un redémarrage et sont rejouées dans leur ordre d'arrivée.</p>
+ *
+ * <p>Les clés primaires sont attribuées avant la transaction par un {@link IdAllocator} : une moyenne
+ * et son alerte partent dans le même lot, sans lecture des identifiants générés. La clé d'une moyenne est
+ * mémorisée dans la file avant le commit ({@link PendingAverageQueue#assignIds(List)}) : une moyenne relue
+ * après un commit non acquitté (arrêt entre le commit et le checkpoint du journal, échec de la confirmation)
+ * est retrouvée par sa clé et n'est pas écrite une seconde fois.</p>
+ *
+ * <p>Les moyennes d'un même calcul ne sont jamais séparées : {@link #endTick()} déclenche l'écriture
+ * une fois {@code ticksPerCommit} calculs regroupés, ce qui divise le nombre de commits d'autant.</p>
+ *
+ * <p>Les statistiques de fenêtre soumises avec une moyenne sont écrites dans le même lot, dans la table
+ * {@code AverageStatistics} créée à la première utilisation.</p>
+ */
+public class WriteBehindSink implements AverageSink {
+
+    private final DatabaseManager<?> databaseManager;
+    private final int ticksPerCommit;
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+    private final TemperatureMapper temperatureMapper = new TemperatureMapper();
+    private final HumidityMapper humidityMapper = new HumidityMapper();
+    private final PendingAverageQueue queue;
+    private final IdAllocator idAllocator;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int pendingTicks;
+    private boolean statisticsTableReady;
+    private SinkMetrics metrics = new SinkMetrics(0, 0, 0, 0, 0);
+
+    /**
+     * @param databaseManager le gestionnaire utilisé pour ouvrir la transaction de chaque lot.
+     * @param maxBatchSize nombre de moyennes en attente qui déclenche l'écriture d'un lot.
+     * @param maxLatency durée d'attente maximale d'une moyenne avant l'écriture du lot.
+     */
+    public WriteBehindSink(DatabaseManager<?> databaseManager, int maxBatchSize, Duration maxLatency) {
+        this(databaseManager, new InMemoryPendingQueue(), maxBatchSize, maxLatency);
+    }
+
+    /**
+     * @param databaseManager le gestionnaire utilisé pour ouvrir la transaction de chaque lot.
+     * @param queue la file des moyennes en attente, éventuellement persistante.
+     * @param maxBatchSize nombre de moyennes en attente qui déclenche l'écriture d'un lot.
+     * @param maxLatency durée d'attente maximale d'une moyenne avant l'écriture du lot.
+     */
+    public WriteBehindSink(DatabaseManager<?> databaseManager, PendingAverageQueue queue, int maxBatchSize, Duration maxLatency) {
+        this(databaseManager, queue, new IdAllocator(databaseManager, 100),
+                new PersistenceSettings(Integer.MAX_VALUE, maxBatchSize, maxLatency));
+    }
+
+    /**
+     * @param databaseManager le gestionnaire utilisé pour ouvrir la transaction de chaque lot.
+     * @param queue la file des moyennes en attente, éventuellement persistante.
+     * @param idAllocator l'allocateur des clés primaires des moyennes et des alertes.
+     * @param settings le regroupement des écritures : calculs par transaction, taille maximale et latence.
+     */
+    public WriteBehindSink(DatabaseManager<?> databaseManager, PendingAverageQueue queue, IdAllocator idAllocator,
+                           PersistenceSettings settings) {
+        this.databaseManager = databaseManager;
+        this.queue = queue;
+        this.idAllocator = idAllocator;
+        this.ticksPerCommit = settings.ticksPerCommit();
+        this.maxBatchSize = settings.maxBatchSize();
+        this.maxLatencyNanos = settings.maxLatency().toNanos();
+    }
+
+    @Override
+    public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+        enqueue(PendingAverage.of(average, alertDifference));
+    }
+
+    @Override
+    public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+        enqueue(PendingAverage.of(average, alertDifference));
+    }
+
+    @Override
+    public void submitTemperature(Measurement average, OptionalDouble alertDifference, StatisticsSummary statistics) {
+        enqueue(PendingAverage.of(average, alertDifference).withStatistics(statistics));
+    }
+
+    @Override
+    public void submitHumidity(Humidity average, OptionalDouble alertDifference, StatisticsSummary statistics) {
+        enqueue(PendingAverage.of(average, alertDifference).withStatistics(statistics));
+    }
+
+    /**
+     * Écrit les moyennes en attente une fois {@code ticksPerCommit} calculs regroupés.
+     */
+    @Override
+    public void endTick() {
+        lock.lock();
+        try {
+            pendingTicks++;
+            if (pendingTicks >= ticksPerCommit) {
+                flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Écrit le lot en attente si la plus ancienne moyenne a dépassé la latence maximale.
+     */
+    @Override
+    public void flushIfDue() {
+        lock.lock();
+        try {
+            if (pendingCount() > 0 && System.nanoTime() - queue.oldestPendingNanos() >= maxLatencyNanos) {
+                flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Écrit immédiatement toutes les moyennes en attente, par lots d'au plus {@code maxBatchSize}
+     * moyennes écrits chacun dans une seule {@link UnitOfWork}.
+     */
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            for (List<PendingAverage> batch = queue.peek(maxBatchSize); !batch.isEmpty(); batch = queue.peek(maxBatchSize)) {
+                long start = System.nanoTime();
+                ensureStatisticsTable(batch);
+                // Seules les moyennes qui ont déjà une clé ont pu être écrites par une tentative précédente
+                Map<MetricType, Set<Long>> written = findWritten(batch);
+                // Les clés sont réservées avant le commit : un bloc épuisé ne prolonge pas la transaction
+                List<PendingAverage> identified = identify(batch);
+                UnitOfWork unitOfWork = databaseManager.beginUnitOfWork();
+                for (PendingAverage average : identified) {
+                    if (!written.getOrDefault(average.type(), Set.of()).contains(average.id())) {
+                        register(unitOfWork, average);
+                    }
+                }
+                unitOfWork.commit();
+                long elapsed = System.nanoTime() - start;
+                queue.acknowledge(batch.size());
+                metrics = new SinkMetrics(metrics.flushes() + 1, metrics.rowsWritten() + batch.size(), batch.size(),
+                        elapsed, metrics.totalFlushNanos() + elapsed);
+            }
+            pendingTicks = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SinkMetrics getMetrics() {
+        lock.lock();
+        try {
+            return metrics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ajoute la moyenne au journal, puis écrit le lot s'il est complet.
+     */
+    private void enqueue(PendingAverage average) {
+        lock.lock();
+        try {
+            queue.append(average);
+            flushIfFull();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushIfFull() {
+        if (pendingCount() >= maxBatchSize) {
+            flush();
+        }
+    }
+
+    private void ensureStatisticsTable(List<PendingAverage> batch) {
+        if (!statisticsTableReady && batch.stream().anyMatch(average -> average.statistics().isPresent())) {
+            databaseManager.executeInTransaction(AverageStatisticsMapper::createTableIfMissing);
+            statisticsTableReady = true;
+        }
+    }
+
+    /**
+     * Attribue une clé aux moyennes qui n'en ont pas encore et la mémorise dans la file avant toute écriture.
+     */
+    private List<PendingAverage> identify(List<PendingAverage> batch) {
+        List<PendingAverage> identified = null;
+        for (int i = 0; i < batch.size(); i++) {
+            PendingAverage average = batch.get(i);
+            if (!average.hasId()) {
+                if (identified == null) {
+                    identified = new ArrayList<>(batch);
+                }
+                identified.set(i, average.withId(idAllocator.nextId(tableOf(average.type()))));
+            }
+        }
+        if (identified == null) {
+            return batch;
+        }
+        queue.assignIds(identified);
+        return identified;
+    }
+
+    /**
+     * @return par grandeur, les clés des moyennes du lot déjà présentes en base.
+     */
+    private Map<MetricType, Set<Long>> findWritten(List<PendingAverage> batch) {
+        Map<MetricType, Set<Long>> written = new EnumMap<>(MetricType.class);
+        if (batch.stream().noneMatch(PendingAverage::hasId)) {
+            return written;
+        }
+        databaseManager.executeInTransaction(conn -> {
+            for (MetricType type : MetricType.values()) {
+                List<Long> ids = batch.stream().filter(average -> average.type() == type && average.hasId())
+                        .map(PendingAverage::id).toList();
+                if (ids.isEmpty()) {
+                    continue;
+                }
+                String sql = "SELECT id FROM " + tableOf(type) + " WHERE id IN ("
+                        + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+                try (PreparedStatement statement = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        statement.setLong(i + 1, ids.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            written.computeIfAbsent(type, key -> new HashSet<>()).add(resultSet.getLong(1));
+                        }
+                    }
+                }
+            }
+        });
+        return written;
+    }
+
+    private static String tableOf(MetricType type) {
+        return type == MetricType.TEMPERATURE ? TemperatureMapper.TABLE : HumidityMapper.TABLE;
+    }
+
+    private void register(UnitOfWork unitOfWork, PendingAverage average) {
+        if (average.type() == MetricType.TEMPERATURE) {
+            register(unitOfWork, average, average.toMeasurement(), temperatureMapper,
+                    AlertsTemperatureMapper::new, AlertsTemperatureMapper.TABLE);
+        } else {
+            register(unitOfWork, average, average.toHumidity(), humidityMapper,
+                    AlertsHumidityMapper::new, AlertsHumidityMapper.TABLE);
+        }
+    }
+
+    private <T> void register(UnitOfWork unitOfWork, PendingAverage average, T item, BatchDataMapper<T> mapper,
+                              BiFunction<Long, Double, BatchDataMapper<T>> alertMapperFactory, String alertTable) {
+        long id = average.id();
+        unitOfWork.insert(mapper, item, id);
+        if (average.alertDifference().isPresent()) {
+            BatchDataMapper<T> alertMapper = alertMapperFactory.apply(id, average.alertDifference().getAsDouble());
+            unitOfWork.insert(alertMapper, item, idAllocator.nextId(alertTable));
+        }
+        if (average.statistics().isPresent()) {
+            unitOfWork.insert(new AverageStatisticsMapper(average.type(), id), average.statistics().get(),
+                    idAllocator.nextId(AverageStatisticsMapper.TABLE));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AlertRuleEngineTest {
+
+    private final RecordingObservers alerts = new RecordingObservers();
+
+    @Test
+    void shouldKeepHistoricalThresholdsByDefault() {
+        AlertRuleEngine engine = new AlertRuleEngine(AlertRule.defaults());
+
+        assertTrue(Double.isNaN(engine.evaluate(MetricType.TEMPERATURE, 29.0, 20.0, 0, alerts)));
+        assertEquals(11.0, engine.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 2_000, alerts), 1e-9);
+        assertEquals(11.0, engine.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 4_000, alerts), 1e-9,
+                "Sans délai, chaque fenêtre au-delà du seuil est signalée");
+        assertEquals(0.3, engine.evaluate(MetricType.HUMIDITY, 0.2, 0.5, 6_000, alerts), 1e-9);
+
+        assertEquals(List.of("Surchauffe", "Surchauffe", "Trop sec"), alerts.types);
+    }
+
+    @Test
+    void shouldNotRetriggerInsideHysteresisBandBeforeCooldown() {
+        AlertRuleEngine engine = new AlertRuleEngine(List.of(
+                new AlertRule("Surchauffe", MetricType.TEMPERATURE, true, 0, 10, 2, Duration.ZERO, Duration.ofMinutes(5))));
+
+        double[] hovering = {30.5, 29.5, 30.5, 29.0, 30.2, 30.4};
+        for (int i = 0; i < hovering.length; i++) {
+            engine.evaluate(MetricType.TEMPERATURE, hovering[i], 20.0, i * 2_000L, alerts);
+        }
+        assertEquals(1, alerts.types.size(), "Une valeur qui oscille autour du seuil ne doit produire qu'une alerte");
+
+        engine.evaluate(MetricType.TEMPERATURE, 27.0, 20.0, 20_000, alerts);
+        engine.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 22_000, alerts);
+        assertEquals(1, alerts.types.size(), "Le délai entre deux alertes s'applique même après réarmement");
+
+        engine.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 300_000, alerts);
+        assertEquals(2, alerts.types.size());
+    }
+
+    @Test
+    void shouldAlertOncePerActivationWithoutCooldown() {
+        AlertRuleEngine engine = new AlertRuleEngine(List.of(
+                new AlertRule("Surchauffe", MetricType.TEMPERATURE, true, 0, 10, 2, Duration.ZERO, Duration.ZERO)));
+
+        double[] hovering = {30.5, 29.5, 30.5, 29.0, 30.2, 30.4};
+        for (int i = 0; i < hovering.length; i++) {
+            engine.evaluate(MetricType.TEMPERATURE, hovering[i], 20.0, i * 2_000L, alerts);
+        }
+        assertEquals(1, alerts.types.size(), "Dans la bande d'hystérésis, la règle active ne notifie plus");
+
+        engine.evaluate(MetricType.TEMPERATURE, 27.0, 20.0, 20_000, alerts);
+        engine.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 22_000, alerts);
+        engine.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 24_000, alerts);
+        assertEquals(2, alerts.types.size(), "Une nouvelle activation après réarmement est notifiée une fois");
+    }
+
+    @Test
+    void shouldWaitForMinimumDurationBeforeFirstAlert() {
+        AlertRuleEngine engine = new AlertRuleEngine(List.of(
+                new AlertRule("Trop humide", MetricType.HUMIDITY, true, 0, 0.1, 0, Duration.ofSeconds(6), Duration.ofMinutes(5))));
+
+        engine.evaluate(MetricType.HUMIDITY, 0.7, 0.5, 0, alerts);
+        engine.evaluate(MetricType.HUMIDITY, 0.7, 0.5, 2_000, alerts);
+        engine.evaluate(MetricType.HUMIDITY, 0.5, 0.5, 4_000, alerts);
+        engine.evaluate(MetricType.HUMIDITY, 0.7, 0.5, 6_000, alerts);
+        assertTrue(alerts.types.isEmpty(), "Un dépassement interrompu ne compte pas");
+
+        engine.evaluate(MetricType.HUMIDITY, 0.7, 0.5, 8_000, alerts);
+        engine.evaluate(MetricType.HUMIDITY, 0.7, 0.5, 12_000, alerts);
+        assertEquals(List.of("Trop humide"), alerts.types);
+    }
+
+    @Test
+    void shouldKeepSeparateStatePerStream() {
+        AlertRuleEngine base = new AlertRuleEngine(List.of(
+                new AlertRule("Surchauffe", MetricType.TEMPERATURE, true, 0, 10, 0, Duration.ZERO, Duration.ofMinutes(5))));
+        AlertRuleEngine window = base.newState();
+
+        base.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 0, alerts);
+        window.evaluate(MetricType.TEMPERATURE, 31.0, 20.0, 0, alerts);
+
+        assertEquals(2, alerts.types.size());
+    }
+
+    @Test
+    void shouldEvaluateHundredsOfRulesWithoutAllocating() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Mesure des allocations indisponible sur cette JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        List<AlertRule> rules = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            MetricType metric = i % 2 == 0 ? MetricType.TEMPERATURE : MetricType.HUMIDITY;
+            rules.add(new AlertRule("Règle " + i, metric, i % 4 < 2, 0.1, 100 + i, 1, Duration.ofSeconds(4), Duration.ofMinutes(1)));
+        }
+        AlertRuleEngine engine = new AlertRuleEngine(rules);
+        ObserverManager observers = new ObserverManager();
+        evaluate(engine, observers);
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        evaluate(engine, observers);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < 16 * 1024, "Octets alloués pour 20 000 évaluations de 200 règles : " + allocated);
+    }
+
+    private static void evaluate(AlertRuleEngine engine, ObserverManager observers) {
+        for (int i = 0; i < 10_000; i++) {
+            engine.evaluate(MetricType.TEMPERATURE, 20.0 + (i & 7), 20.0, i * 2_000L, observers);
+            engine.evaluate(MetricType.HUMIDITY, 0.5, 0.5, i * 2_000L, observers);
+        }
+    }
+
+    private static final class RecordingObservers extends ObserverManager {
+        private final List<String> types = new ArrayList<>();
+
+        @Override
+        public void notifyTemperatureAlert(String alertType, double expectedTemperature, double difference) {
+            types.add(alertType);
+        }
+
+        @Override
+        public void notifyHumidityAlert(String alertType, double expectedHumidity, double difference) {
+            types.add(alertType);
+        }
+    }
+}
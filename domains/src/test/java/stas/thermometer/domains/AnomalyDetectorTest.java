@@ -0,0 +1,121 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AnomalyDetectorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 15, 10, 0);
+
+    private final ObserverManager observers = new ObserverManager();
+    private final List<Anomaly> anomalies = new ArrayList<>();
+
+    AnomalyDetectorTest() {
+        observers.addAnomalyObserver(anomalies::add);
+    }
+
+    @Test
+    void shouldFlagValueFarFromSmoothedBaseline() {
+        AnomalyDetector detector = new AnomalyDetector(observers, new AnomalySettings(true, 0.1, 4, 30, 0, 0));
+        for (int i = 0; i < 40; i++) {
+            detector.observe("Salon", MetricType.TEMPERATURE, i % 2 == 0 ? 20.0 : 20.2, START.plusSeconds(2L * i));
+        }
+        assertTrue(anomalies.isEmpty(), "Le bruit habituel n'est pas une anomalie");
+
+        detector.observe("Salon", MetricType.TEMPERATURE, 25.0, START.plusSeconds(80));
+
+        assertEquals(1, anomalies.size());
+        Anomaly anomaly = anomalies.get(0);
+        assertEquals(AnomalyKind.Z_SCORE, anomaly.kind());
+        assertEquals("Salon", anomaly.thermometerName());
+        assertEquals(20.1, anomaly.baseline(), 0.05);
+        assertTrue(anomaly.score() > 4);
+    }
+
+    @Test
+    void shouldWaitForWarmupBeforeComputingZScores() {
+        AnomalyDetector detector = new AnomalyDetector(observers, new AnomalySettings(true, 0.1, 4, 30, 0, 0));
+        for (int i = 0; i < 10; i++) {
+            detector.observe("Salon", MetricType.TEMPERATURE, i % 2 == 0 ? 20.0 : 20.2, START.plusSeconds(2L * i));
+        }
+        detector.observe("Salon", MetricType.TEMPERATURE, 25.0, START.plusSeconds(20));
+
+        assertTrue(anomalies.isEmpty());
+    }
+
+    @Test
+    void shouldFlagFastRateOfChangeOnly() {
+        AnomalyDetector detector = new AnomalyDetector(observers, new AnomalySettings(true, 0.1, 4, 1000, 5, 0.1));
+        detector.observe("Frigo", MetricType.TEMPERATURE, 4.0, START);
+        detector.observe("Frigo", MetricType.TEMPERATURE, 4.1, START.plusSeconds(2));
+        assertTrue(anomalies.isEmpty(), "3 degrés par minute restent sous le seuil");
+
+        detector.observe("Frigo", MetricType.TEMPERATURE, 4.4, START.plusSeconds(4));
+
+        assertEquals(1, anomalies.size());
+        Anomaly anomaly = anomalies.get(0);
+        assertEquals(AnomalyKind.RATE_OF_CHANGE, anomaly.kind());
+        assertEquals(4.1, anomaly.baseline(), 1e-9);
+        assertEquals(9.0, anomaly.score(), 1e-9);
+    }
+
+    @Test
+    void shouldKeepOneBaselinePerThermometerAndMetric() {
+        AnomalyDetector detector = new AnomalyDetector(observers, new AnomalySettings(true, 0.1, 4, 30, 0, 0));
+        for (int i = 0; i < 40; i++) {
+            LocalDateTime timestamp = START.plusSeconds(2L * i);
+            detector.observe("Salon", MetricType.TEMPERATURE, i % 2 == 0 ? 20.0 : 20.2, timestamp);
+            detector.observe("Salon", MetricType.HUMIDITY, i % 2 == 0 ? 0.50 : 0.52, timestamp);
+            detector.observe("Frigo", MetricType.TEMPERATURE, i % 2 == 0 ? 4.0 : 4.2, timestamp);
+        }
+
+        detector.observe("Frigo", MetricType.TEMPERATURE, 20.1, START.plusSeconds(80));
+        detector.observe("Salon", MetricType.TEMPERATURE, 4.1, START.plusSeconds(80));
+        detector.observe("Salon", MetricType.HUMIDITY, 0.51, START.plusSeconds(80));
+
+        assertEquals(2, detector.getThermometerCount());
+        assertEquals(List.of("Frigo", "Salon"), anomalies.stream().map(Anomaly::thermometerName).toList());
+    }
+
+    @Test
+    void shouldFollowThousandsOfThermometersWithoutAllocating() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Mesure des allocations indisponible sur cette JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        String[] names = new String[5000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Thermomètre " + i;
+        }
+        LocalDateTime[] timestamps = new LocalDateTime[10];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = START.plusSeconds(2L * i);
+        }
+        AnomalyDetector detector = new AnomalyDetector(observers, AnomalySettings.defaults());
+        observe(detector, names, timestamps);
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        observe(detector, names, timestamps);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(names.length, detector.getThermometerCount());
+        assertTrue(anomalies.isEmpty());
+        assertTrue(allocated < 16 * 1024, "Octets alloués pour 100 000 moyennes : " + allocated);
+    }
+
+    private static void observe(AnomalyDetector detector, String[] names, LocalDateTime[] timestamps) {
+        for (int t = 0; t < timestamps.length; t++) {
+            for (int i = 0; i < names.length; i++) {
+                detector.observe(names[i], MetricType.TEMPERATURE, (t & 1) == 0 ? 20.0 : 20.1, timestamps[t]);
+                detector.observe(names[i], MetricType.HUMIDITY, 0.5, timestamps[t]);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncAverageSinkTest {
+
+    @Test
+    void shouldWriteAveragesOnWriterThread() {
+        RecordingSink recording = new RecordingSink();
+        AsyncAverageSink sink = new AsyncAverageSink(recording, 10, BackpressurePolicy.BLOCK);
+
+        sink.submitTemperature(measurement(20.0), OptionalDouble.empty());
+        sink.submitHumidity(new Humidity("thermometer1", 0.5, LocalDateTime.now()), OptionalDouble.of(0.2));
+        sink.close();
+
+        assertEquals(2, recording.writes.size());
+        assertTrue(recording.threads.stream().allMatch("stas-db-writer"::equals), "Les écritures doivent se faire sur le thread dédié");
+        assertTrue(recording.flushed, "Les moyennes en attente doivent être écrites à la fermeture");
+    }
+
+    @Test
+    void shouldDropOldestWhenQueueIsFull() throws InterruptedException {
+        BlockedSink blocked = new BlockedSink();
+        AsyncAverageSink sink = new AsyncAverageSink(blocked, 2, BackpressurePolicy.DROP_OLDEST);
+        sink.submitTemperature(measurement(1.0), OptionalDouble.empty());
+        assertTrue(blocked.started.await(1, TimeUnit.SECONDS));
+
+        sink.submitTemperature(measurement(2.0), OptionalDouble.empty());
+        sink.submitTemperature(measurement(3.0), OptionalDouble.empty());
+        sink.submitTemperature(measurement(4.0), OptionalDouble.empty());
+        blocked.release.countDown();
+        sink.close();
+
+        assertEquals(1, sink.getDroppedCount());
+        assertEquals(List.of(1.0, 3.0, 4.0), blocked.writes);
+    }
+
+    @Test
+    void shouldNeverDropEndOfTickMarkers() throws InterruptedException {
+        BlockedSink blocked = new BlockedSink();
+        AsyncAverageSink sink = new AsyncAverageSink(blocked, 2, BackpressurePolicy.DROP_OLDEST);
+        sink.submitTemperature(measurement(1.0), OptionalDouble.empty());
+        assertTrue(blocked.started.await(1, TimeUnit.SECONDS));
+
+        sink.endTick();
+        sink.submitTemperature(measurement(2.0), OptionalDouble.empty());
+        sink.submitTemperature(measurement(3.0), OptionalDouble.empty());
+        blocked.release.countDown();
+        sink.close();
+
+        assertEquals(1, sink.getDroppedCount());
+        assertEquals(List.of(1.0, 3.0), blocked.writes);
+        assertEquals(1, blocked.ticks.get(), "La fin de calcul la plus ancienne doit être gardée");
+    }
+
+    @Test
+    void shouldSpillWhenQueueIsFull() throws InterruptedException {
+        BlockedSink blocked = new BlockedSink();
+        RecordingSink spill = new RecordingSink();
+        AsyncAverageSink sink = new AsyncAverageSink(blocked, 1, BackpressurePolicy.SPILL, spill);
+        sink.submitTemperature(measurement(1.0), OptionalDouble.empty());
+        assertTrue(blocked.started.await(1, TimeUnit.SECONDS));
+
+        sink.submitTemperature(measurement(2.0), OptionalDouble.empty());
+        sink.submitTemperature(measurement(3.0), OptionalDouble.empty());
+        blocked.release.countDown();
+        sink.close();
+
+        assertEquals(1, sink.getSpilledCount());
+        assertEquals(List.of(3.0), spill.writes);
+    }
+
+    @Test
+    void shouldKeepWritingAfterAFailure() {
+        RecordingSink recording = new RecordingSink();
+        AverageSink failingOnce = new AverageSink() {
+            private boolean failed;
+
+            @Override
+            public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+                if (!failed) {
+                    failed = true;
+                    throw new RuntimeException("base indisponible");
+                }
+                recording.submitTemperature(average, alertDifference);
+            }
+
+            @Override
+            public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+                recording.submitHumidity(average, alertDifference);
+            }
+        };
+        AsyncAverageSink sink = new AsyncAverageSink(failingOnce, 10, BackpressurePolicy.BLOCK);
+
+        sink.submitTemperature(measurement(1.0), OptionalDouble.empty());
+        sink.submitTemperature(measurement(2.0), OptionalDouble.empty());
+        sink.close();
+
+        assertEquals(1, sink.getFailedCount());
+        assertEquals(List.of(2.0), recording.writes);
+    }
+
+    @Test
+    void shouldRequireSpillSinkForSpillPolicy() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AsyncAverageSink(new RecordingSink(), 1, BackpressurePolicy.SPILL));
+    }
+
+    private static Measurement measurement(double temperature) {
+        return new Measurement("thermometer1", temperature, LocalDateTime.now());
+    }
+
+    private static class RecordingSink implements AverageSink {
+        final List<Double> writes = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        final AtomicInteger ticks = new AtomicInteger();
+        volatile boolean flushed;
+
+        @Override
+        public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+            writes.add(average.temperature());
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+            writes.add(average.humidity());
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void endTick() {
+            ticks.incrementAndGet();
+        }
+
+        @Override
+        public void flush() {
+            flushed = true;
+        }
+    }
+
+    private static class BlockedSink extends RecordingSink {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.submitTemperature(average, alertDifference);
+        }
+    }
+}
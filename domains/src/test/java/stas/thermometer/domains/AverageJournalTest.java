@@ -0,0 +1,175 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AverageJournalTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2023, 11, 20, 10, 15, 30, 123_000_000);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReturnAveragesInArrivalOrder() throws IOException {
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            journal.append(PendingAverage.of(new Measurement("thermometer1", 20.0, TIMESTAMP), OptionalDouble.empty()));
+            journal.append(PendingAverage.of(new Humidity("thermometer1", 0.5, TIMESTAMP), OptionalDouble.of(0.2)));
+
+            List<PendingAverage> averages = journal.peek(10);
+
+            assertEquals(2, journal.size());
+            assertEquals(new PendingAverage(MetricType.TEMPERATURE, "thermometer1", 20.0, TIMESTAMP, OptionalDouble.empty()), averages.get(0));
+            assertEquals(new PendingAverage(MetricType.HUMIDITY, "thermometer1", 0.5, TIMESTAMP, OptionalDouble.of(0.2)), averages.get(1));
+        }
+    }
+
+    @Test
+    void shouldRemoveAcknowledgedAverages() throws IOException {
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            journal.append(temperature(1.0));
+            journal.append(temperature(2.0));
+            journal.append(temperature(3.0));
+
+            journal.acknowledge(2);
+
+            assertEquals(1, journal.size());
+            assertEquals(List.of(temperature(3.0)), journal.peek(10));
+        }
+    }
+
+    @Test
+    void shouldResumeAfterCheckpointWhenReopened() throws IOException {
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            journal.append(temperature(1.0));
+            journal.append(temperature(2.0));
+            journal.append(temperature(3.0));
+            journal.acknowledge(1);
+        }
+
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            assertEquals(2, journal.size(), "Les moyennes confirmées ne doivent pas être rejouées");
+            assertEquals(List.of(temperature(2.0), temperature(3.0)), journal.peek(10));
+        }
+    }
+
+    @Test
+    void shouldRollSegmentsAndDeleteConsumedOnes() throws IOException {
+        try (AverageJournal journal = AverageJournal.open(directory, 192)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(temperature(i));
+            }
+            assertTrue(countSegments() > 1, "Le journal doit changer de segment lorsqu'il est plein");
+
+            assertEquals(10, journal.peek(20).size());
+            journal.acknowledge(9);
+
+            assertEquals(1, countSegments(), "Les segments entièrement relus doivent être supprimés");
+            assertEquals(List.of(temperature(9.0)), journal.peek(20));
+        }
+    }
+
+    @Test
+    void shouldIgnoreCorruptedTail() throws IOException {
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            journal.append(temperature(1.0));
+            journal.append(temperature(2.0));
+        }
+        // Corrompt un octet de la charge utile du second enregistrement, comme une écriture interrompue
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        int secondRecordPayload = 2 * (8 + payloadSize("thermometer1")) - payloadSize("thermometer1");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF}), secondRecordPayload + 2);
+        }
+
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            assertEquals(List.of(temperature(1.0)), journal.peek(10));
+
+            journal.append(temperature(3.0));
+
+            assertEquals(List.of(temperature(1.0), temperature(3.0)), journal.peek(10));
+        }
+    }
+
+    @Test
+    void shouldKeepWindowStatisticsWithAverages() throws IOException {
+        StatisticsSummary statistics = new StatisticsSummary(12, 0.8, 19.0, 22.5, 20.1, 22.0, 22.4);
+        PendingAverage average = PendingAverage.of(new Measurement("thermometer1", 20.3, TIMESTAMP), OptionalDouble.of(11.0))
+                .withStatistics(statistics);
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            journal.append(average);
+            journal.append(temperature(1.0));
+        }
+
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            assertEquals(List.of(average, temperature(1.0)), journal.peek(10));
+        }
+    }
+
+    @Test
+    void shouldKeepAssignedIdsWhenReplayedAfterRestart() throws IOException {
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            journal.append(temperature(1.0));
+            journal.append(temperature(2.0));
+            journal.append(temperature(3.0));
+            // Clés attribuées aux deux premières moyennes, puis arrêt entre le commit et le checkpoint
+            journal.assignIds(List.of(temperature(1.0).withId(101), temperature(2.0).withId(102)));
+        }
+
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            assertEquals(List.of(temperature(1.0).withId(101), temperature(2.0).withId(102), temperature(3.0)), journal.peek(10));
+        }
+    }
+
+    @Test
+    void shouldForgetIdWhoseRewriteWasInterrupted() throws IOException {
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            journal.append(temperature(1.0));
+            journal.append(temperature(2.0));
+            journal.assignIds(List.of(temperature(1.0).withId(101)));
+        }
+        // Réécriture partielle de la clé du premier enregistrement
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0x7F}), 8 + payloadSize("thermometer1") - 12);
+        }
+
+        try (AverageJournal journal = AverageJournal.open(directory, 4096)) {
+            assertEquals(List.of(temperature(1.0), temperature(2.0)), journal.peek(10),
+                    "Une clé illisible est oubliée sans perdre la moyenne ni les suivantes");
+        }
+    }
+
+    private static PendingAverage temperature(double value) {
+        return PendingAverage.of(new Measurement("thermometer1", value, TIMESTAMP), OptionalDouble.empty());
+    }
+
+    private static int payloadSize(String name) {
+        return 2 + 8 + 8 + 8 + 4 + 2 + name.length() + 12;
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+}
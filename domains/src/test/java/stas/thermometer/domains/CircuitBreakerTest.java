@@ -0,0 +1,89 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private long now;
+    private CircuitBreaker breaker;
+    private final List<CircuitState> transitions = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        now = 0;
+        breaker = new CircuitBreaker(2, Duration.ofSeconds(1), Duration.ofSeconds(8), () -> now, new Random(42));
+        breaker.addObserver(transitions::add);
+    }
+
+    @Test
+    void shouldOpenAfterConsecutiveFailures() {
+        breaker.recordFailure();
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+
+        breaker.recordFailure();
+
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(), "Aucune écriture ne doit être tentée pendant le délai d'attente");
+    }
+
+    @Test
+    void shouldAllowASingleProbeOnceBackoffHasElapsed() {
+        openBreaker();
+        now += Duration.ofSeconds(1).toNanos();
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(), "Une seule sonde doit être en cours");
+    }
+
+    @Test
+    void shouldCloseWhenProbeSucceeds() {
+        openBreaker();
+        now += Duration.ofSeconds(1).toNanos();
+        breaker.allowRequest();
+
+        breaker.recordSuccess();
+
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertEquals(List.of(CircuitState.OPEN, CircuitState.HALF_OPEN, CircuitState.CLOSED), transitions);
+    }
+
+    @Test
+    void shouldDoubleBackoffWhenProbeFails() {
+        openBreaker();
+        now += Duration.ofSeconds(1).toNanos();
+        breaker.allowRequest();
+
+        breaker.recordFailure();
+
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        now += Duration.ofMillis(900).toNanos();
+        assertFalse(breaker.allowRequest(), "Le second délai doit être d'au moins une seconde");
+        now += Duration.ofSeconds(2).toNanos();
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void shouldNotExceedMaximumBackoff() {
+        openBreaker();
+        for (int i = 0; i < 10; i++) {
+            now += Duration.ofSeconds(8).toNanos();
+            assertTrue(breaker.allowRequest(), "Le délai ne doit jamais dépasser le maximum");
+            breaker.recordFailure();
+        }
+    }
+
+    private void openBreaker() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+    }
+}
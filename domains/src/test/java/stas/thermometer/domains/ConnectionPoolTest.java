@@ -0,0 +1,131 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:derby:../dbTest;create=true";
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ConnectionPool(URL, "root", "root",
+                new PoolSettings(1, Duration.ofMillis(100), Duration.ofMinutes(1), Duration.ofMinutes(1), 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void shouldReuseReleasedConnection() throws SQLException {
+        Connection first = pool.borrow();
+        pool.release(first);
+        Connection second = pool.borrow();
+        pool.release(second);
+
+        assertSame(first, second);
+        assertEquals(1, pool.getMetrics().created(), "Une seule connexion physique devrait être ouverte");
+    }
+
+    @Test
+    void shouldReusePreparedStatementAcrossBorrows() throws SQLException {
+        Connection first = pool.borrow();
+        PreparedStatement prepared = pool.statementCache(first).prepare(TemperatureMapper.class, "VALUES 1", false);
+        pool.release(first);
+        Connection second = pool.borrow();
+        PreparedStatement reused = pool.statementCache(second).prepare(TemperatureMapper.class, "VALUES 1", false);
+        pool.release(second);
+
+        assertSame(prepared, reused, "La requête doit être préparée une seule fois par connexion");
+        assertEquals(1, pool.getMetrics().statementHits());
+        assertEquals(1, pool.getMetrics().statementMisses());
+    }
+
+    @Test
+    void shouldKeepOnePreparedStatementPerSqlOfAMapper() throws SQLException {
+        Connection conn = pool.borrow();
+        try {
+            PreparedStatement insert = pool.statementCache(conn).prepare(TemperatureMapper.class, "VALUES 1", false);
+            PreparedStatement insertWithId = pool.statementCache(conn).prepare(TemperatureMapper.class, "VALUES 2", false);
+
+            assertNotSame(insert, insertWithId, "Deux requêtes du même mapper ne doivent pas partager leur préparation");
+            assertSame(insert, pool.statementCache(conn).prepare(TemperatureMapper.class, "VALUES 1", false));
+            assertEquals(2, pool.statementCache(conn).size());
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    @Test
+    void shouldRejectConnectionNotBorrowedFromPool() throws SQLException {
+        Connection conn = pool.borrow();
+        pool.release(conn);
+
+        assertThrows(IllegalArgumentException.class, () -> pool.statementCache(conn));
+    }
+
+    @Test
+    void shouldFailWhenPoolIsExhausted() throws SQLException {
+        Connection conn = pool.borrow();
+
+        assertThrows(SQLException.class, () -> pool.borrow(), "Le pool est borné à une connexion");
+        pool.release(conn);
+    }
+
+    @Test
+    void shouldRollbackPendingTransactionOnRelease() throws SQLException {
+        Connection conn = pool.borrow();
+        conn.setAutoCommit(false);
+        pool.release(conn);
+
+        Connection reused = pool.borrow();
+        assertTrue(reused.getAutoCommit(), "L'auto-commit doit être rétabli au retour dans le pool");
+        pool.release(reused);
+    }
+
+    @Test
+    void shouldRecycleConnectionsPastMaxLifetime() throws SQLException {
+        ConnectionPool shortLived = new ConnectionPool(URL, "root", "root",
+                new PoolSettings(1, Duration.ofMillis(100), Duration.ofMinutes(1), Duration.ZERO, 1));
+        shortLived.release(shortLived.borrow());
+        shortLived.release(shortLived.borrow());
+
+        PoolMetrics metrics = shortLived.getMetrics();
+        assertEquals(2, metrics.created());
+        assertEquals(2, metrics.destroyed());
+        shortLived.close();
+    }
+
+    @Test
+    void shouldEvictIdleConnections() throws SQLException {
+        ConnectionPool eager = new ConnectionPool(URL, "root", "root",
+                new PoolSettings(2, Duration.ofMillis(100), Duration.ZERO, Duration.ofMinutes(1), 1));
+        eager.release(eager.borrow());
+
+        assertEquals(1, eager.evictIdle());
+        assertEquals(0, eager.getMetrics().idle());
+        eager.close();
+    }
+
+    @Test
+    void shouldReleasePermitWhenConnectionCannotBeOpened() {
+        ConnectionPool invalid = new ConnectionPool("jdbc:invalidUrl", "wrongUser", "wrongPassword",
+                new PoolSettings(1, Duration.ofMillis(100), Duration.ofMinutes(1), Duration.ofMinutes(1), 1));
+
+        assertThrows(SQLException.class, invalid::borrow);
+        SQLException second = assertThrows(SQLException.class, invalid::borrow);
+        assertFalse(second.getMessage().contains("exhausted"), "Un échec de connexion ne doit pas consommer de place dans le pool");
+    }
+}
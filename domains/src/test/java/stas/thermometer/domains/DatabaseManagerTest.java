@@ -6,6 +6,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.sql.SQLException;
+import java.time.Duration;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -50,6 +51,17 @@ public class DatabaseManagerTest {
                 "La gestion des transactions en cas d'échec n'est pas correcte");
     }
 
+    @Test
+    public void shouldReportMapperExceptionToCircuitBreaker() throws SQLException {
+        Object mockItem = new Object();
+        when(mockMapper.insert(any(), eq(mockItem))).thenThrow(new IllegalStateException("mapper en échec"));
+        DatabaseManager<Object> guarded = new DatabaseManager<>(new ConnectionPool(url, user, password),
+                new CircuitBreaker(1, Duration.ofMinutes(1), Duration.ofMinutes(1)));
+
+        assertThrows(IllegalStateException.class, () -> guarded.executeOperation(mockMapper, mockItem));
+        assertEquals(CircuitState.OPEN, guarded.getCircuitState(), "Une exception du mapper doit compter comme un échec");
+    }
+
     @Test
     public void shouldTestConnectionFailure() {
         DatabaseManager<Object> dbManager = new DatabaseManager<>("jdbc:invalidUrl", "wrongUser", "wrongPassword");
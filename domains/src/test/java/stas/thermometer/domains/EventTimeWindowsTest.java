@@ -0,0 +1,169 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventTimeWindowsTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private final EventTimeWindows windows = new EventTimeWindows(Duration.ofSeconds(2),
+            new EventTimeSettings(true, Duration.ofSeconds(1), Duration.ofSeconds(4)));
+
+    @Test
+    void shouldAssignOutOfOrderSamplesToTheirEventTimeWindow() {
+        windows.add(MetricType.TEMPERATURE, 20.0, T0 + 500, T0 + 500);
+        windows.add(MetricType.TEMPERATURE, 30.0, T0 + 2_500, T0 + 2_600);
+        windows.add(MetricType.TEMPERATURE, 22.0, T0 + 1_500, T0 + 2_700);
+
+        assertTrue(windows.poll(T0 + 2_800).isEmpty(), "Le filigrane n'a pas encore dépassé la première fenêtre");
+
+        windows.add(MetricType.TEMPERATURE, 31.0, T0 + 3_100, T0 + 3_100);
+        List<EventTimeWindows.Firing> firings = windows.poll(T0 + 3_200);
+
+        assertEquals(1, firings.size());
+        assertEquals(T0, firings.get(0).start());
+        assertEquals(21.0, firings.get(0).temperatures().mean(), 1e-9);
+        assertFalse(firings.get(0).correction());
+    }
+
+    @Test
+    void shouldCorrectWindowsWithinAllowedLatenessAndRejectLaterSamples() {
+        windows.add(MetricType.TEMPERATURE, 20.0, T0 + 500, T0 + 500);
+        windows.add(MetricType.TEMPERATURE, 20.0, T0 + 3_500, T0 + 3_500);
+        EventTimeWindows.Firing onTime = windows.poll(T0 + 3_500).get(0);
+
+        assertTrue(windows.add(MetricType.TEMPERATURE, 26.0, T0 + 1_000, T0 + 3_600));
+        List<EventTimeWindows.Firing> corrections = windows.poll(T0 + 3_600);
+
+        assertEquals(1, corrections.size());
+        assertTrue(corrections.get(0).correction());
+        assertEquals(23.0, corrections.get(0).temperatures().mean(), 1e-9);
+        assertEquals(20.0, onTime.temperatures().mean(), 1e-9, "Le résumé déjà émis ne doit pas être modifié");
+
+        windows.add(MetricType.TEMPERATURE, 20.0, T0 + 8_000, T0 + 8_000);
+        windows.poll(T0 + 8_000);
+        assertFalse(windows.add(MetricType.TEMPERATURE, 99.0, T0 + 1_200, T0 + 8_100), "La fenêtre a dépassé son retard admis");
+        assertEquals(1, windows.getLateSamples());
+    }
+
+    @Test
+    void shouldEmitEmptyWindowsAndKeepOnlyOpenWindowsInMemory() {
+        for (int i = 0; i < 100; i++) {
+            long eventMillis = T0 + i * 1_000L;
+            windows.add(MetricType.HUMIDITY, 0.5, eventMillis, eventMillis);
+            windows.poll(eventMillis);
+        }
+        windows.add(MetricType.HUMIDITY, 0.5, T0 + 110_000, T0 + 110_000);
+        List<EventTimeWindows.Firing> firings = windows.poll(T0 + 110_000);
+
+        assertEquals(4, firings.stream().filter(firing -> firing.humidities() == null).count(), "Les volets sans mesure sont émis vides");
+        assertTrue(windows.openWindows() <= 4, "Seules les fenêtres dans le retard admis restent en mémoire");
+    }
+
+    @Test
+    void shouldAdvanceWatermarkWhenTheSourceIsIdle() {
+        windows.add(MetricType.TEMPERATURE, 20.0, T0 + 100, T0 + 100);
+
+        assertTrue(windows.poll(T0 + 1_000).isEmpty());
+        assertEquals(1, windows.poll(T0 + 3_100).size());
+    }
+
+    @Test
+    void shouldAdvanceIdleWatermarkInTheSourceTimeWhenItsClockLags() {
+        // L'horloge de la sonde retarde d'une minute sur l'horloge locale
+        windows.add(MetricType.TEMPERATURE, 20.0, T0 + 100, T0 + 60_100);
+
+        assertTrue(windows.poll(T0 + 61_300).isEmpty(), "Le silence n'a couvert qu'une partie de la fenêtre");
+        assertTrue(windows.add(MetricType.TEMPERATURE, 22.0, T0 + 1_500, T0 + 61_400));
+        assertEquals(0, windows.getLateSamples());
+        assertEquals(1, windows.poll(T0 + 63_500).size());
+    }
+
+    @Test
+    void shouldKeepSamplesAheadOfTheRingInOverflow() {
+        windows.add(MetricType.TEMPERATURE, 20.0, T0 + 500, T0 + 500);
+        // Même emplacement de l'anneau que la première fenêtre, encore ouverte
+        windows.add(MetricType.TEMPERATURE, 30.0, T0 + 14_500, T0 + 600);
+
+        List<EventTimeWindows.Firing> first = windows.poll(T0 + 700);
+        assertEquals(20.0, first.get(0).temperatures().mean(), 1e-9);
+
+        windows.add(MetricType.TEMPERATURE, 31.0, T0 + 17_100, T0 + 800);
+        EventTimeWindows.Firing ahead = windows.poll(T0 + 900).stream()
+                .filter(firing -> firing.start() == T0 + 14_000).findFirst().orElseThrow();
+        assertEquals(30.0, ahead.temperatures().mean(), 1e-9);
+        assertEquals(0, windows.getLateSamples());
+    }
+
+    @Test
+    void shouldNotLoseSamplesAddedWhileWindowsAreComputed() throws InterruptedException {
+        EventTimeWindows concurrent = new EventTimeWindows(Duration.ofSeconds(2),
+                new EventTimeSettings(true, Duration.ofSeconds(1), Duration.ofSeconds(60)));
+        int producers = 4;
+        int samples = 20_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < samples; i++) {
+                    concurrent.add(MetricType.TEMPERATURE, 20.0, T0 + i, T0 + i);
+                }
+            }));
+        }
+        // Dernier résumé émis par fenêtre, corrections comprises
+        Map<Long, Long> counts = new HashMap<>();
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            concurrent.poll(T0).forEach(firing -> record(counts, firing));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        concurrent.poll(T0 + 3_600_000).forEach(firing -> record(counts, firing));
+
+        assertEquals((long) producers * samples, counts.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(0, concurrent.getLateSamples());
+        assertEquals(0, concurrent.openWindows(), "Toutes les fenêtres sont sorties du retard admis");
+    }
+
+    private static void record(Map<Long, Long> counts, EventTimeWindows.Firing firing) {
+        if (firing.temperatures() != null) {
+            counts.put(firing.start(), firing.temperatures().count());
+        }
+    }
+
+    @Test
+    void shouldSendTooLateSamplesToTheSideOutput() {
+        ObserverManager observers = new ObserverManager();
+        List<LocalDateTime> late = new ArrayList<>();
+        observers.addLateSampleObserver((type, name, value, timestamp) -> late.add(timestamp));
+        LocalDateTime today = LocalDateTime.now();
+        Profiles profiles = new Profiles(List.of(new Jalons(today.minusDays(1), 20.0), new Jalons(today.plusDays(1), 20.0)),
+                List.of(new Jalons(today.minusDays(1), 0.5), new Jalons(today.plusDays(1), 0.5)));
+        MeasurementAggregator aggregator = new MeasurementAggregator(observers, profiles, "thermometer1", new AverageSink() {
+            @Override
+            public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+            }
+
+            @Override
+            public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+            }
+        });
+        aggregator.enableEventTime(new EventTimeSettings(true, Duration.ofSeconds(1), Duration.ZERO));
+
+        long now = System.currentTimeMillis();
+        aggregator.addHumiditySample(0.5, now);
+        aggregator.calculateAndNotifyAverages(now + 60_000);
+        aggregator.addHumiditySample(0.6, now - 30_000);
+
+        assertEquals(1, late.size());
+    }
+}
@@ -0,0 +1,117 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryReaderTest {
+
+    private static final String URL = "jdbc:derby:../dbTest;create=true";
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 20, 10, 0);
+
+    private ConnectionPool pool;
+    private HistoryReader reader;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = new ConnectionPool(URL, "root", "root");
+        reader = new HistoryReader(new DatabaseManager<>(pool), 2);
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE Temperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), temperature DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("CREATE TABLE Humidity (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), humidity DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("CREATE TABLE AlertsTemperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, type VARCHAR(255), difference DOUBLE, timestamp TIMESTAMP, temperature_id BIGINT)");
+            statement.executeUpdate("CREATE TABLE AlertsHumidity (id BIGINT GENERATED BY DEFAULT AS IDENTITY, type VARCHAR(255), difference DOUBLE, timestamp TIMESTAMP, humidity_id BIGINT)");
+        }
+        DatabaseManager<Object> manager = new DatabaseManager<>(pool);
+        UnitOfWork unitOfWork = manager.beginUnitOfWork();
+        for (int i = 0; i < 5; i++) {
+            Measurement measurement = new Measurement("thermometer1", 20.0 + i, START.plusMinutes(i));
+            unitOfWork.insert(new TemperatureMapper(), measurement, i + 1);
+            unitOfWork.insert(new HumidityMapper(), new Humidity("thermometer1", 0.5, START.plusMinutes(i)), i + 1);
+        }
+        unitOfWork.insert(new TemperatureMapper(), new Measurement("thermometer2", 30.0, START), 6);
+        unitOfWork.insert(new AlertsTemperatureMapper(3, 12.0), new Measurement("thermometer1", 22.0, START.plusMinutes(2)), 1);
+        unitOfWork.commit();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DROP TABLE Temperature");
+            statement.executeUpdate("DROP TABLE Humidity");
+            statement.executeUpdate("DROP TABLE AlertsTemperature");
+            statement.executeUpdate("DROP TABLE AlertsHumidity");
+        }
+    }
+
+    @Test
+    void shouldStreamRangeOfOneThermometerInOrder() {
+        try (Stream<Measurement> history = reader.stream(new TemperatureHistoryMapper(), "thermometer1", START.plusMinutes(1), START.plusMinutes(4))) {
+            List<Double> temperatures = history.map(Measurement::temperature).collect(Collectors.toList());
+
+            assertEquals(List.of(21.0, 22.0, 23.0), temperatures);
+        }
+    }
+
+    @Test
+    void shouldReadHumidityAsFraction() {
+        try (Stream<Humidity> history = reader.stream(new HumidityHistoryMapper(), "thermometer1", START, START.plusMinutes(1))) {
+            assertEquals(0.5, history.findFirst().orElseThrow().humidity(), 1e-9);
+        }
+    }
+
+    @Test
+    void shouldJoinAveragesWithTheirAlerts() {
+        try (Stream<HistoricalAverage> history = reader.stream(new AverageWithAlertHistoryMapper(MetricType.TEMPERATURE), "thermometer1", START, START.plusHours(1))) {
+            List<HistoricalAverage> averages = history.collect(Collectors.toList());
+
+            assertEquals(5, averages.size());
+            assertEquals(OptionalDouble.of(12.0), averages.get(2).alertDifference());
+            assertEquals(4, averages.stream().filter(average -> average.alertDifference().isEmpty()).count());
+        }
+    }
+
+    @Test
+    void shouldReleaseConnectionWhenStreamIsClosed() {
+        Stream<Measurement> history = reader.stream(new TemperatureHistoryMapper(), "thermometer1", START, START.plusHours(1));
+        assertEquals(1, pool.getMetrics().active(), "Le curseur garde sa connexion tant que le flux est ouvert");
+
+        history.close();
+
+        assertEquals(0, pool.getMetrics().active());
+    }
+
+    @Test
+    void shouldNotBorrowWhenCircuitIsOpen() {
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        breaker.recordFailure();
+        HistoryReader guarded = new HistoryReader(new DatabaseManager<>(pool, breaker), 2);
+        long borrowed = pool.getMetrics().borrowed();
+
+        assertThrows(RuntimeException.class,
+                () -> guarded.stream(new TemperatureHistoryMapper(), "thermometer1", START, START.plusHours(1)));
+        assertEquals(borrowed, pool.getMetrics().borrowed(), "Une base indisponible ne doit pas occuper le pool");
+    }
+
+    @Test
+    void shouldCreateIndexesOnlyOnce() {
+        assertEquals(4, reader.ensureIndexes());
+        assertEquals(0, reader.ensureIndexes(), "Les index existants ne doivent pas être recréés");
+    }
+}
@@ -20,8 +20,8 @@ class HumidityProbeIntegrationTest {
         humidityProbe.measureAndNotify();
 
         // Assert
-        verify(observer1, atLeastOnce()).updateHumidity(anyDouble());
-        verify(observer2, atLeastOnce()).updateHumidity(anyDouble());
+        verify(observer1, atLeastOnce()).updateHumidity(anyDouble(), anyLong());
+        verify(observer2, atLeastOnce()).updateHumidity(anyDouble(), anyLong());
     }
 }
 
@@ -32,7 +32,7 @@ class HumidityProbeTest {
         humidityProbe.measureAndNotify();
 
         // Assert
-        verify(observer, atLeastOnce()).updateHumidity(anyDouble());
+        verify(observer, atLeastOnce()).updateHumidity(anyDouble(), anyLong());
     }
 
     @Test
@@ -0,0 +1,115 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdAllocatorTest {
+
+    private static final String URL = "jdbc:derby:../dbTest;create=true";
+
+    private ConnectionPool pool;
+    private DatabaseManager<Object> databaseManager;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = new ConnectionPool(URL, "root", "root");
+        databaseManager = new DatabaseManager<>(pool);
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE Temperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), temperature DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("INSERT INTO Temperature (id, thermometer_name, temperature, timestamp) VALUES (250, 'thermometer1', 20.0, CURRENT_TIMESTAMP)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DROP TABLE Temperature");
+            statement.executeUpdate("DROP TABLE IdBlocks");
+        }
+    }
+
+    @Test
+    void shouldStartAfterExistingRows() {
+        IdAllocator allocator = new IdAllocator(databaseManager, 100);
+
+        assertTrue(allocator.nextId(TemperatureMapper.TABLE) > 250, "Les identifiants ne doivent pas entrer en conflit avec les lignes existantes");
+    }
+
+    @Test
+    void shouldReserveOneBlockPerBlockSizeIds() {
+        IdAllocator allocator = new IdAllocator(databaseManager, 10);
+
+        long first = allocator.nextId(TemperatureMapper.TABLE);
+        for (int i = 1; i < 10; i++) {
+            assertEquals(first + i, allocator.nextId(TemperatureMapper.TABLE));
+        }
+        assertEquals(1, allocator.getReservedBlocks(), "Un bloc doit suffire pour 10 identifiants");
+
+        allocator.nextId(TemperatureMapper.TABLE);
+        assertEquals(2, allocator.getReservedBlocks());
+    }
+
+    @Test
+    void shouldGiveDisjointBlocksToConcurrentAllocators() {
+        IdAllocator first = new IdAllocator(databaseManager, 10);
+        IdAllocator second = new IdAllocator(databaseManager, 10);
+
+        long a = first.nextId(TemperatureMapper.TABLE);
+        long b = second.nextId(TemperatureMapper.TABLE);
+
+        assertTrue(Math.abs(a - b) >= 10, "Deux thermomètres ne doivent jamais recevoir le même bloc");
+    }
+
+    @Test
+    void shouldSeedTheBlockRowOnceWhenAllocatorsStartTogether() throws Exception {
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IdBlocks (sequence_name VARCHAR(64) NOT NULL PRIMARY KEY, next_hi BIGINT NOT NULL)");
+        }
+        int allocators = 4;
+        CyclicBarrier start = new CyclicBarrier(allocators);
+        ExecutorService executor = Executors.newFixedThreadPool(allocators);
+        try {
+            List<Future<Long>> firstIds = new ArrayList<>();
+            for (int i = 0; i < allocators; i++) {
+                IdAllocator allocator = new IdAllocator(databaseManager, 10);
+                firstIds.add(executor.submit(() -> {
+                    start.await();
+                    return allocator.nextId(TemperatureMapper.TABLE);
+                }));
+            }
+            Set<Long> blocks = new HashSet<>();
+            for (Future<Long> firstId : firstIds) {
+                blocks.add(firstId.get(10, TimeUnit.SECONDS) / 10);
+            }
+            assertEquals(allocators, blocks.size(), "Chaque allocateur doit recevoir son propre bloc");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldRejectEmptyBlocks() {
+        assertThrows(IllegalArgumentException.class, () -> new IdAllocator(databaseManager, 0));
+    }
+}
@@ -0,0 +1,92 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MeasurementAggregatorAllocationTest {
+
+    private static final int SAMPLES = 200_000;
+
+    @Test
+    void shouldNotAllocatePerSample() {
+        MeasurementAggregator aggregator = newAggregator();
+
+        assertNoAllocationPerSample(() -> addSamples(aggregator));
+    }
+
+    @Test
+    void shouldNotAllocatePerSampleWithEventTime() {
+        MeasurementAggregator aggregator = newAggregator();
+        aggregator.enableEventTime(new EventTimeSettings(true, Duration.ofSeconds(1), Duration.ofSeconds(10)));
+        long start = 1_700_000_000_000L;
+        aggregator.useClock(() -> start);
+
+        // Mesures réparties sur trois volets, sans calcul : seul le chemin des sondes est mesuré
+        assertNoAllocationPerSample(() -> {
+            for (int i = 0; i < SAMPLES; i++) {
+                long eventMillis = start + (i % 6000);
+                aggregator.updateTemperature(20.0 + (i & 7), eventMillis);
+                aggregator.updateHumidity(0.5, eventMillis);
+            }
+        });
+    }
+
+    @Test
+    void shouldAverageSamplesWithFirstTimestamp() {
+        MeasurementAggregator aggregator = new MeasurementAggregator(new ObserverManager(), null, "thermometer1", (AverageSink) null);
+        long start = 1_700_000_000_000L;
+        aggregator.addTemperatureSample(20.0, start);
+        aggregator.addTemperatureSample(21.0, start + 100);
+        aggregator.addTemperatureSample(25.0, start + 200);
+
+        Measurement average = aggregator.getAverageMeasurement();
+
+        assertEquals(22.0, average.temperature(), 0.0001);
+        assertEquals(start, average.timestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        assertNull(aggregator.getAverageMeasurement(), "La fenêtre doit être vide après le calcul");
+    }
+
+    private static void assertNoAllocationPerSample(Runnable samples) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Mesure des allocations indisponible sur cette JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        // Préchauffage : laisse le JIT compiler le chemin des mesures
+        samples.run();
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        samples.run();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Une allocation par mesure représenterait au moins 16 octets × 400 000 mesures
+        assertTrue(allocated < 64 * 1024, "Octets alloués pour " + 2 * SAMPLES + " mesures : " + allocated);
+    }
+
+    private static MeasurementAggregator newAggregator() {
+        return new MeasurementAggregator(new ObserverManager(), null, "thermometer1", new AverageSink() {
+            @Override
+            public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+            }
+
+            @Override
+            public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+            }
+        });
+    }
+
+    private static void addSamples(MeasurementAggregator aggregator) {
+        for (int i = 0; i < SAMPLES; i++) {
+            aggregator.updateTemperature(20.0 + (i & 7));
+            aggregator.updateHumidity(0.5);
+        }
+        aggregator.getAverageMeasurement();
+        aggregator.getAverageHumidity();
+    }
+}
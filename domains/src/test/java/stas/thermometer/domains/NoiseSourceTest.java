@@ -0,0 +1,55 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NoiseSourceTest {
+
+    // Profils vides : la valeur attendue est toujours 0, seule l'erreur aléatoire varie
+    private final Profiles flat = new Profiles(List.of(), List.of());
+
+    @Test
+    void shouldReplaySameSimulationFromSameSeed() {
+        double[] first = simulate(NoiseSource.seeded(42));
+        double[] second = simulate(NoiseSource.seeded(42));
+
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    void shouldGiveEachProbeItsOwnSequence() {
+        NoiseSource noise = NoiseSource.seeded(42);
+        NoiseSource temperature = noise.split();
+        NoiseSource humidity = noise.split();
+
+        assertNotEquals(temperature.nextDouble(), humidity.nextDouble());
+    }
+
+    @Test
+    void shouldKeepErrorsWithinProbeBounds() {
+        NoiseSource noise = NoiseSource.seeded(7);
+        TemperatureProbe probe = new TemperatureProbe(flat, noise.split());
+        HumidityProbe humidityProbe = new HumidityProbe(flat, noise.split());
+
+        for (int i = 0; i < 10_000; i++) {
+            double temperature = probe.getAdjustedTemperature();
+            double humidity = humidityProbe.getAdjustedHumidity();
+            assertTrue(temperature >= -0.5 && temperature < 0.5, "Erreur de température hors bornes : " + temperature);
+            assertTrue(humidity >= -0.05 && humidity < 0.05, "Erreur d'humidité hors bornes : " + humidity);
+        }
+    }
+
+    private double[] simulate(NoiseSource noise) {
+        TemperatureProbe probe = new TemperatureProbe(flat, noise.split());
+        HumidityProbe humidityProbe = new HumidityProbe(flat, noise.split());
+        double[] samples = new double[200];
+        for (int i = 0; i < samples.length; i += 2) {
+            samples[i] = probe.getAdjustedTemperature();
+            samples[i + 1] = humidityProbe.getAdjustedHumidity();
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,129 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaneWindowTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 21, 10, 0);
+    private static final AlertRuleEngine RULES = new AlertRuleEngine(AlertRule.defaults());
+
+    @Test
+    void shouldEmitTumblingWindowOnceAllPanesAreClosed() {
+        PaneWindow window = new PaneWindow(WindowResolution.tumbling(Duration.ofSeconds(6), new ObserverManager(), null), Duration.ofSeconds(2), RULES);
+
+        assertFalse(window.closePane(pane(START, 20.0), null));
+        assertFalse(window.closePane(null, null));
+        assertTrue(window.closePane(pane(START.plusSeconds(4), 24.0, 22.0), null));
+
+        WindowStatistics statistics = window.statistics(MetricType.TEMPERATURE, "thermometer1");
+        assertEquals(3, statistics.sketch().count());
+        assertEquals(22.0, statistics.sketch().mean(), 1e-9);
+        assertEquals(START, statistics.timestamp());
+        assertNull(window.statistics(MetricType.HUMIDITY, "thermometer1"), "Une fenêtre sans humidité ne doit rien émettre");
+    }
+
+    @Test
+    void shouldSlideOverTheLastPanes() {
+        PaneWindow window = new PaneWindow(new WindowResolution(Duration.ofSeconds(4), Duration.ofSeconds(2), new ObserverManager(), null),
+                Duration.ofSeconds(2), RULES);
+
+        assertFalse(window.closePane(pane(START, 10.0), null));
+        assertTrue(window.closePane(pane(START.plusSeconds(2), 20.0), null));
+        assertTrue(window.closePane(pane(START.plusSeconds(4), 30.0), null));
+
+        WindowStatistics statistics = window.statistics(MetricType.TEMPERATURE, "thermometer1");
+        assertEquals(25.0, statistics.sketch().mean(), 1e-9, "Le plus ancien volet doit sortir de la fenêtre");
+        assertEquals(START.plusSeconds(2), statistics.timestamp());
+    }
+
+    @Test
+    void shouldRejectWindowsThatAreNotMultiplesOfThePane() {
+        WindowResolution resolution = WindowResolution.tumbling(Duration.ofSeconds(5), new ObserverManager(), null);
+
+        assertThrows(IllegalArgumentException.class, () -> new PaneWindow(resolution, Duration.ofSeconds(2), RULES));
+    }
+
+    @Test
+    void shouldNotifyEachResolutionFromTheSamePanes() {
+        Profiles profiles = new Profiles(
+                List.of(new Jalons(START.minusHours(1), 20.0), new Jalons(START.plusHours(1), 20.0)),
+                List.of(new Jalons(START.minusHours(1), 0.5), new Jalons(START.plusHours(1), 0.5)));
+        ObserverManager baseObservers = new ObserverManager();
+        RecordingObserver base = new RecordingObserver();
+        baseObservers.addAverageObserver(base);
+        ObserverManager windowObservers = new ObserverManager();
+        RecordingObserver sixSeconds = new RecordingObserver();
+        windowObservers.addAverageObserver(sixSeconds);
+        CountingSink windowSink = new CountingSink();
+        MeasurementAggregator aggregator = new MeasurementAggregator(baseObservers, profiles, "thermometer1", new CountingSink(), Duration.ofSeconds(2));
+        aggregator.addResolution(WindowResolution.tumbling(Duration.ofSeconds(6), windowObservers, windowSink));
+
+        for (int pane = 0; pane < 6; pane++) {
+            long epochMillis = START.plusSeconds(2L * pane).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            aggregator.addTemperatureSample(18.0 + pane, epochMillis);
+            aggregator.addTemperatureSample(20.0 + pane, epochMillis + 500);
+            aggregator.calculateAndNotifyAverages();
+        }
+
+        assertEquals(List.of(19.0, 20.0, 21.0, 22.0, 23.0, 24.0), base.temperatures);
+        assertEquals(List.of(20.0, 23.0), sixSeconds.temperatures);
+        assertEquals(6, sixSeconds.statistics.get(1).sketch().count());
+        assertEquals(2, windowSink.temperatures);
+        assertEquals(2, windowSink.ticks);
+    }
+
+    private static PaneWindow.Pane pane(LocalDateTime start, double... values) {
+        StatisticsSketch sketch = new StatisticsSketch();
+        for (double value : values) {
+            sketch.add(value);
+        }
+        return new PaneWindow.Pane(sketch, start);
+    }
+
+    private static final class RecordingObserver implements AverageMeasurementObserver {
+        private final List<Double> temperatures = new ArrayList<>();
+        private final List<WindowStatistics> statistics = new ArrayList<>();
+
+        @Override
+        public void updateAverageMeasurement(Measurement averageMeasurement) {
+            temperatures.add(averageMeasurement.temperature());
+        }
+
+        @Override
+        public void updateAverageHumidity(Humidity averageHumidity) {
+        }
+
+        @Override
+        public void updateWindowStatistics(WindowStatistics windowStatistics) {
+            statistics.add(windowStatistics);
+        }
+    }
+
+    private static final class CountingSink implements AverageSink {
+        private int temperatures;
+        private int ticks;
+
+        @Override
+        public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+            temperatures++;
+        }
+
+        @Override
+        public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+        }
+
+        @Override
+        public void endTick() {
+            ticks++;
+        }
+    }
+}
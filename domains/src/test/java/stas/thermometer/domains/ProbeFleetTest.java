@@ -0,0 +1,84 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProbeFleetTest {
+
+    @Test
+    void shouldSampleFleetAndReportThroughput() throws InterruptedException {
+        assertFleetSamples(ThreadMode.PLATFORM);
+    }
+
+    @Test
+    void shouldSampleEachProbeOnItsOwnVirtualThread() throws InterruptedException {
+        assertFleetSamples(ThreadMode.VIRTUAL);
+    }
+
+    private static void assertFleetSamples(ThreadMode mode) throws InterruptedException {
+        FleetSettings settings = new FleetSettings(2000, Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(1), 64, 2);
+        AtomicInteger samples = new AtomicInteger();
+        AtomicInteger onVirtualThreads = new AtomicInteger();
+        try (ProbeFleet fleet = new ProbeFleet(settings, mode)) {
+            for (int i = 0; i < settings.probes(); i++) {
+                fleet.add(() -> {
+                    samples.incrementAndGet();
+                    if (Thread.currentThread().isVirtual()) {
+                        onVirtualThreads.incrementAndGet();
+                    }
+                }, settings.periodOf(i));
+            }
+            fleet.start();
+            Thread.sleep(300);
+            fleet.close();
+
+            FleetMetrics metrics = fleet.getMetrics();
+            assertEquals(2000, metrics.probes());
+            assertEquals(samples.get(), metrics.samples());
+            assertEquals(0, metrics.failures());
+            assertTrue(metrics.samples() > 2000, "Chaque sonde doit avoir été échantillonnée : " + metrics.samples());
+            assertTrue(metrics.samplesPerSecond() > 0);
+            assertTrue(metrics.ticks() > 0);
+            assertTrue(metrics.maxLatenessMillis() >= metrics.averageLatenessMillis());
+            assertEquals(mode == ThreadMode.VIRTUAL ? samples.get() : 0, onVirtualThreads.get());
+        }
+    }
+
+    @Test
+    void shouldKeepSamplingWhenAProbeFails() throws InterruptedException {
+        assertFailingProbeKeepsSampling(ThreadMode.PLATFORM);
+        assertFailingProbeKeepsSampling(ThreadMode.VIRTUAL);
+    }
+
+    private static void assertFailingProbeKeepsSampling(ThreadMode mode) throws InterruptedException {
+        FleetSettings settings = new FleetSettings(2, Duration.ofMillis(10), Duration.ofMillis(10), Duration.ofMillis(1), 64, 1);
+        AtomicInteger samples = new AtomicInteger();
+        try (ProbeFleet fleet = new ProbeFleet(settings, mode)) {
+            fleet.add(() -> {
+                throw new IllegalStateException("sonde débranchée");
+            }, settings.periodOf(0));
+            fleet.add(samples::incrementAndGet, settings.periodOf(1));
+            fleet.start();
+            Thread.sleep(200);
+            fleet.close();
+
+            FleetMetrics metrics = fleet.getMetrics();
+            assertTrue(metrics.failures() > 1, "La sonde en échec doit rester planifiée : " + metrics.failures());
+            assertTrue(samples.get() > 1, "Les autres sondes doivent continuer d'être échantillonnées");
+            assertEquals(samples.get(), metrics.samples());
+        }
+    }
+
+    @Test
+    void shouldSpreadPeriodsBetweenBounds() {
+        FleetSettings settings = new FleetSettings(5, Duration.ofMillis(100), Duration.ofMillis(500), Duration.ofMillis(10), 512, 2);
+
+        assertEquals(Duration.ofMillis(100), settings.periodOf(0));
+        assertEquals(Duration.ofMillis(300), settings.periodOf(2));
+        assertEquals(Duration.ofMillis(500), settings.periodOf(4));
+    }
+}
@@ -0,0 +1,180 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProbeSourceTest {
+
+    private final List<String> received = new ArrayList<>();
+    private final SampleConsumer recorder = (type, value, epochMillis) -> received.add(type + " " + value + " " + epochMillis);
+
+    @Test
+    void shouldReadOnlyRequestedLines() throws Exception {
+        String lines = """
+                # instant;grandeur;valeur
+                1700000000000;temperature;21.5
+                1700000000000;humidity;0.45
+                pas une mesure
+                1700000000100;pression;1013
+                1700000000100;temperature;21.6
+                """;
+        try (LineProbeSource source = new LineProbeSource(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals(1, source.poll(1, recorder));
+            assertEquals(2, source.poll(10, recorder));
+            assertEquals(-1, source.poll(10, recorder));
+
+            assertEquals(List.of("TEMPERATURE 21.5 1700000000000", "HUMIDITY 0.45 1700000000000",
+                    "TEMPERATURE 21.6 1700000000100"), received);
+            assertEquals(2, source.getRejectedLines());
+        }
+    }
+
+    @Test
+    void shouldSplitSimulatedPairWhenDemandIsOne() throws Exception {
+        Profiles flat = new Profiles(List.of(), List.of());
+        NoiseSource noise = NoiseSource.seeded(1);
+        try (SimulatedProbeSource source = new SimulatedProbeSource(new TemperatureProbe(flat, noise.split()),
+                new HumidityProbe(flat, noise.split()), Duration.ofMillis(1))) {
+            assertEquals(1, source.poll(1, recorder));
+            assertEquals(1, source.poll(1, recorder));
+            assertEquals(2, source.poll(2, recorder));
+
+            assertTrue(received.get(0).startsWith("TEMPERATURE"));
+            assertTrue(received.get(1).startsWith("HUMIDITY"));
+            source.close();
+            assertEquals(-1, source.poll(2, recorder));
+        }
+    }
+
+    @Test
+    void shouldNeverReadBeyondGrantedDemand() throws Exception {
+        SampleDemand demand = new SampleDemand(1000, 100);
+        AtomicLong delivered = new AtomicLong();
+        Observer target = new CountingObserver(delivered);
+        ProbeSource endless = new ProbeSource() {
+            @Override
+            public int poll(int max, SampleConsumer consumer) {
+                for (int i = 0; i < max; i++) {
+                    consumer.accept(MetricType.TEMPERATURE, 20.0, i);
+                }
+                return max;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (ProbeSourceDriver driver = new ProbeSourceDriver(endless, demand, target, ThreadMode.VIRTUAL.factory("stas-test"))) {
+            driver.start();
+            awaitSamples(driver, 100);
+            Thread.sleep(50);
+            assertEquals(100, delivered.get(), "Une source rapide s'arrête à la demande accordée");
+
+            demand.request(250);
+            awaitSamples(driver, 350);
+            Thread.sleep(50);
+            assertEquals(350, delivered.get());
+            assertTrue(driver.isRunning());
+        }
+    }
+
+    @Test
+    void shouldGrantDemandOnlyWhileSinkKeepsUp() {
+        BackedUpSink sink = new BackedUpSink();
+        MeasurementAggregator aggregator = new MeasurementAggregator(new ObserverManager(), new Profiles(List.of(), List.of()), "Salon", sink);
+        SampleDemand demand = new SampleDemand(500, 0);
+        aggregator.useDemand(demand, 200);
+
+        aggregator.calculateAndNotifyAverages();
+        assertEquals(200, demand.available());
+
+        sink.backedUp = true;
+        aggregator.calculateAndNotifyAverages();
+        assertEquals(200, demand.available(), "Un sink engorgé freine les sources");
+
+        sink.backedUp = false;
+        aggregator.calculateAndNotifyAverages();
+        aggregator.calculateAndNotifyAverages();
+        assertEquals(500, demand.available(), "Les crédits en réserve sont plafonnés");
+    }
+
+    private static void awaitSamples(ProbeSourceDriver driver, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (driver.getSamples() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static final class BackedUpSink implements AverageSink {
+        private boolean backedUp;
+
+        @Override
+        public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+        }
+
+        @Override
+        public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+        }
+
+        @Override
+        public boolean isBackedUp() {
+            return backedUp;
+        }
+    }
+
+    private static final class CountingObserver implements Observer {
+        private final AtomicLong delivered;
+
+        private CountingObserver(AtomicLong delivered) {
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void updateTemperature(double temperature) {
+            delivered.incrementAndGet();
+        }
+
+        @Override
+        public void updateHumidity(double humidity) {
+            delivered.incrementAndGet();
+        }
+
+        @Override
+        public void addObserver(Observer observer) {
+        }
+
+        @Override
+        public void addAlertObserver(Observer observer) {
+        }
+
+        @Override
+        public void notifyObservers(double temperature) {
+        }
+
+        @Override
+        public void notifyHumidityObservers(double humidity) {
+        }
+
+        @Override
+        public void displayThermometerName() {
+        }
+
+        @Override
+        public void alertTriggeredTemperature(String alertType, double expectedTemperature, double difference) {
+        }
+
+        @Override
+        public void alertTriggeredHumidity(String alertType, double expectedTemperature, double difference) {
+        }
+    }
+}
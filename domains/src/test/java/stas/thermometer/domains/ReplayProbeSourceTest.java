@@ -0,0 +1,131 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayProbeSourceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 20, 10, 0);
+    private static final long START_MILLIS = START.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    @TempDir
+    Path directory;
+
+    private final List<String> received = new ArrayList<>();
+    private final SampleConsumer recorder = (type, value, epochMillis) -> received.add(type + " " + value + " " + epochMillis);
+
+    @Test
+    void shouldReplayRecordedSamplesWithTheirTimestamps() throws IOException {
+        Path file = directory.resolve("salon.rec");
+        String lines = START_MILLIS + ";temperature;21.5\n"
+                + START_MILLIS + ";humidity;0.45\n"
+                + (START_MILLIS + 100) + ";temperature;21.6\n";
+        try (ProbeSource source = new RecordingProbeSource(
+                new LineProbeSource(new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8))), SampleRecorder.create(file))) {
+            while (source.poll(2, (type, value, epochMillis) -> { }) >= 0) {
+                // Tout tirer de la source pour l'enregistrer
+            }
+        }
+        // Un arrêt brutal laisse un enregistrement incomplet, ignoré à la relecture
+        Files.write(file, new byte[5], StandardOpenOption.APPEND);
+
+        try (ReplayProbeSource replay = ReplayProbeSource.open(file, Double.POSITIVE_INFINITY)) {
+            assertEquals(3, replay.getRecordCount());
+            assertEquals(2, replay.poll(2, recorder));
+            assertEquals(1, replay.poll(2, recorder));
+            assertEquals(-1, replay.poll(2, recorder));
+
+            assertEquals(List.of("TEMPERATURE 21.5 " + START_MILLIS, "HUMIDITY 0.45 " + START_MILLIS,
+                    "TEMPERATURE 21.6 " + (START_MILLIS + 100)), received);
+            assertTrue(replay.currentMillis() >= START_MILLIS + 100);
+        }
+    }
+
+    @Test
+    void shouldPaceReplayAtRequestedSpeed() throws IOException {
+        Path file = directory.resolve("rythme.rec");
+        try (SampleRecorder samples = SampleRecorder.create(file)) {
+            for (int i = 0; i <= 10; i++) {
+                samples.accept(MetricType.TEMPERATURE, 20.0, START_MILLIS + 100L * i);
+            }
+        }
+
+        try (ReplayProbeSource replay = ReplayProbeSource.open(file, 10)) {
+            long startNanos = System.nanoTime();
+            int replayed = 0;
+            int read;
+            while ((read = replay.poll(64, recorder)) >= 0) {
+                replayed += read;
+            }
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+
+            assertEquals(11, replayed);
+            assertTrue(elapsedMillis >= 90 && elapsedMillis < 900, "Une seconde enregistrée rejouée à 10x en " + elapsedMillis + " ms");
+        }
+    }
+
+    @Test
+    void shouldRejectFileThatIsNotARecording() throws IOException {
+        Path file = directory.resolve("mesures.txt");
+        Files.writeString(file, "1700000000000;temperature;21.5\n");
+
+        assertThrows(IOException.class, () -> ReplayProbeSource.open(file, 1));
+    }
+
+    @Test
+    void shouldCutPanesOnRecordedTime() throws IOException {
+        Path file = directory.resolve("incident.rec");
+        try (SampleRecorder samples = SampleRecorder.create(file)) {
+            samples.accept(MetricType.TEMPERATURE, 20.0, START_MILLIS);
+            samples.accept(MetricType.TEMPERATURE, 20.0, START_MILLIS + 500);
+            samples.accept(MetricType.TEMPERATURE, 22.0, START_MILLIS + 2000);
+            samples.accept(MetricType.TEMPERATURE, 24.0, START_MILLIS + 4000);
+        }
+        ObserverManager observers = new ObserverManager();
+        List<Measurement> averages = new ArrayList<>();
+        observers.addAverageObserver(new AverageMeasurementObserver() {
+            @Override
+            public void updateAverageMeasurement(Measurement averageMeasurement) {
+                averages.add(averageMeasurement);
+            }
+
+            @Override
+            public void updateAverageHumidity(Humidity averageHumidity) {
+            }
+        });
+        MeasurementAggregator aggregator = new MeasurementAggregator(observers, new Profiles(List.of(), List.of()), "Salon", new AverageSink() {
+            @Override
+            public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+            }
+
+            @Override
+            public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+            }
+        });
+        aggregator.enableEventTime(new EventTimeSettings(true, Duration.ofSeconds(1), Duration.ZERO));
+
+        try (ReplayProbeSource replay = ReplayProbeSource.open(file, Double.POSITIVE_INFINITY)) {
+            aggregator.useClock(replay::currentMillis);
+            replay.poll(64, (type, value, epochMillis) -> aggregator.updateTemperature(value, epochMillis));
+            aggregator.calculateAndNotifyAverages();
+        }
+
+        // Le filigrane a dépassé le premier volet de l'enregistrement, pas encore le deuxième
+        assertEquals(List.of(new Measurement("Salon", 20.0, START)), averages);
+    }
+}
@@ -0,0 +1,117 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetentionServiceTest {
+
+    private static final String URL = "jdbc:derby:../dbTest;create=true";
+    private static final LocalDateTime CUTOFF = LocalDateTime.of(2023, 11, 20, 10, 0);
+
+    private ConnectionPool pool;
+    private DatabaseManager<Object> manager;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = new ConnectionPool(URL, "root", "root");
+        manager = new DatabaseManager<>(pool);
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE Temperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), temperature DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("CREATE TABLE Humidity (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), humidity DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("CREATE TABLE AlertsTemperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, type VARCHAR(255), difference DOUBLE, timestamp TIMESTAMP, temperature_id BIGINT)");
+            statement.executeUpdate("CREATE TABLE AlertsHumidity (id BIGINT GENERATED BY DEFAULT AS IDENTITY, type VARCHAR(255), difference DOUBLE, timestamp TIMESTAMP, humidity_id BIGINT)");
+        }
+        UnitOfWork unitOfWork = manager.beginUnitOfWork();
+        for (int i = 1; i <= 5; i++) {
+            unitOfWork.insert(new TemperatureMapper(), new Measurement("thermometer1", 20.0, CUTOFF.minusMinutes(i)), i);
+            unitOfWork.insert(new HumidityMapper(), new Humidity("thermometer1", 0.5, CUTOFF.minusMinutes(i)), i);
+        }
+        unitOfWork.insert(new TemperatureMapper(), new Measurement("thermometer1", 21.0, CUTOFF.plusMinutes(1)), 6);
+        unitOfWork.insert(new TemperatureMapper(), new Measurement("thermometer2", 22.0, CUTOFF.minusMinutes(1)), 7);
+        unitOfWork.insert(new AlertsTemperatureMapper(2, 5.0), new Measurement("thermometer1", 20.0, CUTOFF.minusMinutes(2)), 1);
+        unitOfWork.insert(new AlertsTemperatureMapper(6, 5.0), new Measurement("thermometer1", 21.0, CUTOFF.plusMinutes(1)), 2);
+        unitOfWork.insert(new AlertsHumidityMapper(3, 0.2), new Humidity("thermometer1", 0.5, CUTOFF.minusMinutes(3)), 1);
+        unitOfWork.commit();
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            AverageStatisticsMapper.createTableIfMissing(conn);
+            statement.executeUpdate("INSERT INTO AverageStatistics (metric, average_id, sample_count) VALUES ('TEMPERATURE', 2, 10)");
+            statement.executeUpdate("INSERT INTO AverageStatistics (metric, average_id, sample_count) VALUES ('TEMPERATURE', 6, 10)");
+            statement.executeUpdate("INSERT INTO AverageStatistics (metric, average_id, sample_count) VALUES ('HUMIDITY', 2, 10)");
+            statement.executeUpdate("INSERT INTO AverageStatistics (metric, average_id, sample_count) VALUES ('HUMIDITY', 3, 10)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DROP TABLE Temperature");
+            statement.executeUpdate("DROP TABLE Humidity");
+            statement.executeUpdate("DROP TABLE AlertsTemperature");
+            statement.executeUpdate("DROP TABLE AlertsHumidity");
+            statement.executeUpdate("DROP TABLE AverageStatistics");
+        }
+    }
+
+    @Test
+    void shouldDeleteExpiredAveragesAndTheirAlertsInChunks() throws SQLException {
+        RetentionService retention = new RetentionService(manager, "thermometer1",
+                new RetentionSettings(Duration.ofDays(1), 2, Duration.ZERO, Duration.ofHours(1)));
+
+        long deleted = retention.purgeBefore(CUTOFF);
+
+        assertEquals(10, deleted);
+        assertEquals(2, count("SELECT COUNT(*) FROM Temperature"), "Seules les moyennes récentes ou d'un autre thermomètre restent");
+        assertEquals(0, count("SELECT COUNT(*) FROM Humidity"));
+        assertEquals(1, count("SELECT COUNT(*) FROM AlertsTemperature WHERE temperature_id = 6"));
+        assertEquals(1, count("SELECT COUNT(*) FROM AlertsTemperature"), "Les alertes des moyennes supprimées doivent disparaître");
+        assertEquals(0, count("SELECT COUNT(*) FROM AlertsHumidity"));
+    }
+
+    @Test
+    void shouldDeleteStatisticsOfPurgedAveragesOnly() throws SQLException {
+        RetentionService retention = new RetentionService(manager, "thermometer1",
+                new RetentionSettings(Duration.ofDays(1), 2, Duration.ZERO, Duration.ofHours(1)));
+
+        retention.purgeBefore(CUTOFF);
+
+        assertEquals(0, count("SELECT COUNT(*) FROM AverageStatistics WHERE metric = 'TEMPERATURE' AND average_id = 2"));
+        assertEquals(0, count("SELECT COUNT(*) FROM AverageStatistics WHERE metric = 'HUMIDITY'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM AverageStatistics WHERE metric = 'TEMPERATURE' AND average_id = 6"),
+                "Les statistiques d'une moyenne conservée doivent rester");
+    }
+
+    @Test
+    void shouldNotPurgeWhenCircuitIsOpen() throws SQLException {
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        breaker.recordFailure();
+        RetentionService retention = new RetentionService(new DatabaseManager<>(pool, breaker), "thermometer1",
+                new RetentionSettings(Duration.ofDays(1), 2, Duration.ZERO, Duration.ofHours(1)));
+
+        assertEquals(0, retention.purgeBefore(CUTOFF));
+        assertEquals(7, count("SELECT COUNT(*) FROM Temperature"));
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollupAggregatorTest {
+
+    private static final String URL = "jdbc:derby:../dbTest;create=true";
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 20, 10, 0);
+
+    private ConnectionPool pool;
+    private DatabaseManager<Object> manager;
+    private HistoryReader reader;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = new ConnectionPool(URL, "root", "root");
+        manager = new DatabaseManager<>(pool);
+        reader = new HistoryReader(manager, 10);
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE Temperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), temperature DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("CREATE TABLE Humidity (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), humidity DOUBLE, timestamp TIMESTAMP)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DROP TABLE Temperature");
+            statement.executeUpdate("DROP TABLE Humidity");
+            try {
+                statement.executeUpdate("DROP TABLE Rollup");
+            } catch (SQLException e) {
+                // La table n'est créée qu'à la première écriture
+            }
+        }
+    }
+
+    @Test
+    void shouldAggregateAveragesPerGranularity() {
+        RollupAggregator rollups = new RollupAggregator(manager, reader, "thermometer1", START);
+
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 20.0, START.plusSeconds(10)));
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 24.0, START.plusSeconds(20)));
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 22.0, START.plusSeconds(70)));
+
+        Rollup hour = find(rollups.openRollups(), MetricType.TEMPERATURE, RollupGranularity.HOUR, START);
+        assertEquals(20.0, hour.min());
+        assertEquals(24.0, hour.max());
+        assertEquals(22.0, hour.average(), 0.0001);
+        assertEquals(3, hour.count());
+        assertEquals(2, find(rollups.openRollups(), MetricType.TEMPERATURE, RollupGranularity.MINUTE, START).count());
+        assertEquals(1, find(rollups.openRollups(), MetricType.TEMPERATURE, RollupGranularity.MINUTE, START.plusMinutes(1)).count());
+    }
+
+    @Test
+    void shouldMergeWindowStatisticsIntoBuckets() {
+        RollupAggregator rollups = new RollupAggregator(manager, reader, "thermometer1", START);
+
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 21.0, START.plusSeconds(10)));
+        rollups.updateWindowStatistics(window(START.plusSeconds(10), 20.0, 22.0));
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 25.0, START.plusSeconds(20)));
+        rollups.updateWindowStatistics(window(START.plusSeconds(20), 24.0, 26.0));
+
+        Rollup minute = find(rollups.openRollups(), MetricType.TEMPERATURE, RollupGranularity.MINUTE, START);
+        assertEquals(Math.sqrt(20.0 / 3), minute.standardDeviation(), 1e-9);
+        assertEquals(26.0, minute.p99(), 0.3);
+    }
+
+    @Test
+    void shouldInsertThenUpdateRollups() throws SQLException {
+        RollupAggregator rollups = new RollupAggregator(manager, reader, "thermometer1", START);
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 20.0, START.plusSeconds(10)));
+        rollups.flush();
+
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 26.0, START.plusSeconds(20)));
+        rollups.flush();
+
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*), MAX(sample_count), MAX(max_value) FROM Rollup")) {
+            assertTrue(resultSet.next());
+            assertEquals(3, resultSet.getInt(1), "Une ligne par granularité, mise à jour et non dupliquée");
+            assertEquals(2, resultSet.getLong(2));
+            assertEquals(26.0, resultSet.getDouble(3));
+        }
+    }
+
+    @Test
+    void shouldStoreHumidityAsPercentageLikeTheHumidityTable() throws SQLException {
+        RollupAggregator rollups = new RollupAggregator(manager, reader, "thermometer1", START);
+        rollups.updateAverageHumidity(new Humidity("thermometer1", 0.5, START.plusSeconds(10)));
+        rollups.flush();
+
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(max_value) FROM Rollup WHERE metric = 'HUMIDITY'")) {
+            assertTrue(resultSet.next());
+            assertEquals(50.0, resultSet.getDouble(1));
+        }
+        try (Stream<Rollup> stored = reader.stream(new RollupHistoryMapper(MetricType.HUMIDITY, RollupGranularity.HOUR),
+                "thermometer1", START, START.plusHours(1))) {
+            assertEquals(0.5, stored.findFirst().orElseThrow().max(), 1e-9);
+        }
+    }
+
+    @Test
+    void shouldSkipAveragesOfClosedBuckets() {
+        RollupAggregator rollups = new RollupAggregator(manager, reader, "thermometer1", START);
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 20.0, START.plusMinutes(5)));
+        rollups.flush();
+
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 18.0, START.plusMinutes(1)));
+
+        assertEquals(1, rollups.getLateAverages(), "L'intervalle d'une minute déjà écrit ne doit pas être écrasé");
+        assertEquals(2, find(rollups.openRollups(), MetricType.TEMPERATURE, RollupGranularity.HOUR, START).count());
+    }
+
+    @Test
+    void shouldRecoverOpenBucketsFromStoredAverages() {
+        UnitOfWork unitOfWork = manager.beginUnitOfWork();
+        unitOfWork.insert(new TemperatureMapper(), new Measurement("thermometer1", 10.0, START.minusHours(2)), 1);
+        unitOfWork.insert(new TemperatureMapper(), new Measurement("thermometer1", 30.0, START.plusMinutes(30)), 2);
+        unitOfWork.insert(new TemperatureMapper(), new Measurement("thermometer2", 99.0, START.plusMinutes(30)), 3);
+        unitOfWork.commit();
+        LocalDateTime restart = START.plusMinutes(30).plusSeconds(30);
+        RollupAggregator rollups = new RollupAggregator(manager, reader, "thermometer1", restart);
+
+        rollups.updateAverageMeasurement(new Measurement("thermometer1", 20.0, restart.plusSeconds(10)));
+        rollups.flush();
+
+        List<Rollup> open = rollups.openRollups();
+        assertEquals(3, find(open, MetricType.TEMPERATURE, RollupGranularity.DAY, START.toLocalDate().atStartOfDay()).count());
+        assertEquals(2, find(open, MetricType.TEMPERATURE, RollupGranularity.HOUR, START).count());
+        assertEquals(2, find(open, MetricType.TEMPERATURE, RollupGranularity.MINUTE, START.plusMinutes(30)).count());
+    }
+
+    private static WindowStatistics window(LocalDateTime timestamp, double... values) {
+        StatisticsSketch sketch = new StatisticsSketch();
+        for (double value : values) {
+            sketch.add(value);
+        }
+        return new WindowStatistics(MetricType.TEMPERATURE, "thermometer1", timestamp, sketch);
+    }
+
+    private static Rollup find(List<Rollup> rollups, MetricType type, RollupGranularity granularity, LocalDateTime bucketStart) {
+        return rollups.stream()
+                .filter(rollup -> rollup.type() == type && rollup.granularity() == granularity && rollup.bucketStart().equals(bucketStart))
+                .findFirst()
+                .orElseThrow();
+    }
+}
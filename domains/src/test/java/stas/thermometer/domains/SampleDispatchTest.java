@@ -0,0 +1,142 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SampleDispatchTest {
+
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    void shouldDeliverEachSampleOnceToEachSubscriber() {
+        LocalDateTime today = LocalDateTime.now();
+        Profiles profiles = new Profiles(List.of(new Jalons(today.minusDays(1), 20.0), new Jalons(today.plusDays(1), 20.0)),
+                List.of(new Jalons(today.minusDays(1), 0.5), new Jalons(today.plusDays(1), 0.5)));
+        ObserverManager observerManager = new ObserverManager();
+        List<WindowStatistics> windows = new ArrayList<>();
+        observerManager.addAverageObserver(new AverageMeasurementObserver() {
+            @Override
+            public void updateAverageMeasurement(Measurement averageMeasurement) {
+            }
+
+            @Override
+            public void updateAverageHumidity(Humidity averageHumidity) {
+            }
+
+            @Override
+            public void updateWindowStatistics(WindowStatistics statistics) {
+                windows.add(statistics);
+            }
+        });
+        MeasurementAggregator aggregator = new MeasurementAggregator(observerManager, profiles, "thermometer1", new NoOpSink());
+        CountingObserver subscriber = new CountingObserver();
+        aggregator.addObserver(subscriber);
+        aggregator.addObserver(subscriber);
+        TemperatureProbe probe = new TemperatureProbe(null);
+        HumidityProbe humidityProbe = new HumidityProbe(null);
+        probe.addObserver(aggregator);
+        probe.addObserver(aggregator);
+        humidityProbe.addObserver(aggregator);
+
+        for (int i = 0; i < 10; i++) {
+            probe.notifyObservers(20.0, 1_700_000_000_000L + i);
+            humidityProbe.notifyObservers(0.5, 1_700_000_000_000L + i);
+        }
+
+        assertEquals(10, subscriber.temperatures, "Chaque mesure doit être transmise une seule fois à l'abonné");
+        assertEquals(10, subscriber.humidities);
+        aggregator.calculateAndNotifyAverages();
+        assertEquals(2, windows.size());
+        assertEquals(10, windows.get(0).sketch().count(), "Chaque mesure doit être comptée une seule fois");
+        assertEquals(10, windows.get(1).sketch().count());
+    }
+
+    @Test
+    void shouldNotAllocateWhenDispatchingSamples() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Mesure des allocations indisponible sur cette JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        ObserverManager observerManager = new ObserverManager();
+        MeasurementAggregator aggregator = new MeasurementAggregator(observerManager, null, "thermometer1", new NoOpSink());
+        aggregator.addObserver(new CountingObserver());
+        TemperatureProbe probe = new TemperatureProbe(null);
+        probe.addObserver(aggregator);
+        // Préchauffage : laisse le JIT compiler le chemin des mesures
+        dispatch(probe);
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        dispatch(probe);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Un seul objet par mesure représenterait au moins 16 octets × 100 000 mesures
+        assertTrue(allocated < 64 * 1024, "Octets alloués pour " + SAMPLES + " mesures : " + allocated);
+    }
+
+    private static void dispatch(TemperatureProbe probe) {
+        for (int i = 0; i < SAMPLES; i++) {
+            probe.notifyObservers(20.0 + (i & 7), 1_700_000_000_000L + i);
+        }
+    }
+
+    private static final class CountingObserver implements Observer {
+        private int temperatures;
+        private int humidities;
+
+        @Override
+        public void updateTemperature(double temperature) {
+            temperatures++;
+        }
+
+        @Override
+        public void updateHumidity(double humidity) {
+            humidities++;
+        }
+
+        @Override
+        public void addObserver(Observer observer) {
+        }
+
+        @Override
+        public void addAlertObserver(Observer observer) {
+        }
+
+        @Override
+        public void notifyObservers(double temperature) {
+        }
+
+        @Override
+        public void notifyHumidityObservers(double humidity) {
+        }
+
+        @Override
+        public void displayThermometerName() {
+        }
+
+        @Override
+        public void alertTriggeredTemperature(String alertType, double expectedTemperature, double difference) {
+        }
+
+        @Override
+        public void alertTriggeredHumidity(String alertType, double expectedTemperature, double difference) {
+        }
+    }
+
+    private static final class NoOpSink implements AverageSink {
+        @Override
+        public void submitTemperature(Measurement average, OptionalDouble alertDifference) {
+        }
+
+        @Override
+        public void submitHumidity(Humidity average, OptionalDouble alertDifference) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsSketchTest {
+
+    @Test
+    void shouldEstimateQuantilesWithinOnePercent() {
+        Random random = new Random(42);
+        double[] values = new double[100_000];
+        StatisticsSketch sketch = new StatisticsSketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 20.0 + random.nextGaussian() * 3.0;
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : new double[]{0.5, 0.95, 0.99}) {
+            double exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            assertEquals(exact, sketch.quantile(quantile), Math.abs(exact) * 0.01, "Quantile " + quantile);
+        }
+        assertEquals(values[0], sketch.min());
+        assertEquals(values[values.length - 1], sketch.max());
+    }
+
+    @Test
+    void shouldComputeSampleVarianceLikeTwoPassAlgorithm() {
+        double[] values = {1_000_000.1, 1_000_000.3, 1_000_000.2, 1_000_000.7, 1_000_000.4};
+        StatisticsSketch sketch = new StatisticsSketch();
+        double sum = 0;
+        for (double value : values) {
+            sketch.add(value);
+            sum += value;
+        }
+        double mean = sum / values.length;
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+
+        assertEquals(mean, sketch.mean(), 1e-9);
+        assertEquals(squares / (values.length - 1), sketch.variance(), 1e-9);
+    }
+
+    @Test
+    void shouldGiveSameResultWhenMergingWindows() {
+        Random random = new Random(7);
+        StatisticsSketch whole = new StatisticsSketch();
+        StatisticsSketch first = new StatisticsSketch();
+        StatisticsSketch second = new StatisticsSketch();
+        for (int i = 0; i < 10_000; i++) {
+            double value = 0.3 + random.nextDouble() * 0.4;
+            whole.add(value);
+            (i % 3 == 0 ? first : second).add(value);
+        }
+
+        first.merge(second);
+
+        assertEquals(whole.count(), first.count());
+        assertEquals(whole.mean(), first.mean(), 1e-12);
+        assertEquals(whole.variance(), first.variance(), 1e-12);
+        assertEquals(whole.summary().p50(), first.summary().p50());
+        assertEquals(whole.summary().p99(), first.summary().p99());
+    }
+
+    @Test
+    void shouldKeepNegativeAndZeroValuesInOrder() {
+        StatisticsSketch sketch = new StatisticsSketch();
+        for (int i = -50; i <= 50; i++) {
+            sketch.add(i);
+        }
+
+        assertEquals(0.0, sketch.quantile(0.5), 0.5);
+        assertTrue(sketch.quantile(0.1) < sketch.quantile(0.2));
+        assertEquals(-50.0, sketch.quantile(0.0));
+        assertEquals(50.0, sketch.quantile(1.0));
+    }
+}
@@ -0,0 +1,89 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedAggregateTest {
+
+    @Test
+    void shouldCombineCellsOfAWindow() {
+        StripedAggregate aggregate = new StripedAggregate();
+        RunningAggregate window = new RunningAggregate();
+        aggregate.add(20.0, 1_000);
+        aggregate.add(24.0, 2_000);
+        aggregate.add(19.0, 3_000);
+
+        aggregate.drainTo(window);
+
+        assertEquals(3, window.count());
+        assertEquals(21.0, window.average(), 0.0001);
+        assertEquals(19.0, window.min());
+        assertEquals(24.0, window.max());
+        assertEquals(1_000, window.firstEpochMillis());
+    }
+
+    @Test
+    void shouldMergeVarianceAndHistogramOfCells() {
+        StripedAggregate aggregate = new StripedAggregate();
+        RunningAggregate window = new RunningAggregate();
+        aggregate.add(20.0, 1_000);
+        aggregate.add(24.0, 2_000);
+        aggregate.add(19.0, 3_000);
+
+        aggregate.drainTo(window);
+
+        StatisticsSketch statistics = window.statistics();
+        assertEquals(7.0, statistics.variance(), 1e-9);
+        assertEquals(20.0, statistics.quantile(0.5), 0.2);
+        assertEquals(24.0, statistics.quantile(1.0));
+    }
+
+    @Test
+    void shouldNotLoseSamplesWhenWindowsAreSwappedDuringWrites() throws InterruptedException {
+        int producers = 8;
+        int samplesPerProducer = 200_000;
+        StripedAggregate aggregate = new StripedAggregate();
+        RunningAggregate total = new RunningAggregate();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < samplesPerProducer; i++) {
+                    aggregate.add(1.0, i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Thread drainer = new Thread(() -> {
+            while (producing.get()) {
+                aggregate.drainTo(total);
+            }
+        });
+        drainer.start();
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        producing.set(false);
+        drainer.join();
+        aggregate.drainTo(total);
+
+        assertEquals((long) producers * samplesPerProducer, total.count(), "Chaque mesure doit être comptée une seule fois");
+        assertEquals(1.0, total.average(), 0.0);
+    }
+}
@@ -44,7 +44,7 @@ class TemperatureProbeTest {
 
         temperatureProbe.measureAndNotify();
 
-        verify(observer).updateTemperature(anyDouble());
+        verify(observer).updateTemperature(anyDouble(), anyLong());
     }
 
     @Test
@@ -0,0 +1,19 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadModeTest {
+
+    @Test
+    void shouldCreateThreadsOfRequestedKind() {
+        Thread platform = ThreadMode.PLATFORM.factory("stas-test").newThread(() -> { });
+        Thread virtual = ThreadMode.VIRTUAL.factory("stas-test").newThread(() -> { });
+
+        assertFalse(platform.isVirtual());
+        assertTrue(platform.isDaemon());
+        assertTrue(virtual.isVirtual());
+        assertEquals("stas-test", virtual.getName());
+    }
+}
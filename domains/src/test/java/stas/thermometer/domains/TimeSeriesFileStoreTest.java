@@ -0,0 +1,104 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeSeriesFileStoreTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 20, 10, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReadBackAveragesAndAlerts() throws IOException {
+        try (TimeSeriesFileStore store = TimeSeriesFileStore.open(directory, "thermometer1", 512)) {
+            store.submitTemperature(new Measurement("thermometer1", 20.25, START), OptionalDouble.empty());
+            store.submitTemperature(new Measurement("thermometer1", 20.5, START.plusSeconds(2)), OptionalDouble.of(3.5));
+            store.submitTemperature(new Measurement("thermometer1", 20.5, START.plusSeconds(4)), OptionalDouble.empty());
+            store.submitHumidity(new Humidity("thermometer1", 0.55, START), OptionalDouble.empty());
+
+            List<HistoricalAverage> temperatures = store.scan(MetricType.TEMPERATURE, START, START.plusMinutes(1));
+
+            assertEquals(List.of(
+                    new HistoricalAverage(MetricType.TEMPERATURE, 0, "thermometer1", 20.25, START, OptionalDouble.empty()),
+                    new HistoricalAverage(MetricType.TEMPERATURE, 1, "thermometer1", 20.5, START.plusSeconds(2), OptionalDouble.of(3.5)),
+                    new HistoricalAverage(MetricType.TEMPERATURE, 2, "thermometer1", 20.5, START.plusSeconds(4), OptionalDouble.empty())),
+                    temperatures);
+            assertEquals(0.55, store.scan(MetricType.HUMIDITY, START, START.plusMinutes(1)).get(0).value());
+        }
+    }
+
+    @Test
+    void shouldScanRangeAcrossBlocks() throws IOException {
+        try (TimeSeriesFileStore store = TimeSeriesFileStore.open(directory, "thermometer1", 256)) {
+            for (int i = 0; i < 1000; i++) {
+                store.submitTemperature(new Measurement("thermometer1", 20 + Math.sin(i / 10.0), START.plusSeconds(2L * i)), OptionalDouble.empty());
+            }
+
+            List<HistoricalAverage> range = store.scan(MetricType.TEMPERATURE, START.plusSeconds(200), START.plusSeconds(400));
+
+            assertEquals(100, range.size());
+            assertEquals(100, range.get(0).id());
+            assertEquals(20 + Math.sin(10.0), range.get(0).value());
+            assertEquals(START.plusSeconds(398), range.get(99).timestamp());
+        }
+    }
+
+    @Test
+    void shouldResumeAfterReopen() throws IOException {
+        try (TimeSeriesFileStore store = TimeSeriesFileStore.open(directory, "thermometer1", 256)) {
+            for (int i = 0; i < 50; i++) {
+                store.submitTemperature(new Measurement("thermometer1", i, START.plusSeconds(2L * i)), OptionalDouble.empty());
+            }
+        }
+        try (TimeSeriesFileStore store = TimeSeriesFileStore.open(directory, "thermometer1", 256)) {
+            for (int i = 50; i < 100; i++) {
+                store.submitTemperature(new Measurement("thermometer1", i, START.plusSeconds(2L * i)), OptionalDouble.empty());
+            }
+            store.endTick();
+        }
+        try (TimeSeriesFileStore store = TimeSeriesFileStore.open(directory, "thermometer1", 256)) {
+            List<HistoricalAverage> all = store.scan(MetricType.TEMPERATURE, START, START.plusHours(1));
+
+            assertEquals(100, all.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, all.get(i).value());
+                assertEquals(i, all.get(i).id());
+            }
+        }
+    }
+
+    @Test
+    void shouldTakeFarLessSpaceThanRawValues() throws IOException {
+        int points = 10_000;
+        try (TimeSeriesFileStore store = TimeSeriesFileStore.open(directory, "thermometer1", TimeSeriesFileStore.DEFAULT_BLOCK_SIZE)) {
+            for (int i = 0; i < points; i++) {
+                double temperature = Math.round((20 + Math.sin(i / 100.0)) * 100) / 100.0;
+                store.submitTemperature(new Measurement("thermometer1", temperature, START.plusSeconds(2L * i)), OptionalDouble.empty());
+            }
+            store.flush();
+
+            // Un horodatage et une valeur bruts occupent 16 octets par moyenne
+            assertTrue(store.sizeOnDisk() < points * 16L / 2, "Taille sur disque : " + store.sizeOnDisk());
+        }
+    }
+
+    @Test
+    void shouldRejectOutOfOrderAverages() throws IOException {
+        try (TimeSeriesFileStore store = TimeSeriesFileStore.open(directory, "thermometer1", 256)) {
+            store.submitTemperature(new Measurement("thermometer1", 20.0, START.plusSeconds(2)), OptionalDouble.empty());
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> store.submitTemperature(new Measurement("thermometer1", 20.0, START), OptionalDouble.empty()));
+        }
+    }
+}
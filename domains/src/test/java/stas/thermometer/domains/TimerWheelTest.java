@@ -0,0 +1,64 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    @Test
+    void shouldRunEachTaskOncePerPeriod() {
+        TimerWheel wheel = new TimerWheel(8);
+        int[] runs = new int[3];
+        wheel.schedule(() -> runs[0]++, 1, 1);
+        wheel.schedule(() -> runs[1]++, 3, 2);
+        // Période plus longue qu'un tour de roue
+        wheel.schedule(() -> runs[2]++, 20, 5);
+
+        int fired = 0;
+        for (long tick = 1; tick <= 60; tick++) {
+            fired += wheel.advance(tick);
+        }
+
+        assertEquals(60, runs[0]);
+        assertEquals(20, runs[1]);
+        assertEquals(3, runs[2]);
+        assertEquals(83, fired);
+    }
+
+    @Test
+    void shouldFireTasksAtTheirDeadlineOnly() {
+        TimerWheel wheel = new TimerWheel(4);
+        List<Long> firedAt = new ArrayList<>();
+        long[] tick = new long[1];
+        wheel.schedule(() -> firedAt.add(tick[0]), 6, 3);
+
+        for (tick[0] = 1; tick[0] <= 20; tick[0]++) {
+            wheel.advance(tick[0]);
+        }
+
+        assertEquals(List.of(3L, 9L, 15L), firedAt);
+    }
+
+    @Test
+    void shouldKeepSchedulingTasksThatFail() {
+        TimerWheel wheel = new TimerWheel(4);
+        int[] runs = new int[2];
+        wheel.schedule(() -> {
+            runs[0]++;
+            throw new IllegalStateException("sonde débranchée");
+        }, 2, 1);
+        wheel.schedule(() -> runs[1]++, 2, 1);
+
+        for (long tick = 1; tick <= 10; tick++) {
+            wheel.advance(tick);
+        }
+
+        assertEquals(5, runs[0]);
+        assertEquals(5, runs[1], "L'échec d'une tâche ne doit pas priver les autres de leur cran");
+        assertEquals(5, wheel.failures());
+    }
+}
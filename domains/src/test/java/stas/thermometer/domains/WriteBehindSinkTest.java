@@ -0,0 +1,205 @@
+package stas.thermometer.domains;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindSinkTest {
+
+    private static final String URL = "jdbc:derby:../dbTest;create=true";
+
+    private ConnectionPool pool;
+    private WriteBehindSink sink;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = new ConnectionPool(URL, "root", "root");
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("CREATE TABLE Temperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), temperature DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("CREATE TABLE Humidity (id BIGINT GENERATED BY DEFAULT AS IDENTITY, thermometer_name VARCHAR(255), humidity DOUBLE, timestamp TIMESTAMP)");
+            statement.executeUpdate("CREATE TABLE AlertsTemperature (id BIGINT GENERATED BY DEFAULT AS IDENTITY, type VARCHAR(255), difference DOUBLE, timestamp TIMESTAMP, temperature_id BIGINT)");
+            statement.executeUpdate("CREATE TABLE AlertsHumidity (id BIGINT GENERATED BY DEFAULT AS IDENTITY, type VARCHAR(255), difference DOUBLE, timestamp TIMESTAMP, humidity_id BIGINT)");
+        }
+        sink = new WriteBehindSink(new DatabaseManager<>(pool), 3, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        pool.close();
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DROP TABLE Temperature");
+            statement.executeUpdate("DROP TABLE Humidity");
+            statement.executeUpdate("DROP TABLE AlertsTemperature");
+            statement.executeUpdate("DROP TABLE AlertsHumidity");
+            // La table des blocs n'est créée qu'au premier lot écrit
+            try {
+                statement.executeUpdate("DROP TABLE IdBlocks");
+            } catch (SQLException e) {
+                if (!"42Y55".equals(e.getSQLState())) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldQueueUntilBatchSizeIsReached() throws SQLException {
+        sink.submitTemperature(new Measurement("thermometer1", 20.0, LocalDateTime.now()), OptionalDouble.empty());
+        sink.submitHumidity(new Humidity("thermometer1", 0.5, LocalDateTime.now()), OptionalDouble.empty());
+
+        assertEquals(0, countRows("Temperature"), "Rien ne doit être écrit avant que le lot soit complet");
+        assertEquals(2, sink.pendingCount());
+    }
+
+    @Test
+    void shouldWriteWholeBatchInOneFlush() throws SQLException {
+        sink.submitTemperature(new Measurement("thermometer1", 20.0, LocalDateTime.now()), OptionalDouble.empty());
+        sink.submitTemperature(new Measurement("thermometer1", 21.0, LocalDateTime.now()), OptionalDouble.empty());
+        sink.submitHumidity(new Humidity("thermometer1", 0.5, LocalDateTime.now()), OptionalDouble.empty());
+
+        assertEquals(2, countRows("Temperature"));
+        assertEquals(1, countRows("Humidity"));
+        assertEquals(1, sink.getMetrics().flushes());
+        assertEquals(3, sink.getMetrics().lastBatchSize());
+    }
+
+    @Test
+    void shouldLinkAlertToItsAverage() throws SQLException {
+        sink.submitTemperature(new Measurement("thermometer1", 45.0, LocalDateTime.now()), OptionalDouble.of(20.0));
+        sink.flush();
+
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT a.difference FROM AlertsTemperature a JOIN Temperature t ON a.temperature_id = t.id")) {
+            assertTrue(resultSet.next(), "L'alerte doit référencer la moyenne insérée");
+            assertEquals(20.0, resultSet.getDouble(1));
+        }
+    }
+
+    @Test
+    void shouldAssignDistinctClientSideIds() throws SQLException {
+        sink.submitTemperature(new Measurement("thermometer1", 45.0, LocalDateTime.now()), OptionalDouble.of(20.0));
+        sink.submitTemperature(new Measurement("thermometer1", 46.0, LocalDateTime.now()), OptionalDouble.of(21.0));
+        sink.flush();
+
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(DISTINCT id), COUNT(DISTINCT temperature_id) FROM AlertsTemperature")) {
+            resultSet.next();
+            assertEquals(2, resultSet.getInt(1));
+            assertEquals(2, resultSet.getInt(2), "Chaque alerte doit référencer sa propre moyenne");
+        }
+    }
+
+    @Test
+    void shouldNotWriteAverageTwiceWhenAcknowledgementIsLost() throws SQLException {
+        DatabaseManager<Object> manager = new DatabaseManager<>(pool);
+        InMemoryPendingQueue queue = new InMemoryPendingQueue();
+        // Arrêt simulé entre le commit et l'acquittement de la file
+        PendingAverageQueue crashing = new PendingAverageQueue() {
+            @Override
+            public void append(PendingAverage average) {
+                queue.append(average);
+            }
+
+            @Override
+            public List<PendingAverage> peek(int max) {
+                return queue.peek(max);
+            }
+
+            @Override
+            public void assignIds(List<PendingAverage> identified) {
+                queue.assignIds(identified);
+            }
+
+            @Override
+            public void acknowledge(int count) {
+                throw new IllegalStateException("arrêt avant le checkpoint");
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+
+            @Override
+            public long oldestPendingNanos() {
+                return queue.oldestPendingNanos();
+            }
+        };
+        PersistenceSettings settings = new PersistenceSettings(Integer.MAX_VALUE, 100, Duration.ofHours(1));
+        WriteBehindSink crashed = new WriteBehindSink(manager, crashing, new IdAllocator(manager, 100), settings);
+        crashed.submitTemperature(new Measurement("thermometer1", 45.0, LocalDateTime.now()), OptionalDouble.of(20.0));
+        assertThrows(IllegalStateException.class, crashed::flush);
+
+        WriteBehindSink restarted = new WriteBehindSink(manager, queue, new IdAllocator(manager, 100), settings);
+        restarted.submitTemperature(new Measurement("thermometer1", 46.0, LocalDateTime.now()), OptionalDouble.empty());
+        restarted.flush();
+
+        assertEquals(2, countRows("Temperature"), "La moyenne rejouée ne doit pas être insérée une seconde fois");
+        assertEquals(1, countRows("AlertsTemperature"));
+        assertEquals(0, restarted.pendingCount());
+    }
+
+    @Test
+    void shouldCommitOnceForConfiguredTicks() throws SQLException {
+        DatabaseManager<Object> manager = new DatabaseManager<>(pool);
+        WriteBehindSink grouped = new WriteBehindSink(manager, new InMemoryPendingQueue(), new IdAllocator(manager, 100),
+                new PersistenceSettings(2, 100, Duration.ofHours(1)));
+
+        grouped.submitTemperature(new Measurement("thermometer1", 20.0, LocalDateTime.now()), OptionalDouble.empty());
+        grouped.submitHumidity(new Humidity("thermometer1", 0.5, LocalDateTime.now()), OptionalDouble.of(0.2));
+        grouped.endTick();
+        assertEquals(0, countRows("Temperature"), "Le premier calcul doit attendre le second");
+
+        grouped.submitTemperature(new Measurement("thermometer1", 21.0, LocalDateTime.now()), OptionalDouble.of(11.0));
+        grouped.submitHumidity(new Humidity("thermometer1", 0.6, LocalDateTime.now()), OptionalDouble.empty());
+        grouped.endTick();
+
+        assertEquals(2, countRows("Temperature"));
+        assertEquals(2, countRows("Humidity"));
+        assertEquals(1, countRows("AlertsTemperature"));
+        assertEquals(1, countRows("AlertsHumidity"));
+        assertEquals(1, grouped.getMetrics().flushes(), "Les deux calculs doivent être validés par un seul commit");
+    }
+
+    @Test
+    void shouldFlushWhenLatencyIsExceeded() throws SQLException {
+        WriteBehindSink eager = new WriteBehindSink(new DatabaseManager<>(pool), 100, Duration.ZERO);
+        eager.submitTemperature(new Measurement("thermometer1", 20.0, LocalDateTime.now()), OptionalDouble.empty());
+
+        eager.flushIfDue();
+
+        assertEquals(1, countRows("Temperature"));
+        assertEquals(0, eager.pendingCount());
+    }
+
+    @Test
+    void shouldKeepPendingAveragesWhenFlushFails() {
+        ConnectionPool unreachable = new ConnectionPool("jdbc:invalidUrl", "wrongUser", "wrongPassword");
+        WriteBehindSink failing = new WriteBehindSink(new DatabaseManager<>(unreachable), 100, Duration.ofHours(1));
+        failing.submitTemperature(new Measurement("thermometer1", 20.0, LocalDateTime.now()), OptionalDouble.empty());
+
+        assertThrows(RuntimeException.class, failing::flush);
+        assertEquals(1, failing.pendingCount(), "Les moyennes non écrites doivent rester en file");
+    }
+
+    private int countRows(String table) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(URL, "root", "root");
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
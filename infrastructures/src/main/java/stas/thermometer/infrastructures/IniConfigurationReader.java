@@ -4,6 +4,7 @@ import stas.thermometer.domains.*;
 
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.*;
 
 /**
@@ -18,7 +19,7 @@ import java.util.*;
  */
 public class IniConfigurationReader implements ConfigurationReader {
 
-    private final Map<String, Map<String, String>> sections = new HashMap<>();
+    private final Map<String, Map<String, String>> sections = new LinkedHashMap<>();
     private ProfileBuilder profileBuilder = null;
 
     /**
@@ -135,4 +136,264 @@ public class IniConfigurationReader implements ConfigurationReader {
         };
     }
 
-}
\ No newline at end of file
+    /**
+     * Récupère le regroupement des écritures de la section {@code [persistence]} :
+     * {@code ticks_per_commit}, {@code max_batch_size} et {@code max_latency_ms}.
+     *
+     * @return les paramètres lus, complétés par les valeurs par défaut.
+     */
+    @Override
+    public PersistenceSettings getPersistenceSettings() {
+        PersistenceSettings defaults = PersistenceSettings.defaults();
+        return new PersistenceSettings(
+                getInt("persistence", "ticks_per_commit", defaults.ticksPerCommit()),
+                getInt("persistence", "max_batch_size", defaults.maxBatchSize()),
+                Duration.ofMillis(getInt("persistence", "max_latency_ms", (int) defaults.maxLatency().toMillis())));
+    }
+
+    /**
+     * Récupère la rétention de la section {@code [retention]} : {@code max_age_days} (0 désactive la purge),
+     * {@code chunk_size}, {@code pause_ms} et {@code interval_minutes}.
+     *
+     * @return les paramètres lus, complétés par les valeurs par défaut.
+     */
+    @Override
+    public RetentionSettings getRetentionSettings() {
+        RetentionSettings defaults = RetentionSettings.defaults();
+        return new RetentionSettings(
+                Duration.ofDays(getInt("retention", "max_age_days", (int) defaults.maxAge().toDays())),
+                getInt("retention", "chunk_size", defaults.chunkSize()),
+                Duration.ofMillis(getInt("retention", "pause_ms", (int) defaults.pause().toMillis())),
+                Duration.ofMinutes(getInt("retention", "interval_minutes", (int) defaults.interval().toMinutes())));
+    }
+
+    /**
+     * Récupère les fenêtres de la section {@code [aggregation]} : {@code pane_ms}, l'intervalle de calcul,
+     * et {@code windows_seconds}, la liste des fenêtres plus longues séparées par des virgules.
+     *
+     * @return les paramètres lus, complétés par les valeurs par défaut.
+     */
+    @Override
+    public AggregationSettings getAggregationSettings() {
+        AggregationSettings defaults = AggregationSettings.defaults();
+        Duration pane = Duration.ofMillis(getInt("aggregation", "pane_ms", (int) defaults.pane().toMillis()));
+        String value = getValue("aggregation", "windows_seconds");
+        if (value == null) {
+            return new AggregationSettings(pane, defaults.windows());
+        }
+        List<Duration> windows = new ArrayList<>();
+        for (String window : value.split(",")) {
+            if (!window.isBlank()) {
+                try {
+                    windows.add(Duration.ofSeconds(Long.parseLong(window.trim())));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Fenêtre invalide dans [aggregation] : " + window.trim(), e);
+                }
+            }
+        }
+        return new AggregationSettings(pane, windows);
+    }
+
+    /**
+     * Récupère le fenêtrage de la section {@code [event_time]} : {@code enabled} ({@code true} pour fenêtrer sur
+     * l'horodatage des sondes), {@code watermark_delay_ms} et {@code allowed_lateness_ms}.
+     *
+     * @return les paramètres lus, complétés par les valeurs par défaut.
+     */
+    @Override
+    public EventTimeSettings getEventTimeSettings() {
+        EventTimeSettings defaults = EventTimeSettings.defaults();
+        String enabled = getValue("event_time", "enabled");
+        return new EventTimeSettings(
+                enabled == null ? defaults.enabled() : Boolean.parseBoolean(enabled.trim()),
+                Duration.ofMillis(getInt("event_time", "watermark_delay_ms", (int) defaults.watermarkDelay().toMillis())),
+                Duration.ofMillis(getInt("event_time", "allowed_lateness_ms", (int) defaults.allowedLateness().toMillis())));
+    }
+
+    /**
+     * Récupère les règles d'alerte, une par section {@code [alert.<type>]} où {@code <type>} est le type d'alerte affiché.
+     * Clés : {@code metric} ({@code temperature} ou {@code humidity}), {@code direction} ({@code above} ou {@code below}),
+     * {@code relative}, {@code absolute}, {@code hysteresis}, {@code min_duration_s} et {@code cooldown_s}.
+     *
+     * @return les règles dans l'ordre du fichier, ou les règles par défaut si aucune section n'est déclarée.
+     */
+    @Override
+    public List<AlertRule> getAlertRules() {
+        List<AlertRule> rules = new ArrayList<>();
+        for (String section : sections.keySet()) {
+            if (section.startsWith("alert.")) {
+                rules.add(readAlertRule(section));
+            }
+        }
+        return rules.isEmpty() ? AlertRule.defaults() : rules;
+    }
+
+    /**
+     * Récupère la détection d'anomalies de la section {@code [anomaly]} : {@code enabled}, {@code alpha},
+     * {@code z_threshold}, {@code warmup}, {@code temperature_rate_per_min} et {@code humidity_rate_per_min}.
+     *
+     * @return les paramètres lus, complétés par les valeurs par défaut.
+     */
+    @Override
+    public AnomalySettings getAnomalySettings() {
+        AnomalySettings defaults = AnomalySettings.defaults();
+        String enabled = getValue("anomaly", "enabled");
+        return new AnomalySettings(
+                enabled == null ? defaults.enabled() : Boolean.parseBoolean(enabled.trim()),
+                getDouble("anomaly", "alpha", defaults.alpha()),
+                getDouble("anomaly", "z_threshold", defaults.zThreshold()),
+                getInt("anomaly", "warmup", defaults.warmup()),
+                getDouble("anomaly", "temperature_rate_per_min", defaults.temperatureRate()),
+                getDouble("anomaly", "humidity_rate_per_min", defaults.humidityRate()));
+    }
+
+    /**
+     * Récupère la clé {@code seed} de la section {@code [simulation]}.
+     *
+     * @return la graine lue, ou rien si elle est absente.
+     * @throws IllegalArgumentException si la graine n'est pas un entier.
+     */
+    @Override
+    public OptionalLong getNoiseSeed() {
+        String seed = getValue("simulation", "seed");
+        if (seed == null) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(seed));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valeur invalide pour seed dans [simulation] : " + seed, e);
+        }
+    }
+
+    /**
+     * Récupère la flotte de la section {@code [fleet]} : {@code probes}, {@code min_period_ms}, {@code max_period_ms},
+     * {@code tick_ms}, {@code wheel_size} et {@code threads}.
+     *
+     * @return les paramètres lus, complétés par les valeurs par défaut.
+     */
+    @Override
+    public FleetSettings getFleetSettings() {
+        FleetSettings defaults = FleetSettings.defaults();
+        return new FleetSettings(
+                getInt("fleet", "probes", defaults.probes()),
+                Duration.ofMillis(getInt("fleet", "min_period_ms", (int) defaults.minPeriod().toMillis())),
+                Duration.ofMillis(getInt("fleet", "max_period_ms", (int) defaults.maxPeriod().toMillis())),
+                Duration.ofMillis(getInt("fleet", "tick_ms", (int) defaults.tick().toMillis())),
+                getInt("fleet", "wheel_size", defaults.wheelSize()),
+                getInt("fleet", "threads", defaults.threads()));
+    }
+
+    /**
+     * Récupère la clé {@code threads} de la section {@code [execution]} : {@code platform} ou {@code virtual}.
+     *
+     * @return la nature des threads lue, ou {@link ThreadMode#PLATFORM} si elle est absente.
+     * @throws IllegalArgumentException si la valeur n'est pas reconnue.
+     */
+    @Override
+    public ThreadMode getThreadMode() {
+        String threads = getValue("execution", "threads");
+        if (threads == null) {
+            return ThreadMode.PLATFORM;
+        }
+        return switch (threads.toLowerCase(Locale.ROOT)) {
+            case "platform" -> ThreadMode.PLATFORM;
+            case "virtual" -> ThreadMode.VIRTUAL;
+            default -> throw new IllegalArgumentException("Valeur invalide pour threads dans [execution] : " + threads);
+        };
+    }
+
+    /**
+     * Récupère la source de la section {@code [source]} : {@code type} ({@code simulated}, {@code file} pour un fichier
+     * ou un tube nommé, {@code socket}, {@code replay}), {@code location} (chemin, ou {@code hôte:port}),
+     * {@code samples_per_pane}, {@code record} (fichier d'enregistrement) et {@code speed} (facteur de vitesse de la
+     * relecture, ou {@code max}).
+     *
+     * @return les paramètres lus, complétés par les valeurs par défaut.
+     * @throws IllegalArgumentException si le type n'est pas reconnu ou si l'emplacement manque.
+     */
+    @Override
+    public ProbeSourceSettings getProbeSourceSettings() {
+        ProbeSourceSettings defaults = ProbeSourceSettings.defaults();
+        String type = getValue("source", "type");
+        ProbeSourceSettings.Type sourceType = type == null ? defaults.type() : switch (type.toLowerCase(Locale.ROOT)) {
+            case "simulated" -> ProbeSourceSettings.Type.SIMULATED;
+            case "file" -> ProbeSourceSettings.Type.FILE;
+            case "socket" -> ProbeSourceSettings.Type.SOCKET;
+            case "replay" -> ProbeSourceSettings.Type.REPLAY;
+            default -> throw new IllegalArgumentException("Valeur invalide pour type dans [source] : " + type);
+        };
+        String speed = getValue("source", "speed");
+        double replaySpeed = "max".equalsIgnoreCase(speed) ? Double.POSITIVE_INFINITY
+                : getDouble("source", "speed", defaults.replaySpeed());
+        return new ProbeSourceSettings(sourceType, getValue("source", "location"),
+                getInt("source", "samples_per_pane", defaults.samplesPerPane()), getValue("source", "record"), replaySpeed);
+    }
+
+    private AlertRule readAlertRule(String section) {
+        String name = section.substring("alert.".length());
+        String metric = getValue(section, "metric");
+        String direction = getValue(section, "direction");
+        if (metric == null || direction == null) {
+            throw new IllegalArgumentException("La règle " + name + " doit préciser metric et direction");
+        }
+        MetricType type = switch (metric.toLowerCase(Locale.ROOT)) {
+            case "temperature" -> MetricType.TEMPERATURE;
+            case "humidity" -> MetricType.HUMIDITY;
+            default -> throw new IllegalArgumentException("Grandeur inconnue pour la règle " + name + " : " + metric);
+        };
+        boolean above = switch (direction.toLowerCase(Locale.ROOT)) {
+            case "above" -> true;
+            case "below" -> false;
+            default -> throw new IllegalArgumentException("Direction inconnue pour la règle " + name + " : " + direction);
+        };
+        return new AlertRule(name, type, above,
+                getDouble(section, "relative", 0),
+                getDouble(section, "absolute", 0),
+                getDouble(section, "hysteresis", 0),
+                Duration.ofSeconds(getInt(section, "min_duration_s", 0)),
+                Duration.ofSeconds(getInt(section, "cooldown_s", 0)));
+    }
+
+    /**
+     * Récupère une valeur décimale de la configuration.
+     *
+     * @param section la section de la configuration.
+     * @param key la clé de la configuration.
+     * @param defaultValue la valeur renvoyée si la clé est absente.
+     * @return la valeur décimale correspondante à la clé.
+     * @throws IllegalArgumentException si la valeur n'est pas un nombre.
+     */
+    private double getDouble(String section, String key, double defaultValue) {
+        String value = getValue(section, key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valeur invalide pour " + key + " dans [" + section + "] : " + value, e);
+        }
+    }
+
+    /**
+     * Récupère une valeur entière de la configuration.
+     *
+     * @param section la section de la configuration.
+     * @param key la clé de la configuration.
+     * @param defaultValue la valeur renvoyée si la clé est absente.
+     * @return la valeur entière correspondante à la clé.
+     * @throws IllegalArgumentException si la valeur n'est pas un entier.
+     */
+    private int getInt(String section, String key, int defaultValue) {
+        String value = getValue(section, key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valeur invalide pour " + key + " dans [" + section + "] : " + value, e);
+        }
+    }
+}
@@ -5,13 +5,14 @@ import stas.thermometer.domains.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.time.LocalDateTime;
 
 /**
  * Cette classe fait le lien entre la vue et le domaine, gérant la logique de présentation pour un thermomètre.
- * Elle implémente {@code Observer} et {@code AverageMeasurementObserver} pour réagir aux changements de température et aux mesures moyennes.
+ * Elle implémente {@code Observer} et {@code AverageMeasurementObserver} pour réagir aux changements de température et aux mesures moyennes,
+ * ainsi que {@code DatabaseStateObserver} pour signaler les coupures de la base et {@code AnomalyObserver}
+ * pour signaler les anomalies détectées sur les moyennes.
  */
-public class ThermometerPresenter implements Observer, AverageMeasurementObserver {
+public class ThermometerPresenter implements Observer, AverageMeasurementObserver, DatabaseStateObserver, AnomalyObserver {
 
     private ThermometerView view;
     private MeasurementAggregator aggregator;
@@ -69,18 +70,17 @@ public class ThermometerPresenter implements Observer, AverageMeasurementObserve
         this.probeState = new ProbeState(probe, humidityProbe);
     }
     /**
-     * Met à jour la température et ajoute la mesure à l'agrégateur.
+     * Les sondes alimentent directement l'agrégateur : le présentateur n'affiche que les moyennes
+     * et ne retransmet pas les mesures brutes, qui seraient sinon comptées deux fois.
      */
     @Override
     public void updateTemperature(double temperature) {
-        Measurement measurement = new Measurement(config.thermometerName(), temperature, LocalDateTime.now());
-        aggregator.addMeasurement(measurement);
+        // Pas d'affichage des mesures brutes
     }
 
     @Override
     public void updateHumidity(double humidity) {
-        Humidity measurement = new Humidity(config.thermometerName(), humidity, LocalDateTime.now());
-        aggregator.addHumidityMeasurement(measurement);
+        // Pas d'affichage des mesures brutes
     }
 
 
@@ -230,4 +230,33 @@ public class ThermometerPresenter implements Observer, AverageMeasurementObserve
     public void alertTriggeredHumidity(String alertType, double expectedHumidity, double difference) {
         view.displayAlertHumidity(alertType, expectedHumidity, difference);
     }
+
+    /**
+     * Signale à l'utilisateur une anomalie détectée sur les moyennes.
+     */
+    @Override
+    public void updateAnomaly(Anomaly anomaly) {
+        String metric = anomaly.metric() == MetricType.TEMPERATURE ? "temperature" : "humidity";
+        switch (anomaly.kind()) {
+            case Z_SCORE -> view.display(String.format("Anomaly : %s %.2f is %.1f standard deviations from its baseline %.2f",
+                    metric, anomaly.value(), anomaly.score(), anomaly.baseline()));
+            case RATE_OF_CHANGE -> view.display(String.format("Anomaly : %s changes by %.2f per minute (from %.2f to %.2f)",
+                    metric, anomaly.score(), anomaly.baseline(), anomaly.value()));
+            default -> throw new IllegalStateException("Anomalie inconnue : " + anomaly.kind());
+        }
+    }
+
+    /**
+     * Signale à l'utilisateur la perte et le retour de la connexion à la base.
+     */
+    @Override
+    public void databaseStateChanged(CircuitState state) {
+        switch (state) {
+            case OPEN -> view.display("stas thermometer : unable to insert data. trying to reconnect to database..");
+            case CLOSED -> view.display("stas thermometer : connection to database restored");
+            default -> {
+                // La sonde de la base n'est pas signalée à l'utilisateur
+            }
+        }
+    }
 }
@@ -43,15 +43,15 @@ public class ThermometerPresenterTest {
     }
 
     @Test
-    void shouldAddTemperatureMeasurementToAggregator() {
+    void shouldNotForwardTemperatureSamplesToAggregator() {
         presenter.updateTemperature(25.0);
-        verify(mockAggregator).addMeasurement(any(Measurement.class));
+        verifyNoInteractions(mockAggregator);
     }
 
     @Test
-    void shouldAddHumidityMeasurementToAggregator() {
+    void shouldNotForwardHumiditySamplesToAggregator() {
         presenter.updateHumidity(60.0);
-        verify(mockAggregator).addHumidityMeasurement(any(Humidity.class));
+        verifyNoInteractions(mockAggregator);
     }
 
     @Test
@@ -79,6 +79,21 @@ public class ThermometerPresenterTest {
         verify(mockView).displayAlertHumidity("Low", 40.0, 5.0);
     }
 
+    @Test
+    void shouldDisplayZScoreAnomaly() {
+        presenter.updateAnomaly(new Anomaly("Test Thermometer", MetricType.TEMPERATURE, AnomalyKind.Z_SCORE,
+                30.0, 20.0, 4.0, LocalDateTime.now()));
+        verify(mockView).display(contains("Anomaly : temperature"));
+        verify(mockView).display(contains("standard deviations from its baseline"));
+    }
+
+    @Test
+    void shouldDisplayRateOfChangeAnomaly() {
+        presenter.updateAnomaly(new Anomaly("Test Thermometer", MetricType.HUMIDITY, AnomalyKind.RATE_OF_CHANGE,
+                0.8, 0.5, 0.3, LocalDateTime.now()));
+        verify(mockView).display(contains("humidity changes by"));
+    }
+
 
     @Test
     void shouldSwitchProbe() {
@@ -226,4 +241,15 @@ public class ThermometerPresenterTest {
         // Assert
         verify(mockAggregator).addAlertObserver(mockObserver);
     }
+
+    @Test
+    void shouldDisplayDatabaseOutageAndRecovery() {
+        presenter.databaseStateChanged(CircuitState.OPEN);
+        presenter.databaseStateChanged(CircuitState.HALF_OPEN);
+        presenter.databaseStateChanged(CircuitState.CLOSED);
+
+        verify(mockView).display("stas thermometer : unable to insert data. trying to reconnect to database..");
+        verify(mockView).display("stas thermometer : connection to database restored");
+        verifyNoMoreInteractions(mockView);
+    }
 }